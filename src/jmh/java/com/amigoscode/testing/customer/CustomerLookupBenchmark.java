@@ -0,0 +1,117 @@
+package com.amigoscode.testing.customer;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The registration check against H2 through Hibernate, one read-only transaction per
+// lookup as the repository runs it. entity is the native query mapped onto Customer,
+// summary the CustomerSummary constructor expression. gc.alloc.rate.norm from the
+// benchmark profile's -prof gc gives the bytes allocated per lookup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerLookupBenchmark {
+
+    private static final int CUSTOMERS = 10_000;
+
+    private StandardServiceRegistry registry;
+    private SessionFactory sessionFactory;
+    private String[] phoneNumbers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.URL, "jdbc:h2:mem:customer-lookup-benchmark;DB_CLOSE_DELAY=-1")
+                .applySetting(AvailableSettings.USER, "sa")
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, 50)
+                .applySetting(AvailableSettings.PHYSICAL_NAMING_STRATEGY, SpringPhysicalNamingStrategy.class.getName())
+                .applySetting(AvailableSettings.IMPLICIT_NAMING_STRATEGY, SpringImplicitNamingStrategy.class.getName())
+                .build();
+        sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClass(Customer.class)
+                .buildMetadata()
+                .buildSessionFactory();
+
+        phoneNumbers = new String[CUSTOMERS];
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (int i = 0; i < CUSTOMERS; i++) {
+                phoneNumbers[i] = "+44700" + String.format("%07d", i);
+                session.persist(new Customer(UUID.randomUUID(), "Ramona", phoneNumbers[i]));
+            }
+            transaction.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @Benchmark
+    public Optional<Customer> entity() {
+        try (Session session = readOnlySession()) {
+            Transaction transaction = session.beginTransaction();
+            Optional<Customer> customer = session
+                    .createNativeQuery("select id, name, phone_number from customer where phone_number = :phone_number",
+                            Customer.class)
+                    .setParameter("phone_number", randomPhoneNumber())
+                    .uniqueResultOptional();
+            transaction.commit();
+            return customer;
+        }
+    }
+
+    @Benchmark
+    public Optional<CustomerSummary> summary() {
+        try (Session session = readOnlySession()) {
+            Transaction transaction = session.beginTransaction();
+            Optional<CustomerSummary> customer = session
+                    .createQuery("select new com.amigoscode.testing.customer.CustomerSummary(c.id, c.name, c.phoneNumber) " +
+                            "from Customer c where c.phoneNumber = :phoneNumber", CustomerSummary.class)
+                    .setParameter("phoneNumber", randomPhoneNumber())
+                    .uniqueResultOptional();
+            transaction.commit();
+            return customer;
+        }
+    }
+
+    private Session readOnlySession() {
+        Session session = sessionFactory.openSession();
+        session.setDefaultReadOnly(true);
+        return session;
+    }
+
+    private String randomPhoneNumber() {
+        return phoneNumbers[ThreadLocalRandom.current().nextInt(CUSTOMERS)];
+    }
+}
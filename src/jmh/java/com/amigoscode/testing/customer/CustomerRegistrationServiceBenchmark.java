@@ -0,0 +1,70 @@
+package com.amigoscode.testing.customer;
+
+import com.amigoscode.testing.datasource.ReadYourWrites;
+import com.amigoscode.testing.utils.PhoneNumberValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerRegistrationServiceBenchmark {
+
+    private CustomerRegistrationService underTest;
+    private CustomerRegistrationRequest existingCustomerRequest;
+    private long nextPhoneNumber;
+
+    // A fresh repository per iteration keeps the stored customers from growing without bound
+    @Setup(Level.Iteration)
+    public void setUp() {
+        CustomerRepository customerRepository = new InMemoryCustomerRepository();
+        Customer existing = new Customer(UUID.randomUUID(), "Ramona", "+447000000000");
+        customerRepository.save(existing);
+
+        PhoneNumberIndex phoneNumberIndex = new PhoneNumberIndex(customerRepository, 1_000_000, 0.01);
+        phoneNumberIndex.run(null);
+
+        underTest = new CustomerRegistrationService(
+                customerRepository,
+                new PhoneNumberValidator(),
+                new CustomerExistenceCache(customerRepository, 100_000, Duration.ofMinutes(10)),
+                phoneNumberIndex,
+                new ReadYourWrites(false, Duration.ZERO),
+                TransactionOperations.withoutTransaction());
+
+        existingCustomerRequest = new CustomerRegistrationRequest(
+                new Customer(existing.getId(), existing.getName(), existing.getPhoneNumber()));
+        nextPhoneNumber = 7_000_000_001L;
+    }
+
+    // Includes building the request, every call needs a number nobody has taken yet
+    @Benchmark
+    public CustomerRegistrationRequest registerNewCustomer() {
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                new Customer(null, "Raluca", "+44" + nextPhoneNumber++));
+        underTest.registerNewCustomer(request);
+        return request;
+    }
+
+    @Benchmark
+    public void registerExistingCustomer() {
+        underTest.registerNewCustomer(existingCustomerRequest);
+    }
+}
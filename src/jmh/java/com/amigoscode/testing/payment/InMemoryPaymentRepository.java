@@ -0,0 +1,108 @@
+package com.amigoscode.testing.payment;
+
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+// Keeps the database out of the measurement, so the benchmarks time our own code
+public class InMemoryPaymentRepository implements PaymentRepository {
+
+    private final Map<Long, Payment> payments = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public List<PaymentSummary> selectPaymentHistory(UUID customerId, long before, Pageable pageable) {
+        return payments.values().stream()
+                .filter(p -> customerId.equals(p.getCustomerId()) && p.getPaymentId() < before)
+                .sorted(Comparator.comparing(Payment::getPaymentId).reversed())
+                .limit(pageable.getPageSize())
+                .map(p -> new PaymentSummary(p.getPaymentId(), p.getAmount(), p.getCurrency(), p.getDescription()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long countByCustomerIdAndPaymentId(UUID customerId, Long paymentId) {
+        Payment payment = payments.get(paymentId);
+        return payment != null && customerId.equals(payment.getCustomerId()) ? 1 : 0;
+    }
+
+    @Override
+    public int saveWithId(UUID customerId, long paymentId, BigDecimal amount, int currency,
+                          String source, String description) {
+        Payment payment = new Payment(paymentId, customerId, amount, Currency.values()[currency], source, description);
+        return payments.putIfAbsent(paymentId, payment) == null ? 1 : 0;
+    }
+
+    @Override
+    public <S extends Payment> S save(S payment) {
+        long paymentId = sequence.incrementAndGet();
+        payment.setPaymentId(paymentId);
+        payments.put(paymentId, payment);
+        return payment;
+    }
+
+    @Override
+    public <S extends Payment> Iterable<S> saveAll(Iterable<S> payments) {
+        payments.forEach(this::save);
+        return payments;
+    }
+
+    @Override
+    public Optional<Payment> findById(Long id) {
+        return Optional.ofNullable(payments.get(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return payments.containsKey(id);
+    }
+
+    @Override
+    public Iterable<Payment> findAll() {
+        return new ArrayList<>(payments.values());
+    }
+
+    @Override
+    public Iterable<Payment> findAllById(Iterable<Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false)
+                .map(payments::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count() {
+        return payments.size();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        payments.remove(id);
+    }
+
+    @Override
+    public void delete(Payment payment) {
+        payments.remove(payment.getPaymentId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Payment> payments) {
+        payments.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        payments.clear();
+    }
+}
@@ -0,0 +1,52 @@
+package com.amigoscode.testing.payment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentBenchmark {
+
+    private Payment payment;
+    private Payment equalPayment;
+    private Payment otherPayment;
+
+    @Setup
+    public void setUp() {
+        UUID customerId = UUID.randomUUID();
+        payment = new Payment(1L, customerId, new BigDecimal("100.00"), Currency.GBP, "card123", "Donation");
+        equalPayment = new Payment(1L, customerId, new BigDecimal("100.00"), Currency.GBP, "card123", "Donation");
+        otherPayment = new Payment(2L, customerId, new BigDecimal("100.00"), Currency.GBP, "card123", "Donation");
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return payment.equals(equalPayment);
+    }
+
+    @Benchmark
+    public boolean equalsDifferent() {
+        return payment.equals(otherPayment);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return payment.hashCode();
+    }
+}
@@ -0,0 +1,101 @@
+package com.amigoscode.testing.payment;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Inserts per second through Hibernate into H2, 50 payments per transaction with the
+// application's batch settings. perInsertSequence is the old mapping, one sequence
+// call per payment. pooledSequence is Payment as mapped now. Both batch their inserts.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentInsertBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    private StandardServiceRegistry registry;
+    private SessionFactory sessionFactory;
+    private final UUID customerId = UUID.randomUUID();
+    private final BigDecimal amount = new BigDecimal("10.00");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.URL, "jdbc:h2:mem:payment-insert-benchmark;DB_CLOSE_DELAY=-1")
+                .applySetting(AvailableSettings.USER, "sa")
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, BATCH_SIZE)
+                .applySetting(AvailableSettings.ORDER_INSERTS, true)
+                .build();
+        sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClass(Payment.class)
+                .addAnnotatedClass(PerInsertSequencePayment.class)
+                .buildMetadata()
+                .buildSessionFactory();
+    }
+
+    // Keeps the tables from growing over the run
+    @TearDown(Level.Iteration)
+    public void deletePayments() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            session.createQuery("delete from Payment").executeUpdate();
+            session.createQuery("delete from PerInsertSequencePayment").executeUpdate();
+            transaction.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void perInsertSequence() {
+        insert(() -> new PerInsertSequencePayment(customerId, amount, Currency.GBP, "card123xx", "Donation"));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void pooledSequence() {
+        insert(() -> new Payment(null, customerId, amount, Currency.GBP, "card123xx", "Donation"));
+    }
+
+    private void insert(Supplier<Object> payment) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                session.persist(payment.get());
+            }
+            transaction.commit();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRegistrationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private PaymentRequest paymentRequest;
+    private byte[] paymentRequestJson;
+
+    private CustomerRegistrationRequest customerRegistrationRequest;
+    private byte[] customerRegistrationRequestJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+
+        paymentRequest = new PaymentRequest(new Payment(
+                1L, UUID.randomUUID(), new BigDecimal("100.00"), Currency.GBP, "card123", "Donation"));
+        paymentRequestJson = objectMapper.writeValueAsBytes(paymentRequest);
+
+        customerRegistrationRequest = new CustomerRegistrationRequest(
+                new Customer(UUID.randomUUID(), "Ramona", "+447000000000"));
+        customerRegistrationRequestJson = objectMapper.writeValueAsBytes(customerRegistrationRequest);
+    }
+
+    @Benchmark
+    public byte[] writePaymentRequest() throws Exception {
+        return objectMapper.writeValueAsBytes(paymentRequest);
+    }
+
+    @Benchmark
+    public PaymentRequest readPaymentRequest() throws Exception {
+        return objectMapper.readValue(paymentRequestJson, PaymentRequest.class);
+    }
+
+    @Benchmark
+    public byte[] writeCustomerRegistrationRequest() throws Exception {
+        return objectMapper.writeValueAsBytes(customerRegistrationRequest);
+    }
+
+    @Benchmark
+    public CustomerRegistrationRequest readCustomerRegistrationRequest() throws Exception {
+        return objectMapper.readValue(customerRegistrationRequestJson, CustomerRegistrationRequest.class);
+    }
+}
@@ -0,0 +1,82 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerExistenceCache;
+import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.customer.InMemoryCustomerRepository;
+import com.amigoscode.testing.payment.journal.PaymentJournal;
+import com.amigoscode.testing.payment.ledger.InMemoryPaymentTotalRepository;
+import com.amigoscode.testing.payment.ledger.PaymentLedger;
+import com.amigoscode.testing.payment.stripe.MockStripeService;
+import com.amigoscode.testing.shard.ShardRouter;
+import com.amigoscode.testing.sms.InMemorySmsOutboxRepository;
+import com.amigoscode.testing.sms.SmsOutbox;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentServiceBenchmark {
+
+    private PaymentService underTest;
+    private UUID customerId;
+    private PaymentRequest paymentRequest;
+
+    // A fresh repository per iteration keeps the stored payments from growing without bound
+    @Setup(Level.Iteration)
+    public void setUp() {
+        CustomerRepository customerRepository = new InMemoryCustomerRepository();
+        customerId = UUID.randomUUID();
+        customerRepository.save(new Customer(customerId, "Ramona", "+447000000000"));
+
+        CardPaymentCharger cardPaymentCharger = new MockStripeService();
+        PaymentRepository paymentRepository = new InMemoryPaymentRepository();
+        AsyncCardPaymentCharger asyncCardPaymentCharger =
+                new ExecutorAsyncCardPaymentCharger(cardPaymentCharger, Runnable::run);
+        PaymentRecorder paymentRecorder =
+                new PaymentRecorder(paymentRepository, new SmsOutbox(new InMemorySmsOutboxRepository()),
+                        ShardRouter.single(), TransactionOperations.withoutTransaction(),
+                        new PaymentLedger(new InMemoryPaymentTotalRepository(), ShardRouter.single(),
+                                TransactionOperations.withoutTransaction()),
+                        PaymentJournal.disabled());
+
+        underTest = new PaymentService(
+                new CustomerExistenceCache(customerRepository, 100_000, Duration.ofMinutes(10)),
+                paymentRepository,
+                cardPaymentCharger,
+                asyncCardPaymentCharger,
+                new PaymentMetrics(new SimpleMeterRegistry(), cardPaymentCharger),
+                new PaymentBatcher(paymentRecorder, cardPaymentCharger, asyncCardPaymentCharger,
+                        Runnable::run, false, Duration.ZERO, 1),
+                paymentRecorder,
+                PaymentJournal.disabled());
+
+        paymentRequest = new PaymentRequest(
+                new Payment(null, customerId, new BigDecimal("100.00"), Currency.GBP, "card123", "Donation"));
+    }
+
+    @Benchmark
+    public void chargeCard() {
+        underTest.chargeCard(customerId, paymentRequest);
+    }
+}
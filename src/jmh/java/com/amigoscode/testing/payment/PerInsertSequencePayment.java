@@ -0,0 +1,41 @@
+package com.amigoscode.testing.payment;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// Payment as it was mapped before the pooled sequence, a key is fetched for every insert
+@Entity
+public class PerInsertSequencePayment {
+
+    @Id
+    @GeneratedValue
+    private Long paymentId;
+
+    private UUID customerId;
+
+    private BigDecimal amount;
+
+    private Currency currency;
+
+    private String source;
+
+    private String description;
+
+    public PerInsertSequencePayment(UUID customerId, BigDecimal amount, Currency currency, String source, String description) {
+        this.customerId = customerId;
+        this.amount = amount;
+        this.currency = currency;
+        this.source = source;
+        this.description = description;
+    }
+
+    public PerInsertSequencePayment() {
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+}
@@ -0,0 +1,71 @@
+package com.amigoscode.testing.payment.journal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Appending a payment-sized record to the journal's log. appendOnly is the copy into the
+// mapping, the forced ones also wait for the record to be on disk: one writer pays for an
+// fsync per record, eight share them through the group commit, so compare their ops/ms.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappedLogBenchmark {
+
+    private final byte[] record = new byte[120];
+
+    private Path directory;
+    private MappedLog log;
+
+    // A fresh log per iteration keeps the segments from filling the disk
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("payment-journal");
+        log = MappedLog.open(directory, 64 * 1024 * 1024);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long appendOnly() {
+        return log.append(record, 0, record.length);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void appendAndForce() {
+        log.force(log.append(record, 0, record.length));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void appendAndForceFromEightThreads() {
+        log.force(log.append(record, 0, record.length));
+    }
+}
@@ -0,0 +1,96 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+// Keeps the database out of the measurement, so the benchmarks time our own code
+public class InMemoryPaymentTotalRepository implements PaymentTotalRepository {
+
+    private final Map<PaymentTotalId, PaymentTotal> totals = new ConcurrentHashMap<>();
+
+    @Override
+    public int addToTotal(UUID customerId, Currency currency, int yearMonth, BigDecimal amount, long count) {
+        PaymentTotalId id = new PaymentTotalId(customerId, currency, PaymentTotalId.toYearMonth(yearMonth));
+        PaymentTotal updated = totals.computeIfPresent(id, (key, total) ->
+                new PaymentTotal(key, total.getTotalAmount().add(amount), total.getPaymentCount() + count));
+        return updated == null ? 0 : 1;
+    }
+
+    @Override
+    public List<PaymentTotal> selectTotals(UUID customerId, int yearMonth) {
+        return totals.values().stream()
+                .filter(t -> customerId.equals(t.getCustomerId())
+                        && PaymentTotalId.toInt(t.getYearMonth()) == yearMonth)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public <S extends PaymentTotal> S save(S total) {
+        totals.put(total.getId(), total);
+        return total;
+    }
+
+    @Override
+    public <S extends PaymentTotal> Iterable<S> saveAll(Iterable<S> totals) {
+        totals.forEach(this::save);
+        return totals;
+    }
+
+    @Override
+    public Optional<PaymentTotal> findById(PaymentTotalId id) {
+        return Optional.ofNullable(totals.get(id));
+    }
+
+    @Override
+    public boolean existsById(PaymentTotalId id) {
+        return totals.containsKey(id);
+    }
+
+    @Override
+    public Iterable<PaymentTotal> findAll() {
+        return new ArrayList<>(totals.values());
+    }
+
+    @Override
+    public Iterable<PaymentTotal> findAllById(Iterable<PaymentTotalId> ids) {
+        return StreamSupport.stream(ids.spliterator(), false)
+                .map(totals::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count() {
+        return totals.size();
+    }
+
+    @Override
+    public void deleteById(PaymentTotalId id) {
+        totals.remove(id);
+    }
+
+    @Override
+    public void delete(PaymentTotal total) {
+        totals.remove(total.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends PaymentTotal> totals) {
+        totals.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        totals.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.Currency;
+import com.stripe.net.FormEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Turning one charge into its request body, the old way through a HashMap and the Stripe
+// library's FormEncoder against the typed request and reused StripeChargeEncoder. Run with
+// -prof gc (the benchmark profile's default) and compare gc.alloc.rate.norm, bytes per charge.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StripeChargeEncodingBenchmark {
+
+    private final BigDecimal amount = new BigDecimal("100.00");
+    private final Currency currency = Currency.GBP;
+    private final String source = "tok_visa";
+    private final String description = "Donation to the animal shelter";
+
+    private final StripeChargeEncoder encoder = new StripeChargeEncoder();
+
+    @Benchmark
+    public byte[] hashMapAndFormEncoder() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("amount", amount);
+        params.put("currency", currency);
+        params.put("source", source);
+        params.put("description", description);
+        return FormEncoder.createQueryString(params).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int typedRequestAndReusedEncoder() {
+        return encoder.encode(StripeChargeRequest.of(amount, currency, source, description)).length();
+    }
+}
@@ -0,0 +1,96 @@
+package com.amigoscode.testing.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 64 threads taking tokens. The rates are high enough that every call takes one, so
+// every call writes its bucket: a bucket shared by all threads (the global limit, one
+// hot customer) shows the cost of contended compareAndSets, a bucket per thread shows
+// the uncontended path. rejected times callers that are turned away: their bucket is
+// only read, and building the exception is most of the cost.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final double UNLIMITED = 1e9;
+
+    private RateLimit rateLimit;
+    private AtomicLong sharedBucket;
+    private KeyedRateLimiter<UUID> customers;
+    private RateLimiter rateLimiter;
+    private RateLimiter exhausted;
+    private UUID hotCustomerId;
+
+    @State(Scope.Thread)
+    public static class Caller {
+
+        private UUID customerId;
+
+        @Setup
+        public void setUp() {
+            customerId = UUID.randomUUID();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        rateLimit = new RateLimit(UNLIMITED, Integer.MAX_VALUE / 2);
+        sharedBucket = rateLimit.newBucket(System.nanoTime());
+        customers = new KeyedRateLimiter<>(rateLimit, 100_000, System::nanoTime);
+        rateLimiter = new RateLimiter(true, rateLimit, rateLimit, rateLimit, 100_000,
+                new SimpleMeterRegistry(), System::nanoTime);
+        exhausted = new RateLimiter(true, new RateLimit(1, 1), new RateLimit(1, 1), new RateLimit(1, 1), 100_000,
+                new SimpleMeterRegistry(), System::nanoTime);
+        hotCustomerId = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public long sharedBucket() {
+        return rateLimit.tryAcquire(sharedBucket, System.nanoTime());
+    }
+
+    @Benchmark
+    public long hotCustomer() {
+        return customers.tryAcquire(hotCustomerId);
+    }
+
+    @Benchmark
+    public long customerPerThread(Caller caller) {
+        return customers.tryAcquire(caller.customerId);
+    }
+
+    // The controller path: the caller's customer, then the global limit
+    @Benchmark
+    public void acquireForCustomer(Caller caller) {
+        rateLimiter.acquireForCustomer(caller.customerId);
+    }
+
+    @Benchmark
+    public boolean rejected(Caller caller) {
+        try {
+            exhausted.acquireForCustomer(caller.customerId);
+            return true;
+        } catch (RateLimitExceededException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.amigoscode.testing.shard;
+
+import com.amigoscode.testing.TestingApplication;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Payment saves from 8 threads through the sharded PaymentRepository, routed by customer
+// over 1 to 8 local H2 databases, so the interceptor, the shard's sequence and Hibernate
+// are all measured. Every save commits on its own, so a single database serialises the
+// writers on its commit path and throughput should grow close to linearly with the shard
+// count until the shards outnumber the cores.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ShardedWriteBenchmark {
+
+    private static final int CUSTOMERS = 10_000;
+    private static final AtomicLong TRIALS = new AtomicLong();
+
+    @Param({"1", "2", "4", "8"})
+    private int shards;
+
+    private final BigDecimal amount = new BigDecimal("10.00");
+    private ConfigurableApplicationContext context;
+    private PaymentRepository paymentRepository;
+    private UUID[] customerIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long trial = TRIALS.incrementAndGet();
+        StringJoiner urls = new StringJoiner(",");
+        for (int i = 0; i < shards; i++) {
+            // Dropped once the context closes its pools
+            urls.add("jdbc:h2:mem:benchmark-" + trial + "-shard-" + i);
+        }
+
+        context = new SpringApplicationBuilder(TestingApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "customer.sharding.enabled=true",
+                        "customer.sharding.urls=" + urls,
+                        "sms.outbox.dispatcher.enabled=false",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn")
+                .run();
+        paymentRepository = context.getBean(PaymentRepository.class);
+
+        customerIds = new UUID[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customerIds[i] = UUID.randomUUID();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Payment savePayment() {
+        UUID customerId = customerIds[ThreadLocalRandom.current().nextInt(CUSTOMERS)];
+        return paymentRepository.save(new Payment(null, customerId, amount, Currency.GBP, "card123xx", "Donation"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.amigoscode.testing.sms;
+
+import org.springframework.data.domain.Pageable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+// Keeps the database out of the measurement, so the benchmarks time our own code
+public class InMemorySmsOutboxRepository implements SmsOutboxRepository {
+
+    private final Map<Long, SmsOutboxMessage> messages = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public List<SmsOutboxMessage> selectDue(Instant now, Pageable pageable) {
+        return messages.values().stream()
+                .filter(m -> m.getStatus() == SmsOutboxStatus.PENDING && !m.getNextAttemptAt().isAfter(now))
+                .sorted(Comparator.comparing(SmsOutboxMessage::getId))
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public <S extends SmsOutboxMessage> S save(S message) {
+        if (message.getId() == null) {
+            message.setId(sequence.incrementAndGet());
+        }
+        messages.put(message.getId(), message);
+        return message;
+    }
+
+    @Override
+    public <S extends SmsOutboxMessage> Iterable<S> saveAll(Iterable<S> messages) {
+        messages.forEach(this::save);
+        return messages;
+    }
+
+    @Override
+    public Optional<SmsOutboxMessage> findById(Long id) {
+        return Optional.ofNullable(messages.get(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return messages.containsKey(id);
+    }
+
+    @Override
+    public Iterable<SmsOutboxMessage> findAll() {
+        return new ArrayList<>(messages.values());
+    }
+
+    @Override
+    public Iterable<SmsOutboxMessage> findAllById(Iterable<Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false)
+                .map(messages::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count() {
+        return messages.size();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        messages.remove(id);
+    }
+
+    @Override
+    public void delete(SmsOutboxMessage message) {
+        messages.remove(message.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends SmsOutboxMessage> messages) {
+        messages.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        messages.clear();
+    }
+}
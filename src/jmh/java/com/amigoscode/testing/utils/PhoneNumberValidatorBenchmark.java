@@ -0,0 +1,50 @@
+package com.amigoscode.testing.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhoneNumberValidatorBenchmark {
+
+    @Param({"+447000000000", "+44 7000 000000", "07000 000000", "+44700000000012", "447000000000"})
+    private String phoneNumber;
+
+    private PhoneNumberValidator underTest;
+
+    @Setup
+    public void setUp() {
+        underTest = new PhoneNumberValidator();
+    }
+
+    // The check PhoneNumberValidator made before it compiled numbering plans, as the baseline
+    @Benchmark
+    public boolean startsWithAndLength() {
+        return phoneNumber.startsWith("+44") && phoneNumber.length() == 13;
+    }
+
+    @Benchmark
+    public boolean test() {
+        return underTest.test(phoneNumber);
+    }
+
+    @Benchmark
+    public String normalize() {
+        return underTest.normalize(phoneNumber);
+    }
+}
@@ -0,0 +1,60 @@
+package com.amigoscode.testing.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Picks which of size keys the next request is for. zipf makes a few keys hot, the way
+// a handful of merchants or heavy users dominate real traffic, uniform spreads evenly.
+abstract class KeyDistribution {
+
+    abstract int next(Random random);
+
+    static KeyDistribution of(String name, int size, double zipfExponent) {
+        switch (name) {
+            case "uniform":
+                return new Uniform(size);
+            case "zipf":
+                return new Zipf(size, zipfExponent);
+            default:
+                throw new IllegalStateException(String.format("Unknown key distribution [%s]", name));
+        }
+    }
+
+    private static final class Uniform extends KeyDistribution {
+
+        private final int size;
+
+        private Uniform(int size) {
+            this.size = size;
+        }
+
+        @Override
+        int next(Random random) {
+            return random.nextInt(size);
+        }
+    }
+
+    // Key k is drawn with probability proportional to 1 / (k + 1)^exponent
+    private static final class Zipf extends KeyDistribution {
+
+        private final double[] cumulative;
+
+        private Zipf(int size, double exponent) {
+            cumulative = new double[size];
+            double sum = 0;
+            for (int k = 0; k < size; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < size; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        @Override
+        int next(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.amigoscode.testing.loadtest;
+
+import com.amigoscode.testing.loadtest.StepResult.Endpoint;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Open model: requests are started on a schedule fixed by the arrival rate, whether or
+// not earlier ones have come back, the way independent clients behave. A closed loop
+// that waits for each response slows down with the server and hides its stalls.
+//
+// Latency is taken from the time a request was due. When the generator or the server
+// falls behind, the requests that should have gone out meanwhile are charged the wait,
+// which is the coordinated omission correction.
+class LoadGenerator {
+
+    private final HttpClient httpClient;
+    private final URI baseUri;
+    private final LoadTestOptions options;
+    private final KeyDistribution customers;
+    private final List<UUID> customerIds;
+    private final AtomicLong phoneNumbers;
+    private final Random random = new Random(42);
+
+    LoadGenerator(HttpClient httpClient, URI baseUri, LoadTestOptions options,
+                  List<UUID> customerIds, AtomicLong phoneNumbers) {
+        this.httpClient = httpClient;
+        this.baseUri = baseUri;
+        this.options = options;
+        this.customers = KeyDistribution.of(options.getDistribution(), customerIds.size(), options.getZipfExponent());
+        this.customerIds = customerIds;
+        this.phoneNumbers = phoneNumbers;
+    }
+
+    StepResult run(int rate) {
+        StepResult result = new StepResult(rate, options.getDuration());
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        long end = measureFrom + options.getDuration().toNanos();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+
+        double due = start;
+        while (due < end) {
+            long dueAt = (long) due;
+            waitUntil(dueAt);
+
+            boolean measured = dueAt >= measureFrom;
+            if (measured) {
+                result.scheduled();
+            }
+            Endpoint endpoint = random.nextDouble() < options.getRegistrationRatio() ? Endpoint.REGISTRATION : Endpoint.PAYMENT;
+            inFlight.add(httpClient.sendAsync(request(endpoint), HttpResponse.BodyHandlers.discarding())
+                    .handle((response, e) -> {
+                        if (measured) {
+                            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueAt);
+                            result.completed(endpoint, latencyMicros, error(response, e));
+                        }
+                        return null;
+                    }));
+
+            due += options.isPoisson() ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+        }
+
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).join();
+        return result;
+    }
+
+    private HttpRequest request(Endpoint endpoint) {
+        if (endpoint == Endpoint.REGISTRATION) {
+            return HttpRequest.newBuilder(baseUri.resolve("/api/v1/customer-registration"))
+                    .timeout(options.getTimeout())
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(registration(UUID.randomUUID(), phoneNumbers.getAndIncrement())))
+                    .build();
+        }
+        UUID customerId = customerIds.get(customers.next(random));
+        return HttpRequest.newBuilder(baseUri.resolve("/api/v1/payment"))
+                .timeout(options.getTimeout())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(String.format(
+                        "{\"payment\":{\"customerId\":\"%s\",\"amount\":10.00,\"currency\":\"GBP\"," +
+                                "\"source\":\"card123\",\"description\":\"Load test\"}}", customerId)))
+                .build();
+    }
+
+    static String registration(UUID customerId, long phoneNumber) {
+        return String.format("{\"customer\":{\"id\":\"%s\",\"name\":\"Load test\",\"phoneNumber\":\"+447%09d\"}}",
+                customerId, phoneNumber);
+    }
+
+    private static String error(HttpResponse<?> response, Throwable e) {
+        if (e != null) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            return cause.getClass().getSimpleName();
+        }
+        return response.statusCode() / 100 == 2 ? null : "HTTP " + response.statusCode();
+    }
+
+    // Parks rather than spins: the application usually shares this JVM and its cores, and
+    // an overshoot of tens of micros is charged to the request, which only errs pessimistic
+    private static void waitUntil(long dueAt) {
+        long remaining;
+        while ((remaining = dueAt - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.amigoscode.testing.loadtest;
+
+import com.amigoscode.testing.TestingApplication;
+import com.amigoscode.testing.loadtest.StepResult.Endpoint;
+import com.amigoscode.testing.loadtest.StepResult.EndpointStats;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Capacity run against the real REST endpoints: starts the application, registers the
+// customers, then offers each arrival rate in turn and reports latency percentiles and
+// throughput. The capacity is the highest rate served without errors within the p99 SLO.
+//
+//   mvn -Ploadtest verify -DskipTests
+//   mvn -Ploadtest verify -DskipTests -Dloadtest.args="--rates=200,400,800 --distribution=uniform"
+//
+// The application runs in this JVM with rate limiting off, unless --url points at one that
+// is already running. Charges go to the StripeSimulator, shape it with --app.stripe.simulator.*
+// e.g. --app.stripe.simulator.latency=bimodal. The full .hgrm percentile distributions are
+// written to target/loadtest.
+public class LoadTest {
+
+    private static final int REGISTRATION_BATCH = 500;
+
+    public static void main(String[] args) throws IOException {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ConfigurableApplicationContext application = null;
+        URI baseUri;
+        if (options.getUrl() != null) {
+            baseUri = URI.create(options.getUrl());
+        } else {
+            application = start(options);
+            baseUri = URI.create("http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort());
+        }
+
+        try {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(options.getTimeout())
+                    .build();
+            AtomicLong phoneNumbers = new AtomicLong(System.currentTimeMillis() % 100_000_000L);
+            List<UUID> customerIds = register(httpClient, baseUri, options.getCustomers(), phoneNumbers);
+            LoadGenerator loadGenerator = new LoadGenerator(httpClient, baseUri, options, customerIds, phoneNumbers);
+
+            List<StepResult> results = new ArrayList<>();
+            for (int rate : options.getRates()) {
+                StepResult result = loadGenerator.run(rate);
+                results.add(result);
+                print(result);
+                write(result, options.getReportDirectory());
+            }
+            printCapacity(results, options.getSloP99());
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(LoadTestOptions options) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("stripe.enabled", "false");
+        properties.put("stripe.simulator.enabled", "true");
+        // A declined card is a 500 from the payment endpoint and would count against capacity
+        properties.put("stripe.simulator.decline-rate", "0");
+        properties.put("rate-limit.enabled", "false");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "warn");
+        properties.putAll(options.getAppProperties());
+        return new SpringApplicationBuilder(TestingApplication.class)
+                .properties(properties)
+                .run();
+    }
+
+    // Registered in bulk before the first step, so payments have customers to pick from
+    private static List<UUID> register(HttpClient httpClient, URI baseUri, int count, AtomicLong phoneNumbers) {
+        List<UUID> customerIds = new ArrayList<>(count);
+        while (customerIds.size() < count) {
+            StringJoiner batch = new StringJoiner(",", "[", "]");
+            for (int i = 0; i < REGISTRATION_BATCH && customerIds.size() < count; i++) {
+                UUID customerId = UUID.randomUUID();
+                customerIds.add(customerId);
+                batch.add(LoadGenerator.registration(customerId, phoneNumbers.getAndIncrement()));
+            }
+            HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/api/v1/customer-registration/bulk"))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(batch.toString()))
+                    .build();
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot register the load test customers", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while registering the load test customers", e);
+            }
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(String.format(
+                        "Registering the load test customers failed with %s: %s", response.statusCode(), response.body()));
+            }
+        }
+        return customerIds;
+    }
+
+    private static void print(StepResult result) {
+        System.out.printf("%nRate %d/s: scheduled %.1f/s, completed %.1f/s%n",
+                result.getRate(), result.getScheduledPerSecond(), result.getCompletedPerSecond());
+        System.out.printf("  %-13s %9s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Endpoint endpoint : Endpoint.values()) {
+            EndpointStats stats = result.get(endpoint);
+            Histogram latencies = stats.getLatencies();
+            System.out.printf("  %-13s %9d %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    endpoint.name().toLowerCase(), latencies.getTotalCount(), stats.getErrorCount(),
+                    millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(90)),
+                    millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMaxValue()));
+            if (!stats.getErrors().isEmpty()) {
+                System.out.printf("  %-13s %s%n", "", stats.getErrors());
+            }
+        }
+    }
+
+    private static void write(StepResult result, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (Endpoint endpoint : Endpoint.values()) {
+            Path file = directory.resolve(result.getRate() + "-" + endpoint.name().toLowerCase() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                result.get(endpoint).getLatencies().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private static void printCapacity(List<StepResult> results, Duration sloP99) {
+        StepResult capacity = null;
+        for (StepResult result : results) {
+            boolean withinSlo = result.getErrorCount() == 0
+                    && result.getAll().getValueAtPercentile(99) <= sloP99.toNanos() / 1000;
+            if (!withinSlo) {
+                break;
+            }
+            capacity = result;
+        }
+
+        if (capacity == null) {
+            System.out.printf("%nCapacity: below %d requests/s at p99 <= %d ms%n",
+                    results.get(0).getRate(), sloP99.toMillis());
+        } else {
+            System.out.printf("%nCapacity: %d requests/s at p99 <= %d ms (p99 was %.2f ms)%n",
+                    capacity.getRate(), sloP99.toMillis(), millis(capacity.getAll().getValueAtPercentile(99)));
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
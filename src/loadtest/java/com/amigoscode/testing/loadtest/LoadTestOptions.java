@@ -0,0 +1,104 @@
+package com.amigoscode.testing.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// --name=value arguments. Anything starting with --app. is passed to the application,
+// e.g. --app.payment.batching.enabled=true
+class LoadTestOptions {
+
+    private static final String APP_PREFIX = "app.";
+
+    private final Map<String, String> values = new HashMap<>();
+    private final Map<String, String> appProperties = new LinkedHashMap<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalStateException(String.format("Expected --name=value but got [%s]", arg));
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.startsWith(APP_PREFIX)) {
+                options.appProperties.put(name.substring(APP_PREFIX.length()), value);
+            } else {
+                options.values.put(name, value);
+            }
+        }
+        return options;
+    }
+
+    // Arrival rates in requests per second, one step each, lowest first
+    List<Integer> getRates() {
+        List<Integer> rates = new ArrayList<>();
+        for (String rate : get("rates", "100,200,400,800").split(",")) {
+            rates.add(Integer.parseInt(rate.trim()));
+        }
+        rates.sort(Integer::compare);
+        return rates;
+    }
+
+    Duration getWarmup() {
+        return Duration.parse(get("warmup", "PT5S"));
+    }
+
+    Duration getDuration() {
+        return Duration.parse(get("duration", "PT20S"));
+    }
+
+    Duration getTimeout() {
+        return Duration.parse(get("timeout", "PT10S"));
+    }
+
+    // The step with the highest rate whose p99 stays within this is the capacity
+    Duration getSloP99() {
+        return Duration.parse(get("slo-p99", "PT0.1S"));
+    }
+
+    // constant spaces arrivals evenly, poisson draws exponential gaps with the same mean
+    boolean isPoisson() {
+        return "poisson".equals(get("arrivals", "poisson"));
+    }
+
+    int getCustomers() {
+        return Integer.parseInt(get("customers", "10000"));
+    }
+
+    // uniform or zipf, which customer a payment is for
+    String getDistribution() {
+        return get("distribution", "zipf");
+    }
+
+    double getZipfExponent() {
+        return Double.parseDouble(get("zipf-exponent", "1.0"));
+    }
+
+    // Share of arrivals that register a new customer, the rest are payments
+    double getRegistrationRatio() {
+        return Double.parseDouble(get("registration-ratio", "0.1"));
+    }
+
+    // Drive an application that is already running instead of starting one
+    String getUrl() {
+        return values.get("url");
+    }
+
+    Path getReportDirectory() {
+        return Paths.get(get("report-dir", "target/loadtest"));
+    }
+
+    Map<String, String> getAppProperties() {
+        return appProperties;
+    }
+
+    private String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+}
@@ -0,0 +1,96 @@
+package com.amigoscode.testing.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// What one arrival rate did, for the requests scheduled after the warmup. Latencies are
+// in microseconds and measured from when a request was due, not from when it was sent.
+class StepResult {
+
+    enum Endpoint {
+        REGISTRATION,
+        PAYMENT
+    }
+
+    private final int rate;
+    private final Duration duration;
+    private final LongAdder scheduled = new LongAdder();
+    private final Map<Endpoint, EndpointStats> endpoints = new EnumMap<>(Endpoint.class);
+
+    StepResult(int rate, Duration duration) {
+        this.rate = rate;
+        this.duration = duration;
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpoints.put(endpoint, new EndpointStats());
+        }
+    }
+
+    void scheduled() {
+        scheduled.increment();
+    }
+
+    void completed(Endpoint endpoint, long latencyMicros, String error) {
+        EndpointStats stats = endpoints.get(endpoint);
+        stats.latencies.recordValue(latencyMicros);
+        if (error != null) {
+            stats.errors.computeIfAbsent(error, e -> new LongAdder()).increment();
+        }
+    }
+
+    int getRate() {
+        return rate;
+    }
+
+    double getScheduledPerSecond() {
+        return scheduled.sum() / seconds();
+    }
+
+    double getCompletedPerSecond() {
+        return getAll().getTotalCount() / seconds();
+    }
+
+    long getErrorCount() {
+        return endpoints.values().stream().mapToLong(EndpointStats::getErrorCount).sum();
+    }
+
+    EndpointStats get(Endpoint endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    Histogram getAll() {
+        Histogram all = new Histogram(3);
+        endpoints.values().forEach(stats -> all.add(stats.latencies));
+        return all;
+    }
+
+    private double seconds() {
+        return duration.toNanos() / 1e9;
+    }
+
+    static class EndpointStats {
+
+        private final ConcurrentHistogram latencies = new ConcurrentHistogram(3);
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        Histogram getLatencies() {
+            return latencies;
+        }
+
+        long getErrorCount() {
+            return errors.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        Map<String, Long> getErrors() {
+            Map<String, Long> counts = new TreeMap<>();
+            errors.forEach((error, count) -> counts.put(error, count.sum()));
+            return counts;
+        }
+    }
+}
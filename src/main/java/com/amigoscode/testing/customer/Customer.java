@@ -1,17 +1,22 @@
 package com.amigoscode.testing.customer;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Transient;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.util.UUID;
 
 @Entity
 @JsonIgnoreProperties(allowGetters = true)
-public class Customer {
+public class Customer implements Persistable<UUID> {
 
     @Id
     @NotNull
@@ -25,6 +30,13 @@ public class Customer {
     @Column(nullable = false, unique = true)
     private String phoneNumber;
 
+    // Ids are assigned by the application, so Spring Data cannot tell a new
+    // customer from a detached one by looking at the id. Without this flag every
+    // save() is a merge (select + insert) and JDBC insert batching never kicks in.
+    @Transient
+    @JsonIgnore
+    private boolean isNew = true;
+
     public Customer(UUID id, String name, String phoneNumber) {
         this.id = id;
         this.name = name;
@@ -34,6 +46,7 @@ public class Customer {
     public Customer() {
     }
 
+    @Override
     public UUID getId() {
         return id;
     }
@@ -58,6 +71,18 @@ public class Customer {
         this.phoneNumber = phoneNumber;
     }
 
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     @Override
     public String toString() {
         return "Customer{" +
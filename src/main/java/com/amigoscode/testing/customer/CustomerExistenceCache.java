@@ -0,0 +1,153 @@
+package com.amigoscode.testing.customer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+// Remembers which customer ids exist so repeat payers skip the database.
+// Only positive answers are cached: customers are never deleted, so a cached id
+// cannot go stale, while an unknown id may be registered at any moment.
+@Service
+public class CustomerExistenceCache {
+
+    private final CustomerRepository customerRepository;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Access ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<UUID, Long> expiries;
+
+    @Autowired
+    public CustomerExistenceCache(CustomerRepository customerRepository,
+                                  @Value("${customer.cache.max-size:100000}") int maxSize,
+                                  @Value("${customer.cache.ttl:PT10M}") Duration ttl) {
+        this(customerRepository, maxSize, ttl, Clock.systemUTC());
+    }
+
+    CustomerExistenceCache(CustomerRepository customerRepository, int maxSize, Duration ttl, Clock clock) {
+        this.customerRepository = customerRepository;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.expiries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                if (size() > CustomerExistenceCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean exists(UUID customerId) {
+        if (customerId == null) {
+            return false;
+        }
+        if (isCached(customerId)) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+
+        boolean exists = customerRepository.existsById(customerId);
+        if (exists) {
+            cache(List.of(customerId));
+        }
+        return exists;
+    }
+
+    public Set<UUID> existing(Collection<UUID> customerIds) {
+        Set<UUID> existing = new HashSet<>();
+        List<UUID> uncached = new ArrayList<>();
+
+        for (UUID customerId : customerIds) {
+            if (isCached(customerId)) {
+                hits.increment();
+                existing.add(customerId);
+            } else {
+                misses.increment();
+                uncached.add(customerId);
+            }
+        }
+
+        if (!uncached.isEmpty()) {
+            List<UUID> found = customerRepository.selectExistingIds(uncached);
+            cache(found);
+            existing.addAll(found);
+        }
+        return existing;
+    }
+
+    // Called once a customer is saved. Inside a transaction the ids only become
+    // visible after commit, so a rolled back registration never reaches the cache.
+    public void put(Collection<UUID> customerIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<UUID> pending = new ArrayList<>(customerIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    cache(pending);
+                }
+            });
+        } else {
+            cache(customerIds);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int size() {
+        return expiries.size();
+    }
+
+    private synchronized boolean isCached(UUID customerId) {
+        Long expiry = expiries.get(customerId);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry <= clock.millis()) {
+            expiries.remove(customerId);
+            evictions.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void cache(Collection<UUID> customerIds) {
+        long expiry = clock.millis() + ttlMillis;
+        for (UUID customerId : customerIds) {
+            expiries.put(customerId, expiry);
+        }
+    }
+}
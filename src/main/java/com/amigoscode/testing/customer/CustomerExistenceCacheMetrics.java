@@ -0,0 +1,33 @@
+package com.amigoscode.testing.customer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CustomerExistenceCacheMetrics implements MeterBinder {
+
+    private final CustomerExistenceCache customerExistenceCache;
+
+    @Autowired
+    public CustomerExistenceCacheMetrics(CustomerExistenceCache customerExistenceCache) {
+        this.customerExistenceCache = customerExistenceCache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("customer.existence.cache.requests", customerExistenceCache, CustomerExistenceCache::getHits)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("customer.existence.cache.requests", customerExistenceCache, CustomerExistenceCache::getMisses)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("customer.existence.cache.evictions", customerExistenceCache, CustomerExistenceCache::getEvictions)
+                .register(registry);
+        Gauge.builder("customer.existence.cache.size", customerExistenceCache, CustomerExistenceCache::size)
+                .register(registry);
+    }
+}
@@ -0,0 +1,32 @@
+package com.amigoscode.testing.customer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+@RestController
+@RequestMapping("api/v1/customer-import")
+public class CustomerImportController {
+
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private final CustomerImportService customerImportService;
+
+    @Autowired
+    public CustomerImportController(CustomerImportService customerImportService) {
+        this.customerImportService = customerImportService;
+    }
+
+    // The body is read straight from the servlet stream instead of through @RequestBody,
+    // so the upload is never buffered as a whole
+    @PostMapping(consumes = APPLICATION_NDJSON)
+    public CustomerImportResult importCustomers(HttpServletRequest request,
+                                                @RequestParam(defaultValue = "0") long skip) throws IOException {
+        return customerImportService.importCustomers(request.getInputStream(), skip);
+    }
+}
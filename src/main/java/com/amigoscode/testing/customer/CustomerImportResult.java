@@ -0,0 +1,96 @@
+package com.amigoscode.testing.customer;
+
+public class CustomerImportResult {
+
+    private long committedRecords;
+    private long committedBytes;
+    private long created;
+    private long duplicates;
+    private long conflicts;
+    private long invalid;
+    private boolean completed;
+    private String failure;
+
+    CustomerImportResult(long skippedRecords) {
+        this.committedRecords = skippedRecords;
+    }
+
+    void count(CustomerRegistrationStatus status) {
+        switch (status) {
+            case CREATED:
+                created++;
+                break;
+            case DUPLICATE:
+                duplicates++;
+                break;
+            case CONFLICT:
+                conflicts++;
+                break;
+            case INVALID:
+                invalid++;
+                break;
+        }
+    }
+
+    void commit(long records, long byteOffset) {
+        this.committedRecords += records;
+        this.committedBytes = byteOffset;
+    }
+
+    void complete() {
+        this.completed = true;
+    }
+
+    void fail(String failure) {
+        this.failure = failure;
+    }
+
+    // Number of records, counted from the start of the original upload, that are
+    // persisted. Resume a failed import by sending it again with ?skip=<committedRecords>
+    public long getCommittedRecords() {
+        return committedRecords;
+    }
+
+    // Byte offset in this upload just after the last committed record
+    public long getCommittedBytes() {
+        return committedBytes;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerImportResult{" +
+                "committedRecords=" + committedRecords +
+                ", committedBytes=" + committedBytes +
+                ", created=" + created +
+                ", duplicates=" + duplicates +
+                ", conflicts=" + conflicts +
+                ", invalid=" + invalid +
+                ", completed=" + completed +
+                ", failure='" + failure + '\'' +
+                '}';
+    }
+}
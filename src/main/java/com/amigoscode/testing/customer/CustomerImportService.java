@@ -0,0 +1,102 @@
+package com.amigoscode.testing.customer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class CustomerImportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerImportService.class);
+
+    private final CustomerRegistrationService customerRegistrationService;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    @Autowired
+    public CustomerImportService(CustomerRegistrationService customerRegistrationService,
+                                 ObjectMapper objectMapper,
+                                 @Value("${customer.import.chunk-size:1000}") int chunkSize) {
+        this.customerRegistrationService = customerRegistrationService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    // Reads one Customer per line and registers them chunk by chunk, each chunk in its
+    // own transaction. Only the current chunk is held in memory, and the input is pulled
+    // no faster than chunks are committed, so a slow database throttles the upload.
+    public CustomerImportResult importCustomers(InputStream inputStream, long skip) throws IOException {
+        CustomerImportResult result = new CustomerImportResult(skip);
+        List<CustomerRegistrationRequest> chunk = new ArrayList<>(chunkSize);
+        long record = 0;
+        long chunkInvalid = 0;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalStateException(String.format(
+                            "Expected a customer object at record %d but got %s", skip + record, token));
+                }
+
+                // 1. Skip what a previous attempt already committed
+                if (record++ < skip) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                // 2. Map the record, a well formed line with bad fields only invalidates itself
+                JsonNode node = parser.readValueAsTree();
+                try {
+                    chunk.add(new CustomerRegistrationRequest(objectMapper.treeToValue(node, Customer.class)));
+                } catch (JsonProcessingException e) {
+                    chunkInvalid++;
+                }
+
+                // 3. Commit a full chunk
+                if (chunk.size() + chunkInvalid == chunkSize) {
+                    commit(chunk, chunkInvalid, parser.getCurrentLocation().getByteOffset(), result);
+                    chunk = new ArrayList<>(chunkSize);
+                    chunkInvalid = 0;
+                }
+            }
+
+            if (!chunk.isEmpty() || chunkInvalid > 0) {
+                commit(chunk, chunkInvalid, parser.getCurrentLocation().getByteOffset(), result);
+            }
+            result.complete();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Customer import stopped after {} committed records", result.getCommittedRecords(), e);
+            result.fail(e.getMessage());
+        }
+
+        return result;
+    }
+
+    private void commit(List<CustomerRegistrationRequest> chunk,
+                        long invalid,
+                        long byteOffset,
+                        CustomerImportResult result) {
+        customerRegistrationService.registerNewCustomers(chunk)
+                .forEach(r -> result.count(r.getStatus()));
+        for (long i = 0; i < invalid; i++) {
+            result.count(CustomerRegistrationStatus.INVALID);
+        }
+        result.commit(chunk.size() + invalid, byteOffset);
+
+        LOGGER.info("Customer import committed {} records ({} bytes)",
+                result.getCommittedRecords(), result.getCommittedBytes());
+    }
+}
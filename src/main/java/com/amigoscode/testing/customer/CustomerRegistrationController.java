@@ -1,5 +1,7 @@
 package com.amigoscode.testing.customer;
 
+import com.amigoscode.testing.ratelimit.RateLimiter;
+import com.amigoscode.testing.utils.PhoneNumberValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -8,23 +10,52 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.persistence.Access;
 import javax.validation.Valid;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("api/v1/customer-registration")
 public class CustomerRegistrationController {
 
     private final CustomerRegistrationService customerRegistrationService;
+    private final RateLimiter rateLimiter;
+    private final PhoneNumberValidator phoneNumberValidator;
 
     @Autowired
-    public CustomerRegistrationController(CustomerRegistrationService customerRegistrationService) {
+    public CustomerRegistrationController(CustomerRegistrationService customerRegistrationService,
+                                          RateLimiter rateLimiter,
+                                          PhoneNumberValidator phoneNumberValidator) {
         this.customerRegistrationService = customerRegistrationService;
+        this.rateLimiter = rateLimiter;
+        this.phoneNumberValidator = phoneNumberValidator;
     }
 
     @PutMapping
     public void registerNewCustomer(
             @Valid @RequestBody CustomerRegistrationRequest request) {
+        rateLimiter.acquireForPhoneNumber(rateLimitKey(request));
         customerRegistrationService.registerNewCustomer(request);
 
     }
 
+    @PutMapping("bulk")
+    public List<CustomerRegistrationResult> registerNewCustomers(
+            @RequestBody List<CustomerRegistrationRequest> requests) {
+        rateLimiter.acquireForPhoneNumbers(requests.stream()
+                .map(this::rateLimitKey)
+                .collect(Collectors.toList()));
+        return customerRegistrationService.registerNewCustomers(requests);
+    }
+
+    // Limited by the number in E.164, so "07700 900123" and "+447700900123" share one
+    // bucket. A number that is not valid is limited as sent, registration rejects it anyway.
+    private String rateLimitKey(CustomerRegistrationRequest request) {
+        if (request.getCustomer() == null) {
+            return null;
+        }
+        String phoneNumber = request.getCustomer().getPhoneNumber();
+        String normalized = phoneNumberValidator.normalize(phoneNumber);
+        return normalized == null ? phoneNumber : normalized;
+    }
+
 }
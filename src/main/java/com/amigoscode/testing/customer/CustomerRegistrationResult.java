@@ -0,0 +1,47 @@
+package com.amigoscode.testing.customer;
+
+import java.util.UUID;
+
+public class CustomerRegistrationResult {
+
+    private final UUID customerId;
+    private final String phoneNumber;
+    private final CustomerRegistrationStatus status;
+    private final String message;
+
+    public CustomerRegistrationResult(UUID customerId,
+                                      String phoneNumber,
+                                      CustomerRegistrationStatus status,
+                                      String message) {
+        this.customerId = customerId;
+        this.phoneNumber = phoneNumber;
+        this.status = status;
+        this.message = message;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public CustomerRegistrationStatus getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerRegistrationResult{" +
+                "customerId=" + customerId +
+                ", phoneNumber='" + phoneNumber + '\'' +
+                ", status=" + status +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -1,39 +1,70 @@
 package com.amigoscode.testing.customer;
 
+import com.amigoscode.testing.datasource.ReadYourWrites;
 import com.amigoscode.testing.utils.PhoneNumberValidator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 public class CustomerRegistrationService {
 
+    // Keeps the "in (...)" list of the phone number lookup well below driver parameter limits
+    static final int PHONE_NUMBER_LOOKUP_CHUNK_SIZE = 1000;
 
     private final CustomerRepository customerRepository;
     private final PhoneNumberValidator phoneNumberValidator;
+    private final CustomerExistenceCache customerExistenceCache;
+    private final PhoneNumberIndex phoneNumberIndex;
+    private final ReadYourWrites readYourWrites;
+    private final TransactionOperations transactionOperations;
 
     @Autowired
     public CustomerRegistrationService(CustomerRepository customerRepository,
-                                       PhoneNumberValidator phoneNumberValidator) {
+                                       PhoneNumberValidator phoneNumberValidator,
+                                       CustomerExistenceCache customerExistenceCache,
+                                       PhoneNumberIndex phoneNumberIndex,
+                                       ReadYourWrites readYourWrites,
+                                       TransactionOperations transactionOperations) {
         this.customerRepository = customerRepository;
         this.phoneNumberValidator = phoneNumberValidator;
+        this.customerExistenceCache = customerExistenceCache;
+        this.phoneNumberIndex = phoneNumberIndex;
+        this.readYourWrites = readYourWrites;
+        this.transactionOperations = transactionOperations;
     }
 
     public void registerNewCustomer(CustomerRegistrationRequest request) {
 
-        String actualPhoneNumber = request.getCustomer().getPhoneNumber();
+        // Validate the phone number and store it in E.164, so every way of writing it is the same number
+        String phoneNumber = request.getCustomer().getPhoneNumber();
+        String actualPhoneNumber = phoneNumberValidator.normalize(phoneNumber);
 
-        // TODO: Validate the phone number is valid
-        if (!phoneNumberValidator.test(actualPhoneNumber)) {
-            throw new IllegalStateException("Phone Number " + actualPhoneNumber + " is not valid.");
+        if (actualPhoneNumber == null) {
+            throw new IllegalStateException("Phone Number " + phoneNumber + " is not valid.");
         }
-        Optional<Customer> customerOptional = customerRepository
-                .selectCustomerByPhoneNumber(actualPhoneNumber);
+        request.getCustomer().setPhoneNumber(actualPhoneNumber);
+
+        // Only numbers the index cannot rule out need the database lookup, a number
+        // registered moments ago is looked up on the primary
+        Optional<CustomerSummary> customerOptional = phoneNumberIndex.mightContain(actualPhoneNumber)
+                ? readYourWrites.read(actualPhoneNumber,
+                        () -> customerRepository.selectCustomerSummaryByPhoneNumber(actualPhoneNumber))
+                : Optional.empty();
 
         if(customerOptional.isPresent()) {
-            Customer customer = customerOptional.get();
+            CustomerSummary customer = customerOptional.get();
 
             if (customer.getName().equals(request.getCustomer().getName())) {
                 return;
@@ -46,7 +77,156 @@ public class CustomerRegistrationService {
             request.getCustomer().setId(UUID.randomUUID());
         }
 
-        customerRepository.save(request.getCustomer());
+        // Another instance, or a lagging index or replica, can let a taken number through to
+        // here. The unique constraint still catches it and the owner decides as above.
+        try {
+            customerRepository.save(request.getCustomer());
+        } catch (DataIntegrityViolationException e) {
+            CustomerRegistrationResult existing = resolveTakenPhoneNumber(request.getCustomer(), e);
+            if (existing.getStatus() == CustomerRegistrationStatus.DUPLICATE) {
+                return;
+            }
+            throw new IllegalStateException(existing.getMessage(), e);
+        }
+        phoneNumberIndex.add(actualPhoneNumber);
+        readYourWrites.wrote(actualPhoneNumber);
+        customerExistenceCache.put(List.of(request.getCustomer().getId()));
+
+    }
+
+    public List<CustomerRegistrationResult> registerNewCustomers(List<CustomerRegistrationRequest> requests) {
+
+        // 1. Validate the whole batch up front
+        List<CustomerRegistrationResult> results = new ArrayList<>(requests.size());
+        Set<String> phoneNumbers = new LinkedHashSet<>();
+
+        for (CustomerRegistrationRequest request : requests) {
+            CustomerRegistrationResult invalid = validate(request);
+            results.add(invalid);
+            if (invalid == null && phoneNumberIndex.mightContain(request.getCustomer().getPhoneNumber())) {
+                phoneNumbers.add(request.getCustomer().getPhoneNumber());
+            }
+        }
+
+        // 2. Look up every phone number that might be taken with one query per chunk
+        Map<String, CustomerSummary> takenPhoneNumbers = selectCustomersByPhoneNumbers(phoneNumbers);
+
+        // 3. Resolve each request against the existing customers and the ones earlier in the batch
+        List<Customer> newCustomers = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            if (results.get(i) != null) {
+                continue;
+            }
+            Customer customer = requests.get(i).getCustomer();
+            String phoneNumber = customer.getPhoneNumber();
+            CustomerSummary existing = takenPhoneNumbers.get(phoneNumber);
+
+            if (existing != null) {
+                if (existing.getName().equals(customer.getName())) {
+                    results.set(i, new CustomerRegistrationResult(
+                            existing.getId(), phoneNumber, CustomerRegistrationStatus.DUPLICATE, null));
+                } else {
+                    results.set(i, new CustomerRegistrationResult(
+                            customer.getId(), phoneNumber, CustomerRegistrationStatus.CONFLICT,
+                            String.format("phone number [%s] is already taken", phoneNumber)));
+                }
+                continue;
+            }
+
+            if (customer.getId() == null) {
+                customer.setId(UUID.randomUUID());
+            }
+            takenPhoneNumbers.put(phoneNumber, new CustomerSummary(customer.getId(), customer.getName(), phoneNumber));
+            newCustomers.add(customer);
+            results.set(i, new CustomerRegistrationResult(
+                    customer.getId(), phoneNumber, CustomerRegistrationStatus.CREATED, null));
+        }
 
+        // 4. Insert the new customers, hibernate.jdbc.batch_size groups the statements. When
+        // a number was taken since the lookup the batch is rolled back, and each customer is
+        // inserted on its own so only the ones whose number was taken are turned down.
+        List<Customer> savedCustomers = newCustomers;
+        try {
+            transactionOperations.executeWithoutResult(status -> customerRepository.saveAll(newCustomers));
+        } catch (DataIntegrityViolationException e) {
+            savedCustomers = saveEach(newCustomers, requests, results);
+        }
+        savedCustomers.forEach(c -> {
+            phoneNumberIndex.add(c.getPhoneNumber());
+            readYourWrites.wrote(c.getPhoneNumber());
+        });
+        customerExistenceCache.put(savedCustomers.stream().map(Customer::getId).collect(Collectors.toList()));
+
+        return results;
+    }
+
+    private List<Customer> saveEach(List<Customer> customers,
+                                    List<CustomerRegistrationRequest> requests,
+                                    List<CustomerRegistrationResult> results) {
+        List<Customer> saved = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            try {
+                transactionOperations.executeWithoutResult(status -> customerRepository.save(customer));
+                saved.add(customer);
+            } catch (DataIntegrityViolationException e) {
+                for (int i = 0; i < requests.size(); i++) {
+                    if (requests.get(i) != null && requests.get(i).getCustomer() == customer) {
+                        results.set(i, resolveTakenPhoneNumber(customer, e));
+                    }
+                }
+            }
+        }
+        return saved;
+    }
+
+    // The customer's number was registered after it was looked up. Read the owner on the
+    // primary, a replica may not have it yet.
+    private CustomerRegistrationResult resolveTakenPhoneNumber(Customer customer, DataIntegrityViolationException e) {
+        String phoneNumber = customer.getPhoneNumber();
+        readYourWrites.wrote(phoneNumber);
+        CustomerSummary owner = readYourWrites.read(phoneNumber,
+                () -> customerRepository.selectCustomerSummaryByPhoneNumber(phoneNumber))
+                .orElseThrow(() -> e);
+        phoneNumberIndex.add(phoneNumber);
+        if (owner.getName().equals(customer.getName())) {
+            return new CustomerRegistrationResult(
+                    owner.getId(), phoneNumber, CustomerRegistrationStatus.DUPLICATE, null);
+        }
+        return new CustomerRegistrationResult(customer.getId(), phoneNumber, CustomerRegistrationStatus.CONFLICT,
+                String.format("phone number [%s] is already taken", phoneNumber));
+    }
+
+    private CustomerRegistrationResult validate(CustomerRegistrationRequest request) {
+        Customer customer = request == null ? null : request.getCustomer();
+
+        if (customer == null) {
+            return new CustomerRegistrationResult(null, null,
+                    CustomerRegistrationStatus.INVALID, "Customer is missing.");
+        }
+        if (customer.getName() == null || customer.getName().isBlank()) {
+            return new CustomerRegistrationResult(customer.getId(), customer.getPhoneNumber(),
+                    CustomerRegistrationStatus.INVALID, "Name is missing.");
+        }
+        String phoneNumber = customer.getPhoneNumber();
+        String normalized = phoneNumberValidator.normalize(phoneNumber);
+        if (normalized == null) {
+            return new CustomerRegistrationResult(customer.getId(), phoneNumber,
+                    CustomerRegistrationStatus.INVALID, "Phone Number " + phoneNumber + " is not valid.");
+        }
+        customer.setPhoneNumber(normalized);
+        return null;
+    }
+
+    private Map<String, CustomerSummary> selectCustomersByPhoneNumbers(Set<String> phoneNumbers) {
+        Map<String, CustomerSummary> customers = new HashMap<>();
+        List<String> all = new ArrayList<>(phoneNumbers);
+
+        for (int from = 0; from < all.size(); from += PHONE_NUMBER_LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(from + PHONE_NUMBER_LOOKUP_CHUNK_SIZE, all.size()));
+            customerRepository.selectCustomerSummariesByPhoneNumbers(chunk)
+                    .forEach(c -> customers.put(c.getPhoneNumber(), c));
+        }
+        return customers;
     }
 }
@@ -0,0 +1,8 @@
+package com.amigoscode.testing.customer;
+
+public enum CustomerRegistrationStatus {
+    CREATED,
+    DUPLICATE,
+    CONFLICT,
+    INVALID
+}
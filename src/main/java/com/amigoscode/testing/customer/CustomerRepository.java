@@ -2,18 +2,45 @@ package com.amigoscode.testing.customer;
 
 
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface CustomerRepository extends CrudRepository<Customer, UUID> {
 
+    // Not used by the application any more, the registration check reads the summaries
+    // below. Kept as the repository's public lookup of a whole customer by phone number.
     @Query(value = "select id, name, phone_number from customer where phone_number = :phone_number",
             nativeQuery = true)
-
+    @Transactional(readOnly = true)
     Optional<Customer> selectCustomerByPhoneNumber(@Param("phone_number") String phoneNumber);
 
+    // The registration check only needs the holder's id and name. Batches look up their
+    // numbers in chunks, see CustomerRegistrationService.selectCustomersByPhoneNumbers.
+    @Query("select new com.amigoscode.testing.customer.CustomerSummary(c.id, c.name, c.phoneNumber) " +
+            "from Customer c where c.phoneNumber = :phoneNumber")
+    @Transactional(readOnly = true)
+    Optional<CustomerSummary> selectCustomerSummaryByPhoneNumber(@Param("phoneNumber") String phoneNumber);
+
+    @Query("select new com.amigoscode.testing.customer.CustomerSummary(c.id, c.name, c.phoneNumber) " +
+            "from Customer c where c.phoneNumber in :phoneNumbers")
+    @Transactional(readOnly = true)
+    List<CustomerSummary> selectCustomerSummariesByPhoneNumbers(@Param("phoneNumbers") Collection<String> phoneNumbers);
+
+    @Query("select c.id from Customer c where c.id in :ids")
+    @Transactional(readOnly = true)
+    List<UUID> selectExistingIds(@Param("ids") Collection<UUID> ids);
+
+    @Query("select c.phoneNumber from Customer c")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<String> selectAllPhoneNumbers();
 
 }
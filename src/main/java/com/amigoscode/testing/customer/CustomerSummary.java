@@ -0,0 +1,39 @@
+package com.amigoscode.testing.customer;
+
+import java.util.UUID;
+
+// Who holds a phone number. Selected with a constructor expression, so reading one
+// creates no managed entity, no snapshot for dirty checking and no lifecycle callbacks.
+public class CustomerSummary {
+
+    private final UUID id;
+    private final String name;
+    private final String phoneNumber;
+
+    public CustomerSummary(UUID id, String name, String phoneNumber) {
+        this.id = id;
+        this.name = name;
+        this.phoneNumber = phoneNumber;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerSummary{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", phoneNumber='" + phoneNumber + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,105 @@
+package com.amigoscode.testing.customer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+// Bloom filter over every phone number in the customer table. It answers
+// "definitely not taken" without a query; anything else still goes to the database,
+// where the unique constraint on phone_number stays the source of truth.
+//
+// Size is -n * ln(p) / ln(2)^2 bits with ln(2) / ln(p) hash functions:
+//   p = 1%   (7 hashes):  10M numbers ~ 11.4 MiB, 100M numbers ~ 114 MiB
+//   p = 0.1% (10 hashes): 10M numbers ~ 17.1 MiB, 100M numbers ~ 171 MiB
+// against several GiB for a HashSet<String> of the same numbers.
+@Service
+public class PhoneNumberIndex implements ApplicationRunner {
+
+    private final CustomerRepository customerRepository;
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private volatile boolean warmedUp;
+
+    @Autowired
+    public PhoneNumberIndex(CustomerRepository customerRepository,
+                            @Value("${customer.phone-index.expected-numbers:1000000}") long expectedNumbers,
+                            @Value("${customer.phone-index.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.customerRepository = customerRepository;
+        long words = Math.max(1, (long) Math.ceil(
+                -expectedNumbers * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) / Long.SIZE));
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalStateException(String.format(
+                    "Phone number index for %d numbers does not fit in one array", expectedNumbers));
+        }
+        this.bits = new AtomicLongArray((int) words);
+        this.bitCount = words * Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round(-Math.log(falsePositiveRate) / Math.log(2)));
+    }
+
+    // Loads the numbers saved before this instance started. Until that is done every
+    // number "might be taken", so registrations fall back to the database lookup.
+    @Override
+    @Transactional(readOnly = true)
+    public void run(ApplicationArguments args) {
+        try (Stream<String> phoneNumbers = customerRepository.selectAllPhoneNumbers()) {
+            phoneNumbers.forEach(this::add);
+        }
+        warmedUp = true;
+    }
+
+    public boolean mightContain(String phoneNumber) {
+        if (!warmedUp) {
+            return true;
+        }
+        long hash1 = hash(phoneNumber);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(String phoneNumber) {
+        long hash1 = hash(phoneNumber);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            long mask = 1L << bit;
+            bits.accumulateAndGet((int) (bit >>> 6), mask, (word, m) -> word | m);
+        }
+    }
+
+    boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    // FNV-1a over the chars, finished with the murmur3 64 bit mixer
+    private static long hash(CharSequence phoneNumber) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            hash ^= phoneNumber.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
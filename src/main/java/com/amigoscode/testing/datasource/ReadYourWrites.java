@@ -0,0 +1,92 @@
+package com.amigoscode.testing.datasource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+// Remembers what was written recently, so the next read of the same key goes to the
+// primary instead of a replica that may not have caught up yet
+@Component
+public class ReadYourWrites {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> false);
+
+    private final boolean enabled;
+    private final long windowMillis;
+    private final Clock clock;
+
+    private final Map<String, Long> writtenUntil = new ConcurrentHashMap<>();
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public ReadYourWrites(@Value("${datasource.routing.enabled:false}") boolean enabled,
+                          @Value("${datasource.replica.sticky-window:PT5S}") Duration window) {
+        this(enabled, window, Clock.systemUTC());
+    }
+
+    ReadYourWrites(boolean enabled, Duration window, Clock clock) {
+        this.enabled = enabled;
+        this.windowMillis = window.toMillis();
+        this.clock = clock;
+    }
+
+    // True while the current thread is inside read(...) for a recently written key
+    public static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get();
+    }
+
+    public void wrote(String key) {
+        if (!enabled) {
+            return;
+        }
+        long now = clock.millis();
+        expire(now);
+        if (writtenUntil.put(key, now + windowMillis) == null) {
+            order.add(key);
+        }
+    }
+
+    public <T> T read(String key, Supplier<T> read) {
+        if (!enabled || PRIMARY_REQUIRED.get() || !isRecent(key)) {
+            return read.get();
+        }
+        PRIMARY_REQUIRED.set(true);
+        try {
+            return read.get();
+        } finally {
+            PRIMARY_REQUIRED.set(false);
+        }
+    }
+
+    int size() {
+        return writtenUntil.size();
+    }
+
+    private boolean isRecent(String key) {
+        Long until = writtenUntil.get(key);
+        return until != null && until > clock.millis();
+    }
+
+    // Keys leave in the order they were first written, a key written again stays
+    // until its latest window is over
+    private void expire(long now) {
+        String key;
+        while ((key = order.peek()) != null) {
+            Long until = writtenUntil.get(key);
+            if (until != null && until > now) {
+                return;
+            }
+            if (order.poll() != null && until != null) {
+                writtenUntil.remove(key, until);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.amigoscode.testing.datasource;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+// Holds the ReplicaRoutingDataSource behind dataSource and checks the lag of its replicas.
+// Not a DataSource itself: a second DataSource bean next to the primary one would be
+// initialized by Boot while dataSource is still being created.
+public class ReplicaRouting {
+
+    private final ReplicaRoutingDataSource dataSource;
+
+    ReplicaRouting(ReplicaRoutingDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.lag-check-interval-ms:1000}")
+    public void checkLag() {
+        dataSource.checkLag();
+    }
+
+    public ReplicaRoutingDataSource getDataSource() {
+        return dataSource;
+    }
+}
@@ -0,0 +1,54 @@
+package com.amigoscode.testing.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Replaces the auto-configured DataSource. spring.datasource.* still configures the
+// primary, datasource.replica.urls lists the replicas, which share its credentials.
+@Configuration
+@ConditionalOnProperty(
+        value = "datasource.routing.enabled",
+        havingValue = "true"
+)
+public class ReplicaRoutingConfiguration {
+
+    @Bean
+    public ReplicaRouting replicaRouting(
+            DataSourceProperties dataSourceProperties,
+            @Value("${datasource.replica.urls}") List<String> replicaUrls,
+            @Value("${datasource.replica.lag-query:}") String lagQuery,
+            @Value("${datasource.replica.max-lag:PT1S}") Duration maxLag) {
+        DataSource primary = dataSourceProperties.initializeDataSourceBuilder().build();
+
+        List<DataSource> replicas = new ArrayList<>(replicaUrls.size());
+        for (String url : replicaUrls) {
+            replicas.add(DataSourceBuilder.create()
+                    .driverClassName(dataSourceProperties.determineDriverClassName())
+                    .url(url.trim())
+                    .username(dataSourceProperties.determineUsername())
+                    .password(dataSourceProperties.determinePassword())
+                    .build());
+        }
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, lagQuery, maxLag);
+        routing.checkLag();
+        return new ReplicaRouting(routing);
+    }
+
+    // The routing DataSource is only reachable through this bean, see ReplicaRouting
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRouting replicaRouting) {
+        return new LazyConnectionDataSourceProxy(replicaRouting.getDataSource());
+    }
+}
@@ -0,0 +1,119 @@
+package com.amigoscode.testing.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Read-only transactions go to a replica, round robin over the replicas whose last
+// measured lag is within maxLag, everything else goes to the primary. Has to sit behind
+// a LazyConnectionDataSourceProxy: the read-only flag is only known once the transaction
+// has begun, after the transaction manager asked for a connection.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private final List<DataSource> replicas;
+    private final String lagQuery;
+    private final long maxLagMillis;
+
+    private final String[] replicaKeys;
+    // Replication lag per replica in milliseconds, Long.MAX_VALUE when it is unreachable
+    private final AtomicLongArray lagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary,
+                                    List<DataSource> replicas,
+                                    String lagQuery,
+                                    Duration maxLag) {
+        this.replicas = new ArrayList<>(replicas);
+        this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+        this.maxLagMillis = maxLag.toMillis();
+        this.lagMillis = new AtomicLongArray(replicas.size());
+        this.replicaKeys = new String[replicas.size()];
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys[i] = replicaKey(i);
+            targets.put(replicaKeys[i], replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || ReadYourWrites.isPrimaryRequired()) {
+            return PRIMARY;
+        }
+
+        // Start at the next replica in turn and take the first one that is caught up
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            int replica = (start + i) % size;
+            if (lagMillis.get(replica) <= maxLagMillis) {
+                return replicaKeys[replica];
+            }
+        }
+        return PRIMARY;
+    }
+
+    // Runs the lag query on every replica, the query returns the lag in seconds.
+    // Without a lag query a replica is only checked for being reachable. ReplicaRouting
+    // runs it on a schedule.
+    public void checkLag() {
+        for (int i = 0; i < replicas.size(); i++) {
+            long lag;
+            try (Connection connection = replicas.get(i).getConnection()) {
+                lag = lagQuery == null ? (connection.isValid(1) ? 0 : Long.MAX_VALUE) : queryLag(connection);
+            } catch (SQLException e) {
+                LOGGER.warn("Replica {} is unreachable, reading from the others", i, e);
+                lag = Long.MAX_VALUE;
+            }
+            lagMillis.set(i, lag);
+        }
+    }
+
+    public Duration getLag(int replica) {
+        long lag = lagMillis.get(replica);
+        return lag == Long.MAX_VALUE ? null : Duration.ofMillis(lag);
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    private long queryLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            if (!resultSet.next()) {
+                return Long.MAX_VALUE;
+            }
+            double seconds = resultSet.getDouble(1);
+            return resultSet.wasNull() ? Long.MAX_VALUE : (long) (seconds * 1000);
+        }
+    }
+
+    static String replicaKey(int replica) {
+        return "replica-" + replica;
+    }
+}
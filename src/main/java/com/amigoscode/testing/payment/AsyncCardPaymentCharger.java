@@ -0,0 +1,14 @@
+package com.amigoscode.testing.payment;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncCardPaymentCharger {
+
+    CompletableFuture<CardPaymentCharge> chargeCardAsync(
+            String cardSource,
+            BigDecimal amount,
+            Currency currency,
+            String description
+    );
+}
@@ -0,0 +1,10 @@
+package com.amigoscode.testing.payment;
+
+import java.util.List;
+
+// A CardPaymentCharger whose processor accepts several charges in one round trip
+public interface BatchCardPaymentCharger extends CardPaymentCharger {
+
+    // One charge per payment, in the same order
+    List<CardPaymentCharge> chargeCards(List<Payment> payments);
+}
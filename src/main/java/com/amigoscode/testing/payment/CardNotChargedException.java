@@ -0,0 +1,10 @@
+package com.amigoscode.testing.payment;
+
+// A payment turned down before any money moved: an unknown customer, an unsupported
+// currency or a declined card. Unlike other failures it is safe to retry.
+public class CardNotChargedException extends IllegalStateException {
+
+    public CardNotChargedException(String message) {
+        super(message);
+    }
+}
@@ -3,19 +3,31 @@ package com.amigoscode.testing.payment;
 public class CardPaymentCharge {
 
     private final boolean isCardDebited;
+    // The processor's id for the charge, when it gives one
+    private final String chargeId;
 
     public CardPaymentCharge(boolean isCardDebited) {
+        this(isCardDebited, null);
+    }
+
+    public CardPaymentCharge(boolean isCardDebited, String chargeId) {
         this.isCardDebited = isCardDebited;
+        this.chargeId = chargeId;
     }
 
     public boolean isCardDebited() {
         return isCardDebited;
     }
 
+    public String getChargeId() {
+        return chargeId;
+    }
+
     @Override
     public String toString() {
         return "CardPaymentCharge{" +
                 "isCardDebited=" + isCardDebited +
+                ", chargeId='" + chargeId + '\'' +
                 '}';
     }
 }
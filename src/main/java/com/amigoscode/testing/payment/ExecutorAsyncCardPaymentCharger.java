@@ -0,0 +1,43 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.resilience.PaymentProcessorUnavailableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Runs the blocking CardPaymentCharger on the payment executor, so the calling
+// thread is free while the processor round trip is in flight. A charge the full
+// executor rejects fails its future with PaymentProcessorUnavailableException.
+@Service
+public class ExecutorAsyncCardPaymentCharger implements AsyncCardPaymentCharger {
+
+    private final CardPaymentCharger cardPaymentCharger;
+    private final Executor paymentExecutor;
+
+    @Autowired
+    public ExecutorAsyncCardPaymentCharger(CardPaymentCharger cardPaymentCharger,
+                                           @Qualifier("paymentExecutor") Executor paymentExecutor) {
+        this.cardPaymentCharger = cardPaymentCharger;
+        this.paymentExecutor = paymentExecutor;
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String cardSource,
+                                                                BigDecimal amount,
+                                                                Currency currency,
+                                                                String description) {
+        try {
+            return CompletableFuture.supplyAsync(
+                    () -> cardPaymentCharger.chargeCard(cardSource, amount, currency, description),
+                    paymentExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(
+                    new PaymentProcessorUnavailableException("Payment executor is full", e));
+        }
+    }
+}
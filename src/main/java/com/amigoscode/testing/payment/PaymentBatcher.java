@@ -0,0 +1,234 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.resilience.PaymentProcessorUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Collects payments for up to one window or maxBatchSize payments, whichever comes first,
+// charges them together and records the debited ones with a single PaymentRecorder call,
+// so one commit covers the whole batch. Every payment still completes its own future.
+@Component
+public class PaymentBatcher implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaymentBatcher.class);
+
+    private final PaymentRecorder paymentRecorder;
+    private final CardPaymentCharger cardPaymentCharger;
+    private final AsyncCardPaymentCharger asyncCardPaymentCharger;
+    private final Executor paymentExecutor;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<PendingCharge> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private volatile boolean running;
+
+    @Autowired
+    public PaymentBatcher(PaymentRecorder paymentRecorder,
+                          CardPaymentCharger cardPaymentCharger,
+                          AsyncCardPaymentCharger asyncCardPaymentCharger,
+                          @Qualifier("paymentExecutor") Executor paymentExecutor,
+                          @Value("${payment.batching.enabled:false}") boolean enabled,
+                          @Value("${payment.batching.window:PT0.005S}") Duration window,
+                          @Value("${payment.batching.max-size:50}") int maxBatchSize) {
+        this.paymentRecorder = paymentRecorder;
+        this.cardPaymentCharger = cardPaymentCharger;
+        this.asyncCardPaymentCharger = asyncCardPaymentCharger;
+        this.paymentExecutor = paymentExecutor;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+
+        if (enabled) {
+            running = true;
+            dispatcher = new Thread(this::collect, "payment-batcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        } else {
+            dispatcher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Completes with the processor's answer once the batch is charged and, if the card
+    // was debited, the payment is saved. Fails with what the processor threw, or with
+    // PaymentNotSavedException when the card was debited but the batch could not be saved.
+    //
+    // destroy stops accepting before it drains the queue, so a payment added while it
+    // stops is either drained and abandoned by it, or taken back out here.
+    public CompletableFuture<CardPaymentCharge> submit(Payment payment) {
+        if (!running) {
+            throw new IllegalStateException("Payment batching is not running");
+        }
+        PendingCharge pendingCharge = new PendingCharge(payment);
+        queue.add(pendingCharge);
+        if (!running && queue.remove(pendingCharge)) {
+            throw new IllegalStateException("Payment batching is not running");
+        }
+        return pendingCharge.result;
+    }
+
+    @Override
+    public void destroy() {
+        if (dispatcher == null) {
+            return;
+        }
+        running = false;
+        dispatcher.interrupt();
+        List<PendingCharge> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandon(abandoned);
+    }
+
+    private static void abandon(List<PendingCharge> pendingCharges) {
+        pendingCharges.forEach(p -> p.result.completeExceptionally(
+                new IllegalStateException("Payment batching stopped before the payment was charged")));
+    }
+
+    private void collect() {
+        while (running) {
+            List<PendingCharge> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingCharge next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(batch);
+                return;
+            }
+
+            dispatch(batch);
+        }
+    }
+
+    // Does not block: the batch completes on whichever thread delivers its last charge
+    private void dispatch(List<PendingCharge> batch) {
+        List<CompletableFuture<CardPaymentCharge>> charges;
+        try {
+            charges = charge(batch);
+        } catch (RuntimeException e) {
+            batch.forEach(p -> p.result.completeExceptionally(e));
+            return;
+        }
+        CompletableFuture.allOf(charges.toArray(new CompletableFuture[0]))
+                .whenComplete((ignored, e) -> save(batch, charges));
+    }
+
+    private List<CompletableFuture<CardPaymentCharge>> charge(List<PendingCharge> batch) {
+        List<CompletableFuture<CardPaymentCharge>> charges = new ArrayList<>(batch.size());
+
+        if (cardPaymentCharger instanceof BatchCardPaymentCharger) {
+            List<Payment> payments = new ArrayList<>(batch.size());
+            batch.forEach(p -> payments.add(p.payment));
+
+            CompletableFuture<List<CardPaymentCharge>> answers;
+            try {
+                answers = CompletableFuture.supplyAsync(() -> {
+                    List<CardPaymentCharge> charged = ((BatchCardPaymentCharger) cardPaymentCharger).chargeCards(payments);
+                    if (charged.size() != payments.size()) {
+                        throw new IllegalStateException(String.format(
+                                "Processor answered %d of %d charges", charged.size(), payments.size()));
+                    }
+                    return charged;
+                }, paymentExecutor);
+            } catch (RejectedExecutionException e) {
+                answers = CompletableFuture.failedFuture(
+                        new PaymentProcessorUnavailableException("Payment executor is full", e));
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                int index = i;
+                charges.add(answers.thenApply(charged -> charged.get(index)));
+            }
+            return charges;
+        }
+
+        // No batch API, the round trips at least overlap
+        for (PendingCharge pendingCharge : batch) {
+            Payment payment = pendingCharge.payment;
+            charges.add(asyncCardPaymentCharger.chargeCardAsync(
+                    payment.getSource(),
+                    payment.getAmount(),
+                    payment.getCurrency(),
+                    payment.getDescription()));
+        }
+        return charges;
+    }
+
+    private void save(List<PendingCharge> batch, List<CompletableFuture<CardPaymentCharge>> charges) {
+
+        // 1. Declined and failed charges are answered right away
+        List<PendingCharge> debited = new ArrayList<>(batch.size());
+        List<Payment> payments = new ArrayList<>(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingCharge pendingCharge = batch.get(i);
+            try {
+                pendingCharge.charge = charges.get(i).join();
+            } catch (CompletionException e) {
+                pendingCharge.result.completeExceptionally(e.getCause());
+                continue;
+            }
+            if (pendingCharge.charge.isCardDebited()) {
+                debited.add(pendingCharge);
+                payments.add(pendingCharge.payment);
+            } else {
+                pendingCharge.result.complete(pendingCharge.charge);
+            }
+        }
+
+        // 2. Insert the debited payments and their SMS in one transaction
+        if (!payments.isEmpty()) {
+            try {
+                paymentRecorder.recordAll(payments);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not save {} charged payments", payments.size(), e);
+                PaymentNotSavedException notSaved = new PaymentNotSavedException(
+                        "Card debited but the payment could not be saved", e);
+                debited.forEach(p -> p.result.completeExceptionally(notSaved));
+                return;
+            }
+        }
+
+        debited.forEach(p -> p.result.complete(p.charge));
+    }
+
+    private static class PendingCharge {
+
+        private final Payment payment;
+        private final CompletableFuture<CardPaymentCharge> result = new CompletableFuture<>();
+        private CardPaymentCharge charge;
+
+        PendingCharge(Payment payment) {
+            this.payment = payment;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.amigoscode.testing.payment;
+
+public enum PaymentChargeStatus {
+    CHARGED,
+    CUSTOMER_NOT_FOUND,
+    CURRENCY_NOT_SUPPORTED,
+    CARD_NOT_DEBITED,
+    FAILED,
+    // The card was debited but the payment could not be saved
+    SAVE_FAILED
+}
@@ -1,27 +1,113 @@
 package com.amigoscode.testing.payment;
 
+import com.amigoscode.testing.payment.ledger.PaymentLedger;
+import com.amigoscode.testing.payment.ledger.PaymentTotalSummary;
+import com.amigoscode.testing.ratelimit.RateLimiter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("api/v1/payment")
 public class PaymentController {
 
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
     private final PaymentService paymentService;
+    private final PaymentIdempotencyStore paymentIdempotencyStore;
+    private final PaymentLedger paymentLedger;
+    private final RateLimiter rateLimiter;
 
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService,
+                             PaymentIdempotencyStore paymentIdempotencyStore,
+                             PaymentLedger paymentLedger,
+                             RateLimiter rateLimiter) {
         this.paymentService = paymentService;
+        this.paymentIdempotencyStore = paymentIdempotencyStore;
+        this.paymentLedger = paymentLedger;
+        this.rateLimiter = rateLimiter;
     }
 
     @RequestMapping
-    public void makePayment(@RequestBody PaymentRequest paymentRequest) {
-        paymentService.chargeCard(paymentRequest.getPayment().getCustomerId(), paymentRequest);
+    public ResponseEntity<Void> makePayment(
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @RequestBody PaymentRequest paymentRequest) {
+        UUID customerId = paymentRequest.getPayment().getCustomerId();
+        rateLimiter.acquireForCustomer(customerId);
+
+        if (idempotencyKey == null) {
+            paymentService.chargeCard(customerId, paymentRequest);
+            return ResponseEntity.ok().build();
+        }
+
+        // Keys are scoped to the customer, so two clients picking the same key do not collide
+        boolean replayed = paymentIdempotencyStore.execute(customerId + ":" + idempotencyKey,
+                requestHash(paymentRequest.getPayment()),
+                () -> paymentService.chargeCard(customerId, paymentRequest));
+
+        return ResponseEntity.ok()
+                .header(IDEMPOTENT_REPLAYED, String.valueOf(replayed))
+                .build();
+    }
+
+    // What makes two payments the same for an Idempotency-Key, 100.0 and 100.00 are one amount
+    static String requestHash(Payment payment) {
+        BigDecimal amount = payment.getAmount() == null ? null : payment.getAmount().stripTrailingZeros();
+        String request = String.join("\n",
+                amount == null ? "" : amount.toPlainString(),
+                String.valueOf(payment.getCurrency()),
+                String.valueOf(payment.getSource()),
+                String.valueOf(payment.getDescription()));
+        return DigestUtils.md5DigestAsHex(request.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Spring MVC hands the servlet thread back while the future is pending
+    @PostMapping("async")
+    public CompletableFuture<Void> makePaymentAsync(@RequestBody PaymentRequest paymentRequest) {
+        rateLimiter.acquireForCustomer(paymentRequest.getPayment().getCustomerId());
+        return paymentService.chargeCardAsync(paymentRequest.getPayment().getCustomerId(), paymentRequest);
+    }
+
+    @GetMapping("customer/{customerId}")
+    public PaymentHistoryPage getPaymentHistory(@PathVariable("customerId") UUID customerId,
+                                                @RequestParam(value = "before", required = false) Long before,
+                                                @RequestParam(value = "size", defaultValue = "50") int size) {
+        return paymentService.getPaymentHistory(customerId, before, size);
+    }
+
+    // Totals per currency for one month, the current one (UTC) unless ?month=2020-01 is given
+    @GetMapping("customer/{customerId}/totals")
+    public List<PaymentTotalSummary> getPaymentTotals(@PathVariable("customerId") UUID customerId,
+                                                      @RequestParam(value = "month", required = false)
+                                                      @DateTimeFormat(pattern = "yyyy-MM") YearMonth month) {
+        return paymentLedger.getTotals(customerId, month == null ? YearMonth.now(ZoneOffset.UTC) : month);
+    }
 
+    @PostMapping("batch")
+    public List<PaymentResult> makePayments(@RequestBody List<PaymentRequest> paymentRequests) {
+        rateLimiter.acquireForCustomers(paymentRequests.stream()
+                .map(request -> request.getPayment() == null ? null : request.getPayment().getCustomerId())
+                .collect(Collectors.toList()));
+        return paymentService.chargeCards(paymentRequests);
     }
 }
@@ -0,0 +1,68 @@
+package com.amigoscode.testing.payment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class PaymentExecutorConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaymentExecutorConfiguration.class);
+
+    // Bounded on both threads and queue: when the processor falls behind, a charge that
+    // does not fit is rejected instead of running on the caller's thread, which would tie
+    // up servlet threads and the batcher's dispatcher. Callers fail it as a 503.
+    // With payment.executor.virtual-threads=true on a JDK that has them, every charge
+    // gets its own virtual thread instead and blocking on the processor costs no platform thread.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService paymentExecutor(@Value("${payment.executor.pool-size:16}") int poolSize,
+                                           @Value("${payment.executor.queue-capacity:1000}") int queueCapacity,
+                                           @Value("${payment.executor.virtual-threads:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            ExecutorService executor = virtualThreadPerTaskExecutor();
+            if (executor != null) {
+                return executor;
+            }
+            LOGGER.warn("Virtual threads are not available on Java {}, using a pool of {} threads",
+                    System.getProperty("java.version"), poolSize);
+        }
+
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory("payment-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Looked up reflectively so the build keeps targeting Java 11
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package com.amigoscode.testing.payment;
+
+import java.util.List;
+
+public class PaymentHistoryPage {
+
+    private final List<PaymentSummary> payments;
+    private final Long nextCursor;
+
+    public PaymentHistoryPage(List<PaymentSummary> payments, Long nextCursor) {
+        this.payments = payments;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<PaymentSummary> getPayments() {
+        return payments;
+    }
+
+    // Pass as ?before= to get the next, older page. Null on the last page.
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentHistoryPage{" +
+                "payments=" + payments +
+                ", nextCursor=" + nextCursor +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+package com.amigoscode.testing.payment;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.Instant;
+
+// Saved IN_PROGRESS before the card is charged and COMPLETED once the payment is saved,
+// so a key left IN_PROGRESS may belong to a charged card and is never run again
+@Entity
+public class PaymentIdempotencyKey {
+
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+
+    @Id
+    private String idempotencyKey;
+
+    private Instant createdAt;
+
+    private String requestHash;
+
+    private Status status;
+
+    public PaymentIdempotencyKey(String idempotencyKey, Instant createdAt, String requestHash, Status status) {
+        this.idempotencyKey = idempotencyKey;
+        this.createdAt = createdAt;
+        this.requestHash = requestHash;
+        this.status = status;
+    }
+
+    public PaymentIdempotencyKey() {
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentIdempotencyKey{" +
+                "idempotencyKey='" + idempotencyKey + '\'' +
+                ", createdAt=" + createdAt +
+                ", requestHash='" + requestHash + '\'' +
+                ", status=" + status +
+                '}';
+    }
+}
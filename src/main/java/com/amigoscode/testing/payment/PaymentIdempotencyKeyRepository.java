@@ -0,0 +1,29 @@
+package com.amigoscode.testing.payment;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface PaymentIdempotencyKeyRepository extends CrudRepository<PaymentIdempotencyKey, String> {
+
+    // A plain insert, unlike save it fails when another instance already took the key
+    @Modifying
+    @Transactional
+    @Query(value = "insert into payment_idempotency_key (idempotency_key, created_at, request_hash, status) " +
+            "values (:idempotencyKey, :createdAt, :requestHash, :status)",
+            nativeQuery = true)
+    int insert(@Param("idempotencyKey") String idempotencyKey,
+               @Param("createdAt") Instant createdAt,
+               @Param("requestHash") String requestHash,
+               @Param("status") int status);
+
+    @Modifying
+    @Transactional
+    @Query("update PaymentIdempotencyKey k set k.status = :status where k.idempotencyKey = :idempotencyKey")
+    int updateStatus(@Param("idempotencyKey") String idempotencyKey,
+                     @Param("status") PaymentIdempotencyKey.Status status);
+}
@@ -0,0 +1,236 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.PaymentIdempotencyKey.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Runs a payment at most once per Idempotency-Key. A retry of a charged payment is
+// answered from memory, and a duplicate that arrives while the first attempt is still
+// in flight waits for that attempt, up to the wait timeout, instead of charging again.
+// A key reused for a different request is turned down.
+// Only attempts that failed with CardNotChargedException are forgotten so that the
+// client can retry them, any other failure may have come after the card was charged.
+//
+// When persistent, the key is saved IN_PROGRESS before the charge and marked COMPLETED
+// after it, so other instances and restarts never run a key that may have been charged.
+@Service
+public class PaymentIdempotencyStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaymentIdempotencyStore.class);
+
+    private final PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository;
+    private final int maxKeys;
+    private final Duration ttl;
+    private final Duration waitTimeout;
+    private final boolean persistent;
+    private final Clock clock;
+
+    private final ConcurrentHashMap<String, Attempt> attempts = new ConcurrentHashMap<>();
+    // Insertion order of the keys, oldest first, used to expire and bound the map
+    private final Queue<Attempt> order = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public PaymentIdempotencyStore(PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository,
+                                   @Value("${payment.idempotency.max-keys:100000}") int maxKeys,
+                                   @Value("${payment.idempotency.ttl:PT24H}") Duration ttl,
+                                   @Value("${payment.idempotency.wait-timeout:PT10S}") Duration waitTimeout,
+                                   @Value("${payment.idempotency.persistent:false}") boolean persistent) {
+        this(paymentIdempotencyKeyRepository, maxKeys, ttl, waitTimeout, persistent, Clock.systemUTC());
+    }
+
+    PaymentIdempotencyStore(PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository,
+                            int maxKeys,
+                            Duration ttl,
+                            Duration waitTimeout,
+                            boolean persistent,
+                            Clock clock) {
+        this.paymentIdempotencyKeyRepository = paymentIdempotencyKeyRepository;
+        this.maxKeys = maxKeys;
+        this.ttl = ttl;
+        this.waitTimeout = waitTimeout;
+        this.persistent = persistent;
+        this.clock = clock;
+    }
+
+    // Returns true when the payment was already made under this key and was not run again.
+    // requestHash identifies the request, the same key with another hash is turned down.
+    public boolean execute(String idempotencyKey, String requestHash, Runnable payment) {
+        Instant now = clock.instant();
+        Attempt attempt = new Attempt(idempotencyKey, requestHash, now);
+
+        while (true) {
+            Attempt existing = attempts.putIfAbsent(idempotencyKey, attempt);
+            if (existing == null) {
+                break;
+            }
+            if (existing.isExpired(now, ttl) && existing.outcome.isDone()) {
+                attempts.remove(idempotencyKey, existing);
+                continue;
+            }
+            checkSameRequest(idempotencyKey, existing.requestHash, requestHash);
+            await(existing);
+            return true;
+        }
+
+        order.offer(attempt);
+        evict(now);
+
+        try {
+            if (persistent && !claim(idempotencyKey, requestHash, now)) {
+                attempt.outcome.complete(null);
+                return true;
+            }
+        } catch (RuntimeException e) {
+            // Nothing was charged yet
+            forget(attempt, e);
+            throw e;
+        }
+
+        try {
+            payment.run();
+        } catch (CardNotChargedException e) {
+            forget(attempt, e);
+            if (persistent) {
+                release(idempotencyKey);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // Kept, and IN_PROGRESS when persistent, the card may have been charged
+            attempt.outcome.completeExceptionally(e);
+            throw e;
+        }
+
+        attempt.outcome.complete(null);
+        if (persistent) {
+            try {
+                paymentIdempotencyKeyRepository.updateStatus(idempotencyKey, Status.COMPLETED);
+            } catch (RuntimeException e) {
+                // The payment is made, the key stays IN_PROGRESS and is still never run again
+                LOGGER.warn("Could not mark idempotency key {} completed", idempotencyKey, e);
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return attempts.size();
+    }
+
+    // Saves the key IN_PROGRESS, false when a completed payment already holds it
+    private boolean claim(String idempotencyKey, String requestHash, Instant now) {
+        Optional<PaymentIdempotencyKey> existing = paymentIdempotencyKeyRepository.findById(idempotencyKey);
+        if (existing.isPresent()) {
+            PaymentIdempotencyKey key = existing.get();
+            if (key.getCreatedAt().plus(ttl).isAfter(now)) {
+                checkSameRequest(idempotencyKey, key.getRequestHash(), requestHash);
+                if (key.getStatus() == Status.COMPLETED) {
+                    return false;
+                }
+                throw inProgress(idempotencyKey);
+            }
+            paymentIdempotencyKeyRepository.delete(key);
+        }
+
+        try {
+            paymentIdempotencyKeyRepository.insert(idempotencyKey, now, requestHash, Status.IN_PROGRESS.ordinal());
+        } catch (DataIntegrityViolationException e) {
+            throw inProgress(idempotencyKey);
+        }
+        return true;
+    }
+
+    // A key left behind only turns the retry down, it never charges twice
+    private void release(String idempotencyKey) {
+        try {
+            paymentIdempotencyKeyRepository.deleteById(idempotencyKey);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not release idempotency key {}", idempotencyKey, e);
+        }
+    }
+
+    private void forget(Attempt attempt, RuntimeException e) {
+        attempts.remove(attempt.idempotencyKey, attempt);
+        attempt.outcome.completeExceptionally(e);
+    }
+
+    private void await(Attempt attempt) {
+        try {
+            attempt.outcome.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CardNotChargedException) {
+                throw (CardNotChargedException) e.getCause();
+            }
+            throw new IllegalStateException(String.format(
+                    "Payment with Idempotency-Key [%s] failed and may have been charged, it is not run again",
+                    attempt.idempotencyKey), e.getCause());
+        } catch (TimeoutException e) {
+            throw inProgress(attempt.idempotencyKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw inProgress(attempt.idempotencyKey);
+        }
+    }
+
+    private static void checkSameRequest(String idempotencyKey, String requestHash, String otherRequestHash) {
+        if (!requestHash.equals(otherRequestHash)) {
+            throw new IllegalStateException(String.format(
+                    "Idempotency-Key [%s] was already used for a different payment", idempotencyKey));
+        }
+    }
+
+    private static IllegalStateException inProgress(String idempotencyKey) {
+        return new IllegalStateException(String.format(
+                "Payment with Idempotency-Key [%s] is still in progress", idempotencyKey));
+    }
+
+    // Drops expired keys, then the oldest completed ones while over the limit.
+    // An attempt still in flight is never dropped, so it cannot be charged twice.
+    private void evict(Instant now) {
+        Attempt oldest;
+        while ((oldest = order.peek()) != null) {
+            boolean overLimit = attempts.size() > maxKeys;
+            if (attempts.get(oldest.idempotencyKey) != oldest) {
+                order.remove(oldest);
+            } else if ((overLimit || oldest.isExpired(now, ttl)) && oldest.outcome.isDone()) {
+                attempts.remove(oldest.idempotencyKey, oldest);
+                order.remove(oldest);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static class Attempt {
+
+        private final String idempotencyKey;
+        private final String requestHash;
+        private final Instant createdAt;
+        private final CompletableFuture<Void> outcome = new CompletableFuture<>();
+
+        Attempt(String idempotencyKey, String requestHash, Instant createdAt) {
+            this.idempotencyKey = idempotencyKey;
+            this.requestHash = requestHash;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(Instant now, Duration ttl) {
+            return !createdAt.plus(ttl).isAfter(now);
+        }
+    }
+}
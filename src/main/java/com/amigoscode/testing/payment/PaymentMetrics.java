@@ -0,0 +1,117 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.resilience.ResilientCardPaymentCharger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Meters for the stages of charging a card, the same for PaymentService.chargeCard,
+// chargeCardAsync and chargeCards. A stage timer records how long each payment spent in
+// the stage, so in a batch every payment records the time of the shared lookup and save.
+// Every timer and counter is created up front, so recording never builds a meter id on
+// the payment path.
+@Component
+public class PaymentMetrics {
+
+    enum Stage {
+        CUSTOMER_LOOKUP,
+        CURRENCY_CHECK,
+        CHARGE,
+        SAVE
+    }
+
+    enum FailureReason {
+        CUSTOMER_NOT_FOUND,
+        CURRENCY_NOT_SUPPORTED,
+        CARD_NOT_DEBITED,
+        PROCESSOR_EXCEPTION,
+        // Charged, but the payment could not be saved
+        SAVE_FAILED
+    }
+
+    private static final String NO_CURRENCY = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Stage, Map<String, Timer>> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<FailureReason, Map<String, Counter>> failureCounters = new EnumMap<>(FailureReason.class);
+
+    @Autowired
+    public PaymentMetrics(MeterRegistry meterRegistry, CardPaymentCharger cardPaymentCharger) {
+        this.meterRegistry = meterRegistry;
+        CardPaymentCharger charged = cardPaymentCharger instanceof ResilientCardPaymentCharger
+                ? ((ResilientCardPaymentCharger) cardPaymentCharger).getDelegate()
+                : cardPaymentCharger;
+        String charger = ClassUtils.getUserClass(charged).getSimpleName();
+
+        for (Stage stage : Stage.values()) {
+            Map<String, Timer> timers = stageTimers.computeIfAbsent(stage, s -> new HashMap<>());
+            for (String currency : currencyTags()) {
+                timers.put(currency, Timer.builder("payment.stage")
+                        .description("Time spent in each stage of charging a card")
+                        .tags("stage", tagValue(stage), "currency", currency, "charger", charger)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+            }
+        }
+
+        for (FailureReason reason : FailureReason.values()) {
+            Map<String, Counter> counters = failureCounters.computeIfAbsent(reason, r -> new HashMap<>());
+            for (String currency : currencyTags()) {
+                counters.put(currency, Counter.builder("payment.failures")
+                        .description("Payments that were not charged, by reason")
+                        .tags("reason", tagValue(reason), "currency", currency, "charger", charger)
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    // Records the time since the sample was taken and restarts it for the next stage
+    Timer.Sample stage(Timer.Sample sample, Stage stage, Currency currency) {
+        sample.stop(stageTimers.get(stage).get(currencyTag(currency)));
+        return start();
+    }
+
+    // For stages timed with time(), e.g. one lookup or save shared by a whole batch
+    void stage(Stage stage, Currency currency, long nanos) {
+        stageTimers.get(stage).get(currencyTag(currency)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    long time() {
+        return meterRegistry.config().clock().monotonicTime();
+    }
+
+    void failure(FailureReason reason, Currency currency) {
+        failureCounters.get(reason).get(currencyTag(currency)).increment();
+    }
+
+    private static String[] currencyTags() {
+        Currency[] currencies = Currency.values();
+        String[] tags = new String[currencies.length + 1];
+        for (int i = 0; i < currencies.length; i++) {
+            tags[i] = currencies[i].name();
+        }
+        tags[currencies.length] = NO_CURRENCY;
+        return tags;
+    }
+
+    private static String currencyTag(Currency currency) {
+        return currency == null ? NO_CURRENCY : currency.name();
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,9 @@
+package com.amigoscode.testing.payment;
+
+// The card was debited but the payment could not be saved, so the charge has no record
+public class PaymentNotSavedException extends IllegalStateException {
+
+    public PaymentNotSavedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
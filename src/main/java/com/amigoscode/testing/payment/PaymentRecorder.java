@@ -0,0 +1,81 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.journal.PaymentJournal;
+import com.amigoscode.testing.payment.ledger.PaymentLedger;
+import com.amigoscode.testing.shard.ShardRouter;
+import com.amigoscode.testing.sms.SmsOutbox;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Saves charged payments together with their SMS outbox rows in one transaction. Once
+// it commits they are counted in the PaymentLedger and appended to the PaymentJournal.
+@Component
+public class PaymentRecorder {
+
+    private final PaymentRepository paymentRepository;
+    private final SmsOutbox smsOutbox;
+    private final ShardRouter shardRouter;
+    private final TransactionOperations transactionOperations;
+    private final PaymentLedger paymentLedger;
+    private final PaymentJournal paymentJournal;
+
+    @Autowired
+    public PaymentRecorder(PaymentRepository paymentRepository,
+                           SmsOutbox smsOutbox,
+                           ShardRouter shardRouter,
+                           TransactionOperations transactionOperations,
+                           PaymentLedger paymentLedger,
+                           PaymentJournal paymentJournal) {
+        this.paymentRepository = paymentRepository;
+        this.smsOutbox = smsOutbox;
+        this.shardRouter = shardRouter;
+        this.transactionOperations = transactionOperations;
+        this.paymentLedger = paymentLedger;
+        this.paymentJournal = paymentJournal;
+    }
+
+    @Transactional
+    public Payment record(Payment payment) {
+        Payment saved = paymentRepository.save(payment);
+        smsOutbox.paymentReceived(saved);
+        paymentLedger.paymentsRecorded(List.of(saved));
+        paymentJournal.paymentsRecorded(List.of(saved));
+        return saved;
+    }
+
+    // A transaction stays on one shard, so with sharding each shard's payments are
+    // committed separately. The saved payments come back in the order they were given.
+    public List<Payment> recordAll(List<Payment> payments) {
+        Map<Integer, List<Payment>> byShard = shardRouter.partition(payments, Payment::getCustomerId);
+        if (byShard.size() <= 1) {
+            return transactionOperations.execute(status -> recordShard(payments));
+        }
+
+        Map<Integer, Iterator<Payment>> savedByShard = new HashMap<>();
+        byShard.forEach((shard, shardPayments) -> savedByShard.put(shard,
+                transactionOperations.execute(status -> recordShard(shardPayments)).iterator()));
+
+        List<Payment> saved = new ArrayList<>(payments.size());
+        for (Payment payment : payments) {
+            saved.add(savedByShard.get(shardRouter.shardFor(payment.getCustomerId())).next());
+        }
+        return saved;
+    }
+
+    private List<Payment> recordShard(List<Payment> payments) {
+        List<Payment> saved = new ArrayList<>(payments.size());
+        paymentRepository.saveAll(payments).forEach(saved::add);
+        smsOutbox.paymentsReceived(saved);
+        paymentLedger.paymentsRecorded(saved);
+        paymentJournal.paymentsRecorded(saved);
+        return saved;
+    }
+}
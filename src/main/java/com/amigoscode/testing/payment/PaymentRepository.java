@@ -1,7 +1,42 @@
 package com.amigoscode.testing.payment;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
 
 public interface PaymentRepository extends CrudRepository<Payment, Long> {
 
+    // Keyset page: seeks to the cursor on the (customer_id, payment_id) index instead
+    // of counting past an offset, so page 10,000 costs the same as page 1
+    @Query("select new com.amigoscode.testing.payment.PaymentSummary(p.paymentId, p.amount, p.currency, p.description) " +
+            "from Payment p " +
+            "where p.customerId = :customerId and p.paymentId < :before " +
+            "order by p.paymentId desc")
+    List<PaymentSummary> selectPaymentHistory(@Param("customerId") UUID customerId,
+                                              @Param("before") long before,
+                                              Pageable pageable);
+
+    // Both take the customer first so that with sharding they run on the customer's shard
+    long countByCustomerIdAndPaymentId(UUID customerId, Long paymentId);
+
+    // Puts back a payment from the PaymentJournal under its original id, which save
+    // would replace with a generated one
+    @Modifying
+    @Transactional
+    @Query(value = "insert into payment (payment_id, customer_id, amount, currency, source, description) " +
+            "values (:paymentId, :customerId, :amount, :currency, :source, :description)",
+            nativeQuery = true)
+    int saveWithId(@Param("customerId") UUID customerId,
+                   @Param("paymentId") long paymentId,
+                   @Param("amount") BigDecimal amount,
+                   @Param("currency") int currency,
+                   @Param("source") String source,
+                   @Param("description") String description);
 }
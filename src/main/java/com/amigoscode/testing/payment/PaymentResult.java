@@ -0,0 +1,55 @@
+package com.amigoscode.testing.payment;
+
+import java.util.UUID;
+
+public class PaymentResult {
+
+    private final UUID customerId;
+    private final Long paymentId;
+    private final PaymentChargeStatus status;
+    private final String message;
+    private final String chargeId;
+
+    public PaymentResult(UUID customerId, Long paymentId, PaymentChargeStatus status, String message) {
+        this(customerId, paymentId, status, message, null);
+    }
+
+    public PaymentResult(UUID customerId, Long paymentId, PaymentChargeStatus status, String message, String chargeId) {
+        this.customerId = customerId;
+        this.paymentId = paymentId;
+        this.status = status;
+        this.message = message;
+        this.chargeId = chargeId;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    public PaymentChargeStatus getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getChargeId() {
+        return chargeId;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentResult{" +
+                "customerId=" + customerId +
+                ", paymentId=" + paymentId +
+                ", status=" + status +
+                ", message='" + message + '\'' +
+                ", chargeId='" + chargeId + '\'' +
+                '}';
+    }
+}
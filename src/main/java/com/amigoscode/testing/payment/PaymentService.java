@@ -1,69 +1,364 @@
 package com.amigoscode.testing.payment;
 
-import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.customer.CustomerExistenceCache;
+import com.amigoscode.testing.payment.PaymentMetrics.FailureReason;
+import com.amigoscode.testing.payment.PaymentMetrics.Stage;
+import com.amigoscode.testing.payment.journal.PaymentJournal;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 @Service
 public class PaymentService {
 
     private static final List<Currency> ACCEPTED_CURRENCIES = List.of(Currency.USD, Currency.GBP);
 
-    private final CustomerRepository customerRepository;
+    static final int MAX_PAGE_SIZE = 500;
+
+    private final CustomerExistenceCache customerExistenceCache;
     private final PaymentRepository paymentRepository;
     private final CardPaymentCharger cardPaymentCharger;
+    private final AsyncCardPaymentCharger asyncCardPaymentCharger;
+    private final PaymentMetrics paymentMetrics;
+    private final PaymentBatcher paymentBatcher;
+    private final PaymentRecorder paymentRecorder;
+    private final PaymentJournal paymentJournal;
 
     @Autowired
-    public PaymentService(CustomerRepository customerRepository,
-                          PaymentRepository paymentRepository, CardPaymentCharger cardPaymentCharger) {
-        this.customerRepository = customerRepository;
+    public PaymentService(CustomerExistenceCache customerExistenceCache,
+                          PaymentRepository paymentRepository, CardPaymentCharger cardPaymentCharger,
+                          AsyncCardPaymentCharger asyncCardPaymentCharger,
+                          PaymentMetrics paymentMetrics,
+                          PaymentBatcher paymentBatcher,
+                          PaymentRecorder paymentRecorder,
+                          PaymentJournal paymentJournal) {
+        this.customerExistenceCache = customerExistenceCache;
         this.paymentRepository = paymentRepository;
         this.cardPaymentCharger = cardPaymentCharger;
+        this.asyncCardPaymentCharger = asyncCardPaymentCharger;
+        this.paymentMetrics = paymentMetrics;
+        this.paymentBatcher = paymentBatcher;
+        this.paymentRecorder = paymentRecorder;
+        this.paymentJournal = paymentJournal;
     }
 
     void chargeCard(UUID customerId, PaymentRequest paymentRequest) {
 
+        Currency currency = paymentRequest.getPayment().getCurrency();
+        Timer.Sample sample = paymentMetrics.start();
+
         // 1. Does customer exists if not throw
-        boolean customerOptional = customerRepository.findById(customerId).isPresent();
+        boolean customerOptional = customerExistenceCache.exists(customerId);
+        sample = paymentMetrics.stage(sample, Stage.CUSTOMER_LOOKUP, currency);
 
         if (!customerOptional) {
-            throw new IllegalStateException(String.format("Customer with id [%s] not found", customerId));
+            paymentMetrics.failure(FailureReason.CUSTOMER_NOT_FOUND, currency);
+            throw new CardNotChargedException(String.format("Customer with id [%s] not found", customerId));
         }
 
         // 2. Do we support the currency if not throw
         // boolean isCurrencySupported = ACCEPTED_CURRENCIES.contains(paymentRequest.getPayment().getCurrency());
         boolean isCurrencySupported = ACCEPTED_CURRENCIES.stream()
                 .anyMatch(c -> c.equals(paymentRequest.getPayment().getCurrency()));
+        sample = paymentMetrics.stage(sample, Stage.CURRENCY_CHECK, currency);
 
         if (!isCurrencySupported) {
+            paymentMetrics.failure(FailureReason.CURRENCY_NOT_SUPPORTED, currency);
             String message = String.format("Currency[%s] not supported",
                     paymentRequest.getPayment().getCurrency());
-            throw new IllegalStateException(message);
+            throw new CardNotChargedException(message);
         }
 
-        // 3. Charge card
-        CardPaymentCharge cardPaymentCharge = cardPaymentCharger.chargeCard(
-                paymentRequest.getPayment().getSource(),
-                paymentRequest.getPayment().getAmount(),
-                paymentRequest.getPayment().getCurrency(),
-                paymentRequest.getPayment().getDescription());
+        // 3. Charge card, a batched payment is also saved together with the rest of its batch.
+        // The attempt is journaled first, so a crash while charging still leaves a trace.
+        boolean batched = paymentBatcher.isEnabled();
+        CardPaymentCharge cardPaymentCharge;
+        paymentJournal.chargeAttempted(customerId, paymentRequest.getPayment());
+        try {
+            if (batched) {
+                paymentRequest.getPayment().setPaymentId(null);
+                paymentRequest.getPayment().setCustomerId(customerId);
+                cardPaymentCharge = join(paymentBatcher.submit(paymentRequest.getPayment()));
+            } else {
+                cardPaymentCharge = cardPaymentCharger.chargeCard(
+                        paymentRequest.getPayment().getSource(),
+                        paymentRequest.getPayment().getAmount(),
+                        paymentRequest.getPayment().getCurrency(),
+                        paymentRequest.getPayment().getDescription());
+            }
+        } catch (PaymentNotSavedException e) {
+            // The batch charged the card, only its save failed
+            paymentMetrics.stage(sample, Stage.CHARGE, currency);
+            paymentMetrics.failure(FailureReason.SAVE_FAILED, currency);
+            paymentJournal.chargeFailed(customerId, paymentRequest.getPayment(), e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            paymentMetrics.stage(sample, Stage.CHARGE, currency);
+            paymentMetrics.failure(FailureReason.PROCESSOR_EXCEPTION, currency);
+            paymentJournal.chargeFailed(customerId, paymentRequest.getPayment(), e.getMessage());
+            throw e;
+        }
+        sample = paymentMetrics.stage(sample, Stage.CHARGE, currency);
 
         // 4. If not debited throw
         if (!cardPaymentCharge.isCardDebited()) {
-            throw new IllegalStateException(String.format("Card not debited for customer %s", customerId));
+            paymentMetrics.failure(FailureReason.CARD_NOT_DEBITED, currency);
+            paymentJournal.chargeDeclined(customerId, paymentRequest.getPayment());
+            throw new CardNotChargedException(String.format("Card not debited for customer %s", customerId));
+        }
+
+        // 5. Insert payment, PaymentRecorder journals it once saved. The id always comes
+        // from the sequence, one sent by the client would turn the insert into a merge.
+        if (!batched) {
+            paymentRequest.getPayment().setPaymentId(null);
+            paymentRequest.getPayment().setCustomerId(customerId);
+
+            try {
+                paymentRecorder.record(paymentRequest.getPayment());
+            } catch (RuntimeException e) {
+                paymentMetrics.failure(FailureReason.SAVE_FAILED, currency);
+                throw e;
+            }
+            paymentMetrics.stage(sample, Stage.SAVE, currency);
+        }
+
+        // 6. Send SMS, queued in the outbox with the payment and sent by SmsOutboxDispatcher
+    }
+
+    // Same checks as chargeCard, but the processor call does not hold the calling thread:
+    // the returned future completes once the payment is saved, or fails with what chargeCard
+    // would throw after the checks, or with PaymentProcessorUnavailableException when the
+    // payment executor is full
+    CompletableFuture<Void> chargeCardAsync(UUID customerId, PaymentRequest paymentRequest) {
+
+        Payment payment = paymentRequest.getPayment();
+        Currency currency = payment.getCurrency();
+        Timer.Sample sample = paymentMetrics.start();
+
+        // 1. Does customer exists if not throw
+        boolean customerExists = customerExistenceCache.exists(customerId);
+        sample = paymentMetrics.stage(sample, Stage.CUSTOMER_LOOKUP, currency);
+
+        if (!customerExists) {
+            paymentMetrics.failure(FailureReason.CUSTOMER_NOT_FOUND, currency);
+            throw new CardNotChargedException(String.format("Customer with id [%s] not found", customerId));
+        }
+
+        // 2. Do we support the currency if not throw
+        boolean currencySupported = isCurrencySupported(currency);
+        Timer.Sample charging = paymentMetrics.stage(sample, Stage.CURRENCY_CHECK, currency);
+
+        if (!currencySupported) {
+            paymentMetrics.failure(FailureReason.CURRENCY_NOT_SUPPORTED, currency);
+            throw new CardNotChargedException(String.format("Currency[%s] not supported", currency));
         }
 
-        // 5. Insert payment
-        paymentRequest.getPayment().setCustomerId(customerId);
+        // 3. Charge card, journaled like chargeCard does
+        paymentJournal.chargeAttempted(customerId, payment);
+        return asyncCardPaymentCharger.chargeCardAsync(
+                payment.getSource(),
+                payment.getAmount(),
+                payment.getCurrency(),
+                payment.getDescription())
+                .whenComplete((cardPaymentCharge, e) -> {
+                    if (e != null) {
+                        paymentMetrics.stage(charging, Stage.CHARGE, currency);
+                        paymentMetrics.failure(FailureReason.PROCESSOR_EXCEPTION, currency);
+                        paymentJournal.chargeFailed(customerId, payment, causeOf(e).getMessage());
+                    }
+                })
+                .thenAccept(cardPaymentCharge -> {
+                    Timer.Sample saving = paymentMetrics.stage(charging, Stage.CHARGE, currency);
 
-        paymentRepository.save(paymentRequest.getPayment());
+                    // 4. If not debited throw
+                    if (!cardPaymentCharge.isCardDebited()) {
+                        paymentMetrics.failure(FailureReason.CARD_NOT_DEBITED, currency);
+                        paymentJournal.chargeDeclined(customerId, payment);
+                        throw new CardNotChargedException(String.format("Card not debited for customer %s", customerId));
+                    }
 
-        // 6. TODO: Send SMS
+                    // 5. Insert payment, under an id from the sequence like chargeCard
+                    payment.setPaymentId(null);
+                    payment.setCustomerId(customerId);
 
+                    try {
+                        paymentRecorder.record(payment);
+                    } catch (RuntimeException e) {
+                        paymentMetrics.failure(FailureReason.SAVE_FAILED, currency);
+                        throw e;
+                    }
+                    paymentMetrics.stage(saving, Stage.SAVE, currency);
+                });
     }
 
+    List<PaymentResult> chargeCards(List<PaymentRequest> paymentRequests) {
 
+        // 1. Which customers exist, with at most one query for the whole batch
+        Set<UUID> customerIds = paymentRequests.stream()
+                .map(PaymentRequest::getPayment)
+                .filter(Objects::nonNull)
+                .map(Payment::getCustomerId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        long lookupStarted = paymentMetrics.time();
+        Set<UUID> existingCustomerIds = customerExistenceCache.existing(customerIds);
+        long lookupNanos = paymentMetrics.time() - lookupStarted;
+
+        // 2. Reject what cannot be charged
+        List<PaymentResult> results = new ArrayList<>(paymentRequests.size());
+        List<Payment> attempted = new ArrayList<>(paymentRequests.size());
+
+        for (PaymentRequest paymentRequest : paymentRequests) {
+            Payment payment = paymentRequest.getPayment();
+            Currency currency = payment == null ? null : payment.getCurrency();
+            PaymentResult rejected = null;
+            paymentMetrics.stage(Stage.CUSTOMER_LOOKUP, currency, lookupNanos);
+
+            if (payment == null || !existingCustomerIds.contains(payment.getCustomerId())) {
+                UUID customerId = payment == null ? null : payment.getCustomerId();
+                paymentMetrics.failure(FailureReason.CUSTOMER_NOT_FOUND, currency);
+                rejected = new PaymentResult(customerId, null, PaymentChargeStatus.CUSTOMER_NOT_FOUND,
+                        String.format("Customer with id [%s] not found", customerId));
+            } else {
+                long checkStarted = paymentMetrics.time();
+                boolean currencySupported = isCurrencySupported(currency);
+                paymentMetrics.stage(Stage.CURRENCY_CHECK, currency, paymentMetrics.time() - checkStarted);
+                if (!currencySupported) {
+                    paymentMetrics.failure(FailureReason.CURRENCY_NOT_SUPPORTED, currency);
+                    rejected = new PaymentResult(payment.getCustomerId(), null, PaymentChargeStatus.CURRENCY_NOT_SUPPORTED,
+                            String.format("Currency[%s] not supported", currency));
+                }
+            }
+
+            results.add(rejected);
+            if (rejected == null) {
+                attempted.add(payment);
+            }
+        }
+
+        // 3. Journal the attempts with a single force, then charge them concurrently
+        paymentJournal.chargesAttempted(attempted);
+        List<CompletableFuture<CardPaymentCharge>> charges = new ArrayList<>(paymentRequests.size());
+        for (int i = 0; i < paymentRequests.size(); i++) {
+            charges.add(results.get(i) != null ? null : charge(paymentRequests.get(i).getPayment()));
+        }
+
+        // 4. Collect the outcomes, a declined or failed card only affects its own payment
+        List<Integer> debited = new ArrayList<>();
+        List<Payment> payments = new ArrayList<>();
+        List<CardPaymentCharge> debitedCharges = new ArrayList<>();
+
+        for (int i = 0; i < paymentRequests.size(); i++) {
+            CompletableFuture<CardPaymentCharge> charge = charges.get(i);
+            if (charge == null) {
+                continue;
+            }
+            Payment payment = paymentRequests.get(i).getPayment();
+            try {
+                if (charge.join().isCardDebited()) {
+                    payment.setPaymentId(null);
+                    debited.add(i);
+                    payments.add(payment);
+                    debitedCharges.add(charge.join());
+                } else {
+                    paymentMetrics.failure(FailureReason.CARD_NOT_DEBITED, payment.getCurrency());
+                    paymentJournal.chargeDeclined(payment.getCustomerId(), payment);
+                    results.set(i, new PaymentResult(payment.getCustomerId(), null, PaymentChargeStatus.CARD_NOT_DEBITED,
+                            String.format("Card not debited for customer %s", payment.getCustomerId())));
+                }
+            } catch (CompletionException e) {
+                paymentMetrics.failure(FailureReason.PROCESSOR_EXCEPTION, payment.getCurrency());
+                paymentJournal.chargeFailed(payment.getCustomerId(), payment, e.getCause().getMessage());
+                results.set(i, new PaymentResult(payment.getCustomerId(), null, PaymentChargeStatus.FAILED,
+                        e.getCause().getMessage()));
+            }
+        }
+
+        // 5. Insert the debited payments together, hibernate.jdbc.batch_size groups the statements.
+        // Their ids were cleared above, a client's id would make each save a separate merge.
+        // If the insert fails the cards stay charged, so each of them gets a SAVE_FAILED
+        // result with its charge id rather than the whole request failing without them.
+        long saveStarted = paymentMetrics.time();
+        List<Payment> saved;
+        try {
+            saved = paymentRecorder.recordAll(payments);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < debited.size(); i++) {
+                Payment payment = payments.get(i);
+                paymentMetrics.failure(FailureReason.SAVE_FAILED, payment.getCurrency());
+                paymentJournal.chargeFailed(payment.getCustomerId(), payment, e.getMessage());
+                results.set(debited.get(i), new PaymentResult(payment.getCustomerId(), null,
+                        PaymentChargeStatus.SAVE_FAILED, "Card debited but the payment could not be saved",
+                        debitedCharges.get(i).getChargeId()));
+            }
+            return results;
+        }
+        long saveNanos = paymentMetrics.time() - saveStarted;
+        payments.forEach(payment -> paymentMetrics.stage(Stage.SAVE, payment.getCurrency(), saveNanos));
+
+        for (int i = 0; i < debited.size(); i++) {
+            Payment payment = saved.get(i);
+            results.set(debited.get(i), new PaymentResult(payment.getCustomerId(), payment.getPaymentId(),
+                    PaymentChargeStatus.CHARGED, null));
+        }
+
+        return results;
+    }
+
+    @Transactional(readOnly = true)
+    public PaymentHistoryPage getPaymentHistory(UUID customerId, Long before, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<PaymentSummary> payments = paymentRepository.selectPaymentHistory(
+                customerId,
+                before == null ? Long.MAX_VALUE : before,
+                PageRequest.of(0, pageSize));
+
+        Long nextCursor = payments.size() == pageSize
+                ? payments.get(payments.size() - 1).getPaymentId()
+                : null;
+        return new PaymentHistoryPage(payments, nextCursor);
+    }
+
+    // Completes once the charge is timed, so the time is recorded before the batch reads it
+    private CompletableFuture<CardPaymentCharge> charge(Payment payment) {
+        long started = paymentMetrics.time();
+        return asyncCardPaymentCharger.chargeCardAsync(
+                payment.getSource(),
+                payment.getAmount(),
+                payment.getCurrency(),
+                payment.getDescription())
+                .whenComplete((cardPaymentCharge, e) ->
+                        paymentMetrics.stage(Stage.CHARGE, payment.getCurrency(), paymentMetrics.time() - started));
+    }
+
+    private static CardPaymentCharge join(CompletableFuture<CardPaymentCharge> charge) {
+        try {
+            return charge.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot make card charge", e.getCause());
+        }
+    }
+
+    private static Throwable causeOf(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static boolean isCurrencySupported(Currency currency) {
+        return ACCEPTED_CURRENCIES.contains(currency);
+    }
 }
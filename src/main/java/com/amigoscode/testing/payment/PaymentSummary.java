@@ -0,0 +1,44 @@
+package com.amigoscode.testing.payment;
+
+import java.math.BigDecimal;
+
+public class PaymentSummary {
+
+    private final long paymentId;
+    private final BigDecimal amount;
+    private final Currency currency;
+    private final String description;
+
+    public PaymentSummary(long paymentId, BigDecimal amount, Currency currency, String description) {
+        this.paymentId = paymentId;
+        this.amount = amount;
+        this.currency = currency;
+        this.description = description;
+    }
+
+    public long getPaymentId() {
+        return paymentId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentSummary{" +
+                "paymentId=" + paymentId +
+                ", amount=" + amount +
+                ", currency=" + currency +
+                ", description='" + description + '\'' +
+                '}';
+    }
+}
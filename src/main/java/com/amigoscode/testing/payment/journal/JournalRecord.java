@@ -0,0 +1,184 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+// One entry of the PaymentJournal. Written as fixed-size fields followed by
+// length-prefixed bytes, with a length of -1 for a missing value.
+public final class JournalRecord {
+
+    public enum Type {
+        CHARGE_ATTEMPTED,
+        CHARGE_DECLINED,
+        CHARGE_FAILED,
+        PAYMENT_RECORDED
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    static final long NO_PAYMENT_ID = -1;
+
+    private final Type type;
+    private final Instant timestamp;
+    private final UUID customerId;
+    private final long paymentId;
+    private final BigDecimal amount;
+    private final Currency currency;
+    private final String source;
+    private final String description;
+    private final String failure;
+
+    public JournalRecord(Type type, Instant timestamp, UUID customerId, long paymentId, BigDecimal amount,
+                         Currency currency, String source, String description, String failure) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.customerId = customerId;
+        this.paymentId = paymentId;
+        this.amount = amount;
+        this.currency = currency;
+        this.source = source;
+        this.description = description;
+        this.failure = failure;
+    }
+
+    static JournalRecord of(Type type, Instant timestamp, UUID customerId, long paymentId, Payment payment,
+                            String failure) {
+        return new JournalRecord(type, timestamp, customerId, paymentId, payment.getAmount(),
+                payment.getCurrency(), payment.getSource(), payment.getDescription(), failure);
+    }
+
+    byte[] encode() {
+        byte[] unscaled = amount == null ? null : amount.unscaledValue().toByteArray();
+        byte[] sourceBytes = bytes(source);
+        byte[] descriptionBytes = bytes(description);
+        byte[] failureBytes = bytes(failure);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 1 + 16 + 8 + 1 + 4
+                + size(unscaled) + size(sourceBytes) + size(descriptionBytes) + size(failureBytes));
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(timestamp.toEpochMilli());
+        buffer.put((byte) (customerId == null ? 0 : 1));
+        buffer.putLong(customerId == null ? 0 : customerId.getMostSignificantBits());
+        buffer.putLong(customerId == null ? 0 : customerId.getLeastSignificantBits());
+        buffer.putLong(paymentId);
+        buffer.put((byte) (currency == null ? -1 : currency.ordinal()));
+        buffer.putInt(amount == null ? 0 : amount.scale());
+        put(buffer, unscaled);
+        put(buffer, sourceBytes);
+        put(buffer, descriptionBytes);
+        put(buffer, failureBytes);
+        return buffer.array();
+    }
+
+    static JournalRecord decode(ByteBuffer buffer) {
+        Type type = TYPES[buffer.get()];
+        Instant timestamp = Instant.ofEpochMilli(buffer.getLong());
+        boolean hasCustomerId = buffer.get() == 1;
+        long mostSignificantBits = buffer.getLong();
+        long leastSignificantBits = buffer.getLong();
+        long paymentId = buffer.getLong();
+        byte currency = buffer.get();
+        int scale = buffer.getInt();
+        byte[] unscaled = get(buffer);
+        return new JournalRecord(type, timestamp,
+                hasCustomerId ? new UUID(mostSignificantBits, leastSignificantBits) : null,
+                paymentId,
+                unscaled == null ? null : new BigDecimal(new BigInteger(unscaled), scale),
+                currency < 0 ? null : CURRENCIES[currency],
+                string(get(buffer)),
+                string(get(buffer)),
+                string(get(buffer)));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public long getPaymentId() {
+        return paymentId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public Payment toPayment() {
+        return new Payment(paymentId, customerId, amount, currency, source, description);
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "type=" + type +
+                ", timestamp=" + timestamp +
+                ", customerId=" + customerId +
+                ", paymentId=" + paymentId +
+                ", amount=" + amount +
+                ", currency=" + currency +
+                ", source='" + source + '\'' +
+                ", description='" + description + '\'' +
+                ", failure='" + failure + '\'' +
+                '}';
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int size(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void put(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+    }
+
+    private static byte[] get(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
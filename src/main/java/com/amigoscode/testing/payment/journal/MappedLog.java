@@ -0,0 +1,284 @@
+package com.amigoscode.testing.payment.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// An append-only log of byte records kept in memory-mapped segment files, each named
+// after the log position it starts at. A record is its length, the CRC32C of its bytes
+// and the bytes; a zero length marks the end of what was written to a segment.
+//
+// Appending only copies into the mapping. force makes the records up to a position
+// durable, and a thread calling it while another one is already forcing waits for that
+// force and then, if it still needs one, does the next, so under load one fsync covers
+// the records of every thread that was waiting (group commit).
+//
+// A crash can leave the last record half written. Opening the log finds the first record
+// of the last segment whose CRC does not match, and zeroes the segment from there on.
+public class MappedLog implements AutoCloseable {
+
+    static final int HEADER_SIZE = 8;
+
+    // Passed each record in log order, with the buffer positioned on its bytes
+    public interface RecordHandler {
+        void accept(long position, ByteBuffer record);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Long> segmentBases;
+
+    private Segment current;
+    private int writeOffset;
+    private boolean closed;
+    private long forces;
+
+    // Guards the group commit, taken after the log's own lock and never before it
+    private final Object forceLock = new Object();
+    private long forcedPosition;
+    private boolean forcing;
+
+    private MappedLog(Path directory, int segmentSize, List<Long> segmentBases) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segmentBases = segmentBases;
+
+        long base = segmentBases.get(segmentBases.size() - 1);
+        this.current = Segment.map(segmentPath(base), base, segmentSize);
+        this.writeOffset = recover(current.buffer);
+        this.forcedPosition = base + writeOffset;
+    }
+
+    public static MappedLog open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalStateException(String.format("Segment size must be more than %s but was %s",
+                    HEADER_SIZE, segmentSize));
+        }
+        Files.createDirectories(directory);
+
+        List<Long> segmentBases;
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentBases = files
+                    .map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("\\d{20}\\.log"))
+                    .map(name -> Long.parseLong(name.substring(0, 20)))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+        if (segmentBases.isEmpty()) {
+            segmentBases.add(0L);
+        }
+        return new MappedLog(directory, segmentSize, segmentBases);
+    }
+
+    // Returns the position just past the record, which is what force needs to make it durable
+    public synchronized long append(byte[] record, int offset, int length) {
+        if (closed) {
+            throw new IllegalStateException(String.format("Log in %s is closed", directory));
+        }
+        if (length > segmentSize - HEADER_SIZE) {
+            throw new IllegalStateException(String.format("Record of %s bytes does not fit in a segment of %s bytes",
+                    length, segmentSize));
+        }
+        if (writeOffset + HEADER_SIZE + length > current.buffer.capacity()) {
+            roll();
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(record, offset, length);
+
+        MappedByteBuffer buffer = current.buffer;
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(writeOffset + HEADER_SIZE);
+        payload.put(record, offset, length);
+        buffer.putInt(writeOffset + 4, (int) crc.getValue());
+        // The length goes last, until it is there the record reads as the end of the segment
+        buffer.putInt(writeOffset, length);
+
+        writeOffset += HEADER_SIZE + length;
+        return current.base + writeOffset;
+    }
+
+    public void force(long position) {
+        long forced;
+        synchronized (forceLock) {
+            while (forcing && forcedPosition < position) {
+                try {
+                    forceLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the log to be forced", e);
+                }
+            }
+            if (forcedPosition >= position) {
+                return;
+            }
+            forcing = true;
+            forced = forcedPosition;
+        }
+
+        try {
+            MappedByteBuffer buffer;
+            synchronized (this) {
+                buffer = current.buffer;
+                forced = current.base + writeOffset;
+                forces++;
+            }
+            // Appends carry on meanwhile, whatever of them makes it into this force is a bonus
+            buffer.force();
+        } finally {
+            synchronized (forceLock) {
+                forcing = false;
+                forcedPosition = Math.max(forcedPosition, forced);
+                forceLock.notifyAll();
+            }
+        }
+    }
+
+    // Reads every record appended before the call. A record that does not match its CRC
+    // can only be the work of something other than this log, so it is not skipped.
+    public long replay(RecordHandler handler) throws IOException {
+        List<Long> bases;
+        ByteBuffer last;
+        int end;
+        synchronized (this) {
+            bases = new ArrayList<>(segmentBases);
+            last = current.buffer.duplicate();
+            end = writeOffset;
+        }
+
+        long records = 0;
+        for (int i = 0; i < bases.size(); i++) {
+            long base = bases.get(i);
+            ByteBuffer segment;
+            if (i == bases.size() - 1) {
+                segment = last;
+            } else {
+                try (FileChannel channel = FileChannel.open(segmentPath(base), StandardOpenOption.READ)) {
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            int limit = i == bases.size() - 1 ? end : segment.capacity();
+            records += replaySegment(base, segment, limit, handler);
+        }
+        return records;
+    }
+
+    public synchronized long getPosition() {
+        return current.base + writeOffset;
+    }
+
+    public synchronized long getForces() {
+        return forces;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        current.buffer.force();
+        current.channel.close();
+    }
+
+    private long replaySegment(long base, ByteBuffer segment, int limit, RecordHandler handler) {
+        long records = 0;
+        int offset = 0;
+        while (offset + HEADER_SIZE <= limit) {
+            int length = segment.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (!isIntact(segment, offset, limit)) {
+                throw new IllegalStateException(String.format("Corrupt record at position %s in %s",
+                        base + offset, segmentPath(base)));
+            }
+            ByteBuffer record = segment.duplicate();
+            record.limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+            handler.accept(base + offset, record.slice());
+            offset += HEADER_SIZE + length;
+            records++;
+        }
+        return records;
+    }
+
+    private void roll() {
+        long base = current.base + writeOffset;
+        current.buffer.force();
+        try {
+            current.channel.close();
+            current = Segment.map(segmentPath(base), base, segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Cannot start log segment %s", segmentPath(base)), e);
+        }
+        segmentBases.add(base);
+        writeOffset = 0;
+        synchronized (forceLock) {
+            forcedPosition = Math.max(forcedPosition, base);
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%020d.log", base));
+    }
+
+    // Returns where the next record goes
+    private static int recover(MappedByteBuffer segment) {
+        int offset = 0;
+        while (offset + HEADER_SIZE <= segment.capacity() && segment.getInt(offset) != 0) {
+            if (!isIntact(segment, offset, segment.capacity())) {
+                // Later records may have reached the disk before this one, they go as well
+                for (int i = offset; i < segment.capacity(); i++) {
+                    segment.put(i, (byte) 0);
+                }
+                segment.force();
+                break;
+            }
+            offset += HEADER_SIZE + segment.getInt(offset);
+        }
+        return offset;
+    }
+
+    private static boolean isIntact(ByteBuffer segment, int offset, int limit) {
+        int length = segment.getInt(offset);
+        if (length < 0 || length > limit - offset - HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer record = segment.duplicate();
+        record.limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        return (int) crc.getValue() == segment.getInt(offset + 4);
+    }
+
+    private static final class Segment {
+
+        private final long base;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long base, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        // A segment written with a larger segment size is kept at its size
+        private static Segment map(Path path, long base, int segmentSize) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = Math.max(segmentSize, channel.size());
+            return new Segment(base, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+}
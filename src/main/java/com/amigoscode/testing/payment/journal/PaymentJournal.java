@@ -0,0 +1,165 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.journal.JournalRecord.Type;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Every charge attempt, its outcome and every recorded payment, appended to a MappedLog
+// in the order they happened. A call returns once its record is on disk, so a charge
+// attempt is durable before the card is charged. The Payment table can be rebuilt from
+// the recorded payments by the PaymentProjection.
+//
+// Appends that fail are counted in payment.journal.append.failures. A failed charge
+// record fails its charge, but recorded payments are journaled after their transaction
+// commits, where failing is too late: they are only logged and counted, and a journal
+// that is missing them cannot restore them.
+@Component
+public class PaymentJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaymentJournal.class);
+
+    private final MappedLog log;
+    private final Clock clock;
+    private final Counter appendFailures;
+
+    @Autowired
+    public PaymentJournal(@Value("${payment.journal.enabled:false}") boolean enabled,
+                          @Value("${payment.journal.directory:payment-journal}") Path directory,
+                          @Value("${payment.journal.segment-size:67108864}") int segmentSize,
+                          MeterRegistry meterRegistry) {
+        this(enabled ? open(directory, segmentSize) : null, Clock.systemUTC(), meterRegistry);
+    }
+
+    PaymentJournal(MappedLog log, Clock clock, MeterRegistry meterRegistry) {
+        this.log = log;
+        this.clock = clock;
+        this.appendFailures = Counter.builder("payment.journal.append.failures")
+                .description("Appends to the payment journal that failed, a batch of records counts once")
+                .register(meterRegistry);
+    }
+
+    public static PaymentJournal disabled() {
+        return new PaymentJournal(null, Clock.systemUTC(), new SimpleMeterRegistry());
+    }
+
+    public boolean isEnabled() {
+        return log != null;
+    }
+
+    public void chargeAttempted(UUID customerId, Payment payment) {
+        append(Type.CHARGE_ATTEMPTED, customerId, payment, null);
+    }
+
+    // The attempts of a batch, with one force for all of them
+    public void chargesAttempted(Iterable<Payment> payments) {
+        if (log == null) {
+            return;
+        }
+        appendAll(Type.CHARGE_ATTEMPTED, payments);
+    }
+
+    public void chargeDeclined(UUID customerId, Payment payment) {
+        append(Type.CHARGE_DECLINED, customerId, payment, null);
+    }
+
+    public void chargeFailed(UUID customerId, Payment payment, String failure) {
+        append(Type.CHARGE_FAILED, customerId, payment, failure);
+    }
+
+    // Journaled once the transaction saving the payments commits, a rollback leaves no trace
+    public void paymentsRecorded(Iterable<Payment> payments) {
+        if (log == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            appendAll(Type.PAYMENT_RECORDED, payments);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // The payments are saved by now, failing the caller would only make it retry them
+                try {
+                    appendAll(Type.PAYMENT_RECORDED, payments);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Recorded payments are missing from the payment journal", e);
+                }
+            }
+        });
+    }
+
+    public long replay(Consumer<JournalRecord> consumer) {
+        if (log == null) {
+            return 0;
+        }
+        try {
+            return log.replay((position, record) -> consumer.accept(JournalRecord.decode(record)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot replay payment journal", e);
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    private void append(Type type, UUID customerId, Payment payment, String failure) {
+        if (log == null) {
+            return;
+        }
+        byte[] record = JournalRecord.of(type, clock.instant(), customerId, JournalRecord.NO_PAYMENT_ID,
+                payment, failure).encode();
+        try {
+            log.force(log.append(record, 0, record.length));
+        } catch (RuntimeException e) {
+            appendFailures.increment();
+            throw e;
+        }
+    }
+
+    // One force for the whole batch
+    private void appendAll(Type type, Iterable<Payment> payments) {
+        try {
+            long position = -1;
+            for (Payment payment : payments) {
+                long paymentId = type == Type.PAYMENT_RECORDED ? payment.getPaymentId() : JournalRecord.NO_PAYMENT_ID;
+                byte[] record = JournalRecord.of(type, clock.instant(), payment.getCustomerId(),
+                        paymentId, payment, null).encode();
+                position = log.append(record, 0, record.length);
+            }
+            if (position >= 0) {
+                log.force(position);
+            }
+        } catch (RuntimeException e) {
+            appendFailures.increment();
+            throw e;
+        }
+    }
+
+    private static MappedLog open(Path directory, int segmentSize) {
+        try {
+            return MappedLog.open(directory, segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Cannot open payment journal in %s", directory), e);
+        }
+    }
+}
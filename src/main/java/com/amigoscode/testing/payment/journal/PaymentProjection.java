@@ -0,0 +1,111 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.PaymentRepository;
+import com.amigoscode.testing.shard.ShardContext;
+import com.amigoscode.testing.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Rebuilds the Payment table from the PaymentJournal: every recorded payment missing
+// from the table is inserted again under its original id. With
+// payment.journal.rebuild-on-startup it runs before the application takes requests,
+// e.g. to fill an in-memory database from the journal of the previous run.
+//
+// The payment id sequence is then moved past the restored ids, through H2's
+// information_schema like the ShardSchemaInitializer does. On any other database
+// it has to be moved by hand.
+@Component
+public class PaymentProjection implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaymentProjection.class);
+
+    private final PaymentJournal paymentJournal;
+    private final PaymentRepository paymentRepository;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean rebuildOnStartup;
+
+    @Autowired
+    public PaymentProjection(PaymentJournal paymentJournal,
+                             PaymentRepository paymentRepository,
+                             ShardRouter shardRouter,
+                             DataSource dataSource,
+                             @Value("${payment.journal.rebuild-on-startup:false}") boolean rebuildOnStartup) {
+        this(paymentJournal, paymentRepository, shardRouter, new JdbcTemplate(dataSource), rebuildOnStartup);
+    }
+
+    PaymentProjection(PaymentJournal paymentJournal,
+                      PaymentRepository paymentRepository,
+                      ShardRouter shardRouter,
+                      JdbcTemplate jdbcTemplate,
+                      boolean rebuildOnStartup) {
+        this.paymentJournal = paymentJournal;
+        this.paymentRepository = paymentRepository;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.rebuildOnStartup = rebuildOnStartup;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!rebuildOnStartup || !paymentJournal.isEnabled()) {
+            return;
+        }
+        LOGGER.info("Rebuilding payments from the payment journal");
+        LOGGER.info("Restored {} payments from the payment journal", rebuild());
+    }
+
+    // Returns how many payments were missing. Each one is inserted in its own transaction,
+    // so a rebuild that fails half way can simply be run again.
+    public int rebuild() {
+        Map<Integer, Long> restoredUpTo = new HashMap<>();
+        int[] restored = {0};
+
+        paymentJournal.replay(record -> {
+            if (record.getType() != JournalRecord.Type.PAYMENT_RECORDED
+                    || paymentRepository.countByCustomerIdAndPaymentId(
+                            record.getCustomerId(), record.getPaymentId()) > 0) {
+                return;
+            }
+            paymentRepository.saveWithId(record.getCustomerId(), record.getPaymentId(), record.getAmount(),
+                    record.getCurrency().ordinal(), record.getSource(), record.getDescription());
+            restoredUpTo.merge(shardRouter.shardFor(record.getCustomerId()), record.getPaymentId(), Math::max);
+            restored[0]++;
+        });
+
+        restoredUpTo.forEach(this::moveSequencePast);
+        return restored[0];
+    }
+
+    // A pooled sequence hands out the increment - 1 ids below the value it returns,
+    // restarting at the id plus the increment makes the next id the one after it
+    private void moveSequencePast(int shard, long paymentId) {
+        ShardContext.on(shard, () -> {
+            try {
+                List<Long> increments = jdbcTemplate.queryForList(
+                        "select increment from information_schema.sequences " +
+                                "where sequence_schema = 'PUBLIC' and sequence_name = 'PAYMENT_ID_SEQ' " +
+                                "and current_value < ?", Long.class, paymentId);
+                for (Long increment : increments) {
+                    jdbcTemplate.execute("alter sequence payment_id_seq restart with " + (paymentId + increment));
+                }
+            } catch (DataAccessException e) {
+                LOGGER.warn("Could not move payment_id_seq past restored payment {}, it has to be moved by hand",
+                        paymentId, e);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Per customer, currency and month totals of the recorded payments. A committed payment
+// is only added to an in-memory buffer, and the buffer is written to the PaymentTotal
+// table in the background, one update per total rather than one per payment. Reads
+// add what is still buffered to the stored totals, so they are never behind.
+//
+// Buffered totals are written when the application shuts down, a crash loses at most
+// one flush interval of them. With several instances a read only sees this instance's
+// buffer, so totals from the others can be up to one flush interval old.
+@Component
+public class PaymentLedger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaymentLedger.class);
+
+    private final PaymentTotalRepository paymentTotalRepository;
+    private final ShardRouter shardRouter;
+    private final TransactionOperations transactionOperations;
+    private final Clock clock;
+
+    private final Map<PaymentTotalId, PendingTotal> pending = new ConcurrentHashMap<>();
+    // Keeps a read from running while a flush moves totals from the buffer to the table
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public PaymentLedger(PaymentTotalRepository paymentTotalRepository,
+                         ShardRouter shardRouter,
+                         TransactionOperations transactionOperations) {
+        this(paymentTotalRepository, shardRouter, transactionOperations, Clock.systemUTC());
+    }
+
+    PaymentLedger(PaymentTotalRepository paymentTotalRepository,
+                  ShardRouter shardRouter,
+                  TransactionOperations transactionOperations,
+                  Clock clock) {
+        this.paymentTotalRepository = paymentTotalRepository;
+        this.shardRouter = shardRouter;
+        this.transactionOperations = transactionOperations;
+        this.clock = clock;
+    }
+
+    // Counted once the transaction saving the payments commits, a rollback leaves no trace
+    public void paymentsRecorded(Iterable<Payment> payments) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(payments);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(payments);
+            }
+        });
+    }
+
+    public List<PaymentTotalSummary> getTotals(UUID customerId, YearMonth yearMonth) {
+        Map<Currency, PendingTotal> totals = new EnumMap<>(Currency.class);
+
+        flushLock.readLock().lock();
+        try {
+            for (PaymentTotal total : paymentTotalRepository.selectTotals(customerId, PaymentTotalId.toInt(yearMonth))) {
+                totals.put(total.getCurrency(), new PendingTotal(total.getTotalAmount(), total.getPaymentCount()));
+            }
+            for (Currency currency : Currency.values()) {
+                PendingTotal buffered = pending.get(new PaymentTotalId(customerId, currency, yearMonth));
+                if (buffered != null) {
+                    totals.merge(currency, buffered, PendingTotal::plus);
+                }
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+
+        List<PaymentTotalSummary> summaries = new ArrayList<>(totals.size());
+        totals.forEach((currency, total) ->
+                summaries.add(new PaymentTotalSummary(currency, yearMonth, total.amount, total.count)));
+        return summaries;
+    }
+
+    // Writes the buffered totals, one transaction per shard. Totals of a shard that
+    // failed go back into the buffer and are written by the next flush.
+    @Scheduled(fixedDelayString = "${payment.ledger.flush-interval-ms:1000}")
+    public int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        flushLock.writeLock().lock();
+        try {
+            Map<PaymentTotalId, PendingTotal> drained = new HashMap<>();
+            for (PaymentTotalId id : pending.keySet()) {
+                PendingTotal total = pending.remove(id);
+                if (total != null) {
+                    drained.put(id, total);
+                }
+            }
+
+            int written = 0;
+            for (List<PaymentTotalId> ids : shardRouter.partition(drained.keySet(), PaymentTotalId::getCustomerId).values()) {
+                try {
+                    transactionOperations.executeWithoutResult(status -> ids.forEach(id -> write(id, drained.get(id))));
+                    written += ids.size();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Could not write {} payment totals, retrying with the next flush", ids.size(), e);
+                    ids.forEach(id -> pending.merge(id, drained.get(id), PendingTotal::plus));
+                }
+            }
+            return written;
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private void add(Iterable<Payment> payments) {
+        YearMonth yearMonth = YearMonth.now(clock.withZone(ZoneOffset.UTC));
+        for (Payment payment : payments) {
+            pending.merge(new PaymentTotalId(payment.getCustomerId(), payment.getCurrency(), yearMonth),
+                    new PendingTotal(payment.getAmount(), 1), PendingTotal::plus);
+        }
+    }
+
+    private void write(PaymentTotalId id, PendingTotal total) {
+        int updated = paymentTotalRepository.addToTotal(id.getCustomerId(), id.getCurrency(),
+                PaymentTotalId.toInt(id.getYearMonth()), total.amount, total.count);
+        if (updated == 0) {
+            paymentTotalRepository.save(new PaymentTotal(id, total.amount, total.count));
+        }
+    }
+
+    private static final class PendingTotal {
+
+        private final BigDecimal amount;
+        private final long count;
+
+        private PendingTotal(BigDecimal amount, long count) {
+            this.amount = amount;
+            this.count = count;
+        }
+
+        private PendingTotal plus(PendingTotal other) {
+            return new PendingTotal(amount.add(other.amount), count + other.count);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Transient;
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.UUID;
+
+// Running total of a customer's payments in one currency and month, kept up to date
+// by the PaymentLedger so reading it never scans the payment table
+@Entity
+@IdClass(PaymentTotalId.class)
+public class PaymentTotal implements Persistable<PaymentTotalId> {
+
+    @Id
+    private UUID customerId;
+
+    @Id
+    private Currency currency;
+
+    @Id
+    private int yearMonth;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalAmount;
+
+    private long paymentCount;
+
+    // New rows are inserted, existing ones are only changed by PaymentTotalRepository.addToTotal
+    @Transient
+    private boolean isNew = true;
+
+    public PaymentTotal(PaymentTotalId id, BigDecimal totalAmount, long paymentCount) {
+        this.customerId = id.getCustomerId();
+        this.currency = id.getCurrency();
+        this.yearMonth = PaymentTotalId.toInt(id.getYearMonth());
+        this.totalAmount = totalAmount;
+        this.paymentCount = paymentCount;
+    }
+
+    public PaymentTotal() {
+    }
+
+    @Override
+    public PaymentTotalId getId() {
+        return new PaymentTotalId(customerId, currency, getYearMonth());
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public YearMonth getYearMonth() {
+        return PaymentTotalId.toYearMonth(yearMonth);
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public long getPaymentCount() {
+        return paymentCount;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentTotal{" +
+                "customerId=" + customerId +
+                ", currency=" + currency +
+                ", yearMonth=" + yearMonth +
+                ", totalAmount=" + totalAmount +
+                ", paymentCount=" + paymentCount +
+                '}';
+    }
+}
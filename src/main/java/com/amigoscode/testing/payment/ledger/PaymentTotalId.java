@@ -0,0 +1,70 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+
+import java.io.Serializable;
+import java.time.YearMonth;
+import java.util.Objects;
+import java.util.UUID;
+
+// One customer's payments in one currency and one calendar month (UTC)
+public class PaymentTotalId implements Serializable {
+
+    private UUID customerId;
+    private Currency currency;
+    private int yearMonth;
+
+    public PaymentTotalId(UUID customerId, Currency currency, YearMonth yearMonth) {
+        this.customerId = customerId;
+        this.currency = currency;
+        this.yearMonth = toInt(yearMonth);
+    }
+
+    public PaymentTotalId() {
+    }
+
+    // 2020-01 is stored as 202001, so months sort and compare as numbers
+    static int toInt(YearMonth yearMonth) {
+        return yearMonth.getYear() * 100 + yearMonth.getMonthValue();
+    }
+
+    static YearMonth toYearMonth(int yearMonth) {
+        return YearMonth.of(yearMonth / 100, yearMonth % 100);
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public YearMonth getYearMonth() {
+        return toYearMonth(yearMonth);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PaymentTotalId)) return false;
+        PaymentTotalId that = (PaymentTotalId) o;
+        return yearMonth == that.yearMonth &&
+                Objects.equals(customerId, that.customerId) &&
+                currency == that.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(customerId, currency, yearMonth);
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentTotalId{" +
+                "customerId=" + customerId +
+                ", currency=" + currency +
+                ", yearMonth=" + yearMonth +
+                '}';
+    }
+}
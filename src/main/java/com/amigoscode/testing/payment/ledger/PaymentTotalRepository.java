@@ -0,0 +1,31 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+public interface PaymentTotalRepository extends CrudRepository<PaymentTotal, PaymentTotalId> {
+
+    // Adds in the database instead of reading the row first, so two flushes cannot
+    // overwrite each other. Returns 0 when the row does not exist yet.
+    @Modifying
+    @Transactional
+    @Query("update PaymentTotal t " +
+            "set t.totalAmount = t.totalAmount + :amount, t.paymentCount = t.paymentCount + :count " +
+            "where t.customerId = :customerId and t.currency = :currency and t.yearMonth = :yearMonth")
+    int addToTotal(@Param("customerId") UUID customerId,
+                   @Param("currency") Currency currency,
+                   @Param("yearMonth") int yearMonth,
+                   @Param("amount") BigDecimal amount,
+                   @Param("count") long count);
+
+    @Query("select t from PaymentTotal t where t.customerId = :customerId and t.yearMonth = :yearMonth")
+    List<PaymentTotal> selectTotals(@Param("customerId") UUID customerId, @Param("yearMonth") int yearMonth);
+}
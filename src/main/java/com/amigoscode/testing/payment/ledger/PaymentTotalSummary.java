@@ -0,0 +1,47 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+public class PaymentTotalSummary {
+
+    private final Currency currency;
+    private final YearMonth yearMonth;
+    private final BigDecimal totalAmount;
+    private final long paymentCount;
+
+    public PaymentTotalSummary(Currency currency, YearMonth yearMonth, BigDecimal totalAmount, long paymentCount) {
+        this.currency = currency;
+        this.yearMonth = yearMonth;
+        this.totalAmount = totalAmount;
+        this.paymentCount = paymentCount;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public YearMonth getYearMonth() {
+        return yearMonth;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public long getPaymentCount() {
+        return paymentCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentTotalSummary{" +
+                "currency=" + currency +
+                ", yearMonth=" + yearMonth +
+                ", totalAmount=" + totalAmount +
+                ", paymentCount=" + paymentCount +
+                '}';
+    }
+}
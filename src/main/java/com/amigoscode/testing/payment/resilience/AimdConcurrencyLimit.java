@@ -0,0 +1,71 @@
+package com.amigoscode.testing.payment.resilience;
+
+import java.time.Duration;
+
+// Additive increase, multiplicative decrease: every call that comes back within the
+// latency threshold while the limit is in use raises it by one, every slow or failed
+// call multiplies it by backoffRatio. The limit follows what the processor can take
+// instead of a number picked up front.
+public class AimdConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    private int limit;
+    private int inFlight;
+
+    public AimdConcurrencyLimit(int initialLimit,
+                                int minLimit,
+                                int maxLimit,
+                                double backoffRatio,
+                                Duration latencyThreshold) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    public synchronized void onSuccess(long latencyNanos) {
+        // Only grow while the limit is actually what holds callers back
+        boolean saturated = inFlight * 2 >= limit;
+        inFlight--;
+        if (latencyNanos > latencyThresholdNanos) {
+            backoff();
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    public synchronized void onFailure() {
+        inFlight--;
+        backoff();
+    }
+
+    // The call that was permitted never reached the processor
+    public synchronized void onRejected() {
+        inFlight--;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void backoff() {
+        limit = Math.max(minLimit, (int) (limit * backoffRatio));
+    }
+}
@@ -0,0 +1,12 @@
+package com.amigoscode.testing.payment.resilience;
+
+public class PaymentProcessorUnavailableException extends IllegalStateException {
+
+    public PaymentProcessorUnavailableException(String message) {
+        super(message);
+    }
+
+    public PaymentProcessorUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
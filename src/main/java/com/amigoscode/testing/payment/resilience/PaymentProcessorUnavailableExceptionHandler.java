@@ -0,0 +1,17 @@
+package com.amigoscode.testing.payment.resilience;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class PaymentProcessorUnavailableExceptionHandler {
+
+    // An open circuit, a full bulkhead or a full payment executor: the payment was not
+    // charged and the client may try again later
+    @ExceptionHandler(PaymentProcessorUnavailableException.class)
+    public ResponseEntity<String> handle(PaymentProcessorUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
+}
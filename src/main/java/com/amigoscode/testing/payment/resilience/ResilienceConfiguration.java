@@ -0,0 +1,134 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.BatchCardPaymentCharger;
+import com.amigoscode.testing.payment.CardPaymentCharger;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Wraps the configured CardPaymentCharger, whichever it is, in a ResilientCardPaymentCharger
+// and makes that the one the rest of the application is given. A charger with a batch API
+// keeps it, wrapped in a ResilientBatchCardPaymentCharger.
+@Configuration
+@ConditionalOnProperty(
+        value = "payment.resilience.enabled",
+        havingValue = "true"
+)
+public class ResilienceConfiguration {
+
+    @Bean
+    public CircuitBreaker paymentCircuitBreaker(
+            @Value("${payment.resilience.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${payment.resilience.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${payment.resilience.circuit-breaker.open-duration:PT10S}") Duration openDuration,
+            @Value("${payment.resilience.circuit-breaker.half-open-probes:3}") int halfOpenProbes) {
+        return new CircuitBreaker(windowSize, failureRateThreshold, openDuration, halfOpenProbes, Clock.systemUTC());
+    }
+
+    @Bean
+    public Bulkhead paymentBulkhead(
+            @Value("${payment.resilience.bulkhead.max-concurrent:50}") int maxConcurrent,
+            @Value("${payment.resilience.bulkhead.max-wait:PT0.1S}") Duration maxWait) {
+        return new Bulkhead(maxConcurrent, maxWait);
+    }
+
+    @Bean
+    public AimdConcurrencyLimit paymentConcurrencyLimit(
+            @Value("${payment.resilience.limit.initial:20}") int initialLimit,
+            @Value("${payment.resilience.limit.min:1}") int minLimit,
+            @Value("${payment.resilience.limit.max:50}") int maxLimit,
+            @Value("${payment.resilience.limit.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${payment.resilience.limit.latency-threshold:PT1S}") Duration latencyThreshold) {
+        return new AimdConcurrencyLimit(initialLimit, minLimit, maxLimit, backoffRatio, latencyThreshold);
+    }
+
+    // No queue: a call either gets a thread right away or the processor is saturated.
+    // Calls abandoned at their deadline keep their thread until the processor lets go,
+    // which is why the pool is only as large as the bulkhead.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService paymentCallExecutor(Bulkhead paymentBulkhead) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                0,
+                paymentBulkhead.getMaxConcurrent(),
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "payment-call-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Bean
+    @Primary
+    public ResilientCardPaymentCharger resilientCardPaymentCharger(
+            CardPaymentCharger cardPaymentCharger,
+            CircuitBreaker paymentCircuitBreaker,
+            Bulkhead paymentBulkhead,
+            AimdConcurrencyLimit paymentConcurrencyLimit,
+            @Value("${payment.resilience.timeout:PT2S}") Duration timeout,
+            @Qualifier("paymentCallExecutor") ExecutorService paymentCallExecutor) {
+        if (cardPaymentCharger instanceof BatchCardPaymentCharger) {
+            return new ResilientBatchCardPaymentCharger(
+                    (BatchCardPaymentCharger) cardPaymentCharger,
+                    paymentCircuitBreaker,
+                    paymentBulkhead,
+                    paymentConcurrencyLimit,
+                    timeout,
+                    paymentCallExecutor);
+        }
+        return new ResilientCardPaymentCharger(
+                cardPaymentCharger,
+                paymentCircuitBreaker,
+                paymentBulkhead,
+                paymentConcurrencyLimit,
+                timeout,
+                paymentCallExecutor);
+    }
+
+    @Bean
+    public MeterBinder resilientCardPaymentChargerMetrics(ResilientCardPaymentCharger charger) {
+        return registry -> {
+            Gauge.builder("payment.resilience.circuit.state", charger,
+                    c -> c.getCircuitBreaker().getState().ordinal())
+                    .description("0 closed, 1 open, 2 half open")
+                    .register(registry);
+            Gauge.builder("payment.resilience.limit", charger, c -> c.getConcurrencyLimit().getLimit())
+                    .register(registry);
+            Gauge.builder("payment.resilience.in.flight", charger, c -> c.getConcurrencyLimit().getInFlight())
+                    .register(registry);
+            Gauge.builder("payment.resilience.bulkhead.available", charger, c -> c.getBulkhead().getAvailable())
+                    .register(registry);
+            FunctionCounter.builder("payment.resilience.rejections", charger,
+                    ResilientCardPaymentCharger::getCircuitOpenRejections)
+                    .tag("reason", "circuit_open")
+                    .register(registry);
+            FunctionCounter.builder("payment.resilience.rejections", charger,
+                    ResilientCardPaymentCharger::getBulkheadRejections)
+                    .tag("reason", "bulkhead_full")
+                    .register(registry);
+            FunctionCounter.builder("payment.resilience.rejections", charger,
+                    ResilientCardPaymentCharger::getLimitRejections)
+                    .tag("reason", "limit_reached")
+                    .register(registry);
+            FunctionCounter.builder("payment.resilience.timeouts", charger,
+                    ResilientCardPaymentCharger::getTimeouts)
+                    .register(registry);
+        };
+    }
+}
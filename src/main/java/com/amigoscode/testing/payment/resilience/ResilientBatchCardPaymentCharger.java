@@ -0,0 +1,32 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.BatchCardPaymentCharger;
+import com.amigoscode.testing.payment.CardPaymentCharge;
+import com.amigoscode.testing.payment.Payment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+// The ResilientCardPaymentCharger of a delegate that takes batches, so the PaymentBatcher
+// still sees the batch API through the decorator. A batch is one round trip: it passes
+// the circuit breaker, the bulkhead and the concurrency limit once and has one deadline.
+public class ResilientBatchCardPaymentCharger extends ResilientCardPaymentCharger implements BatchCardPaymentCharger {
+
+    private final BatchCardPaymentCharger delegate;
+
+    public ResilientBatchCardPaymentCharger(BatchCardPaymentCharger delegate,
+                                            CircuitBreaker circuitBreaker,
+                                            Bulkhead bulkhead,
+                                            AimdConcurrencyLimit concurrencyLimit,
+                                            Duration timeout,
+                                            ExecutorService callExecutor) {
+        super(delegate, circuitBreaker, bulkhead, concurrencyLimit, timeout, callExecutor);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<CardPaymentCharge> chargeCards(List<Payment> payments) {
+        return guard(() -> delegate.chargeCards(payments));
+    }
+}
@@ -0,0 +1,156 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.CardPaymentCharge;
+import com.amigoscode.testing.payment.CardPaymentCharger;
+import com.amigoscode.testing.payment.Currency;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Decorates any CardPaymentCharger. A call has to get past the circuit breaker, the
+// bulkhead and the adaptive concurrency limit, in that order, and then gets a deadline.
+// Everything that stops a call early throws PaymentProcessorUnavailableException.
+// ResilientBatchCardPaymentCharger puts a batch through the same steps as one call.
+public class ResilientCardPaymentCharger implements CardPaymentCharger {
+
+    private final CardPaymentCharger delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final AimdConcurrencyLimit concurrencyLimit;
+    private final long timeoutNanos;
+    // Runs the delegate so the caller can stop waiting at the deadline
+    private final ExecutorService callExecutor;
+
+    private final LongAdder circuitOpenRejections = new LongAdder();
+    private final LongAdder bulkheadRejections = new LongAdder();
+    private final LongAdder limitRejections = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public ResilientCardPaymentCharger(CardPaymentCharger delegate,
+                                       CircuitBreaker circuitBreaker,
+                                       Bulkhead bulkhead,
+                                       AimdConcurrencyLimit concurrencyLimit,
+                                       Duration timeout,
+                                       ExecutorService callExecutor) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.concurrencyLimit = concurrencyLimit;
+        this.timeoutNanos = timeout.toNanos();
+        this.callExecutor = callExecutor;
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String cardSource, BigDecimal amount, Currency currency, String description) {
+        return guard(() -> delegate.chargeCard(cardSource, amount, currency, description));
+    }
+
+    // Runs one round trip to the processor, a single charge or a whole batch
+    <T> T guard(Callable<T> roundTrip) {
+
+        // 1. Is the processor known to be failing
+        if (!circuitBreaker.tryAcquire()) {
+            circuitOpenRejections.increment();
+            throw new PaymentProcessorUnavailableException("Payment processor circuit breaker is open");
+        }
+
+        // 2. Is there room for one more call
+        if (!bulkhead.tryAcquire()) {
+            circuitBreaker.onRejected();
+            bulkheadRejections.increment();
+            throw new PaymentProcessorUnavailableException("Payment processor bulkhead is full");
+        }
+
+        try {
+            if (!concurrencyLimit.tryAcquire()) {
+                circuitBreaker.onRejected();
+                limitRejections.increment();
+                throw new PaymentProcessorUnavailableException("Payment processor concurrency limit reached");
+            }
+
+            // 3. Call with a deadline
+            return call(roundTrip);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private <T> T call(Callable<T> roundTrip) {
+        long start = System.nanoTime();
+        Future<T> charge;
+        try {
+            charge = callExecutor.submit(roundTrip);
+        } catch (RejectedExecutionException e) {
+            circuitBreaker.onRejected();
+            concurrencyLimit.onRejected();
+            bulkheadRejections.increment();
+            throw new PaymentProcessorUnavailableException("Payment processor bulkhead is full", e);
+        }
+
+        try {
+            T answer = charge.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            circuitBreaker.onSuccess();
+            concurrencyLimit.onSuccess(System.nanoTime() - start);
+            return answer;
+        } catch (TimeoutException e) {
+            charge.cancel(true);
+            timeouts.increment();
+            circuitBreaker.onFailure();
+            concurrencyLimit.onFailure();
+            throw new PaymentProcessorUnavailableException("Payment processor did not answer in time", e);
+        } catch (ExecutionException e) {
+            circuitBreaker.onFailure();
+            concurrencyLimit.onFailure();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot make card charge", e.getCause());
+        } catch (InterruptedException e) {
+            charge.cancel(true);
+            Thread.currentThread().interrupt();
+            circuitBreaker.onRejected();
+            concurrencyLimit.onRejected();
+            throw new PaymentProcessorUnavailableException("Interrupted while waiting for the payment processor", e);
+        }
+    }
+
+    public CardPaymentCharger getDelegate() {
+        return delegate;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public AimdConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public long getCircuitOpenRejections() {
+        return circuitOpenRejections.sum();
+    }
+
+    public long getBulkheadRejections() {
+        return bulkheadRejections.sum();
+    }
+
+    public long getLimitRejections() {
+        return limitRejections.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+}
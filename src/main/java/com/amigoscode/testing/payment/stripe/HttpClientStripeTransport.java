@@ -0,0 +1,156 @@
+package com.amigoscode.testing.payment.stripe;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Keeps connections to Stripe open between charges so only the first charge on each one
+// pays for the TCP and TLS handshakes. The pool is a fixed number of lanes, each its own
+// java.net.http client taken in turn. Over HTTP/2, which Stripe negotiates, a lane is a
+// single connection that carries many charges at once. Over HTTP/1.1 a lane opens one
+// connection per charge it has in flight and keeps them alive, so there are at most
+// poolSize * maxConcurrentRequests connections.
+//
+// A lane keeps its client for as long as the transport lives: JDK 11 has no way to close
+// a client, and one that is dropped keeps its selector thread and sockets until it is
+// garbage collected. Idle connections are closed by the client itself instead, after
+// jdk.httpclient.keepalive.timeout seconds, 1200 by default. That is a JVM-wide setting
+// read once, so it belongs on the command line rather than here, e.g.
+// -Djdk.httpclient.keepalive.timeout=50 to close them before a 60 second load balancer
+// does. JDK 11 applies it to HTTP/1.1 connections only. An HTTP/2 connection stays open
+// until Stripe or a load balancer closes it, and the client drops it when it sees the
+// connection close.
+public class HttpClientStripeTransport implements StripeTransport {
+
+    private final URI apiBase;
+    private final Duration requestTimeout;
+    private final Supplier<HttpClient> httpClients;
+    private final Lane[] lanes;
+    private final int maxConcurrentRequests;
+    private final Semaphore requestPermits;
+    private final AtomicInteger nextLane = new AtomicInteger();
+
+    private final LongAdder http2Requests = new LongAdder();
+    private final LongAdder http11Requests = new LongAdder();
+
+    public HttpClientStripeTransport(URI apiBase,
+                                     HttpClient.Version version,
+                                     int poolSize,
+                                     int maxConcurrentRequests,
+                                     Duration connectTimeout,
+                                     Duration requestTimeout) {
+        this(apiBase, poolSize, maxConcurrentRequests, requestTimeout,
+                () -> HttpClient.newBuilder()
+                        .version(version)
+                        .connectTimeout(connectTimeout)
+                        .followRedirects(HttpClient.Redirect.NEVER)
+                        .build());
+    }
+
+    HttpClientStripeTransport(URI apiBase,
+                              int poolSize,
+                              int maxConcurrentRequests,
+                              Duration requestTimeout,
+                              Supplier<HttpClient> httpClients) {
+        if (poolSize <= 0 || maxConcurrentRequests <= 0) {
+            throw new IllegalStateException(String.format(
+                    "Pool size and max concurrent requests must be positive but were %s and %s",
+                    poolSize, maxConcurrentRequests));
+        }
+        this.apiBase = apiBase;
+        this.requestTimeout = requestTimeout;
+        this.httpClients = httpClients;
+        this.lanes = new Lane[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            lanes[i] = new Lane();
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requestPermits = new Semaphore(maxConcurrentRequests);
+    }
+
+    @Override
+    public StripeResponse post(String path, Map<String, String> headers, byte[] body, int length,
+                               Duration connectTimeout, Duration readTimeout) throws IOException {
+        try {
+            if (!requestPermits.tryAcquire(requestTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IOException(String.format(
+                        "Stripe transport still had %s requests in flight after %s", maxConcurrentRequests, requestTimeout));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a Stripe connection");
+        }
+
+        try {
+            HttpClient httpClient = lanes[Math.floorMod(nextLane.getAndIncrement(), lanes.length)].acquire();
+            HttpRequest.Builder request = HttpRequest.newBuilder(apiBase.resolve(path))
+                    .timeout(timeout(connectTimeout, readTimeout))
+                    .header("Content-Type", StripeApi.FORM_CONTENT_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body, 0, length));
+            headers.forEach(request::header);
+
+            // send returns once the exchange is over, so the body is not read after that
+            HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.version() == HttpClient.Version.HTTP_2) {
+                http2Requests.increment();
+            } else {
+                http11Requests.increment();
+            }
+            return new StripeResponse(response.statusCode(), response.body(),
+                    response.headers().firstValue("Request-Id").orElse(null),
+                    response.headers().firstValue("Stripe-Should-Retry").map(Boolean::valueOf).orElse(null));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Stripe");
+        } finally {
+            requestPermits.release();
+        }
+    }
+
+    // A client's connect timeout is fixed when it is built, while the request timeout runs
+    // from sending, connecting included, so a request's own timeouts add up to one
+    private Duration timeout(Duration connectTimeout, Duration readTimeout) {
+        if (readTimeout == null) {
+            return requestTimeout;
+        }
+        return connectTimeout == null ? readTimeout : connectTimeout.plus(readTimeout);
+    }
+
+    public long getHttp2Requests() {
+        return http2Requests.sum();
+    }
+
+    public long getHttp11Requests() {
+        return http11Requests.sum();
+    }
+
+    public int getInFlight() {
+        return maxConcurrentRequests - requestPermits.availablePermits();
+    }
+
+    public int getPoolSize() {
+        return lanes.length;
+    }
+
+    private final class Lane {
+
+        private HttpClient httpClient;
+
+        synchronized HttpClient acquire() {
+            if (httpClient == null) {
+                httpClient = httpClients.get();
+            }
+            return httpClient;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.amigoscode.testing.payment.stripe;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+// How long the simulated processor takes to answer one call. Real processors are not
+// fixed: most calls cluster around a median with a long right tail (lognormal), and a
+// few hit a slow path such as a retry or a 3-D Secure hop, which bimodal models.
+public abstract class LatencyModel {
+
+    public abstract long nextNanos(SplittableRandom random);
+
+    public static LatencyModel fixed(Duration latency) {
+        return new Fixed(latency.toNanos());
+    }
+
+    // sigma is the spread of log(latency), 0.5 puts p99 at about 3.2 times the median
+    public static LatencyModel lognormal(Duration median, double sigma) {
+        if (sigma < 0) {
+            throw new IllegalStateException(String.format("Latency sigma must not be negative but was %s", sigma));
+        }
+        return new Lognormal(median.toNanos(), sigma);
+    }
+
+    public static LatencyModel bimodal(LatencyModel body, LatencyModel spike, double spikeProbability) {
+        if (spikeProbability < 0 || spikeProbability > 1) {
+            throw new IllegalStateException(String.format(
+                    "Latency spike probability must be between 0 and 1 but was %s", spikeProbability));
+        }
+        return new Bimodal(body, spike, spikeProbability);
+    }
+
+    // fixed is always median, bimodal spikes are lognormal around spike with the same sigma
+    public static LatencyModel of(String name, Duration median, double sigma, Duration spike, double spikeProbability) {
+        switch (name) {
+            case "fixed":
+                return fixed(median);
+            case "lognormal":
+                return lognormal(median, sigma);
+            case "bimodal":
+                return bimodal(lognormal(median, sigma), lognormal(spike, sigma), spikeProbability);
+            default:
+                throw new IllegalStateException(String.format("Unknown latency model [%s]", name));
+        }
+    }
+
+    private static final class Fixed extends LatencyModel {
+
+        private final long nanos;
+
+        private Fixed(long nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public long nextNanos(SplittableRandom random) {
+            return nanos;
+        }
+    }
+
+    private static final class Lognormal extends LatencyModel {
+
+        private final double logMedian;
+        private final double sigma;
+
+        private Lognormal(long medianNanos, double sigma) {
+            this.logMedian = Math.log(Math.max(medianNanos, 1));
+            this.sigma = sigma;
+        }
+
+        @Override
+        public long nextNanos(SplittableRandom random) {
+            return Math.round(Math.exp(logMedian + sigma * nextGaussian(random)));
+        }
+
+        // Box-Muller, SplittableRandom has no nextGaussian
+        private static double nextGaussian(SplittableRandom random) {
+            double u = 1 - random.nextDouble();
+            return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+        }
+    }
+
+    private static final class Bimodal extends LatencyModel {
+
+        private final LatencyModel body;
+        private final LatencyModel spike;
+        private final double spikeProbability;
+
+        private Bimodal(LatencyModel body, LatencyModel spike, double spikeProbability) {
+            this.body = body;
+            this.spike = spike;
+            this.spikeProbability = spikeProbability;
+        }
+
+        @Override
+        public long nextNanos(SplittableRandom random) {
+            return random.nextDouble() < spikeProbability ? spike.nextNanos(random) : body.nextNanos(random);
+        }
+    }
+}
@@ -1,20 +1,40 @@
 package com.amigoscode.testing.payment.stripe;
 
-
+import com.amigoscode.testing.payment.BatchCardPaymentCharger;
 import com.amigoscode.testing.payment.CardPaymentCharge;
-import com.amigoscode.testing.payment.CardPaymentCharger;
 import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import org.springframework.boot.autoconfigure.condition.AllNestedConditions;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
+// Answers at once and always debits, a batch as much as a single charge. Used with
+// stripe.enabled=false unless stripe.simulator.enabled=true puts the StripeSimulator
+// in its place, so leaving the simulator flag out still gets the mock.
 @Service
-@ConditionalOnProperty(
-        value = "stripe.enabled",
-        havingValue = "false"
-)
-public class MockStripeService implements CardPaymentCharger {
+@Conditional(MockStripeService.OnMockProcessor.class)
+public class MockStripeService implements BatchCardPaymentCharger {
+
+    static class OnMockProcessor extends AllNestedConditions {
+
+        OnMockProcessor() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(value = "stripe.enabled", havingValue = "false")
+        static class StripeDisabled {
+        }
+
+        @ConditionalOnProperty(value = "stripe.simulator.enabled", havingValue = "false", matchIfMissing = true)
+        static class SimulatorDisabled {
+        }
+    }
+
     @Override
     public CardPaymentCharge chargeCard(String cardSource,
                                         BigDecimal amount,
@@ -22,4 +42,13 @@ public class MockStripeService implements CardPaymentCharger {
                                         String description) {
         return new CardPaymentCharge(true);
     }
+
+    @Override
+    public List<CardPaymentCharge> chargeCards(List<Payment> payments) {
+        List<CardPaymentCharge> charges = new ArrayList<>(payments.size());
+        for (int i = 0; i < payments.size(); i++) {
+            charges.add(new CardPaymentCharge(true));
+        }
+        return charges;
+    }
 }
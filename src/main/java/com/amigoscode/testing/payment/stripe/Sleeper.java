@@ -0,0 +1,6 @@
+package com.amigoscode.testing.payment.stripe;
+
+// Waits for a simulated latency or before a retry, tests pass one that only records
+interface Sleeper {
+    void sleep(long nanos) throws InterruptedException;
+}
@@ -1,16 +1,191 @@
 package com.amigoscode.testing.payment.stripe;
 
+import com.stripe.Stripe;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
+import com.stripe.net.ApiResource;
 import com.stripe.net.RequestOptions;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 
+// Posts charges to Stripe itself rather than through Charge.create, which takes a map of
+// boxed parameters and encodes it again on every call. The form body is written by a
+// StripeChargeEncoder kept per thread and handed to the StripeTransport as it is.
+//
+// Everything else is sent the way the library would for the same RequestOptions: the API
+// version or its override, the connected account, the idempotency key, the timeouts, the
+// client user agent and, with Stripe.enableTelemetry, how long the previous request took.
+// Failed requests are retried up to maxNetworkRetries times on the same terms as the
+// library, with an idempotency key made up when none was given so a retry never charges
+// twice.
 @Service
 public class StripeApi {
-    public Charge create(Map<String, Object> requestMap, RequestOptions options) throws StripeException {
-        return Charge.create(requestMap, options);
+
+    static final String API_VERSION = Stripe.API_VERSION;
+    static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    static final String USER_AGENT = "Stripe/v1 JavaBindings/" + Stripe.VERSION;
+
+    private static final String CHARGES = "/v1/charges";
+    private static final String CLIENT_USER_AGENT = String.format(
+            "{\"bindings_version\":\"%s\",\"lang\":\"java\",\"publisher\":\"stripe\",\"lang_version\":\"%s\"}",
+            Stripe.VERSION, System.getProperty("java.version"));
+
+    private static final long INITIAL_RETRY_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final StripeTransport stripeTransport;
+    private final Sleeper sleeper;
+    private final LongSupplier nanoTime;
+
+    private final ThreadLocal<StripeChargeEncoder> encoders = ThreadLocal.withInitial(StripeChargeEncoder::new);
+
+    // The options are the same on every call in practice, so their headers are kept
+    private volatile Headers headers;
+
+    // Sent with the next request and then dropped, like the library's telemetry
+    private final AtomicReference<String> lastRequestMetrics = new AtomicReference<>();
+
+    @Autowired
+    public StripeApi(StripeTransport stripeTransport) {
+        this(stripeTransport, TimeUnit.NANOSECONDS::sleep, System::nanoTime);
     }
 
+    StripeApi(StripeTransport stripeTransport, Sleeper sleeper, LongSupplier nanoTime) {
+        this.stripeTransport = stripeTransport;
+        this.sleeper = sleeper;
+        this.nanoTime = nanoTime;
+    }
+
+    public Charge create(StripeChargeRequest request, RequestOptions options) throws StripeException {
+        StripeChargeEncoder body = encoders.get().encode(request);
+        int maxRetries = Math.max(0, options.getMaxNetworkRetries());
+        String idempotencyKey = options.getIdempotencyKey() != null || maxRetries == 0
+                ? options.getIdempotencyKey()
+                : UUID.randomUUID().toString();
+        Duration connectTimeout = timeout(options.getConnectTimeout(), Stripe.getConnectTimeout());
+        Duration readTimeout = timeout(options.getReadTimeout(), Stripe.getReadTimeout());
+
+        for (int retry = 0; ; retry++) {
+            StripeResponse response;
+            long start = nanoTime.getAsLong();
+            try {
+                response = stripeTransport.post(CHARGES, headers(options, idempotencyKey),
+                        body.array(), body.length(), connectTimeout, readTimeout);
+            } catch (IOException e) {
+                if (retry < maxRetries && isRetriable(e)) {
+                    backOff(retry);
+                    continue;
+                }
+                throw new ApiConnectionException(String.format("Cannot reach Stripe: %s", e.getMessage()), e);
+            }
+            recordMetrics(response, start);
+
+            if (response.getStatus() / 100 == 2) {
+                return ApiResource.GSON.fromJson(response.getBody(), Charge.class);
+            }
+            if (retry < maxRetries && isRetriable(response)) {
+                backOff(retry);
+                continue;
+            }
+            throw new ApiException(
+                    String.format("Stripe charge failed with HTTP %s: %s", response.getStatus(), response.getBody()),
+                    response.getRequestId(), null, response.getStatus(), null);
+        }
+    }
+
+    private Map<String, String> headers(RequestOptions options, String idempotencyKey) {
+        Headers current = headers;
+        if (current == null || current.options != options) {
+            current = new Headers(options);
+            headers = current;
+        }
+        String metrics = Stripe.enableTelemetry ? lastRequestMetrics.getAndSet(null) : null;
+        if (idempotencyKey == null && metrics == null) {
+            return current.headers;
+        }
+        Map<String, String> headers = new HashMap<>(current.headers);
+        if (idempotencyKey != null) {
+            headers.put("Idempotency-Key", idempotencyKey);
+        }
+        if (metrics != null) {
+            headers.put("X-Stripe-Client-Telemetry", metrics);
+        }
+        return headers;
+    }
+
+    // Options built without a timeout carry the library-wide one, which leaves the
+    // transport's own in place
+    private static Duration timeout(int millis, int libraryMillis) {
+        return millis <= 0 || millis == libraryMillis ? null : Duration.ofMillis(millis);
+    }
+
+    // A timeout may come after Stripe took the charge, the idempotency key makes the
+    // retry answer with that charge instead of making another
+    private static boolean isRetriable(IOException e) {
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    private static boolean isRetriable(StripeResponse response) {
+        if (response.getShouldRetry() != null) {
+            return response.getShouldRetry();
+        }
+        return response.getStatus() == 409 || response.getStatus() >= 500;
+    }
+
+    // Doubles from half a second up to five, less up to half of it so retries spread out
+    private void backOff(int retry) throws ApiConnectionException {
+        long delay = Math.min(INITIAL_RETRY_DELAY_NANOS << Math.min(retry, 10), MAX_RETRY_DELAY_NANOS);
+        delay = Math.max(INITIAL_RETRY_DELAY_NANOS, (long) (delay * (0.5 + ThreadLocalRandom.current().nextDouble() / 2)));
+        try {
+            sleeper.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting to retry the Stripe charge", e);
+        }
+    }
+
+    private void recordMetrics(StripeResponse response, long start) {
+        if (Stripe.enableTelemetry && response.getRequestId() != null) {
+            lastRequestMetrics.set(String.format(
+                    "{\"last_request_metrics\":{\"request_id\":\"%s\",\"request_duration_ms\":%d}}",
+                    response.getRequestId(), TimeUnit.NANOSECONDS.toMillis(nanoTime.getAsLong() - start)));
+        }
+    }
+
+    private static final class Headers {
+
+        private final RequestOptions options;
+        private final Map<String, String> headers;
+
+        private Headers(RequestOptions options) {
+            Map<String, String> headers = new HashMap<>();
+            String apiKey = options.getApiKey() != null ? options.getApiKey() : Stripe.apiKey;
+            headers.put("Authorization", "Bearer " + apiKey);
+            headers.put("Stripe-Version", options.getStripeVersionOverride() != null
+                    ? options.getStripeVersionOverride()
+                    : API_VERSION);
+            if (options.getStripeAccount() != null) {
+                headers.put("Stripe-Account", options.getStripeAccount());
+            }
+            headers.put("User-Agent", USER_AGENT);
+            headers.put("X-Stripe-Client-User-Agent", CLIENT_USER_AGENT);
+            this.options = options;
+            this.headers = Collections.unmodifiableMap(headers);
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.Currency;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Writes a charge as the form body Stripe expects, amount=1000&currency=gbp&source=...,
+// into a buffer that is kept and overwritten by the next charge. The parameter names and
+// each currency's code are encoded once up front, the amount is written digit by digit
+// and only source and description are escaped per call. Not thread safe, one per thread.
+final class StripeChargeEncoder {
+
+    private static final byte[] AMOUNT = ascii("amount=");
+    private static final Map<Currency, byte[]> CURRENCIES = new EnumMap<>(Currency.class);
+    private static final byte[] SOURCE = ascii("&source=");
+    private static final byte[] DESCRIPTION = ascii("&description=");
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+
+    static {
+        for (Currency currency : Currency.values()) {
+            CURRENCIES.put(currency, ascii("&currency=" + currency.name().toLowerCase()));
+        }
+    }
+
+    private byte[] buffer;
+    private int length;
+
+    StripeChargeEncoder() {
+        this(256);
+    }
+
+    StripeChargeEncoder(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    StripeChargeEncoder encode(StripeChargeRequest request) {
+        length = 0;
+        write(AMOUNT);
+        writeLong(request.getAmount());
+        write(CURRENCIES.get(request.getCurrency()));
+        write(SOURCE);
+        writeFormEncoded(request.getSource());
+        if (request.getDescription() != null) {
+            write(DESCRIPTION);
+            writeFormEncoded(request.getDescription());
+        }
+        return this;
+    }
+
+    // Valid up to length(), the rest is left over from earlier charges
+    byte[] array() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void write(int b) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+    private void writeLong(long value) {
+        if (value < 0) {
+            write('-');
+            if (value == Long.MIN_VALUE) {
+                write(ascii("9223372036854775808"));
+                return;
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    // Same output as URLEncoder.encode(value, UTF_8) without the intermediate strings
+    private void writeFormEncoded(String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isUnreserved(codePoint)) {
+                write(codePoint);
+            } else if (codePoint == ' ') {
+                write('+');
+            } else if (codePoint < 0x80) {
+                writeEscaped(codePoint);
+            } else if (codePoint < 0x800) {
+                writeEscaped(0xC0 | codePoint >> 6);
+                writeEscaped(0x80 | codePoint & 0x3F);
+            } else if (codePoint < 0x10000) {
+                if (Character.isSurrogate((char) codePoint)) {
+                    // A lone surrogate has no UTF-8 encoding, URLEncoder writes it as ?
+                    writeEscaped('?');
+                } else {
+                    writeEscaped(0xE0 | codePoint >> 12);
+                    writeEscaped(0x80 | codePoint >> 6 & 0x3F);
+                    writeEscaped(0x80 | codePoint & 0x3F);
+                }
+            } else {
+                writeEscaped(0xF0 | codePoint >> 18);
+                writeEscaped(0x80 | codePoint >> 12 & 0x3F);
+                writeEscaped(0x80 | codePoint >> 6 & 0x3F);
+                writeEscaped(0x80 | codePoint & 0x3F);
+            }
+        }
+    }
+
+    private void writeEscaped(int b) {
+        ensureCapacity(3);
+        buffer[length++] = '%';
+        buffer[length++] = HEX[b >> 4 & 0xF];
+        buffer[length++] = HEX[b & 0xF];
+    }
+
+    private static boolean isUnreserved(int c) {
+        return c >= 'a' && c <= 'z'
+                || c >= 'A' && c <= 'Z'
+                || c >= '0' && c <= '9'
+                || c == '-' || c == '_' || c == '.' || c == '*';
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
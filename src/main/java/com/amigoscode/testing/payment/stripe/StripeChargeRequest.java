@@ -0,0 +1,71 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.Currency;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+// One charge as Stripe takes it: the amount is a whole number of the currency's minor
+// unit, 10.00 GBP is 1000 pence
+public final class StripeChargeRequest {
+
+    private static final Map<Currency, Integer> MINOR_UNIT_DIGITS = new EnumMap<>(Currency.class);
+
+    static {
+        for (Currency currency : Currency.values()) {
+            MINOR_UNIT_DIGITS.put(currency, java.util.Currency.getInstance(currency.name()).getDefaultFractionDigits());
+        }
+    }
+
+    private final long amount;
+    private final Currency currency;
+    private final String source;
+    private final String description;
+
+    public StripeChargeRequest(long amount, Currency currency, String source, String description) {
+        this.amount = amount;
+        this.currency = currency;
+        this.source = source;
+        this.description = description;
+    }
+
+    public static StripeChargeRequest of(BigDecimal amount, Currency currency, String source, String description) {
+        return new StripeChargeRequest(toMinorUnits(amount, currency), currency, source, description);
+    }
+
+    static long toMinorUnits(BigDecimal amount, Currency currency) {
+        try {
+            return amount.movePointRight(MINOR_UNIT_DIGITS.get(currency)).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException(String.format(
+                    "Amount %s is not a whole number of %s minor units", amount, currency), e);
+        }
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return "StripeChargeRequest{" +
+                "amount=" + amount +
+                ", currency=" + currency +
+                ", source='" + source + '\'' +
+                ", description='" + description + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,47 @@
+package com.amigoscode.testing.payment.stripe;
+
+public final class StripeResponse {
+
+    private final int status;
+    private final String body;
+    private final String requestId;
+    // Stripe-Should-Retry, null when Stripe did not say
+    private final Boolean shouldRetry;
+
+    public StripeResponse(int status, String body, String requestId) {
+        this(status, body, requestId, null);
+    }
+
+    public StripeResponse(int status, String body, String requestId, Boolean shouldRetry) {
+        this.status = status;
+        this.body = body;
+        this.requestId = requestId;
+        this.shouldRetry = shouldRetry;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public Boolean getShouldRetry() {
+        return shouldRetry;
+    }
+
+    @Override
+    public String toString() {
+        return "StripeResponse{" +
+                "status=" + status +
+                ", body='" + body + '\'' +
+                ", requestId='" + requestId + '\'' +
+                ", shouldRetry=" + shouldRetry +
+                '}';
+    }
+}
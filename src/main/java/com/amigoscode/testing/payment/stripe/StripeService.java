@@ -11,8 +11,6 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
 
 @Service
 @ConditionalOnProperty(
@@ -34,15 +32,11 @@ public class StripeService implements CardPaymentCharger {
 
     @Override
     public CardPaymentCharge chargeCard(String cardSource, BigDecimal amount, Currency currency, String description) {
-        Map<String, Object> params = new HashMap<>();
-        params.put("amount", amount);
-        params.put("currency", currency);
-        params.put("source", cardSource);
-        params.put("description", description);
+        StripeChargeRequest request = StripeChargeRequest.of(amount, currency, cardSource, description);
 
         try {
-            Charge charge = stripeApi.create(params, requestOptions);
-            return new CardPaymentCharge(charge.getPaid());
+            Charge charge = stripeApi.create(request, requestOptions);
+            return new CardPaymentCharge(charge.getPaid(), charge.getId());
         } catch (StripeException e) {
             throw new IllegalStateException("Cannot make stripe charge", e);
         }
@@ -0,0 +1,186 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.BatchCardPaymentCharger;
+import com.amigoscode.testing.payment.CardPaymentCharge;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Stands in for the processor in load tests and benchmarks, where MockStripeService answers
+// too quickly and too reliably to show anything. Each call waits for a latency drawn from
+// the model, then is paid, declined, fails or never answers.
+//
+// The n-th call always draws from the same random stream, whichever thread makes it, so a
+// run with the same seed sees the same sequence of latencies and outcomes. The seed of
+// each call's stream goes through the SplitMix64 finalizer: seeds a gamma apart would
+// otherwise give streams that are the same stream shifted by one draw.
+@Service
+@ConditionalOnProperty(
+        value = "stripe.simulator.enabled",
+        havingValue = "true"
+)
+public class StripeSimulator implements BatchCardPaymentCharger {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final LatencyModel latencyModel;
+    private final double declineRate;
+    private final double errorRate;
+    private final double timeoutRate;
+    private final long timeoutNanos;
+    private final long seed;
+    private final Sleeper sleeper;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final LongAdder declines = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Autowired
+    public StripeSimulator(
+            @Value("${stripe.simulator.latency:lognormal}") String latency,
+            @Value("${stripe.simulator.latency.median:PT0.05S}") Duration median,
+            @Value("${stripe.simulator.latency.sigma:0.5}") double sigma,
+            @Value("${stripe.simulator.latency.spike:PT1S}") Duration spike,
+            @Value("${stripe.simulator.latency.spike-probability:0.01}") double spikeProbability,
+            @Value("${stripe.simulator.decline-rate:0.02}") double declineRate,
+            @Value("${stripe.simulator.error-rate:0}") double errorRate,
+            @Value("${stripe.simulator.timeout-rate:0}") double timeoutRate,
+            @Value("${stripe.simulator.timeout:PT30S}") Duration timeout,
+            @Value("${stripe.simulator.seed:42}") long seed) {
+        this(LatencyModel.of(latency, median, sigma, spike, spikeProbability),
+                declineRate, errorRate, timeoutRate, timeout, seed, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    StripeSimulator(LatencyModel latencyModel,
+                    double declineRate,
+                    double errorRate,
+                    double timeoutRate,
+                    Duration timeout,
+                    long seed,
+                    Sleeper sleeper) {
+        if (declineRate < 0 || errorRate < 0 || timeoutRate < 0 || declineRate + errorRate + timeoutRate > 1) {
+            throw new IllegalStateException(String.format(
+                    "Decline, error and timeout rates must not be negative and add up to at most 1 but were %s, %s and %s",
+                    declineRate, errorRate, timeoutRate));
+        }
+        this.latencyModel = latencyModel;
+        this.declineRate = declineRate;
+        this.errorRate = errorRate;
+        this.timeoutRate = timeoutRate;
+        this.timeoutNanos = timeout.toNanos();
+        this.seed = seed;
+        this.sleeper = sleeper;
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String cardSource, BigDecimal amount, Currency currency, String description) {
+        SplittableRandom random = randomFor(calls.getAndIncrement());
+        long latencyNanos = latencyModel.nextNanos(random);
+        double outcome = random.nextDouble();
+
+        // Never answers, it is up to the caller's deadline to give up first
+        if (outcome < timeoutRate) {
+            timeouts.increment();
+            sleep(timeoutNanos);
+            throw new IllegalStateException("Cannot make stripe charge, simulated processor timed out");
+        }
+
+        sleep(latencyNanos);
+        if (outcome < timeoutRate + errorRate) {
+            errors.increment();
+            throw new IllegalStateException("Cannot make stripe charge, simulated processor error");
+        }
+        if (outcome < timeoutRate + errorRate + declineRate) {
+            declines.increment();
+            return new CardPaymentCharge(false);
+        }
+        return new CardPaymentCharge(true);
+    }
+
+    // One round trip for the whole batch, as long as its slowest charge. A timeout or an
+    // error fails every charge in it, declines stay per charge. Each charge is still a
+    // call with its own stream, so a batch draws what the same charges one by one would.
+    @Override
+    public List<CardPaymentCharge> chargeCards(List<Payment> payments) {
+        long first = calls.getAndAdd(payments.size());
+        long latencyNanos = 0;
+        double worstOutcome = 1;
+        double[] outcomes = new double[payments.size()];
+        for (int i = 0; i < outcomes.length; i++) {
+            SplittableRandom random = randomFor(first + i);
+            latencyNanos = Math.max(latencyNanos, latencyModel.nextNanos(random));
+            outcomes[i] = random.nextDouble();
+            worstOutcome = Math.min(worstOutcome, outcomes[i]);
+        }
+
+        if (worstOutcome < timeoutRate) {
+            timeouts.increment();
+            sleep(timeoutNanos);
+            throw new IllegalStateException("Cannot make stripe charges, simulated processor timed out");
+        }
+
+        sleep(latencyNanos);
+        if (worstOutcome < timeoutRate + errorRate) {
+            errors.increment();
+            throw new IllegalStateException("Cannot make stripe charges, simulated processor error");
+        }
+        List<CardPaymentCharge> charges = new ArrayList<>(outcomes.length);
+        for (double outcome : outcomes) {
+            boolean declined = outcome < timeoutRate + errorRate + declineRate;
+            if (declined) {
+                declines.increment();
+            }
+            charges.add(new CardPaymentCharge(!declined));
+        }
+        return charges;
+    }
+
+    SplittableRandom randomFor(long call) {
+        return new SplittableRandom(mix64(seed + call * GOLDEN_GAMMA));
+    }
+
+    // Stafford's variant 13, the finalizer SplittableRandom itself uses
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private void sleep(long nanos) {
+        try {
+            sleeper.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the simulated processor", e);
+        }
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getDeclines() {
+        return declines.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+}
@@ -0,0 +1,19 @@
+package com.amigoscode.testing.payment.stripe;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+// How StripeApi gets a form body to Stripe and the answer back. The headers are sent as
+// they are, the transport only adds the Content-Type. The body is only valid up to length
+// and belongs to the caller again once post returns. A null timeout leaves the transport's
+// own in place.
+public interface StripeTransport {
+
+    StripeResponse post(String path,
+                        Map<String, String> headers,
+                        byte[] body,
+                        int length,
+                        Duration connectTimeout,
+                        Duration readTimeout) throws IOException;
+}
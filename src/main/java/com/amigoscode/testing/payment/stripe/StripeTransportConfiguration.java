@@ -0,0 +1,69 @@
+package com.amigoscode.testing.payment.stripe;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+// Picks how StripeApi talks to Stripe: stripe.transport=http-client, the default, keeps a
+// pool of HTTP/2 connections; url-connection is what the Stripe library does
+@Configuration
+public class StripeTransportConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(
+            value = "stripe.transport",
+            havingValue = "http-client",
+            matchIfMissing = true
+    )
+    public HttpClientStripeTransport httpClientStripeTransport(
+            @Value("${stripe.api-base:https://api.stripe.com}") URI apiBase,
+            @Value("${stripe.transport.version:HTTP_2}") HttpClient.Version version,
+            @Value("${stripe.transport.pool-size:2}") int poolSize,
+            @Value("${stripe.transport.max-concurrent-requests:100}") int maxConcurrentRequests,
+            @Value("${stripe.transport.connect-timeout:PT5S}") Duration connectTimeout,
+            @Value("${stripe.transport.request-timeout:PT30S}") Duration requestTimeout) {
+        return new HttpClientStripeTransport(
+                apiBase, version, poolSize, maxConcurrentRequests, connectTimeout, requestTimeout);
+    }
+
+    @Bean
+    @ConditionalOnProperty(
+            value = "stripe.transport",
+            havingValue = "http-client",
+            matchIfMissing = true
+    )
+    public MeterBinder httpClientStripeTransportMetrics(HttpClientStripeTransport transport) {
+        return registry -> {
+            FunctionCounter.builder("stripe.transport.requests", transport, HttpClientStripeTransport::getHttp2Requests)
+                    .tag("version", "http2")
+                    .register(registry);
+            FunctionCounter.builder("stripe.transport.requests", transport, HttpClientStripeTransport::getHttp11Requests)
+                    .tag("version", "http1.1")
+                    .register(registry);
+            Gauge.builder("stripe.transport.in.flight", transport, HttpClientStripeTransport::getInFlight)
+                    .register(registry);
+            Gauge.builder("stripe.transport.pool.size", transport, HttpClientStripeTransport::getPoolSize)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(
+            value = "stripe.transport",
+            havingValue = "url-connection"
+    )
+    public UrlConnectionStripeTransport urlConnectionStripeTransport(
+            @Value("${stripe.api-base:https://api.stripe.com}") URI apiBase,
+            @Value("${stripe.transport.connect-timeout:PT5S}") Duration connectTimeout,
+            @Value("${stripe.transport.request-timeout:PT30S}") Duration requestTimeout) {
+        return new UrlConnectionStripeTransport(apiBase, connectTimeout, requestTimeout);
+    }
+}
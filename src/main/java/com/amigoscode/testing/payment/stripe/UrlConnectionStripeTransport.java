@@ -0,0 +1,50 @@
+package com.amigoscode.testing.payment.stripe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+// HTTP/1.1 over HttpURLConnection, what the Stripe library itself uses. Keep-alive and the
+// connection pool are the JVM's, shared with everything else and only tunable through
+// system properties such as http.maxConnections.
+public class UrlConnectionStripeTransport implements StripeTransport {
+
+    private final URI apiBase;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public UrlConnectionStripeTransport(URI apiBase, Duration connectTimeout, Duration readTimeout) {
+        this.apiBase = apiBase;
+        this.connectTimeoutMillis = (int) connectTimeout.toMillis();
+        this.readTimeoutMillis = (int) readTimeout.toMillis();
+    }
+
+    @Override
+    public StripeResponse post(String path, Map<String, String> headers, byte[] body, int length,
+                               Duration connectTimeout, Duration readTimeout) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) apiBase.resolve(path).toURL().openConnection();
+        connection.setConnectTimeout(connectTimeout == null ? connectTimeoutMillis : (int) connectTimeout.toMillis());
+        connection.setReadTimeout(readTimeout == null ? readTimeoutMillis : (int) readTimeout.toMillis());
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", StripeApi.FORM_CONTENT_TYPE);
+        headers.forEach(connection::setRequestProperty);
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body, 0, length);
+        }
+
+        int status = connection.getResponseCode();
+        try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+            String response = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            String shouldRetry = connection.getHeaderField("Stripe-Should-Retry");
+            return new StripeResponse(status, response, connection.getHeaderField("Request-Id"),
+                    shouldRetry == null ? null : Boolean.valueOf(shouldRetry));
+        }
+    }
+}
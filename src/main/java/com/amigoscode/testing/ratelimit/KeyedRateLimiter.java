@@ -0,0 +1,119 @@
+package com.amigoscode.testing.ratelimit;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+// One bucket per key, all with the same RateLimit. Known keys only do a map read and
+// a compareAndSet. The buckets are split over stripes, each holding at most its share
+// of maxKeys: a stripe that is full drops its idle buckets, which behave like new ones
+// anyway. If every bucket in it is still in use a new key is turned away until the
+// first of them is full again, so memory stays bounded when callers make up keys
+// without letting them reset the buckets of keys that are being limited. A sweep walks
+// the whole stripe, so a full one is only swept again once an eighth of what is left
+// in it would be idle: new keys wait a little longer to come in, but a stream of them
+// costs a scan per eighth of a stripe instead of one each.
+public class KeyedRateLimiter<K> {
+
+    private static final int STRIPES = 16;
+
+    private final RateLimit rateLimit;
+    private final int maxKeysPerStripe;
+    private final int sweepBatch;
+    private final LongSupplier nanoTime;
+    private final Map<K, AtomicLong>[] stripes;
+    // Per stripe, the nanoTime before which a sweep would not free enough to be worth it
+    private final AtomicLongArray sweepAt;
+
+    @SuppressWarnings("unchecked")
+    public KeyedRateLimiter(RateLimit rateLimit, int maxKeys, LongSupplier nanoTime) {
+        this.rateLimit = rateLimit;
+        this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+        this.sweepBatch = Math.max(1, maxKeysPerStripe / 8);
+        this.nanoTime = nanoTime;
+        this.stripes = new Map[STRIPES];
+        this.sweepAt = new AtomicLongArray(STRIPES);
+        long now = nanoTime.getAsLong();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+            sweepAt.set(i, now);
+        }
+    }
+
+    // 0 when the key had a token, otherwise the nanos until it has one
+    public long tryAcquire(K key) {
+        long now = nanoTime.getAsLong();
+        int index = stripeIndex(key);
+        AtomicLong bucket = stripes[index].get(key);
+        if (bucket == null) {
+            bucket = add(index, key, now);
+            if (bucket == null) {
+                return Math.max(1, sweepAt.get(index) - now);
+            }
+        }
+        return rateLimit.tryAcquire(bucket, now);
+    }
+
+    // Gives back the token of a request that was turned away after tryAcquire
+    public void release(K key) {
+        AtomicLong bucket = stripes[stripeIndex(key)].get(key);
+        if (bucket != null) {
+            rateLimit.release(bucket, 1);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<K, AtomicLong> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private int stripeIndex(K key) {
+        return (key.hashCode() ^ (key.hashCode() >>> 16)) & (STRIPES - 1);
+    }
+
+    // null when the stripe is full of buckets in use
+    private AtomicLong add(int index, K key, long now) {
+        Map<K, AtomicLong> stripe = stripes[index];
+        if (stripe.size() >= maxKeysPerStripe) {
+            if (sweepAt.get(index) - now > 0) {
+                return stripe.get(key);
+            }
+            sweep(index, now);
+            if (stripe.size() >= maxKeysPerStripe) {
+                return stripe.get(key);
+            }
+        }
+        return stripe.computeIfAbsent(key, k -> rateLimit.newBucket(now));
+    }
+
+    // Drops the idle buckets and puts the next sweep off until sweepBatch of the others
+    // would be idle. Buckets taken from meanwhile go idle later, so it may free fewer.
+    private void sweep(int index, long now) {
+        long[] untilIdle = new long[maxKeysPerStripe];
+        int inUse = 0;
+        for (Iterator<AtomicLong> buckets = stripes[index].values().iterator(); buckets.hasNext(); ) {
+            AtomicLong bucket = buckets.next();
+            if (rateLimit.isIdle(bucket, now)) {
+                buckets.remove();
+            } else {
+                if (inUse == untilIdle.length) {
+                    untilIdle = Arrays.copyOf(untilIdle, inUse * 2);
+                }
+                untilIdle[inUse++] = bucket.get() - now;
+            }
+        }
+        if (inUse == 0) {
+            sweepAt.set(index, now);
+            return;
+        }
+        Arrays.sort(untilIdle, 0, inUse);
+        sweepAt.set(index, now + untilIdle[Math.min(sweepBatch, inUse) - 1]);
+    }
+}
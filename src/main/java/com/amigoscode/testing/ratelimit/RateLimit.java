@@ -0,0 +1,60 @@
+package com.amigoscode.testing.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket kept as a single number per bucket: the nanoTime at which it is full
+// again. Taking a token moves that time one refill interval later, and a token can be
+// taken while the bucket stays no more than a full burst behind. Checking and taking
+// is one compareAndSet, so callers never wait for each other. Tokens taken for a
+// request that is turned away further on can be given back.
+public class RateLimit {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    public RateLimit(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalStateException(String.format(
+                    "Rate limit needs a positive rate and burst, got %s per second and %s", permitsPerSecond, burst));
+        }
+        this.intervalNanos = Math.max(1L, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+    }
+
+    public AtomicLong newBucket(long now) {
+        return new AtomicLong(now);
+    }
+
+    // 0 when a token was taken, otherwise the nanos until one can be
+    public long tryAcquire(AtomicLong bucket, long now) {
+        return tryAcquire(bucket, now, 1);
+    }
+
+    // 0 when the tokens were taken, otherwise the nanos until they can be. More tokens
+    // than the burst take the whole burst, otherwise they could never be taken at all.
+    public long tryAcquire(AtomicLong bucket, long now, int permits) {
+        long cost = Math.min(permits, burstNanos / intervalNanos) * intervalNanos;
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + cost;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Gives back tokens taken with tryAcquire. A bucket given back more than it is
+    // missing is full, the time it went full at is only ever compared with now.
+    public void release(AtomicLong bucket, int permits) {
+        bucket.addAndGet(-Math.min(permits, burstNanos / intervalNanos) * intervalNanos);
+    }
+
+    // A full bucket behaves exactly like a new one, so it can be dropped
+    public boolean isIdle(AtomicLong bucket, long now) {
+        return bucket.get() - now <= 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.amigoscode.testing.ratelimit;
+
+import java.time.Duration;
+
+public class RateLimitExceededException extends IllegalStateException {
+
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,20 @@
+package com.amigoscode.testing.ratelimit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class RateLimitExceptionHandler {
+
+    // Retry-After is in whole seconds, rounded up so a client waiting that long gets through
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<String> handle(RateLimitExceededException e) {
+        long seconds = Math.max(1L, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(e.getMessage());
+    }
+}
@@ -0,0 +1,140 @@
+package com.amigoscode.testing.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// Limits counted in requests: a payment request per customer, a registration request per
+// phone number, and every payment or registration against one global limit. A batch
+// request takes one token for each distinct customer or phone number in it and one
+// global token for each payment or registration in it.
+//
+// The caller's own limit is checked before the global one, so a single caller over its
+// limit is turned away without using up tokens everyone else shares.
+@Component
+public class RateLimiter {
+
+    private final boolean enabled;
+    private final LongSupplier nanoTime;
+    private final RateLimit globalLimit;
+    private final AtomicLong globalBucket;
+    private final KeyedRateLimiter<UUID> customers;
+    private final KeyedRateLimiter<String> phoneNumbers;
+    private final Counter globalRejections;
+    private final Counter customerRejections;
+    private final Counter phoneNumberRejections;
+
+    @Autowired
+    public RateLimiter(@Value("${rate-limit.enabled:true}") boolean enabled,
+                       @Value("${rate-limit.global.permits-per-second:2000}") double globalPermitsPerSecond,
+                       @Value("${rate-limit.global.burst:4000}") int globalBurst,
+                       @Value("${rate-limit.customer.permits-per-second:10}") double customerPermitsPerSecond,
+                       @Value("${rate-limit.customer.burst:20}") int customerBurst,
+                       @Value("${rate-limit.phone-number.permits-per-second:1}") double phoneNumberPermitsPerSecond,
+                       @Value("${rate-limit.phone-number.burst:5}") int phoneNumberBurst,
+                       @Value("${rate-limit.max-keys:100000}") int maxKeys,
+                       MeterRegistry meterRegistry) {
+        this(enabled,
+                new RateLimit(globalPermitsPerSecond, globalBurst),
+                new RateLimit(customerPermitsPerSecond, customerBurst),
+                new RateLimit(phoneNumberPermitsPerSecond, phoneNumberBurst),
+                maxKeys, meterRegistry, System::nanoTime);
+    }
+
+    RateLimiter(boolean enabled,
+                RateLimit globalLimit,
+                RateLimit customerLimit,
+                RateLimit phoneNumberLimit,
+                int maxKeys,
+                MeterRegistry meterRegistry,
+                LongSupplier nanoTime) {
+        this.enabled = enabled;
+        this.nanoTime = nanoTime;
+        this.globalLimit = globalLimit;
+        this.globalBucket = globalLimit.newBucket(nanoTime.getAsLong());
+        this.customers = new KeyedRateLimiter<>(customerLimit, maxKeys, nanoTime);
+        this.phoneNumbers = new KeyedRateLimiter<>(phoneNumberLimit, maxKeys, nanoTime);
+        this.globalRejections = meterRegistry.counter("rate.limit.rejections", "scope", "global");
+        this.customerRejections = meterRegistry.counter("rate.limit.rejections", "scope", "customer");
+        this.phoneNumberRejections = meterRegistry.counter("rate.limit.rejections", "scope", "phone_number");
+    }
+
+    public void acquireForCustomer(UUID customerId) {
+        acquireForCustomers(Collections.singletonList(customerId));
+    }
+
+    // One global token for every payment in the batch
+    public void acquireForCustomers(Collection<UUID> customerIds) {
+        acquire(customerIds, customers, this::checkCustomer);
+    }
+
+    public void acquireForPhoneNumber(String phoneNumber) {
+        acquireForPhoneNumbers(Collections.singletonList(phoneNumber));
+    }
+
+    // One global token for every registration in the batch
+    public void acquireForPhoneNumbers(Collection<String> phoneNumbers) {
+        acquire(phoneNumbers, this.phoneNumbers, this::checkPhoneNumber);
+    }
+
+    // Either every token is taken or none: the ones already taken for a request that is
+    // turned away are given back, so a rejected batch does not use up the limits of the
+    // keys in it that were fine
+    private <K> void acquire(Collection<K> keys, KeyedRateLimiter<K> limiter, Consumer<K> check) {
+        if (!enabled) {
+            return;
+        }
+        List<K> acquired = new ArrayList<>();
+        try {
+            for (K key : new LinkedHashSet<>(keys)) {
+                if (key != null) {
+                    check.accept(key);
+                    acquired.add(key);
+                }
+            }
+            checkGlobal(Math.max(1, keys.size()));
+        } catch (RateLimitExceededException e) {
+            acquired.forEach(limiter::release);
+            throw e;
+        }
+    }
+
+    private void checkCustomer(UUID customerId) {
+        long wait = customers.tryAcquire(customerId);
+        if (wait > 0) {
+            customerRejections.increment();
+            throw new RateLimitExceededException(
+                    String.format("Too many requests for customer %s", customerId), Duration.ofNanos(wait));
+        }
+    }
+
+    private void checkPhoneNumber(String phoneNumber) {
+        long wait = phoneNumbers.tryAcquire(phoneNumber);
+        if (wait > 0) {
+            phoneNumberRejections.increment();
+            throw new RateLimitExceededException(
+                    String.format("Too many requests for phone number [%s]", phoneNumber), Duration.ofNanos(wait));
+        }
+    }
+
+    private void checkGlobal(int permits) {
+        long wait = globalLimit.tryAcquire(globalBucket, nanoTime.getAsLong(), permits);
+        if (wait > 0) {
+            globalRejections.increment();
+            throw new RateLimitExceededException("Too many requests", Duration.ofNanos(wait));
+        }
+    }
+}
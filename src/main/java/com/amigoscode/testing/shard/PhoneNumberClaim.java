@@ -0,0 +1,89 @@
+package com.amigoscode.testing.shard;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Transient;
+import java.time.Instant;
+import java.util.UUID;
+
+// Global phone number lookup table. A claim lives on the shard of its phone number,
+// so two customers registering the same number race on the same primary key.
+// claimedAt tells a registration still in flight from one that was abandoned.
+@Entity
+public class PhoneNumberClaim implements Persistable<String> {
+
+    @Id
+    private String phoneNumber;
+
+    @Column(nullable = false)
+    private UUID customerId;
+
+    private Instant claimedAt;
+
+    // Always persisted, never merged: a second claim has to fail on the primary key
+    @Transient
+    private boolean isNew = true;
+
+    public PhoneNumberClaim(String phoneNumber, UUID customerId, Instant claimedAt) {
+        this.phoneNumber = phoneNumber;
+        this.customerId = customerId;
+        this.claimedAt = claimedAt;
+    }
+
+    public PhoneNumberClaim() {
+    }
+
+    @Override
+    public String getId() {
+        return phoneNumber;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public void setPhoneNumber(String phoneNumber) {
+        this.phoneNumber = phoneNumber;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(UUID customerId) {
+        this.customerId = customerId;
+    }
+
+    public Instant getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Instant claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public String toString() {
+        return "PhoneNumberClaim{" +
+                "phoneNumber='" + phoneNumber + '\'' +
+                ", customerId=" + customerId +
+                ", claimedAt=" + claimedAt +
+                '}';
+    }
+}
@@ -0,0 +1,24 @@
+package com.amigoscode.testing.shard;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public interface PhoneNumberClaimRepository extends CrudRepository<PhoneNumberClaim, String> {
+
+    // Only moves the claim while it still belongs to previousCustomerId, so of two
+    // registrations taking over the same claim one updates nothing
+    @Modifying
+    @Transactional
+    @Query("update PhoneNumberClaim c set c.customerId = :customerId, c.claimedAt = :claimedAt " +
+            "where c.phoneNumber = :phoneNumber and c.customerId = :previousCustomerId")
+    int takeOver(@Param("phoneNumber") String phoneNumber,
+                 @Param("previousCustomerId") UUID previousCustomerId,
+                 @Param("customerId") UUID customerId,
+                 @Param("claimedAt") Instant claimedAt);
+}
@@ -0,0 +1,72 @@
+package com.amigoscode.testing.shard;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+// The shard the current thread works on. A transaction keeps one connection, so the
+// first shard it touches is bound to it: JPA flushes at commit, after the repository
+// call that picked the shard has returned, and the flush has to go to the same shard.
+public final class ShardContext {
+
+    // Customer-independent tables (idempotency keys) live on the first shard
+    public static final int DIRECTORY_SHARD = 0;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+    private static final Object TRANSACTION_SHARD = new Object();
+
+    private ShardContext() {
+    }
+
+    public static <T> T on(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    public static Integer transactionShard() {
+        return (Integer) TransactionSynchronizationManager.getResource(TRANSACTION_SHARD);
+    }
+
+    // Binds the shard to the active transaction, fails when it already works on another one
+    static void bindToTransaction(int shard) {
+        Integer bound = transactionShard();
+        if (bound != null) {
+            if (bound != shard) {
+                throw new IllegalStateException(
+                        "Transaction is bound to shard " + bound + " and cannot touch shard " + shard);
+            }
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(TRANSACTION_SHARD, shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_SHARD);
+            }
+        });
+    }
+
+    // Explicit shard first, then the one the transaction is bound to
+    static int lookup() {
+        Integer shard = CURRENT.get();
+        if (shard != null) {
+            return shard;
+        }
+        shard = transactionShard();
+        return shard == null ? DIRECTORY_SHARD : shard;
+    }
+}
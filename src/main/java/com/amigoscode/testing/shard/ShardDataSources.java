@@ -0,0 +1,20 @@
+package com.amigoscode.testing.shard;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+// The shards by index, for what has to reach one shard directly rather than through the
+// routing DataSource. Not a DataSource itself: a second DataSource bean next to the
+// primary one would be initialized by Boot while dataSource is still being created.
+public class ShardDataSources {
+
+    private final List<DataSource> shards;
+
+    ShardDataSources(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+}
@@ -0,0 +1,45 @@
+package com.amigoscode.testing.shard;
+
+public class ShardRebalanceResult {
+
+    private long customers;
+    private long payments;
+    private long smsOutboxMessages;
+    private long phoneNumberClaims;
+
+    void customerMoved(long payments, long smsOutboxMessages) {
+        this.customers++;
+        this.payments += payments;
+        this.smsOutboxMessages += smsOutboxMessages;
+    }
+
+    void phoneNumberClaimMoved() {
+        this.phoneNumberClaims++;
+    }
+
+    public long getCustomers() {
+        return customers;
+    }
+
+    public long getPayments() {
+        return payments;
+    }
+
+    public long getSmsOutboxMessages() {
+        return smsOutboxMessages;
+    }
+
+    public long getPhoneNumberClaims() {
+        return phoneNumberClaims;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardRebalanceResult{" +
+                "customers=" + customers +
+                ", payments=" + payments +
+                ", smsOutboxMessages=" + smsOutboxMessages +
+                ", phoneNumberClaims=" + phoneNumberClaims +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+package com.amigoscode.testing.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+
+// Rebalances the shards when the application is started with --rebalance-shards,
+// e.g. once with spring.main.web-application-type=none after adding a shard url
+class ShardRebalanceRunner implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardRebalanceRunner.class);
+
+    private final ShardDataSources shardDataSources;
+    private final ShardRouter shardRouter;
+
+    ShardRebalanceRunner(ShardDataSources shardDataSources, ShardRouter shardRouter) {
+        this.shardDataSources = shardDataSources;
+        this.shardRouter = shardRouter;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("rebalance-shards")) {
+            return;
+        }
+        LOGGER.info("Rebalancing {} shards", shardRouter.getShardCount());
+        ShardRebalanceResult result = new ShardRebalancer(
+                shardDataSources.getShards(), shardRouter.getRing()).rebalance();
+        LOGGER.info("Rebalanced shards: {}", result);
+    }
+}
@@ -0,0 +1,127 @@
+package com.amigoscode.testing.shard;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+
+// Moves every customer that is not on the shard the ring assigns it to, together with
+// its payments, outbox messages and payment totals, and every phone number claim likewise. After adding
+// a shard at the end of customer.sharding.urls only the customers the new shard takes
+// over are moved. Run it with traffic stopped.
+//
+// A customer is copied to its new shard in one transaction and deleted from the old one
+// in another. Copying skips rows that are already there, so a rebalance that stopped
+// half way is finished by running it again.
+public class ShardRebalancer {
+
+    private static final List<String> PAYMENT_TOTAL_KEY = List.of("customer_id", "currency", "year_month");
+
+    private final List<DataSource> shards;
+    private final ShardRing ring;
+
+    public ShardRebalancer(List<DataSource> shards, ShardRing ring) {
+        if (shards.size() != ring.size()) {
+            throw new IllegalStateException("Ring has " + ring.size() + " shards but " + shards.size() + " were given");
+        }
+        this.shards = List.copyOf(shards);
+        this.ring = ring;
+    }
+
+    public ShardRebalanceResult rebalance() {
+        ShardRebalanceResult result = new ShardRebalanceResult();
+        for (int source = 0; source < shards.size(); source++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shards.get(source));
+
+            for (Object id : jdbcTemplate.queryForList("select id from customer", Object.class)) {
+                int target = ring.shardFor(toUuid(id));
+                if (target != source) {
+                    moveCustomer(source, target, id, result);
+                }
+            }
+
+            for (String phoneNumber : jdbcTemplate.queryForList("select phone_number from phone_number_claim", String.class)) {
+                int target = ring.shardFor(phoneNumber);
+                if (target != source) {
+                    move(source, target, "phone_number_claim", List.of("phone_number"), "phone_number", phoneNumber);
+                    result.phoneNumberClaimMoved();
+                }
+            }
+        }
+        return result;
+    }
+
+    private void moveCustomer(int source, int target, Object id, ShardRebalanceResult result) {
+        inTransaction(target, () -> {
+            copy(source, target, "customer", List.of("id"), "id", id);
+            copy(source, target, "payment", List.of("payment_id"), "customer_id", id);
+            copy(source, target, "sms_outbox_message", List.of("id"), "customer_id", id);
+            copy(source, target, "payment_total", PAYMENT_TOTAL_KEY, "customer_id", id);
+        });
+
+        int[] deleted = new int[2];
+        inTransaction(source, () -> {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shards.get(source));
+            jdbcTemplate.update("delete from payment_total where customer_id = ?", id);
+            deleted[1] = jdbcTemplate.update("delete from sms_outbox_message where customer_id = ?", id);
+            deleted[0] = jdbcTemplate.update("delete from payment where customer_id = ?", id);
+            jdbcTemplate.update("delete from customer where id = ?", id);
+        });
+        result.customerMoved(deleted[0], deleted[1]);
+    }
+
+    private void move(int source, int target, String table, List<String> keyColumns, String column, Object value) {
+        inTransaction(target, () -> copy(source, target, table, keyColumns, column, value));
+        inTransaction(source, () -> new JdbcTemplate(shards.get(source))
+                .update("delete from " + table + " where " + column + " = ?", value));
+    }
+
+    // Copies the rows of table where column = value, skipping rows already on the target
+    private void copy(int source, int target, String table, List<String> keyColumns, String column, Object value) {
+        JdbcTemplate from = new JdbcTemplate(shards.get(source));
+        JdbcTemplate to = new JdbcTemplate(shards.get(target));
+
+        StringJoiner key = new StringJoiner(" and ");
+        keyColumns.forEach(keyColumn -> key.add(keyColumn + " = ?"));
+        for (Map<String, Object> row : from.queryForList("select * from " + table + " where " + column + " = ?", value)) {
+            Integer existing = to.queryForObject("select count(*) from " + table + " where " + key, Integer.class,
+                    keyColumns.stream().map(row::get).toArray());
+            if (existing != null && existing > 0) {
+                continue;
+            }
+
+            StringJoiner columns = new StringJoiner(", ");
+            StringJoiner placeholders = new StringJoiner(", ");
+            List<Object> values = new ArrayList<>(row.size());
+            row.forEach((name, columnValue) -> {
+                columns.add(name);
+                placeholders.add("?");
+                values.add(columnValue);
+            });
+            to.update("insert into " + table + " (" + columns + ") values (" + placeholders + ")", values.toArray());
+        }
+    }
+
+    private void inTransaction(int shard, Runnable work) {
+        new TransactionTemplate(new DataSourceTransactionManager(shards.get(shard))).executeWithoutResult(status -> work.run());
+    }
+
+    // Hibernate stores a UUID as 16 bytes on H2 unless the column is a native uuid
+    static UUID toUuid(Object id) {
+        if (id instanceof UUID) {
+            return (UUID) id;
+        }
+        if (id instanceof byte[]) {
+            ByteBuffer bytes = ByteBuffer.wrap((byte[]) id);
+            return new UUID(bytes.getLong(), bytes.getLong());
+        }
+        return UUID.fromString(id.toString());
+    }
+}
@@ -0,0 +1,91 @@
+package com.amigoscode.testing.shard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+// Consistent hash ring. Every shard owns virtualNodes points on the ring and a key
+// belongs to the first point at or after its hash. Points only depend on the shard
+// name, so adding a shard moves about 1/(n + 1) of the keys and only onto the new shard.
+public class ShardRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 512;
+
+    private final List<String> shards;
+    private final long[] points;
+    private final int[] owners;
+
+    public ShardRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("A shard ring needs at least one shard");
+        }
+        this.shards = List.copyOf(shards);
+
+        long[][] nodes = new long[shards.size() * virtualNodes][];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                nodes[shard * virtualNodes + node] = new long[]{hash(shards.get(shard) + "#" + node), shard};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.points = new long[nodes.length];
+        this.owners = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            points[i] = nodes[i][0];
+            owners[i] = (int) nodes[i][1];
+        }
+    }
+
+    // Shards named shard-0 .. shard-(count - 1), the names the configuration uses
+    public static ShardRing ofSize(int count) {
+        List<String> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add("shard-" + i);
+        }
+        return new ShardRing(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public int shardFor(UUID customerId) {
+        return ownerOf(mix(customerId.getMostSignificantBits() ^ mix(customerId.getLeastSignificantBits())));
+    }
+
+    public int shardFor(CharSequence key) {
+        return ownerOf(hash(key));
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    public String getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    private int ownerOf(long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    private static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
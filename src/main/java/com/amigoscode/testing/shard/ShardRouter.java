@@ -0,0 +1,60 @@
+package com.amigoscode.testing.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Maps customers to shards. Without sharding there is a single shard and
+// every customer maps to it, so callers can partition unconditionally.
+@Component
+public class ShardRouter {
+
+    private final ShardRing ring;
+
+    @Autowired
+    public ShardRouter(@Value("${customer.sharding.enabled:false}") boolean enabled,
+                       @Value("${customer.sharding.urls:}") List<String> urls) {
+        this(ShardRing.ofSize(enabled ? urls.size() : 1));
+    }
+
+    public ShardRouter(ShardRing ring) {
+        this.ring = ring;
+    }
+
+    public static ShardRouter single() {
+        return new ShardRouter(ShardRing.ofSize(1));
+    }
+
+    public int shardFor(UUID customerId) {
+        return ring.shardFor(customerId);
+    }
+
+    // Phone number claims are spread by the number itself, the customer is not known yet
+    public int shardForPhoneNumber(String phoneNumber) {
+        return ring.shardFor(phoneNumber);
+    }
+
+    public int getShardCount() {
+        return ring.size();
+    }
+
+    public ShardRing getRing() {
+        return ring;
+    }
+
+    // Groups the items by the shard of their customer, keeping their order within a shard
+    public <T> Map<Integer, List<T>> partition(Iterable<? extends T> items, Function<? super T, UUID> customerId) {
+        Map<Integer, List<T>> byShard = new TreeMap<>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardFor(customerId.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return byShard;
+    }
+}
@@ -0,0 +1,76 @@
+package com.amigoscode.testing.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+// Hibernate creates the schema through the routing DataSource, which only reaches the
+// directory shard. On local H2 shards the schema is copied from there to the others;
+// any other database has to be migrated shard by shard before the application starts.
+//
+// Sequences on shard n start at n * SHARD_ID_STRIDE, so generated ids never collide
+// across shards and rows can be moved between shards by the ShardRebalancer.
+class ShardSchemaInitializer implements SmartInitializingSingleton {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardSchemaInitializer.class);
+
+    static final long SHARD_ID_STRIDE = 1L << 40;
+
+    private final List<DataSource> shards;
+    private final List<String> urls;
+
+    ShardSchemaInitializer(List<DataSource> shards, List<String> urls) {
+        this.shards = shards;
+        this.urls = urls;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!urls.stream().allMatch(url -> url.trim().startsWith("jdbc:h2:"))) {
+            LOGGER.info("Shards are not H2 databases, expecting their schemas to be migrated already");
+            return;
+        }
+
+        List<String> script = new JdbcTemplate(shards.get(ShardContext.DIRECTORY_SHARD))
+                .queryForList("SCRIPT NODATA", String.class);
+        for (int shard = 0; shard < shards.size(); shard++) {
+            if (shard == ShardContext.DIRECTORY_SHARD) {
+                continue;
+            }
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shards.get(shard));
+            if (!hasTables(jdbcTemplate)) {
+                for (String statement : script) {
+                    if (!statement.startsWith("CREATE USER") && !statement.startsWith("--")) {
+                        jdbcTemplate.execute(statement);
+                    }
+                }
+            }
+            offsetSequences(jdbcTemplate, shard * SHARD_ID_STRIDE);
+        }
+        LOGGER.info("Schema ready on {} shards", shards.size());
+    }
+
+    private static boolean hasTables(JdbcTemplate jdbcTemplate) {
+        Integer tables = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.tables where table_schema = 'PUBLIC'", Integer.class);
+        return tables != null && tables > 0;
+    }
+
+    // A pooled sequence hands out the increment - 1 ids below the value it returns,
+    // restarting there keeps the first id of the shard at start
+    private static void offsetSequences(JdbcTemplate jdbcTemplate, long start) {
+        List<Map<String, Object>> sequences = jdbcTemplate.queryForList(
+                "select sequence_name, increment from information_schema.sequences " +
+                        "where sequence_schema = 'PUBLIC' and current_value < ?", start);
+        for (Map<String, Object> sequence : sequences) {
+            long increment = ((Number) sequence.get("increment")).longValue();
+            jdbcTemplate.execute("alter sequence \"" + sequence.get("sequence_name") + "\" restart with "
+                    + (start + increment - 1));
+        }
+    }
+}
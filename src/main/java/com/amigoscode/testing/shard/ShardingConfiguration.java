@@ -0,0 +1,66 @@
+package com.amigoscode.testing.shard;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Replaces the auto-configured DataSource with customer.sharding.urls, the first url
+// being the directory shard. The shards share spring.datasource.* credentials.
+// Not meant to be combined with datasource.routing.enabled.
+@Configuration
+@ConditionalOnProperty(
+        value = "customer.sharding.enabled",
+        havingValue = "true"
+)
+public class ShardingConfiguration {
+
+    @Bean
+    public ShardDataSources shardDataSources(
+            DataSourceProperties dataSourceProperties,
+            @Value("${customer.sharding.urls}") List<String> urls) {
+        List<DataSource> shards = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            shards.add(DataSourceBuilder.create()
+                    .driverClassName(dataSourceProperties.determineDriverClassName())
+                    .url(url.trim())
+                    .username(dataSourceProperties.determineUsername())
+                    .password(dataSourceProperties.determinePassword())
+                    .build());
+        }
+        return new ShardDataSources(shards);
+    }
+
+    // The routing DataSource is only reachable through this bean, see ShardDataSources
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardDataSources shardDataSources) {
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shardDataSources.getShards()));
+    }
+
+    @Bean
+    public ShardSchemaInitializer shardSchemaInitializer(
+            ShardDataSources shardDataSources,
+            @Value("${customer.sharding.urls}") List<String> urls) {
+        return new ShardSchemaInitializer(shardDataSources.getShards(), urls);
+    }
+
+    @Bean
+    public ShardRebalanceRunner shardRebalanceRunner(ShardDataSources shardDataSources,
+                                                     ShardRouter shardRouter) {
+        return new ShardRebalanceRunner(shardDataSources, shardRouter);
+    }
+
+    @Bean
+    public static ShardingRepositoryPostProcessor shardingRepositoryPostProcessor() {
+        return new ShardingRepositoryPostProcessor();
+    }
+}
@@ -0,0 +1,402 @@
+package com.amigoscode.testing.shard;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.ledger.PaymentTotal;
+import com.amigoscode.testing.payment.ledger.PaymentTotalId;
+import com.amigoscode.testing.sms.SmsOutboxMessage;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Routes repository calls by the customer they are about. Customer ids, customers,
+// payments, outbox messages and payment totals pick their shard, collections of them
+// are split per shard, and calls that name no customer (findAll, count, payment ids,
+// the outbox poll) run on every shard with the results merged.
+//
+// Phone number lookups go through the PhoneNumberClaim table, which is spread by
+// phone number. Saving a customer claims its number first, so uniqueness holds
+// across shards even though each shard only sees its own customers.
+class ShardingRepositoryInterceptor implements MethodInterceptor {
+
+    // A claim commits before its customer does, so for this long a claim without a
+    // customer is taken to be a registration still in flight rather than an abandoned one
+    static final Duration CLAIM_GRACE_PERIOD = Duration.ofMinutes(1);
+
+    private final ShardRouter shardRouter;
+    private final PhoneNumberClaimRepository claims;
+    private final TransactionTemplate readOnly;
+    private final TransactionTemplate readWrite;
+    private final Clock clock;
+
+    ShardingRepositoryInterceptor(ShardRouter shardRouter,
+                                  PhoneNumberClaimRepository claims,
+                                  PlatformTransactionManager transactionManager) {
+        this(shardRouter, claims, transactionManager, Clock.systemUTC());
+    }
+
+    ShardingRepositoryInterceptor(ShardRouter shardRouter,
+                                  PhoneNumberClaimRepository claims,
+                                  PlatformTransactionManager transactionManager,
+                                  Clock clock) {
+        this.shardRouter = shardRouter;
+        this.claims = claims;
+        this.clock = clock;
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readWrite.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnly.setReadOnly(true);
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        // Already routed, e.g. a lookup this interceptor makes itself or the rebalancer
+        if (ShardContext.current() != null || method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+
+        Object[] arguments = invocation.getArguments();
+        String name = method.getName();
+        if (name.startsWith("select") && name.endsWith("ByPhoneNumber")) {
+            return selectByPhoneNumber(invocation, (String) arguments[0]);
+        }
+        if (name.startsWith("select") && name.endsWith("ByPhoneNumbers")) {
+            return selectByPhoneNumbers(invocation, (Iterable<?>) arguments[0]);
+        }
+        if (name.startsWith("save") && (arguments[0] instanceof Customer || firstOf(arguments[0]) instanceof Customer)) {
+            return saveCustomers(invocation);
+        }
+        return route(invocation);
+    }
+
+    private Object route(MethodInvocation invocation) {
+        Object[] arguments = invocation.getArguments();
+        if (arguments.length == 0) {
+            return onEveryShard(invocation);
+        }
+
+        if (arguments[0] instanceof Iterable) {
+            Map<Integer, List<Object>> byShard = partition((Iterable<?>) arguments[0]);
+            if (byShard == null) {
+                return onEveryShard(invocation);
+            }
+            if (byShard.size() <= 1) {
+                return byShard.isEmpty() ? proceed(invocation) : onShard(byShard.keySet().iterator().next(), invocation);
+            }
+            return onShards(invocation, byShard);
+        }
+
+        Integer shard = shardOf(arguments[0]);
+        return shard == null ? onEveryShard(invocation) : onShard(shard, invocation);
+    }
+
+    private Object onShard(int shard, MethodInvocation invocation) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            Integer bound = ShardContext.transactionShard();
+            if (bound != null && bound != shard && !isWrite(invocation)) {
+                // A read on another shard does not need the surrounding transaction
+                return inNewTransaction(shard, false, invocation, invocation.getArguments());
+            }
+            if (bound != null && bound != shard && isCustomerWrite(invocation)) {
+                return inNewTransaction(shard, true, invocation, invocation.getArguments());
+            }
+            ShardContext.bindToTransaction(shard);
+        }
+        return ShardContext.on(shard, () -> proceed(invocation));
+    }
+
+    private Object onShards(MethodInvocation invocation, Map<Integer, List<Object>> byShard) {
+        boolean write = isWrite(invocation);
+        checkCanWriteToEveryShard(invocation, write);
+
+        List<Object> results = new ArrayList<>(byShard.size());
+        for (Map.Entry<Integer, List<Object>> shard : byShard.entrySet()) {
+            Object[] arguments = invocation.getArguments().clone();
+            arguments[0] = shard.getValue();
+            results.add(inNewTransaction(shard.getKey(), write, invocation, arguments));
+        }
+        return merge(invocation.getMethod(), results);
+    }
+
+    private Object onEveryShard(MethodInvocation invocation) {
+        boolean write = isWrite(invocation);
+        checkCanWriteToEveryShard(invocation, write);
+
+        List<Object> results = new ArrayList<>(shardRouter.getShardCount());
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            results.add(inNewTransaction(shard, write, invocation, invocation.getArguments()));
+        }
+        return merge(invocation.getMethod(), results);
+    }
+
+    // Each shard commits on its own. Customer writes already span shards through the
+    // claims, everything else has to be split by the caller, e.g. PaymentRecorder.
+    private void checkCanWriteToEveryShard(MethodInvocation invocation, boolean write) {
+        if (write && !isCustomerWrite(invocation) && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException(
+                    "Cannot run " + invocation.getMethod().getName() + " on several shards in one transaction");
+        }
+    }
+
+    private Object inNewTransaction(int shard, boolean write, MethodInvocation invocation, Object[] arguments) {
+        MethodInvocation call = ((ProxyMethodInvocation) invocation).invocableClone(arguments);
+        return inNewTransaction(shard, write, () -> collect(proceed(call)));
+    }
+
+    private <T> T inNewTransaction(int shard, boolean write, Supplier<T> work) {
+        TransactionTemplate transaction = write ? readWrite : readOnly;
+        return ShardContext.on(shard, () -> transaction.execute(status -> work.get()));
+    }
+
+    // The query itself runs on the shard of the customer holding the claim. A claim can
+    // outlive a failed registration or a changed number, the query has the final word.
+    private Object selectByPhoneNumber(MethodInvocation invocation, String phoneNumber) {
+        Optional<PhoneNumberClaim> claim = inNewTransaction(
+                shardRouter.shardForPhoneNumber(phoneNumber), false, () -> claims.findById(phoneNumber));
+        if (claim.isEmpty()) {
+            return Optional.empty();
+        }
+        return inNewTransaction(shardRouter.shardFor(claim.get().getCustomerId()), false,
+                invocation, invocation.getArguments());
+    }
+
+    private Object selectByPhoneNumbers(MethodInvocation invocation, Iterable<?> phoneNumbers) {
+        Map<Integer, List<String>> byClaimShard = new TreeMap<>();
+        for (Object phoneNumber : phoneNumbers) {
+            byClaimShard.computeIfAbsent(shardRouter.shardForPhoneNumber((String) phoneNumber),
+                    shard -> new ArrayList<>()).add((String) phoneNumber);
+        }
+
+        Map<Integer, List<Object>> byCustomerShard = new TreeMap<>();
+        byClaimShard.forEach((shard, numbers) -> inNewTransaction(shard, false, () -> claims.findAllById(numbers))
+                .forEach(claim -> byCustomerShard.computeIfAbsent(shardRouter.shardFor(claim.getCustomerId()),
+                        customerShard -> new ArrayList<>()).add(claim.getPhoneNumber())));
+        if (byCustomerShard.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return onShards(invocation, byCustomerShard);
+    }
+
+    private Object saveCustomers(MethodInvocation invocation) {
+        Object argument = invocation.getArguments()[0];
+        List<Customer> customers = new ArrayList<>();
+        if (argument instanceof Customer) {
+            customers.add((Customer) argument);
+        } else {
+            ((Iterable<?>) argument).forEach(customer -> customers.add((Customer) customer));
+        }
+
+        List<PhoneNumberClaim> claimed = claim(invocation, customers);
+        try {
+            return route(invocation);
+        } catch (RuntimeException e) {
+            release(claimed);
+            throw e;
+        }
+    }
+
+    // Claims the customers' phone numbers and returns the claims that are new or taken over,
+    // the ones to release when the customers are not saved
+    private List<PhoneNumberClaim> claim(MethodInvocation invocation, List<Customer> customers) {
+        Map<Integer, List<Customer>> byClaimShard = new TreeMap<>();
+        for (Customer customer : customers) {
+            byClaimShard.computeIfAbsent(shardRouter.shardForPhoneNumber(customer.getPhoneNumber()),
+                    shard -> new ArrayList<>()).add(customer);
+        }
+
+        List<PhoneNumberClaim> claimed = new ArrayList<>();
+        try {
+            for (Map.Entry<Integer, List<Customer>> shard : byClaimShard.entrySet()) {
+                claimed.addAll(inNewTransaction(shard.getKey(), true, () -> claimOnShard(invocation, shard.getValue())));
+            }
+        } catch (RuntimeException e) {
+            release(claimed);
+            throw e;
+        }
+        return claimed;
+    }
+
+    private List<PhoneNumberClaim> claimOnShard(MethodInvocation invocation, List<Customer> customers) {
+        Map<String, PhoneNumberClaim> existing = new HashMap<>();
+        claims.findAllById(customers.stream().map(Customer::getPhoneNumber).collect(Collectors.toList()))
+                .forEach(claim -> existing.put(claim.getPhoneNumber(), claim));
+
+        Instant now = clock.instant();
+        List<PhoneNumberClaim> claimed = new ArrayList<>();
+        List<PhoneNumberClaim> created = new ArrayList<>();
+        for (Customer customer : customers) {
+            PhoneNumberClaim claim = existing.get(customer.getPhoneNumber());
+            if (claim == null) {
+                PhoneNumberClaim newClaim = new PhoneNumberClaim(customer.getPhoneNumber(), customer.getId(), now);
+                created.add(newClaim);
+                claimed.add(newClaim);
+            } else if (!claim.getCustomerId().equals(customer.getId())) {
+                boolean taken = findCustomer(invocation, claim.getCustomerId())
+                        .filter(owner -> owner.getPhoneNumber().equals(customer.getPhoneNumber()))
+                        .isPresent();
+                if (taken) {
+                    throw new DataIntegrityViolationException(String.format(
+                            "Phone number [%s] is already taken by customer %s",
+                            customer.getPhoneNumber(), claim.getCustomerId()));
+                }
+                if (claim.getClaimedAt() != null && claim.getClaimedAt().plus(CLAIM_GRACE_PERIOD).isAfter(now)) {
+                    throw new DataIntegrityViolationException(String.format(
+                            "Phone number [%s] is being registered by customer %s",
+                            customer.getPhoneNumber(), claim.getCustomerId()));
+                }
+                // Left behind by a registration that did not go through, take it over
+                if (claims.takeOver(claim.getPhoneNumber(), claim.getCustomerId(), customer.getId(), now) == 0) {
+                    throw new DataIntegrityViolationException(String.format(
+                            "Phone number [%s] was just claimed by another customer", customer.getPhoneNumber()));
+                }
+                claimed.add(claim);
+            }
+        }
+        claims.saveAll(created);
+        return claimed;
+    }
+
+    private void release(List<PhoneNumberClaim> claimed) {
+        Map<Integer, List<PhoneNumberClaim>> byClaimShard = new TreeMap<>();
+        for (PhoneNumberClaim claim : claimed) {
+            byClaimShard.computeIfAbsent(shardRouter.shardForPhoneNumber(claim.getPhoneNumber()),
+                    shard -> new ArrayList<>()).add(claim);
+        }
+        byClaimShard.forEach((shard, shardClaims) -> inNewTransaction(shard, true, () -> {
+            claims.deleteAll(shardClaims);
+            return null;
+        }));
+    }
+
+    private Optional<Customer> findCustomer(MethodInvocation invocation, UUID customerId) {
+        return inNewTransaction(shardRouter.shardFor(customerId), false,
+                () -> customerRepository(invocation).findById(customerId));
+    }
+
+    // Groups by shard, null when an element does not name a customer
+    private Map<Integer, List<Object>> partition(Iterable<?> arguments) {
+        Map<Integer, List<Object>> byShard = new TreeMap<>();
+        for (Object argument : arguments) {
+            Integer shard = shardOf(argument);
+            if (shard == null) {
+                return null;
+            }
+            byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(argument);
+        }
+        return byShard;
+    }
+
+    private Integer shardOf(Object argument) {
+        UUID customerId = null;
+        if (argument instanceof UUID) {
+            customerId = (UUID) argument;
+        } else if (argument instanceof Customer) {
+            customerId = ((Customer) argument).getId();
+        } else if (argument instanceof Payment) {
+            customerId = ((Payment) argument).getCustomerId();
+        } else if (argument instanceof SmsOutboxMessage) {
+            customerId = ((SmsOutboxMessage) argument).getCustomerId();
+        } else if (argument instanceof PaymentTotal) {
+            customerId = ((PaymentTotal) argument).getCustomerId();
+        } else if (argument instanceof PaymentTotalId) {
+            customerId = ((PaymentTotalId) argument).getCustomerId();
+        }
+        return customerId == null ? null : shardRouter.shardFor(customerId);
+    }
+
+    private static boolean isWrite(MethodInvocation invocation) {
+        String name = invocation.getMethod().getName();
+        return name.startsWith("save") || name.startsWith("delete");
+    }
+
+    private static boolean isCustomerWrite(MethodInvocation invocation) {
+        Object argument = invocation.getArguments().length == 0 ? null : invocation.getArguments()[0];
+        return isWrite(invocation) && (argument instanceof Customer || firstOf(argument) instanceof Customer);
+    }
+
+    private static Object firstOf(Object argument) {
+        if (argument instanceof Iterable) {
+            for (Object element : (Iterable<?>) argument) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CrudRepository<Customer, UUID> customerRepository(MethodInvocation invocation) {
+        return (CrudRepository<Customer, UUID>) invocation.getThis();
+    }
+
+    // Streams have to be read before their shard's transaction ends
+    private static Object collect(Object result) {
+        if (result instanceof Stream) {
+            try (Stream<?> stream = (Stream<?>) result) {
+                return stream.collect(Collectors.toList());
+            }
+        }
+        return result;
+    }
+
+    private static Object merge(Method method, List<Object> results) {
+        Class<?> type = method.getReturnType();
+        if (type == void.class) {
+            return null;
+        }
+        if (type == long.class || type == Long.class) {
+            return results.stream().mapToLong(result -> (Long) result).sum();
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return results.stream().anyMatch(Boolean.TRUE::equals);
+        }
+        if (type == Optional.class) {
+            return results.stream()
+                    .map(result -> (Optional<?>) result)
+                    .filter(Optional::isPresent)
+                    .findFirst()
+                    .orElse(Optional.empty());
+        }
+        if (Stream.class.isAssignableFrom(type) || Iterable.class.isAssignableFrom(type)) {
+            List<Object> merged = new ArrayList<>();
+            for (Object result : results) {
+                ((Iterable<?>) result).forEach(merged::add);
+            }
+            return Stream.class.isAssignableFrom(type) ? merged.stream() : merged;
+        }
+        throw new IllegalStateException("Cannot merge the results of " + method + " across shards");
+    }
+
+    private static Object proceed(MethodInvocation invocation) {
+        try {
+            return invocation.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
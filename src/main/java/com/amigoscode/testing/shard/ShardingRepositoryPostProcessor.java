@@ -0,0 +1,59 @@
+package com.amigoscode.testing.shard;
+
+import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.payment.PaymentRepository;
+import com.amigoscode.testing.payment.ledger.PaymentTotalRepository;
+import com.amigoscode.testing.sms.SmsOutboxRepository;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+// Puts the ShardingRepositoryInterceptor in front of the repositories whose rows belong
+// to a customer. It goes outside the repository's own transaction so the shard is known
+// before the transaction starts. Its collaborators are looked up on first use: a post
+// processor is created before most beans and must not pull them in early.
+class ShardingRepositoryPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private static final List<Class<?>> SHARDED_REPOSITORIES = List.of(
+            CustomerRepository.class,
+            PaymentRepository.class,
+            PaymentTotalRepository.class,
+            SmsOutboxRepository.class
+    );
+
+    private BeanFactory beanFactory;
+    private volatile ShardingRepositoryInterceptor interceptor;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        for (Class<?> repository : SHARDED_REPOSITORIES) {
+            if (repository.isInstance(bean)) {
+                ProxyFactory proxyFactory = new ProxyFactory(bean);
+                proxyFactory.addAdvice((MethodInterceptor) invocation -> interceptor().invoke(invocation));
+                return proxyFactory.getProxy();
+            }
+        }
+        return bean;
+    }
+
+    private ShardingRepositoryInterceptor interceptor() {
+        if (interceptor == null) {
+            interceptor = new ShardingRepositoryInterceptor(
+                    beanFactory.getBean(ShardRouter.class),
+                    beanFactory.getBean(PhoneNumberClaimRepository.class),
+                    beanFactory.getBean(PlatformTransactionManager.class));
+        }
+        return interceptor;
+    }
+}
@@ -0,0 +1,34 @@
+package com.amigoscode.testing.sms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Logs and remembers every message instead of sending it
+@Service
+@ConditionalOnProperty(
+        value = "sms.sender",
+        havingValue = "fake",
+        matchIfMissing = true
+)
+public class FakeSmsSender implements SmsSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FakeSmsSender.class);
+
+    private final List<SmsMessage> sent = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void send(SmsMessage smsMessage) {
+        LOGGER.info("SMS to {}: {}", smsMessage.getPhoneNumber(), smsMessage.getText());
+        sent.add(smsMessage);
+    }
+
+    public List<SmsMessage> getSent() {
+        return new ArrayList<>(sent);
+    }
+}
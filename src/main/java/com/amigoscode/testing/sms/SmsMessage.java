@@ -0,0 +1,44 @@
+package com.amigoscode.testing.sms;
+
+import java.util.Objects;
+
+public class SmsMessage {
+
+    private final String phoneNumber;
+    private final String text;
+
+    public SmsMessage(String phoneNumber, String text) {
+        this.phoneNumber = phoneNumber;
+        this.text = text;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SmsMessage that = (SmsMessage) o;
+        return Objects.equals(phoneNumber, that.phoneNumber) &&
+                Objects.equals(text, that.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(phoneNumber, text);
+    }
+
+    @Override
+    public String toString() {
+        return "SmsMessage{" +
+                "phoneNumber='" + phoneNumber + '\'' +
+                ", text='" + text + '\'' +
+                '}';
+    }
+}
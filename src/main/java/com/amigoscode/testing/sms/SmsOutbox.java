@@ -0,0 +1,48 @@
+package com.amigoscode.testing.sms;
+
+import com.amigoscode.testing.payment.Payment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+// Records the SMS for a payment in the transaction that saves the payment, so either
+// both are committed or neither is. SmsOutboxDispatcher sends it later.
+@Component
+public class SmsOutbox {
+
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final Clock clock;
+
+    @Autowired
+    public SmsOutbox(SmsOutboxRepository smsOutboxRepository) {
+        this(smsOutboxRepository, Clock.systemUTC());
+    }
+
+    SmsOutbox(SmsOutboxRepository smsOutboxRepository, Clock clock) {
+        this.smsOutboxRepository = smsOutboxRepository;
+        this.clock = clock;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void paymentReceived(Payment payment) {
+        smsOutboxRepository.save(message(payment));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void paymentsReceived(Iterable<Payment> payments) {
+        List<SmsOutboxMessage> messages = new ArrayList<>();
+        payments.forEach(payment -> messages.add(message(payment)));
+        smsOutboxRepository.saveAll(messages);
+    }
+
+    private SmsOutboxMessage message(Payment payment) {
+        String text = String.format("We received your payment of %s %s. Thank you!",
+                payment.getAmount(), payment.getCurrency());
+        return new SmsOutboxMessage(payment.getCustomerId(), payment.getPaymentId(), text, clock.instant());
+    }
+}
@@ -0,0 +1,163 @@
+package com.amigoscode.testing.sms;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+// Drains the outbox in the background. A message is marked sent only after the sender
+// accepted it, so a crash in between sends it again rather than losing it. Each batch is
+// claimed with one update before anything is sent, so dispatchers on several instances
+// do not send the same message twice unless a batch outlasts its lease.
+@Component
+@ConditionalOnProperty(
+        value = "sms.outbox.dispatcher.enabled",
+        havingValue = "true",
+        matchIfMissing = true
+)
+public class SmsOutboxDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SmsOutboxDispatcher.class);
+
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final CustomerRepository customerRepository;
+    private final SmsSender smsSender;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+    private final Clock clock;
+
+    @Autowired
+    public SmsOutboxDispatcher(SmsOutboxRepository smsOutboxRepository,
+                               CustomerRepository customerRepository,
+                               SmsSender smsSender,
+                               @Value("${sms.outbox.batch-size:100}") int batchSize,
+                               @Value("${sms.outbox.max-attempts:10}") int maxAttempts,
+                               @Value("${sms.outbox.initial-backoff:PT1S}") Duration initialBackoff,
+                               @Value("${sms.outbox.max-backoff:PT10M}") Duration maxBackoff,
+                               @Value("${sms.outbox.lease:PT5M}") Duration lease) {
+        this(smsOutboxRepository, customerRepository, smsSender,
+                batchSize, maxAttempts, initialBackoff, maxBackoff, lease, Clock.systemUTC());
+    }
+
+    SmsOutboxDispatcher(SmsOutboxRepository smsOutboxRepository,
+                        CustomerRepository customerRepository,
+                        SmsSender smsSender,
+                        int batchSize,
+                        int maxAttempts,
+                        Duration initialBackoff,
+                        Duration maxBackoff,
+                        Duration lease,
+                        Clock clock) {
+        this.smsOutboxRepository = smsOutboxRepository;
+        this.customerRepository = customerRepository;
+        this.smsSender = smsSender;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.lease = lease;
+        this.clock = clock;
+    }
+
+    @Scheduled(fixedDelayString = "${sms.outbox.poll-interval-ms:1000}")
+    public void dispatchAll() {
+        int dispatched;
+        do {
+            dispatched = dispatch();
+        } while (dispatched == batchSize);
+    }
+
+    // Sends one batch of due messages and returns how many were attempted
+    public int dispatch() {
+        Instant now = clock.instant();
+        List<SmsOutboxMessage> due = smsOutboxRepository.selectDue(now, PageRequest.of(0, batchSize));
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        // 1. Claim the batch, another dispatcher that selected some of it first keeps those.
+        // Only when it did are the ones this dispatcher got read back.
+        UUID claimToken = UUID.randomUUID();
+        List<Long> ids = due.stream()
+                .map(SmsOutboxMessage::getId)
+                .collect(Collectors.toList());
+        int claimed = smsOutboxRepository.claim(ids, claimToken, now, now.plus(lease));
+        if (claimed == 0) {
+            return 0;
+        }
+        if (claimed < due.size()) {
+            due = smsOutboxRepository.selectClaimed(ids, claimToken);
+        }
+
+        // 2. One query for the phone numbers of the whole batch
+        Set<UUID> customerIds = due.stream()
+                .map(SmsOutboxMessage::getCustomerId)
+                .collect(Collectors.toSet());
+        Map<UUID, String> phoneNumbers = new HashMap<>();
+        for (Customer customer : customerRepository.findAllById(customerIds)) {
+            phoneNumbers.put(customer.getId(), customer.getPhoneNumber());
+        }
+
+        // 3. Send, a failure only reschedules its own message
+        for (SmsOutboxMessage message : due) {
+            message.setAttempts(message.getAttempts() + 1);
+
+            String phoneNumber = phoneNumbers.get(message.getCustomerId());
+            if (phoneNumber == null) {
+                message.setStatus(SmsOutboxStatus.FAILED);
+                message.setLastError(String.format("Customer with id [%s] not found", message.getCustomerId()));
+                continue;
+            }
+
+            try {
+                smsSender.send(new SmsMessage(phoneNumber, message.getText()));
+                message.setStatus(SmsOutboxStatus.SENT);
+                message.setSentAt(now);
+            } catch (RuntimeException e) {
+                retryLater(message, now, e);
+            }
+        }
+
+        // 4. Record the outcomes in one transaction
+        smsOutboxRepository.saveAll(due);
+        return due.size();
+    }
+
+    private void retryLater(SmsOutboxMessage message, Instant now, RuntimeException e) {
+        String error = String.valueOf(e.getMessage());
+        message.setLastError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+
+        if (message.getAttempts() >= maxAttempts) {
+            LOGGER.warn("Giving up on SMS {} after {} attempts", message.getId(), message.getAttempts(), e);
+            message.setStatus(SmsOutboxStatus.FAILED);
+            return;
+        }
+
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(message.getAttempts() - 1, 20));
+        if (backoff.compareTo(maxBackoff) > 0) {
+            backoff = maxBackoff;
+        }
+        message.setNextAttemptAt(now.plus(backoff));
+    }
+}
@@ -0,0 +1,138 @@
+package com.amigoscode.testing.sms;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(indexes = @Index(name = "sms_outbox_message_status_next_attempt_at_idx", columnList = "status, nextAttemptAt"))
+public class SmsOutboxMessage {
+
+    // Own sequence, so outbox rows do not take ids from the shared hibernate_sequence
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sms_outbox_message_id_seq")
+    @SequenceGenerator(name = "sms_outbox_message_id_seq", sequenceName = "sms_outbox_message_id_seq", allocationSize = 50)
+    private Long id;
+
+    private UUID customerId;
+
+    private Long paymentId;
+
+    private String text;
+
+    @Enumerated(EnumType.STRING)
+    private SmsOutboxStatus status;
+
+    private int attempts;
+
+    private Instant createdAt;
+
+    private Instant nextAttemptAt;
+
+    private Instant sentAt;
+
+    private String lastError;
+
+    // Set by the dispatcher that claimed the message, so it can tell which ones it got
+    private UUID claimToken;
+
+    public SmsOutboxMessage(UUID customerId, Long paymentId, String text, Instant createdAt) {
+        this.customerId = customerId;
+        this.paymentId = paymentId;
+        this.text = text;
+        this.status = SmsOutboxStatus.PENDING;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    public SmsOutboxMessage() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public SmsOutboxStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(SmsOutboxStatus status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public Instant getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(Instant sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public UUID getClaimToken() {
+        return claimToken;
+    }
+
+    @Override
+    public String toString() {
+        return "SmsOutboxMessage{" +
+                "id=" + id +
+                ", customerId=" + customerId +
+                ", paymentId=" + paymentId +
+                ", status=" + status +
+                ", attempts=" + attempts +
+                ", nextAttemptAt=" + nextAttemptAt +
+                '}';
+    }
+}
@@ -0,0 +1,37 @@
+package com.amigoscode.testing.sms;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface SmsOutboxRepository extends CrudRepository<SmsOutboxMessage, Long> {
+
+    @Query("select m from SmsOutboxMessage m " +
+            "where m.status = com.amigoscode.testing.sms.SmsOutboxStatus.PENDING and m.nextAttemptAt <= :now " +
+            "order by m.id")
+    List<SmsOutboxMessage> selectDue(@Param("now") Instant now, Pageable pageable);
+
+    // Takes the ones still due for the dispatcher with this token. Moving nextAttemptAt to
+    // the end of the lease hides them from other dispatchers, and if this one stops before
+    // recording what happened they are due again once the lease is over.
+    @Modifying
+    @Transactional
+    @Query("update SmsOutboxMessage m set m.claimToken = :claimToken, m.nextAttemptAt = :leaseUntil " +
+            "where m.id in :ids " +
+            "and m.status = com.amigoscode.testing.sms.SmsOutboxStatus.PENDING and m.nextAttemptAt <= :now")
+    int claim(@Param("ids") Collection<Long> ids,
+              @Param("claimToken") UUID claimToken,
+              @Param("now") Instant now,
+              @Param("leaseUntil") Instant leaseUntil);
+
+    @Query("select m from SmsOutboxMessage m where m.id in :ids and m.claimToken = :claimToken order by m.id")
+    List<SmsOutboxMessage> selectClaimed(@Param("ids") Collection<Long> ids, @Param("claimToken") UUID claimToken);
+}
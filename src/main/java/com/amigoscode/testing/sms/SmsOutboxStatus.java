@@ -0,0 +1,7 @@
+package com.amigoscode.testing.sms;
+
+public enum SmsOutboxStatus {
+    PENDING,
+    SENT,
+    FAILED
+}
@@ -0,0 +1,7 @@
+package com.amigoscode.testing.sms;
+
+public interface SmsSender {
+
+    // Throws when the message could not be handed to the provider, it is then retried
+    void send(SmsMessage smsMessage);
+}
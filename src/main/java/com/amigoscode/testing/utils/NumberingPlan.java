@@ -0,0 +1,50 @@
+package com.amigoscode.testing.utils;
+
+import java.util.List;
+
+// National significant number patterns per country, X is any digit and N is 2-9.
+// Only the leading digits and lengths are checked, not every allocated range.
+public enum NumberingPlan {
+
+    GB("44", "0",
+            "1XXXXXXXX",
+            "1XXXXXXXXX",
+            "2XXXXXXXXX",
+            "3XXXXXXXXX",
+            "7XXXXXXXXX",
+            "8XXXXXXXXX",
+            "9XXXXXXXXX"),
+
+    RO("40", "0",
+            "2XXXXXXXX",
+            "3XXXXXXXX",
+            "7XXXXXXXX",
+            "8XXXXXXXX",
+            "9XXXXXXXX"),
+
+    US("1", null,
+            "NXXNXXXXXX");
+
+    private final String countryCode;
+    private final String trunkPrefix;
+    private final List<String> patterns;
+
+    NumberingPlan(String countryCode, String trunkPrefix, String... patterns) {
+        this.countryCode = countryCode;
+        this.trunkPrefix = trunkPrefix;
+        this.patterns = List.of(patterns);
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    // Dialled before the national number within the country, null when there is none
+    public String getTrunkPrefix() {
+        return trunkPrefix;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+}
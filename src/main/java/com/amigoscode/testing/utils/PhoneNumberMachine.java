@@ -0,0 +1,135 @@
+package com.amigoscode.testing.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Deterministic automaton over the digits of an E.164 number (country code followed by
+// the national significant number) that accepts exactly the numbers of the given plans.
+// Built once by subset construction, after that a step is a single array lookup.
+final class PhoneNumberMachine {
+
+    static final int REJECT = -1;
+
+    // E.164 numbers have at most 15 digits
+    static final int MAX_DIGITS = 15;
+
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private PhoneNumberMachine(int[] transitions, boolean[] accepting) {
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    int start() {
+        return 0;
+    }
+
+    int next(int state, int digit) {
+        return transitions[state * 10 + digit];
+    }
+
+    boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    // The state after the country code, where a number dialled in national format continues
+    int after(String digits) {
+        int state = start();
+        for (int i = 0; i < digits.length() && state != REJECT; i++) {
+            state = next(state, digits.charAt(i) - '0');
+        }
+        return state;
+    }
+
+    static PhoneNumberMachine compile(NumberingPlan... plans) {
+
+        // 1. Every full pattern as one digit set (bits 0-9) per position
+        List<short[]> patterns = new ArrayList<>();
+        for (NumberingPlan plan : plans) {
+            for (String pattern : plan.getPatterns()) {
+                patterns.add(digitSets(plan.getCountryCode() + pattern));
+            }
+        }
+
+        // 2. Subset construction, an item is a pattern at a position
+        int width = MAX_DIGITS + 1;
+        Map<BitSet, Integer> states = new HashMap<>();
+        List<BitSet> pending = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        List<Boolean> accepting = new ArrayList<>();
+
+        BitSet initial = new BitSet();
+        for (int p = 0; p < patterns.size(); p++) {
+            initial.set(p * width);
+        }
+        states.put(initial, 0);
+        pending.add(initial);
+
+        for (int s = 0; s < pending.size(); s++) {
+            BitSet items = pending.get(s);
+            int[] row = new int[10];
+            boolean accepts = false;
+
+            for (int digit = 0; digit < 10; digit++) {
+                BitSet target = new BitSet();
+                for (int item = items.nextSetBit(0); item >= 0; item = items.nextSetBit(item + 1)) {
+                    short[] pattern = patterns.get(item / width);
+                    int position = item % width;
+                    if (position < pattern.length && (pattern[position] & (1 << digit)) != 0) {
+                        target.set(item + 1);
+                    }
+                }
+                if (target.isEmpty()) {
+                    row[digit] = REJECT;
+                    continue;
+                }
+                Integer state = states.get(target);
+                if (state == null) {
+                    state = pending.size();
+                    states.put(target, state);
+                    pending.add(target);
+                }
+                row[digit] = state;
+            }
+
+            for (int item = items.nextSetBit(0); item >= 0; item = items.nextSetBit(item + 1)) {
+                accepts |= item % width == patterns.get(item / width).length;
+            }
+            rows.add(row);
+            accepting.add(accepts);
+        }
+
+        // 3. Flatten into the lookup tables
+        int[] transitions = new int[rows.size() * 10];
+        boolean[] accepts = new boolean[rows.size()];
+        for (int s = 0; s < rows.size(); s++) {
+            System.arraycopy(rows.get(s), 0, transitions, s * 10, 10);
+            accepts[s] = accepting.get(s);
+        }
+        return new PhoneNumberMachine(transitions, accepts);
+    }
+
+    private static short[] digitSets(String pattern) {
+        if (pattern.length() > MAX_DIGITS) {
+            throw new IllegalStateException(String.format("Pattern [%s] is longer than %d digits", pattern, MAX_DIGITS));
+        }
+        short[] sets = new short[pattern.length()];
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sets[i] = (short) (1 << (c - '0'));
+            } else if (c == 'X') {
+                sets[i] = 0x3FF;
+            } else if (c == 'N') {
+                sets[i] = 0x3FC;
+            } else {
+                throw new IllegalStateException(String.format("Unexpected [%s] in pattern [%s]", c, pattern));
+            }
+        }
+        return sets;
+    }
+}
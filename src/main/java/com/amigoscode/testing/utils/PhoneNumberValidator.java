@@ -1,15 +1,134 @@
 package com.amigoscode.testing.utils;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.function.Predicate;
 
+// Accepts "+44 7000 000000", "0044 7000-000000" and, for the default region,
+// "07000 000000", and normalizes all of them to E.164, "+447000000000".
+// One pass over the characters through a PhoneNumberMachine; validating allocates nothing,
+// and neither does normalizing a number that is already in E.164.
 @Service
 public class PhoneNumberValidator implements Predicate<String> {
 
+    private static final byte INVALID = 0;
+    private static final byte DIGIT = 1;
+    private static final byte SEPARATOR = 2;
+
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            CHARACTER_CLASSES[c] = DIGIT;
+        }
+        for (char c : new char[]{' ', '-', '.', '(', ')'}) {
+            CHARACTER_CLASSES[c] = SEPARATOR;
+        }
+    }
+
+    private final PhoneNumberMachine machine;
+    private final int nationalStart;
+    private final char trunkPrefix;
+    private final String defaultCountryCode;
+
+    public PhoneNumberValidator() {
+        this(NumberingPlan.GB);
+    }
+
+    @Autowired
+    public PhoneNumberValidator(@Value("${customer.phone-number.default-region:GB}") NumberingPlan defaultRegion) {
+        this.machine = PhoneNumberMachine.compile(NumberingPlan.values());
+        this.defaultCountryCode = defaultRegion.getCountryCode();
+        this.nationalStart = machine.after(defaultCountryCode);
+
+        // Every trunk prefix in the plans is a single digit
+        String trunk = defaultRegion.getTrunkPrefix();
+        this.trunkPrefix = trunk == null ? 0 : trunk.charAt(0);
+    }
 
     @Override
     public boolean test(String phoneNumber) {
-        return phoneNumber.startsWith("+44") && phoneNumber.length() == 13;
+        return phoneNumber != null && scan(phoneNumber, null) > 0;
+    }
+
+    // The number in E.164, or null when it is not a valid number. A number already in
+    // E.164 is returned as it is, the others are scanned a second time to copy the digits.
+    public String normalize(CharSequence phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        int length = scan(phoneNumber, null);
+        if (length <= 0) {
+            return null;
+        }
+
+        // Already "+" followed by the digits, nothing to copy
+        if (length + 1 == phoneNumber.length() && phoneNumber.charAt(0) == '+' && phoneNumber instanceof String) {
+            return (String) phoneNumber;
+        }
+        char[] digits = new char[PhoneNumberMachine.MAX_DIGITS + 1];
+        scan(phoneNumber, digits);
+        digits[0] = '+';
+        return new String(digits, 0, length + 1);
+    }
+
+    // Returns the number of E.164 digits, written to digits[1..] when digits is not null,
+    // or -1 when the number is not valid
+    private int scan(CharSequence phoneNumber, char[] digits) {
+        int length = phoneNumber.length();
+        int i = 0;
+        while (i < length && phoneNumber.charAt(i) == ' ') {
+            i++;
+        }
+        if (i == length) {
+            return -1;
+        }
+
+        // 1. International with "+" or "00", or national after the trunk prefix
+        int state;
+        int written = 0;
+        char first = phoneNumber.charAt(i);
+
+        if (first == '+') {
+            state = machine.start();
+            i++;
+        } else if (first == '0' && i + 1 < length && phoneNumber.charAt(i + 1) == '0') {
+            state = machine.start();
+            i += 2;
+        } else if (first == trunkPrefix && trunkPrefix != 0 && nationalStart != PhoneNumberMachine.REJECT) {
+            state = nationalStart;
+            i++;
+            if (digits != null) {
+                for (int c = 0; c < defaultCountryCode.length(); c++) {
+                    digits[1 + c] = defaultCountryCode.charAt(c);
+                }
+            }
+            written = defaultCountryCode.length();
+        } else {
+            return -1;
+        }
+
+        // 2. Digits drive the machine, separators are skipped, anything else rejects
+        for (; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            byte characterClass = c < 128 ? CHARACTER_CLASSES[c] : INVALID;
+
+            if (characterClass == DIGIT) {
+                state = machine.next(state, c - '0');
+                if (state == PhoneNumberMachine.REJECT) {
+                    return -1;
+                }
+                if (digits != null) {
+                    digits[1 + written] = c;
+                }
+                written++;
+            } else if (characterClass != SEPARATOR) {
+                return -1;
+            }
+        }
+
+        return machine.isAccepting(state) ? written : -1;
     }
 }
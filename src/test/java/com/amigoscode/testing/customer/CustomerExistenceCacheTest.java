@@ -0,0 +1,160 @@
+package com.amigoscode.testing.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class CustomerExistenceCacheTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    private MutableClock clock;
+
+    private CustomerExistenceCache underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        clock = new MutableClock();
+        underTest = new CustomerExistenceCache(customerRepository, 2, Duration.ofMinutes(10), clock);
+    }
+
+    @Test
+    void itShouldOnlyAskTheDatabaseOnce() {
+        // Given
+        UUID id = UUID.randomUUID();
+        given(customerRepository.existsById(id)).willReturn(true);
+
+        // When
+        boolean first = underTest.exists(id);
+        boolean second = underTest.exists(id);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        then(customerRepository).should(times(1)).existsById(id);
+        assertThat(underTest.getMisses()).isEqualTo(1);
+        assertThat(underTest.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldNotCacheUnknownCustomers() {
+        // Given
+        UUID id = UUID.randomUUID();
+        given(customerRepository.existsById(id)).willReturn(false);
+
+        // When
+        underTest.exists(id);
+        underTest.exists(id);
+
+        // Then
+        then(customerRepository).should(times(2)).existsById(id);
+        assertThat(underTest.size()).isZero();
+    }
+
+    @Test
+    void itShouldAnswerRegisteredCustomersWithoutTheDatabase() {
+        // Given
+        UUID id = UUID.randomUUID();
+
+        // When
+        underTest.put(List.of(id));
+
+        // Then
+        assertThat(underTest.exists(id)).isTrue();
+        then(customerRepository).should(never()).existsById(id);
+    }
+
+    @Test
+    void itShouldExpireEntriesAfterTheTtl() {
+        // Given
+        UUID id = UUID.randomUUID();
+        underTest.put(List.of(id));
+        given(customerRepository.existsById(id)).willReturn(true);
+
+        // When
+        clock.advance(Duration.ofMinutes(10));
+
+        // Then
+        assertThat(underTest.exists(id)).isTrue();
+        then(customerRepository).should().existsById(id);
+        assertThat(underTest.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldEvictTheLeastRecentlyUsedEntry() {
+        // Given
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        underTest.put(List.of(first, second));
+
+        // ... first is used again, so second is now the eldest
+        underTest.exists(first);
+
+        // When
+        underTest.put(List.of(third));
+
+        // Then
+        assertThat(underTest.size()).isEqualTo(2);
+        assertThat(underTest.getEvictions()).isEqualTo(1);
+        assertThat(underTest.existing(List.of(first, third))).containsExactlyInAnyOrder(first, third);
+        then(customerRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldLookUpOnlyUncachedIdsInOneQuery() {
+        // Given
+        UUID cached = UUID.randomUUID();
+        UUID known = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        underTest.put(List.of(cached));
+        given(customerRepository.selectExistingIds(List.of(known, unknown))).willReturn(List.of(known));
+
+        // When
+        assertThat(underTest.existing(List.of(cached, known, unknown))).containsExactlyInAnyOrder(cached, known);
+
+        // Then
+        then(customerRepository).should().selectExistingIds(List.of(known, unknown));
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.amigoscode.testing.customer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class CustomerImportServiceTest {
+
+    @Mock
+    private CustomerRegistrationService customerRegistrationService;
+
+    private final List<List<CustomerRegistrationRequest>> chunks = new ArrayList<>();
+
+    private CustomerImportService underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new CustomerImportService(customerRegistrationService, new ObjectMapper(), 2);
+
+        // ... every customer handed over is created
+        given(customerRegistrationService.registerNewCustomers(anyList())).willAnswer(invocation -> {
+            List<CustomerRegistrationRequest> chunk = invocation.getArgument(0);
+            chunks.add(new ArrayList<>(chunk));
+            return chunk.stream()
+                    .map(r -> new CustomerRegistrationResult(r.getCustomer().getId(),
+                            r.getCustomer().getPhoneNumber(), CustomerRegistrationStatus.CREATED, null))
+                    .collect(Collectors.toList());
+        });
+    }
+
+    @Test
+    void itShouldImportCustomersInChunks() throws Exception {
+        // Given five customers, one with a malformed id
+        InputStream input = ndjson(
+                "{\"name\":\"Ramona\",\"phoneNumber\":\"+447000000001\"}",
+                "{\"name\":\"Raluca\",\"phoneNumber\":\"+447000000002\"}",
+                "{\"id\":\"not-a-uuid\",\"name\":\"Roxana\",\"phoneNumber\":\"+447000000003\"}",
+                "{\"name\":\"Ioana\",\"phoneNumber\":\"+447000000004\"}",
+                "{\"name\":\"Abel\",\"phoneNumber\":\"+447000000005\"}");
+
+        // When
+        CustomerImportResult result = underTest.importCustomers(input, 0);
+
+        // Then
+        assertThat(result.isCompleted()).isTrue();
+        assertThat(result.getFailure()).isNull();
+        assertThat(result.getCommittedRecords()).isEqualTo(5);
+        assertThat(result.getCreated()).isEqualTo(4);
+        assertThat(result.getInvalid()).isEqualTo(1);
+        assertThat(chunks).extracting(List::size).containsExactly(2, 1, 1);
+    }
+
+    @Test
+    void itShouldResumeAfterTheCommittedRecords() throws Exception {
+        // Given three customers of which two were committed by a previous attempt
+        InputStream input = ndjson(
+                "{\"name\":\"Ramona\",\"phoneNumber\":\"+447000000001\"}",
+                "{\"name\":\"Raluca\",\"phoneNumber\":\"+447000000002\"}",
+                "{\"name\":\"Roxana\",\"phoneNumber\":\"+447000000003\"}");
+
+        // When
+        CustomerImportResult result = underTest.importCustomers(input, 2);
+
+        // Then
+        assertThat(result.isCompleted()).isTrue();
+        assertThat(result.getCommittedRecords()).isEqualTo(3);
+        assertThat(result.getCreated()).isEqualTo(1);
+        assertThat(chunks).hasSize(1);
+        assertThat(chunks.get(0).get(0).getCustomer().getName()).isEqualTo("Roxana");
+    }
+
+    @Test
+    void itShouldReportTheLastCommittedOffsetWhenTheInputIsBroken() throws Exception {
+        // Given two good customers followed by a truncated line
+        String first = "{\"name\":\"Ramona\",\"phoneNumber\":\"+447000000001\"}";
+        String second = "{\"name\":\"Raluca\",\"phoneNumber\":\"+447000000002\"}";
+        InputStream input = ndjson(first, second, "{\"name\":\"Rox");
+
+        // When
+        CustomerImportResult result = underTest.importCustomers(input, 0);
+
+        // Then
+        assertThat(result.isCompleted()).isFalse();
+        assertThat(result.getFailure()).isNotNull();
+        assertThat(result.getCommittedRecords()).isEqualTo(2);
+        assertThat(result.getCommittedBytes()).isEqualTo(first.length() + 1 + second.length());
+        then(customerRegistrationService).should(times(1)).registerNewCustomers(anyList());
+    }
+
+    @Test
+    void itShouldNotRegisterAnythingForAnEmptyUpload() throws Exception {
+        // When
+        CustomerImportResult result = underTest.importCustomers(ndjson(), 0);
+
+        // Then
+        assertThat(result.isCompleted()).isTrue();
+        assertThat(result.getCommittedRecords()).isZero();
+        then(customerRegistrationService).should(never()).registerNewCustomers(anyList());
+    }
+
+    private InputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
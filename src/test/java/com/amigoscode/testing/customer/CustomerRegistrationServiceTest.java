@@ -1,5 +1,6 @@
 package com.amigoscode.testing.customer;
 
+import com.amigoscode.testing.datasource.ReadYourWrites;
 import com.amigoscode.testing.utils.PhoneNumberValidator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,16 +8,24 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 class CustomerRegistrationServiceTest {
 
@@ -27,6 +36,12 @@ class CustomerRegistrationServiceTest {
     @Mock
     private PhoneNumberValidator phoneNumberValidator;
 
+    @Mock
+    private CustomerExistenceCache customerExistenceCache;
+
+    @Mock
+    private PhoneNumberIndex phoneNumberIndex;
+
     @Captor
     private ArgumentCaptor<Customer> customerArgumentCaptor;
 
@@ -35,7 +50,12 @@ class CustomerRegistrationServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
-        underTest = new CustomerRegistrationService(customerRepository, phoneNumberValidator);
+        underTest = new CustomerRegistrationService(
+                customerRepository, phoneNumberValidator, customerExistenceCache, phoneNumberIndex,
+                new ReadYourWrites(false, Duration.ZERO), TransactionOperations.withoutTransaction());
+
+        // ... the index cannot rule out any number unless a test says so
+        given(phoneNumberIndex.mightContain(anyString())).willReturn(true);
     }
 
     // when phone number is not taken, customer is saved
@@ -49,10 +69,10 @@ class CustomerRegistrationServiceTest {
         CustomerRegistrationRequest request = new CustomerRegistrationRequest(actualCustomer);
 
         // ... No customer with phone number passed
-        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
+        given(customerRepository.selectCustomerSummaryByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
 
         // ... Valid hone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         underTest.registerNewCustomer(request);
@@ -61,6 +81,29 @@ class CustomerRegistrationServiceTest {
         then(customerRepository).should().save(customerArgumentCaptor.capture());
         Customer customerArgumentCaptorValue = customerArgumentCaptor.getValue();
         assertThat(customerArgumentCaptorValue).isEqualToComparingFieldByField(actualCustomer);
+        then(customerExistenceCache).should().put(List.of(actualCustomer.getId()));
+    }
+
+    @Test
+    void itShouldSkipTheLookupWhenTheIndexRulesOutThePhoneNumber() {
+        // Given a phone number and a customer
+        String phoneNumber = "000099";
+        Customer actualCustomer = new Customer(UUID.randomUUID(), "Ramona", phoneNumber);
+
+        // ... a request
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(actualCustomer);
+
+        // ... Valid phone number that is definitely not taken
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
+        given(phoneNumberIndex.mightContain(phoneNumber)).willReturn(false);
+
+        // When
+        underTest.registerNewCustomer(request);
+
+        // Then
+        then(customerRepository).should(never()).selectCustomerSummaryByPhoneNumber(anyString());
+        then(customerRepository).should().save(actualCustomer);
+        then(phoneNumberIndex).should().add(phoneNumber);
     }
 
     // when phone number is not taken, customer is saved
@@ -74,7 +117,7 @@ class CustomerRegistrationServiceTest {
         CustomerRegistrationRequest request = new CustomerRegistrationRequest(actualCustomer);
 
         // ... Valid phone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(false);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(null);
 
         // When
         assertThatThrownBy(() -> underTest.registerNewCustomer(request))
@@ -96,10 +139,10 @@ class CustomerRegistrationServiceTest {
         CustomerRegistrationRequest request = new CustomerRegistrationRequest(actualCustomer);
 
         // ... No customer with phone number passed
-        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
+        given(customerRepository.selectCustomerSummaryByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
 
         // ... Valid hone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         underTest.registerNewCustomer(request);
@@ -123,17 +166,17 @@ class CustomerRegistrationServiceTest {
         CustomerRegistrationRequest request = new CustomerRegistrationRequest(actualCustomer);
 
         // ... an existing customer is returned
-        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.of(actualCustomer));
+        given(customerRepository.selectCustomerSummaryByPhoneNumber(phoneNumber)).willReturn(Optional.of(summary(actualCustomer)));
 
         // ... Valid hone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         underTest.registerNewCustomer((request));
 
         // Then
         then(customerRepository).should(never()).save(any());
-       // then(customerRepository).should().selectCustomerByPhoneNumber(phoneNumber);
+       // then(customerRepository).should().selectCustomerSummaryByPhoneNumber(phoneNumber);
        // then(customerRepository).shouldHaveNoMoreInteractions();
 
     }
@@ -151,11 +194,11 @@ class CustomerRegistrationServiceTest {
         CustomerRegistrationRequest request = new CustomerRegistrationRequest(actualCustomer);
 
         // ... an existing customer
-        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber))
-                .willReturn(Optional.of(anotherCustomer));
+        given(customerRepository.selectCustomerSummaryByPhoneNumber(phoneNumber))
+                .willReturn(Optional.of(summary(anotherCustomer)));
 
         // ... Valid hone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         // Then
@@ -167,4 +210,152 @@ class CustomerRegistrationServiceTest {
         then(customerRepository).should(never()).save(any(Customer.class));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldThrowWhenPhoneNumberWasTakenSinceTheLookup() {
+        // Given a number the index rules out, but another instance has just registered
+        String phoneNumber = "1111";
+        Customer owner = new Customer(UUID.randomUUID(), "Raluca", phoneNumber);
+        Customer actualCustomer = new Customer(UUID.randomUUID(), "Roxana", phoneNumber);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
+        given(phoneNumberIndex.mightContain(phoneNumber)).willReturn(false);
+
+        // ... the unique constraint turns the insert down
+        given(customerRepository.save(actualCustomer))
+                .willThrow(new DataIntegrityViolationException("phone_number unique"));
+        given(customerRepository.selectCustomerSummaryByPhoneNumber(phoneNumber))
+                .willReturn(Optional.of(summary(owner)));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.registerNewCustomer(new CustomerRegistrationRequest(actualCustomer)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(String.format("phone number [%s] is already taken", phoneNumber));
+        then(customerExistenceCache).should(never()).put(any());
+    }
+
+    @Test
+    void itShouldTurnDownOnlyTheCustomersWhoseNumberWasTakenSinceTheLookup() {
+        // Given two new customers, the second one's number registered elsewhere meanwhile
+        Customer first = new Customer(UUID.randomUUID(), "Ramona", "1111");
+        Customer second = new Customer(UUID.randomUUID(), "Roxana", "2222");
+        Customer owner = new Customer(UUID.randomUUID(), "Raluca", "2222");
+        given(phoneNumberValidator.normalize(anyString())).willAnswer(invocation -> invocation.getArgument(0));
+        given(customerRepository.selectCustomerSummariesByPhoneNumbers(anyCollection())).willReturn(List.of());
+
+        // ... the batch insert fails, and so does the second customer's own insert
+        given(customerRepository.saveAll(any())).willThrow(new DataIntegrityViolationException("phone_number unique"));
+        given(customerRepository.save(second)).willThrow(new DataIntegrityViolationException("phone_number unique"));
+        given(customerRepository.selectCustomerSummaryByPhoneNumber("2222")).willReturn(Optional.of(summary(owner)));
+
+        // When
+        List<CustomerRegistrationResult> results = underTest.registerNewCustomers(List.of(
+                new CustomerRegistrationRequest(first),
+                new CustomerRegistrationRequest(second)));
+
+        // Then
+        assertThat(results).extracting(CustomerRegistrationResult::getStatus).containsExactly(
+                CustomerRegistrationStatus.CREATED,
+                CustomerRegistrationStatus.CONFLICT);
+        assertThat(results.get(1).getMessage()).contains("phone number [2222] is already taken");
+        then(customerRepository).should().save(first);
+        then(customerExistenceCache).should().put(List.of(first.getId()));
+    }
+
+    @Test
+    void itShouldReturnAResultForEachCustomerInTheBatch() {
+        // Given an existing customer
+        Customer existing = new Customer(UUID.randomUUID(), "Raluca", "2222");
+
+        // ... a batch with a new, a duplicate, a conflicting, an invalid and a repeated customer
+        Customer newCustomer = new Customer(null, "Ramona", "1111");
+        Customer duplicate = new Customer(UUID.randomUUID(), "Raluca", "2222");
+        Customer conflict = new Customer(UUID.randomUUID(), "Roxana", "2222");
+        Customer invalid = new Customer(UUID.randomUUID(), "Ioana", "3333");
+        Customer repeated = new Customer(UUID.randomUUID(), "Ramona", "1111");
+
+        List<CustomerRegistrationRequest> requests = List.of(
+                new CustomerRegistrationRequest(newCustomer),
+                new CustomerRegistrationRequest(duplicate),
+                new CustomerRegistrationRequest(conflict),
+                new CustomerRegistrationRequest(invalid),
+                new CustomerRegistrationRequest(repeated));
+
+        // ... Valid phone numbers except 3333
+        given(phoneNumberValidator.normalize(anyString())).willAnswer(invocation -> invocation.getArgument(0));
+        given(phoneNumberValidator.normalize("3333")).willReturn(null);
+
+        // ... 2222 is already taken
+        given(customerRepository.selectCustomerSummariesByPhoneNumbers(anyCollection())).willReturn(List.of(summary(existing)));
+
+        // When
+        List<CustomerRegistrationResult> results = underTest.registerNewCustomers(requests);
+
+        // Then
+        assertThat(results).extracting(CustomerRegistrationResult::getStatus).containsExactly(
+                CustomerRegistrationStatus.CREATED,
+                CustomerRegistrationStatus.DUPLICATE,
+                CustomerRegistrationStatus.CONFLICT,
+                CustomerRegistrationStatus.INVALID,
+                CustomerRegistrationStatus.DUPLICATE);
+
+        assertThat(results.get(0).getCustomerId()).isNotNull().isEqualTo(newCustomer.getId());
+        assertThat(results.get(1).getCustomerId()).isEqualTo(existing.getId());
+        assertThat(results.get(2).getMessage()).contains("phone number [2222] is already taken");
+        assertThat(results.get(3).getMessage()).contains("Phone Number 3333 is not valid.");
+        assertThat(results.get(4).getCustomerId()).isEqualTo(newCustomer.getId());
+
+        // ... only the new customer is saved, in one call
+        ArgumentCaptor<Iterable<Customer>> customersArgumentCaptor = ArgumentCaptor.forClass(Iterable.class);
+        then(customerRepository).should().saveAll(customersArgumentCaptor.capture());
+        assertThat(customersArgumentCaptor.getValue()).containsExactly(newCustomer);
+        then(customerExistenceCache).should().put(List.of(newCustomer.getId()));
+    }
+
+    @Test
+    void itShouldLookUpPhoneNumbersInChunks() {
+        // Given more distinct phone numbers than fit in one lookup
+        int size = CustomerRegistrationService.PHONE_NUMBER_LOOKUP_CHUNK_SIZE + 1;
+        List<CustomerRegistrationRequest> requests = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            requests.add(new CustomerRegistrationRequest(new Customer(null, "Ramona", "+44" + i)));
+        }
+
+        // ... Valid phone numbers, none taken
+        given(phoneNumberValidator.normalize(anyString())).willAnswer(invocation -> invocation.getArgument(0));
+        given(customerRepository.selectCustomerSummariesByPhoneNumbers(anyCollection())).willReturn(List.of());
+
+        // When
+        List<CustomerRegistrationResult> results = underTest.registerNewCustomers(requests);
+
+        // Then
+        assertThat(results).hasSize(size)
+                .allMatch(r -> r.getStatus() == CustomerRegistrationStatus.CREATED);
+        then(customerRepository).should(times(2)).selectCustomerSummariesByPhoneNumbers(anyCollection());
+        then(customerRepository).should(never()).selectCustomerSummaryByPhoneNumber(anyString());
+    }
+
+    @Test
+    void itShouldLookUpAndSaveTheNormalizedPhoneNumber() {
+        // Given a phone number written with spaces
+        Customer actualCustomer = new Customer(UUID.randomUUID(), "Ramona", "+44 7000 000000");
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest(actualCustomer);
+
+        // ... which normalizes to E.164
+        given(phoneNumberValidator.normalize("+44 7000 000000")).willReturn("+447000000000");
+        given(customerRepository.selectCustomerSummaryByPhoneNumber("+447000000000")).willReturn(Optional.empty());
+
+        // When
+        underTest.registerNewCustomer(request);
+
+        // Then
+        then(customerRepository).should().selectCustomerSummaryByPhoneNumber("+447000000000");
+        then(customerRepository).should().save(customerArgumentCaptor.capture());
+        assertThat(customerArgumentCaptor.getValue().getPhoneNumber()).isEqualTo("+447000000000");
+        then(phoneNumberIndex).should().add("+447000000000");
+    }
+
+    private static CustomerSummary summary(Customer customer) {
+        return new CustomerSummary(customer.getId(), customer.getName(), customer.getPhoneNumber());
+    }
+}
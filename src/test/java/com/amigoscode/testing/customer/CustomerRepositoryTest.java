@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -55,6 +56,39 @@ class CustomerRepositoryTest {
         assertThat(optionalCustomer).isNotPresent();
     }
 
+    @Test
+    void itShouldSelectCustomerSummaryByPhoneNumber() {
+        // Given
+        UUID id = UUID.randomUUID();
+        underTest.save(new Customer(id, "Abel", "0000"));
+
+        // When
+        Optional<CustomerSummary> summary = underTest.selectCustomerSummaryByPhoneNumber("0000");
+
+        // Then
+        assertThat(summary).isPresent().hasValueSatisfying(c -> {
+            assertThat(c.getId()).isEqualTo(id);
+            assertThat(c.getName()).isEqualTo("Abel");
+        });
+        assertThat(underTest.selectCustomerSummaryByPhoneNumber("0001")).isNotPresent();
+    }
+
+    @Test
+    void itShouldSelectCustomerSummariesByPhoneNumbers() {
+        // Given
+        Customer abel = new Customer(UUID.randomUUID(), "Abel", "0000");
+        Customer ioana = new Customer(UUID.randomUUID(), "Ioana", "0001");
+        underTest.saveAll(List.of(abel, ioana));
+
+        // When
+        List<CustomerSummary> summaries = underTest.selectCustomerSummariesByPhoneNumbers(List.of("0000", "0001", "0002"));
+
+        // Then
+        assertThat(summaries)
+                .extracting(CustomerSummary::getId)
+                .containsExactlyInAnyOrder(abel.getId(), ioana.getId());
+    }
+
     @Test
     void itShouldSaveCustomer() {
         // Given
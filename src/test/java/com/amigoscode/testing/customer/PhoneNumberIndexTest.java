@@ -0,0 +1,82 @@
+package com.amigoscode.testing.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+class PhoneNumberIndexTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    private PhoneNumberIndex underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new PhoneNumberIndex(customerRepository, 10_000, 0.01);
+    }
+
+    @Test
+    void itShouldNotRuleOutAnythingBeforeWarmUp() {
+        // Then
+        assertThat(underTest.isWarmedUp()).isFalse();
+        assertThat(underTest.mightContain("+447000000000")).isTrue();
+    }
+
+    @Test
+    void itShouldKnowEveryNumberFromTheDatabaseAfterWarmUp() {
+        // Given the numbers already in the customer table
+        given(customerRepository.selectAllPhoneNumbers())
+                .willReturn(IntStream.range(0, 10_000).mapToObj(PhoneNumberIndexTest::phoneNumber));
+
+        // When
+        underTest.run(null);
+
+        // Then
+        assertThat(underTest.isWarmedUp()).isTrue();
+        assertThat(IntStream.range(0, 10_000).mapToObj(PhoneNumberIndexTest::phoneNumber))
+                .allMatch(underTest::mightContain);
+    }
+
+    @Test
+    void itShouldRuleOutMostUnknownNumbers() {
+        // Given a full index
+        given(customerRepository.selectAllPhoneNumbers())
+                .willReturn(IntStream.range(0, 10_000).mapToObj(PhoneNumberIndexTest::phoneNumber));
+        underTest.run(null);
+
+        // When
+        long falsePositives = IntStream.range(10_000, 20_000)
+                .mapToObj(PhoneNumberIndexTest::phoneNumber)
+                .filter(underTest::mightContain)
+                .count();
+
+        // Then roughly the configured 1%, with room for hash noise
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    void itShouldKnowNumbersAddedAfterWarmUp() {
+        // Given
+        given(customerRepository.selectAllPhoneNumbers()).willReturn(Stream.empty());
+        underTest.run(null);
+
+        // When
+        underTest.add("+447000000000");
+
+        // Then
+        assertThat(underTest.mightContain("+447000000000")).isTrue();
+    }
+
+    private static String phoneNumber(int i) {
+        return String.format("+447%09d", i);
+    }
+}
@@ -0,0 +1,108 @@
+package com.amigoscode.testing.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadYourWritesTest {
+
+    private MutableClock clock;
+
+    private ReadYourWrites underTest;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        underTest = new ReadYourWrites(true, Duration.ofSeconds(5), clock);
+    }
+
+    @Test
+    void itShouldRequireThePrimaryForARecentWrite() {
+        // Given
+        underTest.wrote("+447000000000");
+
+        // When
+        boolean written = underTest.read("+447000000000", ReadYourWrites::isPrimaryRequired);
+        boolean other = underTest.read("+447000000001", ReadYourWrites::isPrimaryRequired);
+
+        // Then
+        assertThat(written).isTrue();
+        assertThat(other).isFalse();
+        assertThat(ReadYourWrites.isPrimaryRequired()).isFalse();
+    }
+
+    @Test
+    void itShouldForgetWritesOnceTheWindowIsOver() {
+        // Given
+        underTest.wrote("+447000000000");
+        clock.advance(Duration.ofSeconds(6));
+
+        // When
+        boolean written = underTest.read("+447000000000", ReadYourWrites::isPrimaryRequired);
+        underTest.wrote("+447000000001");
+
+        // Then
+        assertThat(written).isFalse();
+        assertThat(underTest.size()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldExtendTheWindowWhenWrittenAgain() {
+        // Given
+        underTest.wrote("+447000000000");
+        clock.advance(Duration.ofSeconds(4));
+        underTest.wrote("+447000000000");
+        clock.advance(Duration.ofSeconds(4));
+
+        // When
+        boolean written = underTest.read("+447000000000", ReadYourWrites::isPrimaryRequired);
+
+        // Then
+        assertThat(written).isTrue();
+    }
+
+    @Test
+    void itShouldDoNothingWhenRoutingIsDisabled() {
+        // Given
+        ReadYourWrites disabled = new ReadYourWrites(false, Duration.ofSeconds(5), clock);
+        disabled.wrote("+447000000000");
+
+        // When
+        boolean written = disabled.read("+447000000000", ReadYourWrites::isPrimaryRequired);
+
+        // Then
+        assertThat(written).isFalse();
+        assertThat(disabled.size()).isZero();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
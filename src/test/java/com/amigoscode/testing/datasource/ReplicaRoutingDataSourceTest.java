@@ -0,0 +1,133 @@
+package com.amigoscode.testing.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Three local H2 databases stand in for the primary and two replicas,
+// each knows its own name so a query shows where it was routed
+class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource firstReplica;
+    private DataSource secondReplica;
+
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        firstReplica = database("replica1");
+        secondReplica = database("replica2");
+
+        routing = new ReplicaRoutingDataSource(primary, List.of(firstReplica, secondReplica),
+                "select lag_seconds from replication_status", Duration.ofSeconds(1));
+        routing.checkLag();
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @Test
+    void itShouldSpreadReadOnlyTransactionsOverTheReplicas() {
+        // When
+        Set<String> nodes = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(readOnly.execute(status -> node()));
+        }
+
+        // Then
+        assertThat(nodes).containsExactlyInAnyOrder("replica1", "replica2");
+    }
+
+    @Test
+    void itShouldSendWritesAndCallsWithoutATransactionToThePrimary() {
+        // When
+        String node = readWrite.execute(status -> node());
+
+        // Then
+        assertThat(node).isEqualTo("primary");
+        assertThat(node()).isEqualTo("primary");
+    }
+
+    @Test
+    void itShouldSkipAReplicaThatLagsTooFarBehind() {
+        // Given
+        new JdbcTemplate(firstReplica).update("update replication_status set lag_seconds = 5");
+        routing.checkLag();
+
+        // When
+        Set<String> nodes = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(readOnly.execute(status -> node()));
+        }
+
+        // Then
+        assertThat(nodes).containsExactly("replica2");
+        assertThat(routing.getLag(0)).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void itShouldReadFromThePrimaryWhenEveryReplicaLags() {
+        // Given
+        new JdbcTemplate(firstReplica).update("update replication_status set lag_seconds = 5");
+        new JdbcTemplate(secondReplica).update("update replication_status set lag_seconds = 2.5");
+        routing.checkLag();
+
+        // When
+        String node = readOnly.execute(status -> node());
+
+        // Then
+        assertThat(node).isEqualTo("primary");
+    }
+
+    @Test
+    void itShouldReadYourOwnWritesFromThePrimary() {
+        // Given
+        ReadYourWrites readYourWrites = new ReadYourWrites(true, Duration.ofSeconds(5));
+        readYourWrites.wrote("+447000000000");
+
+        // When
+        String written = readYourWrites.read("+447000000000", () -> readOnly.execute(status -> node()));
+        String other = readYourWrites.read("+447000000001", () -> readOnly.execute(status -> node()));
+
+        // Then
+        assertThat(written).isEqualTo("primary");
+        assertThat(other).startsWith("replica");
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("select name from node", String.class);
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table node (name varchar(20))");
+        jdbcTemplate.update("insert into node values (?)", name);
+        jdbcTemplate.execute("create table replication_status (lag_seconds decimal(10, 3))");
+        jdbcTemplate.update("insert into replication_status values (0)");
+        return dataSource;
+    }
+}
@@ -0,0 +1,75 @@
+package com.amigoscode.testing.datasource;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.customer.CustomerSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The whole application with routing on. The replica is the primary's own H2 database,
+// a replica that is always caught up, so reads routed to it find what was written.
+@SpringBootTest(properties = {
+        "datasource.routing.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:replica-routing;DB_CLOSE_DELAY=-1",
+        "datasource.replica.urls=jdbc:h2:mem:replica-routing;DB_CLOSE_DELAY=-1",
+        "sms.outbox.dispatcher.enabled=false"
+})
+class ReplicaRoutingIntegrationTest {
+
+    @Autowired
+    private ReplicaRouting replicaRouting;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Test
+    void itShouldRouteReadOnlyTransactionsToTheReplica() {
+        // Given
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        // When
+        Object readWriteKey = readWrite.execute(status -> replicaRouting.getDataSource().determineCurrentLookupKey());
+        Object readOnlyKey = readOnly.execute(status -> replicaRouting.getDataSource().determineCurrentLookupKey());
+
+        // Then
+        assertThat(readWriteKey).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+        assertThat(readOnlyKey).isEqualTo(ReplicaRoutingDataSource.replicaKey(0));
+    }
+
+    @Test
+    void itShouldReadFromTheReplicaWhatWasWrittenToThePrimary() {
+        // Given
+        UUID id = UUID.randomUUID();
+        customerRepository.save(new Customer(id, "Ramona", "+447000000099"));
+
+        // When
+        Optional<CustomerSummary> summary = customerRepository.selectCustomerSummaryByPhoneNumber("+447000000099");
+
+        // Then
+        assertThat(summary).hasValueSatisfying(customer -> assertThat(customer.getId()).isEqualTo(id));
+    }
+
+    @Test
+    void itShouldCheckTheLagOfTheReplica() {
+        // When
+        replicaRouting.checkLag();
+
+        // Then
+        assertThat(replicaRouting.getDataSource().getReplicaCount()).isEqualTo(1);
+        assertThat(replicaRouting.getDataSource().getLag(0)).isEqualTo(Duration.ZERO);
+    }
+}
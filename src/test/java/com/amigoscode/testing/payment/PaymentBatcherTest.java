@@ -0,0 +1,286 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.journal.PaymentJournal;
+import com.amigoscode.testing.payment.ledger.PaymentLedger;
+import com.amigoscode.testing.payment.resilience.PaymentProcessorUnavailableException;
+import com.amigoscode.testing.shard.ShardRouter;
+import com.amigoscode.testing.sms.SmsOutbox;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+
+class PaymentBatcherTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private BatchCardPaymentCharger batchCardPaymentCharger;
+    @Mock
+    private CardPaymentCharger cardPaymentCharger;
+    @Mock
+    private SmsOutbox smsOutbox;
+    @Mock
+    private PaymentLedger paymentLedger;
+
+    private PaymentBatcher underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (underTest != null) {
+            underTest.destroy();
+        }
+    }
+
+    @Test
+    void itShouldChargeAndSaveAFullBatchTogether() throws Exception {
+        // Given a batch of three that only fills up, the window never closes it
+        underTest = batcher(batchCardPaymentCharger, Duration.ofMinutes(1), 3);
+
+        Payment first = payment("card1");
+        Payment second = payment("card2");
+        Payment third = payment("card3");
+        given(batchCardPaymentCharger.chargeCards(List.of(first, second, third))).willReturn(List.of(
+                new CardPaymentCharge(true),
+                new CardPaymentCharge(false),
+                new CardPaymentCharge(true)));
+
+        // When
+        CompletableFuture<CardPaymentCharge> firstCharge = underTest.submit(first);
+        CompletableFuture<CardPaymentCharge> secondCharge = underTest.submit(second);
+        CompletableFuture<CardPaymentCharge> thirdCharge = underTest.submit(third);
+
+        // Then every caller gets its own answer
+        assertThat(firstCharge.get(5, TimeUnit.SECONDS).isCardDebited()).isTrue();
+        assertThat(secondCharge.get(5, TimeUnit.SECONDS).isCardDebited()).isFalse();
+        assertThat(thirdCharge.get(5, TimeUnit.SECONDS).isCardDebited()).isTrue();
+
+        // ... one processor round trip and one insert for the debited payments
+        then(batchCardPaymentCharger).should().chargeCards(anyList());
+        ArgumentCaptor<List<Payment>> saved = ArgumentCaptor.forClass(List.class);
+        then(paymentRepository).should().saveAll(saved.capture());
+        assertThat(saved.getValue()).containsExactly(first, third);
+    }
+
+    @Test
+    void itShouldDispatchWhenTheWindowCloses() throws Exception {
+        // Given
+        underTest = batcher(batchCardPaymentCharger, Duration.ofMillis(20), 100);
+
+        Payment payment = payment("card1");
+        given(batchCardPaymentCharger.chargeCards(List.of(payment))).willReturn(List.of(new CardPaymentCharge(true)));
+
+        // When
+        CompletableFuture<CardPaymentCharge> charge = underTest.submit(payment);
+
+        // Then
+        assertThat(charge.get(5, TimeUnit.SECONDS).isCardDebited()).isTrue();
+        then(paymentRepository).should().saveAll(List.of(payment));
+    }
+
+    @Test
+    void itShouldFallBackToSingleChargesWithoutABatchApi() throws Exception {
+        // Given
+        underTest = batcher(cardPaymentCharger, Duration.ofMinutes(1), 2);
+
+        Payment charged = payment("card1");
+        Payment failed = payment("card2");
+        given(cardPaymentCharger.chargeCard("card1", charged.getAmount(), Currency.USD, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCard("card2", failed.getAmount(), Currency.USD, "Donation"))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+
+        // When
+        CompletableFuture<CardPaymentCharge> chargedCharge = underTest.submit(charged);
+        CompletableFuture<CardPaymentCharge> failedCharge = underTest.submit(failed);
+
+        // Then a failed charge only fails its own payment
+        assertThat(chargedCharge.get(5, TimeUnit.SECONDS).isCardDebited()).isTrue();
+        assertThatThrownBy(() -> failedCharge.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("Cannot make stripe charge");
+        then(paymentRepository).should().saveAll(List.of(charged));
+    }
+
+    @Test
+    void itShouldFailTheWholeBatchWhenTheProcessorFails() {
+        // Given
+        underTest = batcher(batchCardPaymentCharger, Duration.ofMinutes(1), 2);
+
+        given(batchCardPaymentCharger.chargeCards(anyList()))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+
+        // When
+        CompletableFuture<CardPaymentCharge> first = underTest.submit(payment("card1"));
+        CompletableFuture<CardPaymentCharge> second = underTest.submit(payment("card2"));
+
+        // Then
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        then(paymentRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldFailTheDebitedPaymentsAsNotSavedWhenTheSaveFails() {
+        // Given
+        underTest = batcher(batchCardPaymentCharger, Duration.ofMinutes(1), 2);
+
+        Payment debited = payment("card1");
+        Payment declined = payment("card2");
+        given(batchCardPaymentCharger.chargeCards(List.of(debited, declined))).willReturn(List.of(
+                new CardPaymentCharge(true),
+                new CardPaymentCharge(false)));
+        given(paymentRepository.saveAll(List.of(debited))).willThrow(new IllegalStateException("Database down"));
+
+        // When
+        CompletableFuture<CardPaymentCharge> debitedCharge = underTest.submit(debited);
+        CompletableFuture<CardPaymentCharge> declinedCharge = underTest.submit(declined);
+
+        // Then
+        assertThatThrownBy(() -> debitedCharge.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PaymentNotSavedException.class);
+        assertThat(declinedCharge.join().isCardDebited()).isFalse();
+    }
+
+    @Test
+    void itShouldFailTheBatchAsUnavailableWhenThePaymentExecutorIsFull() {
+        // Given an executor that rejects every task, like the bounded pool once its queue is full
+        Executor full = task -> {
+            throw new RejectedExecutionException("full");
+        };
+        underTest = new PaymentBatcher(recorder(), batchCardPaymentCharger,
+                new ExecutorAsyncCardPaymentCharger(batchCardPaymentCharger, full),
+                full, true, Duration.ofMinutes(1), 1);
+
+        // When
+        CompletableFuture<CardPaymentCharge> charge = underTest.submit(payment("card1"));
+
+        // Then
+        assertThatThrownBy(() -> charge.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PaymentProcessorUnavailableException.class);
+        then(batchCardPaymentCharger).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldFailSingleChargesAsUnavailableWhenThePaymentExecutorIsFull() {
+        // Given
+        Executor full = task -> {
+            throw new RejectedExecutionException("full");
+        };
+        underTest = new PaymentBatcher(recorder(), cardPaymentCharger,
+                new ExecutorAsyncCardPaymentCharger(cardPaymentCharger, full),
+                full, true, Duration.ofMinutes(1), 1);
+
+        // When
+        CompletableFuture<CardPaymentCharge> charge = underTest.submit(payment("card1"));
+
+        // Then
+        assertThatThrownBy(() -> charge.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PaymentProcessorUnavailableException.class)
+                .hasMessageContaining("Payment executor is full");
+        then(cardPaymentCharger).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldNotAcceptPaymentsWhenDisabled() {
+        // Given
+        underTest = new PaymentBatcher(recorder(), cardPaymentCharger,
+                new ExecutorAsyncCardPaymentCharger(cardPaymentCharger, Runnable::run),
+                Runnable::run, false, Duration.ZERO, 1);
+
+        // When
+        // Then
+        assertThat(underTest.isEnabled()).isFalse();
+        assertThatThrownBy(() -> underTest.submit(payment("card1")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Payment batching is not running");
+    }
+
+    @Test
+    void itShouldCompleteEveryAcceptedPaymentWhenStoppedWhileSubmitting() throws Exception {
+        // Given submitters racing the shutdown, with every charge declined so nothing is saved
+        underTest = batcher(batchCardPaymentCharger, Duration.ofMillis(1), 10);
+        given(batchCardPaymentCharger.chargeCards(anyList())).willAnswer(invocation -> {
+            List<Payment> payments = invocation.getArgument(0);
+            List<CardPaymentCharge> charges = new ArrayList<>();
+            payments.forEach(p -> charges.add(new CardPaymentCharge(false)));
+            return charges;
+        });
+        ExecutorService submitters = Executors.newFixedThreadPool(4);
+        Queue<CompletableFuture<CardPaymentCharge>> accepted = new ConcurrentLinkedQueue<>();
+        CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            submitters.execute(() -> {
+                started.countDown();
+                try {
+                    while (true) {
+                        accepted.add(underTest.submit(payment("card1")));
+                    }
+                } catch (IllegalStateException e) {
+                    // stopped
+                }
+            });
+        }
+        started.await();
+
+        // When
+        underTest.destroy();
+        submitters.shutdown();
+
+        // Then every payment it took was either charged or abandoned, none is left hanging
+        assertThat(submitters.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(accepted).isNotEmpty();
+        CompletableFuture.allOf(accepted.toArray(new CompletableFuture[0]))
+                .handle((ignored, e) -> null)
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    private PaymentRecorder recorder() {
+        return new PaymentRecorder(paymentRepository, smsOutbox,
+                ShardRouter.single(), TransactionOperations.withoutTransaction(), paymentLedger,
+                PaymentJournal.disabled());
+    }
+
+    private PaymentBatcher batcher(CardPaymentCharger charger, Duration window, int maxBatchSize) {
+        return new PaymentBatcher(recorder(), charger,
+                new ExecutorAsyncCardPaymentCharger(charger, Runnable::run),
+                Runnable::run, true, window, maxBatchSize);
+    }
+
+    private static Payment payment(String source) {
+        return new Payment(null, UUID.randomUUID(), new BigDecimal("10.00"), Currency.USD, source, "Donation");
+    }
+}
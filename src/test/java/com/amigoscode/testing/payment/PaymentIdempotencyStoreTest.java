@@ -0,0 +1,266 @@
+package com.amigoscode.testing.payment;
+
+import com.amigoscode.testing.payment.PaymentIdempotencyKey.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+class PaymentIdempotencyStoreTest {
+
+    @Mock
+    private PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository;
+
+    private static final String HASH = "hash";
+
+    private final Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+    private final AtomicInteger charges = new AtomicInteger();
+
+    private PaymentIdempotencyStore underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new PaymentIdempotencyStore(paymentIdempotencyKeyRepository,
+                2, Duration.ofHours(24), Duration.ofSeconds(5), false, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void itShouldReplayAPaymentWithoutChargingAgain() {
+        // When
+        boolean first = underTest.execute("key", HASH, charges::incrementAndGet);
+        boolean retry = underTest.execute("key", HASH, charges::incrementAndGet);
+
+        // Then
+        assertThat(first).isFalse();
+        assertThat(retry).isTrue();
+        assertThat(charges).hasValue(1);
+        then(paymentIdempotencyKeyRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldMakeAConcurrentDuplicateWaitForTheFirstAttempt() throws Exception {
+        // Given a first attempt that is still charging
+        CountDownLatch charging = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> underTest.execute("key", HASH, () -> {
+            charges.incrementAndGet();
+            charging.countDown();
+            await(release);
+        }));
+        assertThat(charging.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When a duplicate arrives
+        CompletableFuture<Boolean> duplicate = CompletableFuture.supplyAsync(
+                () -> underTest.execute("key", HASH, charges::incrementAndGet));
+
+        // Then it waits
+        Thread.sleep(100);
+        assertThat(duplicate).isNotDone();
+
+        // ... and is answered by the first attempt
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(duplicate.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(charges).hasValue(1);
+    }
+
+    @Test
+    void itShouldForgetAttemptsThatDidNotChargeTheCard() {
+        // Given a declined attempt
+        assertThatThrownBy(() -> underTest.execute("key", HASH, () -> {
+            throw new CardNotChargedException("Card not debited");
+        })).isInstanceOf(CardNotChargedException.class);
+
+        // When the client retries
+        boolean retry = underTest.execute("key", HASH, charges::incrementAndGet);
+
+        // Then it is charged
+        assertThat(retry).isFalse();
+        assertThat(charges).hasValue(1);
+    }
+
+    @Test
+    void itShouldNotRunAgainAnAttemptThatFailedAfterTheCharge() {
+        // Given an attempt that failed once the card may have been charged
+        assertThatThrownBy(() -> underTest.execute("key", HASH, () -> {
+            charges.incrementAndGet();
+            throw new IllegalStateException("Could not save payment");
+        })).hasMessage("Could not save payment");
+
+        // When the client retries
+        // Then
+        assertThatThrownBy(() -> underTest.execute("key", HASH, charges::incrementAndGet))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Payment with Idempotency-Key [key] failed and may have been charged, it is not run again");
+        assertThat(charges).hasValue(1);
+    }
+
+    @Test
+    void itShouldTurnDownAKeyReusedForADifferentPayment() {
+        // Given
+        underTest.execute("key", HASH, charges::incrementAndGet);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.execute("key", "other", charges::incrementAndGet))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Idempotency-Key [key] was already used for a different payment");
+        assertThat(charges).hasValue(1);
+    }
+
+    @Test
+    void itShouldStopWaitingForAnAttemptThatTakesTooLong() throws Exception {
+        // Given a first attempt that is still charging
+        underTest = new PaymentIdempotencyStore(paymentIdempotencyKeyRepository,
+                2, Duration.ofHours(24), Duration.ofMillis(100), false, Clock.fixed(now, ZoneOffset.UTC));
+        CountDownLatch charging = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> underTest.execute("key", HASH, () -> {
+            charges.incrementAndGet();
+            charging.countDown();
+            await(release);
+        }));
+        assertThat(charging.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.execute("key", HASH, charges::incrementAndGet))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Payment with Idempotency-Key [key] is still in progress");
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(charges).hasValue(1);
+    }
+
+    @Test
+    void itShouldKeepOnlyTheNewestKeys() {
+        // When
+        underTest.execute("first", HASH, charges::incrementAndGet);
+        underTest.execute("second", HASH, charges::incrementAndGet);
+        underTest.execute("third", HASH, charges::incrementAndGet);
+
+        // Then
+        assertThat(underTest.size()).isEqualTo(2);
+        assertThat(underTest.execute("third", HASH, charges::incrementAndGet)).isTrue();
+        assertThat(underTest.execute("first", HASH, charges::incrementAndGet)).isFalse();
+    }
+
+    @Test
+    void itShouldReplayKeysFromTheDatabaseWhenPersistent() {
+        // Given a key stored by another instance
+        underTest = new PaymentIdempotencyStore(paymentIdempotencyKeyRepository,
+                2, Duration.ofHours(24), Duration.ofSeconds(5), true, Clock.fixed(now, ZoneOffset.UTC));
+        given(paymentIdempotencyKeyRepository.findById("key"))
+                .willReturn(Optional.of(new PaymentIdempotencyKey("key", now.minusSeconds(60), HASH, Status.COMPLETED)));
+
+        // When
+        boolean replayed = underTest.execute("key", HASH, charges::incrementAndGet);
+
+        // Then
+        assertThat(replayed).isTrue();
+        assertThat(charges).hasValue(0);
+        then(paymentIdempotencyKeyRepository).should(never()).insert(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void itShouldSaveTheKeyInProgressBeforeChargingWhenPersistent() {
+        // Given
+        underTest = new PaymentIdempotencyStore(paymentIdempotencyKeyRepository,
+                2, Duration.ofHours(24), Duration.ofSeconds(5), true, Clock.fixed(now, ZoneOffset.UTC));
+        given(paymentIdempotencyKeyRepository.findById("key")).willReturn(Optional.empty());
+
+        // When
+        boolean replayed = underTest.execute("key", HASH, () -> {
+            then(paymentIdempotencyKeyRepository).should()
+                    .insert("key", now, HASH, Status.IN_PROGRESS.ordinal());
+            then(paymentIdempotencyKeyRepository).should(never()).updateStatus(any(), any());
+            charges.incrementAndGet();
+        });
+
+        // Then
+        assertThat(replayed).isFalse();
+        assertThat(charges).hasValue(1);
+        then(paymentIdempotencyKeyRepository).should().updateStatus("key", Status.COMPLETED);
+    }
+
+    @Test
+    void itShouldKeepThePersistedKeyInProgressWhenTheChargeMayHaveRun() {
+        // Given
+        underTest = new PaymentIdempotencyStore(paymentIdempotencyKeyRepository,
+                2, Duration.ofHours(24), Duration.ofSeconds(5), true, Clock.fixed(now, ZoneOffset.UTC));
+        given(paymentIdempotencyKeyRepository.findById("key")).willReturn(Optional.empty());
+
+        // When
+        assertThatThrownBy(() -> underTest.execute("key", HASH, () -> {
+            throw new IllegalStateException("Could not save payment");
+        })).hasMessage("Could not save payment");
+
+        // Then
+        then(paymentIdempotencyKeyRepository).should(never()).deleteById(any());
+        then(paymentIdempotencyKeyRepository).should(never()).updateStatus(any(), any());
+    }
+
+    @Test
+    void itShouldReleaseThePersistedKeyWhenTheCardWasNotCharged() {
+        // Given
+        underTest = new PaymentIdempotencyStore(paymentIdempotencyKeyRepository,
+                2, Duration.ofHours(24), Duration.ofSeconds(5), true, Clock.fixed(now, ZoneOffset.UTC));
+        given(paymentIdempotencyKeyRepository.findById("key")).willReturn(Optional.empty());
+
+        // When
+        assertThatThrownBy(() -> underTest.execute("key", HASH, () -> {
+            throw new CardNotChargedException("Card not debited");
+        })).isInstanceOf(CardNotChargedException.class);
+
+        // Then
+        then(paymentIdempotencyKeyRepository).should().deleteById("key");
+    }
+
+    @Test
+    void itShouldNotChargeAKeyAnotherInstanceHoldsInProgress() {
+        // Given
+        underTest = new PaymentIdempotencyStore(paymentIdempotencyKeyRepository,
+                2, Duration.ofHours(24), Duration.ofSeconds(5), true, Clock.fixed(now, ZoneOffset.UTC));
+        given(paymentIdempotencyKeyRepository.findById("key")).willReturn(Optional.empty());
+        given(paymentIdempotencyKeyRepository.insert("key", now, HASH, Status.IN_PROGRESS.ordinal()))
+                .willThrow(new DataIntegrityViolationException("duplicate key"));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.execute("key", HASH, charges::incrementAndGet))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Payment with Idempotency-Key [key] is still in progress");
+        assertThat(charges).hasValue(0);
+        assertThat(underTest.size()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,24 +2,30 @@ package com.amigoscode.testing.payment;
 
 import com.amigoscode.testing.customer.Customer;
 import com.amigoscode.testing.customer.CustomerRegistrationRequest;
+import com.amigoscode.testing.sms.FakeSmsSender;
+import com.amigoscode.testing.sms.SmsOutboxDispatcher;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
 import static org.aspectj.bridge.MessageUtil.fail;
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -32,6 +38,12 @@ class PaymentIntegrationTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private SmsOutboxDispatcher smsOutboxDispatcher;
+
+    @Autowired
+    private FakeSmsSender fakeSmsSender;
+
     @Test
     void itShouldCreatePaymentSuccessfully() throws Exception {
         // Given a customer
@@ -47,9 +59,8 @@ class PaymentIntegrationTest {
 
         System.out.println(customerRegResultActions);
 
-        // ... Payment
-        long paymentId = 1L;
-        Payment payment = new Payment(paymentId,
+        // ... Payment, its id is given by the sequence when saved
+        Payment payment = new Payment(null,
                 id,
                 new BigDecimal("100.00"),
                 Currency.GBP,
@@ -70,12 +81,32 @@ class PaymentIntegrationTest {
         paymentResultActions.andExpect(status().isOk());
 
         // Payment is stored in DB
-        // TODO: D not use paymentRepository instead create an endpoint to retrieve payments for customers
+        List<PaymentSummary> stored = paymentRepository.selectPaymentHistory(id, Long.MAX_VALUE, PageRequest.of(0, 2));
+        assertThat(stored).hasSize(1);
+        long paymentId = stored.get(0).getPaymentId();
         assertThat(paymentRepository.findById(paymentId))
                 .isPresent()
-                .hasValueSatisfying(payment1 -> assertThat(payment1).isEqualToComparingFieldByField(payment));
-
-        // TODO: Ensure sms is delivered
+                .hasValueSatisfying(payment1 -> assertThat(payment1).isEqualToIgnoringGivenFields(payment, "paymentId"));
+
+        // ... and listed in the customer's payment history
+        mockMvc.perform(get("/api/v1/payment/customer/{customerId}", id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.payments[0].paymentId").value(paymentId))
+                .andExpect(jsonPath("$.payments[0].amount").value(100.00))
+                .andExpect(jsonPath("$.payments[0].currency").value("GBP"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        // ... and counted in the customer's totals for this month
+        mockMvc.perform(get("/api/v1/payment/customer/{customerId}/totals", id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].currency").value("GBP"))
+                .andExpect(jsonPath("$[0].totalAmount").value(100.00))
+                .andExpect(jsonPath("$[0].paymentCount").value(1));
+
+        // ... and the SMS is delivered from the outbox
+        smsOutboxDispatcher.dispatchAll();
+        assertThat(fakeSmsSender.getSent().stream()
+                .anyMatch(sms -> sms.getPhoneNumber().equals("+447000000000"))).isTrue();
     }
 
     private String objectToJson(Object object) {
@@ -1,10 +1,16 @@
 package com.amigoscode.testing.payment;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -13,7 +19,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 @DataJpaTest(
         properties = {
-                "spring.jpa.properties.javax.persistence.validation.mode=none"
+                "spring.jpa.properties.javax.persistence.validation.mode=none",
+                "spring.jpa.properties.hibernate.generate_statistics=true"
         }
 )
 class PaymentRepositoryTest {
@@ -21,12 +28,14 @@ class PaymentRepositoryTest {
     @Autowired
     private PaymentRepository underTest;
 
+    @Autowired
+    private TestEntityManager testEntityManager;
+
     @Test
     void itShouldName() {
         // Given
-        long paymentId = 1L;
         Payment payment = new Payment(
-                paymentId,
+                null,
                 UUID.randomUUID(),
                 new BigDecimal("10.00"),
                 Currency.USD,
@@ -34,14 +43,64 @@ class PaymentRepositoryTest {
                 "Donation");
 
         // When
-        underTest.save(payment);
+        Payment saved = underTest.save(payment);
 
         // Then
-        Optional<Payment> paymentOptional = underTest.findById(paymentId);
+        Optional<Payment> paymentOptional = underTest.findById(saved.getPaymentId());
         assertThat(paymentOptional).isPresent().hasValueSatisfying(p -> {
-            assertThat(p).isEqualTo(payment);
+            assertThat(p).isEqualTo(saved);
         });
 
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldSelectPaymentHistoryPageByPage() {
+        // Given three payments of one customer and one of another
+        UUID customerId = UUID.randomUUID();
+        Payment first = underTest.save(payment(customerId, "first"));
+        Payment second = underTest.save(payment(customerId, "second"));
+        Payment third = underTest.save(payment(customerId, "third"));
+        underTest.save(payment(UUID.randomUUID(), "other"));
+
+        // When
+        List<PaymentSummary> firstPage = underTest.selectPaymentHistory(customerId, Long.MAX_VALUE, PageRequest.of(0, 2));
+        List<PaymentSummary> secondPage = underTest.selectPaymentHistory(
+                customerId, firstPage.get(1).getPaymentId(), PageRequest.of(0, 2));
+
+        // Then newest first, continuing after the cursor
+        assertThat(firstPage).extracting(PaymentSummary::getPaymentId)
+                .containsExactly(third.getPaymentId(), second.getPaymentId());
+        assertThat(secondPage).extracting(PaymentSummary::getPaymentId)
+                .containsExactly(first.getPaymentId());
+        assertThat(secondPage.get(0).getDescription()).isEqualTo("first");
+    }
+
+    @Test
+    void itShouldSaveAllWithBatchedInserts() {
+        // Given
+        Statistics statistics = testEntityManager.getEntityManager()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        UUID customerId = UUID.randomUUID();
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            payments.add(payment(customerId, "payment " + i));
+        }
+        statistics.clear();
+
+        // When
+        underTest.saveAll(payments);
+        testEntityManager.flush();
+
+        // Then one batched insert and at most two sequence calls instead of one per payment
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(50);
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(3);
+        assertThat(payments).extracting(Payment::getPaymentId).doesNotContainNull().doesNotHaveDuplicates();
+    }
+
+    private static Payment payment(UUID customerId, String description) {
+        return new Payment(null, customerId, new BigDecimal("10.00"), Currency.USD, "card123", description);
+    }
+}
@@ -1,22 +1,32 @@
 package com.amigoscode.testing.payment;
 
-import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerExistenceCache;
 import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.payment.journal.PaymentJournal;
+import com.amigoscode.testing.payment.ledger.PaymentLedger;
+import com.amigoscode.testing.shard.ShardRouter;
+import com.amigoscode.testing.sms.SmsOutbox;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionOperations;
 
 import java.math.BigDecimal;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 
 class PaymentServiceTest {
 
@@ -26,13 +36,32 @@ class PaymentServiceTest {
     private PaymentRepository paymentRepository;
     @Mock
     private CardPaymentCharger cardPaymentCharger;
+    @Mock
+    private PaymentBatcher paymentBatcher;
+    @Mock
+    private SmsOutbox smsOutbox;
+    @Mock
+    private PaymentLedger paymentLedger;
+    @Mock
+    private PaymentJournal paymentJournal;
+
+    private SimpleMeterRegistry meterRegistry;
 
     private PaymentService underTest;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
-        underTest = new PaymentService(customerRepository, paymentRepository, cardPaymentCharger);
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new PaymentService(
+                new CustomerExistenceCache(customerRepository, 100, Duration.ofMinutes(10)),
+                paymentRepository, cardPaymentCharger,
+                new ExecutorAsyncCardPaymentCharger(cardPaymentCharger, Runnable::run),
+                new PaymentMetrics(meterRegistry, cardPaymentCharger),
+                paymentBatcher,
+                new PaymentRecorder(paymentRepository, smsOutbox,
+                        ShardRouter.single(), TransactionOperations.withoutTransaction(), paymentLedger, paymentJournal),
+                paymentJournal);
     }
 
     @Test
@@ -41,7 +70,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         // ... Customer exists
-        given(customerRepository.findById(customerId)).willReturn(Optional.of(mock(Customer.class)));
+        given(customerRepository.existsById(customerId)).willReturn(true);
 
         // ... Payment request
         PaymentRequest paymentRequest = new PaymentRequest(
@@ -60,6 +89,9 @@ class PaymentServiceTest {
                 paymentRequest.getPayment().getCurrency(),
                 paymentRequest.getPayment().getDescription())).willReturn(new CardPaymentCharge(true));
 
+        // ... Payment is saved
+        given(paymentRepository.save(paymentRequest.getPayment())).willReturn(paymentRequest.getPayment());
+
         // When
         underTest.chargeCard(customerId, paymentRequest);
 
@@ -84,7 +116,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         // ... Customer exists
-        given(customerRepository.findById(customerId)).willReturn(Optional.of(mock(Customer.class)));
+        given(customerRepository.existsById(customerId)).willReturn(true);
 
         // ... Payment request
         PaymentRequest paymentRequest = new PaymentRequest(
@@ -125,7 +157,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         // ... Customer Exists
-        given(customerRepository.findById(customerId)).willReturn(Optional.of(mock(Customer.class)));
+        given(customerRepository.existsById(customerId)).willReturn(true);
 
         // ... Payment request
         Currency eur = Currency.EUR;
@@ -161,7 +193,7 @@ class PaymentServiceTest {
         UUID customerId = UUID.randomUUID();
 
         // When customer not found
-        given(customerRepository.findById(customerId)).willReturn(Optional.empty());
+        given(customerRepository.existsById(customerId)).willReturn(false);
 
         // Then
         assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(new Payment())))
@@ -172,4 +204,574 @@ class PaymentServiceTest {
         then(paymentRepository).shouldHaveNoMoreInteractions();
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldChargeEachPaymentInTheBatchIndependently() {
+        // Given two existing customers and an unknown one
+        UUID ramona = UUID.randomUUID();
+        UUID raluca = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+
+        given(customerRepository.selectExistingIds(anyCollection())).willReturn(List.of(ramona, raluca));
+
+        // ... a batch of payments
+        Payment charged = new Payment(null, ramona, new BigDecimal("10.00"), Currency.USD, "card1", "Donation");
+        Payment declined = new Payment(null, raluca, new BigDecimal("20.00"), Currency.GBP, "card2", "Donation");
+        Payment failed = new Payment(null, ramona, new BigDecimal("30.00"), Currency.GBP, "card3", "Donation");
+        Payment euro = new Payment(null, raluca, new BigDecimal("40.00"), Currency.EUR, "card4", "Donation");
+        Payment noCustomer = new Payment(null, unknown, new BigDecimal("50.00"), Currency.USD, "card5", "Donation");
+
+        // ... card1 is debited, card2 is declined and card3 blows up
+        given(cardPaymentCharger.chargeCard("card1", charged.getAmount(), Currency.USD, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCard("card2", declined.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+        given(cardPaymentCharger.chargeCard("card3", failed.getAmount(), Currency.GBP, "Donation"))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+
+        // ... the debited payment is saved with an id
+        Payment saved = new Payment(1L, ramona, charged.getAmount(), Currency.USD, "card1", "Donation");
+        given(paymentRepository.saveAll(List.of(charged))).willReturn(List.of(saved));
+
+        // When
+        List<PaymentResult> results = underTest.chargeCards(List.of(
+                new PaymentRequest(charged),
+                new PaymentRequest(declined),
+                new PaymentRequest(failed),
+                new PaymentRequest(euro),
+                new PaymentRequest(noCustomer)));
+
+        // Then
+        assertThat(results).extracting(PaymentResult::getStatus).containsExactly(
+                PaymentChargeStatus.CHARGED,
+                PaymentChargeStatus.CARD_NOT_DEBITED,
+                PaymentChargeStatus.FAILED,
+                PaymentChargeStatus.CURRENCY_NOT_SUPPORTED,
+                PaymentChargeStatus.CUSTOMER_NOT_FOUND);
+
+        assertThat(results.get(0).getPaymentId()).isEqualTo(1L);
+        assertThat(results.get(2).getMessage()).isEqualTo("Cannot make stripe charge");
+        assertThat(results.get(4).getMessage())
+                .isEqualTo(String.format("Customer with id [%s] not found", unknown));
+
+        then(customerRepository).should().selectExistingIds(anyCollection());
+        then(customerRepository).shouldHaveNoMoreInteractions();
+        then(paymentRepository).should().saveAll(List.of(charged));
+        then(paymentRepository).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void itShouldChargeCardAsynchronously() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+
+        // ... Customer exists
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        // ... Payment request
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+
+        // ... Card is charged successfully
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+
+        // ... Payment is saved
+        given(paymentRepository.save(payment)).willReturn(payment);
+
+        // When
+        CompletableFuture<Void> result = underTest.chargeCardAsync(customerId, new PaymentRequest(payment));
+
+        // Then
+        assertThat(result).isCompleted();
+        then(paymentRepository).should().save(payment);
+        assertThat(payment.getCustomerId()).isEqualTo(customerId);
+    }
+
+    @Test
+    void itShouldFailTheFutureWhenCardIsNotChargedAsynchronously() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+
+        // ... Customer exists
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        // ... Payment request
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+
+        // ... Card is not charged successfully
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+
+        // When
+        CompletableFuture<Void> result = underTest.chargeCardAsync(customerId, new PaymentRequest(payment));
+
+        // Then
+        assertThatThrownBy(result::join)
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(String.format("Card not debited for customer %s", customerId));
+        then(paymentRepository).should(never()).save(any(Payment.class));
+    }
+
+    @Test
+    void itShouldTimeEveryStageOfASuccessfulCharge() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(paymentRepository.save(payment)).willReturn(payment);
+
+        // When
+        underTest.chargeCard(customerId, new PaymentRequest(payment));
+
+        // Then
+        for (String stage : List.of("customer_lookup", "currency_check", "charge", "save")) {
+            assertThat(meterRegistry.get("payment.stage").tags("stage", stage, "currency", "GBP").timer().count())
+                    .isEqualTo(1);
+        }
+    }
+
+    @Test
+    void itShouldTimeEveryStageOfAnAsynchronousCharge() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(paymentRepository.save(payment)).willReturn(payment);
+
+        // When
+        underTest.chargeCardAsync(customerId, new PaymentRequest(payment)).join();
+
+        // Then
+        for (String stage : List.of("customer_lookup", "currency_check", "charge", "save")) {
+            assertThat(meterRegistry.get("payment.stage").tags("stage", stage, "currency", "GBP").timer().count())
+                    .isEqualTo(1);
+        }
+    }
+
+    @Test
+    void itShouldCountAnAsynchronousChargeTheCardDeclined() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+
+        // When
+        CompletableFuture<Void> result = underTest.chargeCardAsync(customerId, new PaymentRequest(payment));
+
+        // Then
+        assertThat(result).isCompletedExceptionally();
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "card_not_debited", "currency", "GBP").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("payment.stage").tags("stage", "save", "currency", "GBP").timer().count())
+                .isZero();
+    }
+
+    @Test
+    void itShouldReturnTheChargeIdsOfABatchThatWasChargedButNotSaved() {
+        // Given
+        UUID ramona = UUID.randomUUID();
+        given(customerRepository.selectExistingIds(anyCollection())).willReturn(List.of(ramona));
+
+        Payment first = new Payment(null, ramona, new BigDecimal("10.00"), Currency.USD, "card1", "Donation");
+        Payment second = new Payment(null, ramona, new BigDecimal("20.00"), Currency.USD, "card2", "Donation");
+        Payment declined = new Payment(null, ramona, new BigDecimal("30.00"), Currency.USD, "card3", "Donation");
+        given(cardPaymentCharger.chargeCard("card1", first.getAmount(), Currency.USD, "Donation"))
+                .willReturn(new CardPaymentCharge(true, "ch_1"));
+        given(cardPaymentCharger.chargeCard("card2", second.getAmount(), Currency.USD, "Donation"))
+                .willReturn(new CardPaymentCharge(true, "ch_2"));
+        given(cardPaymentCharger.chargeCard("card3", declined.getAmount(), Currency.USD, "Donation"))
+                .willReturn(new CardPaymentCharge(false, "ch_3"));
+
+        // ... the insert fails after the cards were charged
+        given(paymentRepository.saveAll(List.of(first, second))).willThrow(new IllegalStateException("Database down"));
+
+        // When
+        List<PaymentResult> results = underTest.chargeCards(List.of(
+                new PaymentRequest(first),
+                new PaymentRequest(second),
+                new PaymentRequest(declined)));
+
+        // Then
+        assertThat(results).extracting(PaymentResult::getStatus).containsExactly(
+                PaymentChargeStatus.SAVE_FAILED,
+                PaymentChargeStatus.SAVE_FAILED,
+                PaymentChargeStatus.CARD_NOT_DEBITED);
+        assertThat(results).extracting(PaymentResult::getChargeId).containsExactly("ch_1", "ch_2", null);
+        assertThat(results.get(0).getPaymentId()).isNull();
+        assertThat(results.get(0).getMessage()).isEqualTo("Card debited but the payment could not be saved");
+    }
+
+    @Test
+    void itShouldTimeAndCountEveryPaymentInTheBatch() {
+        // Given one existing customer and an unknown one
+        UUID ramona = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        given(customerRepository.selectExistingIds(anyCollection())).willReturn(List.of(ramona));
+
+        Payment charged = new Payment(null, ramona, new BigDecimal("10.00"), Currency.USD, "card1", "Donation");
+        Payment declined = new Payment(null, ramona, new BigDecimal("20.00"), Currency.GBP, "card2", "Donation");
+        Payment failed = new Payment(null, ramona, new BigDecimal("30.00"), Currency.GBP, "card3", "Donation");
+        Payment euro = new Payment(null, ramona, new BigDecimal("40.00"), Currency.EUR, "card4", "Donation");
+        Payment noCustomer = new Payment(null, unknown, new BigDecimal("50.00"), Currency.USD, "card5", "Donation");
+
+        given(cardPaymentCharger.chargeCard("card1", charged.getAmount(), Currency.USD, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCard("card2", declined.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+        given(cardPaymentCharger.chargeCard("card3", failed.getAmount(), Currency.GBP, "Donation"))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+        Payment saved = new Payment(1L, ramona, new BigDecimal("10.00"), Currency.USD, "card1", "Donation");
+        given(paymentRepository.saveAll(List.of(charged))).willReturn(List.of(saved));
+
+        // When
+        underTest.chargeCards(List.of(
+                new PaymentRequest(charged),
+                new PaymentRequest(declined),
+                new PaymentRequest(failed),
+                new PaymentRequest(euro),
+                new PaymentRequest(noCustomer)));
+
+        // Then
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "card_not_debited", "currency", "GBP").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "processor_exception", "currency", "GBP").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "currency_not_supported", "currency", "EUR").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "customer_not_found", "currency", "USD").counter().count()).isEqualTo(1);
+
+        assertThat(meterRegistry.get("payment.stage").tags("stage", "customer_lookup", "currency", "USD")
+                .timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("payment.stage").tags("stage", "charge", "currency", "GBP")
+                .timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("payment.stage").tags("stage", "save", "currency", "USD")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.stage").tags("stage", "save", "currency", "GBP")
+                .timer().count()).isZero();
+    }
+
+    @Test
+    void itShouldCountProcessorExceptions() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.USD, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.USD, "Donation"))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+
+        // When
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "processor_exception", "currency", "USD").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("payment.stage").tags("stage", "save", "currency", "USD").timer().count())
+                .isZero();
+    }
+
+    @Test
+    void itShouldLeaveSavingToTheBatchWhenBatching() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+        given(paymentBatcher.isEnabled()).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.USD, "card123xx", "Donation");
+        given(paymentBatcher.submit(payment)).willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+
+        // When
+        underTest.chargeCard(customerId, new PaymentRequest(payment));
+
+        // Then
+        assertThat(payment.getCustomerId()).isEqualTo(customerId);
+        then(cardPaymentCharger).shouldHaveNoInteractions();
+        then(paymentRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldThrowWhenBatchedCardIsNotCharged() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+        given(paymentBatcher.isEnabled()).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.USD, "card123xx", "Donation");
+        given(paymentBatcher.submit(payment)).willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(false)));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(String.format("Card not debited for customer %s", customerId));
+    }
+
+    @Test
+    void itShouldRethrowWhatTheBatchFailedWith() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+        given(paymentBatcher.isEnabled()).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.USD, "card123xx", "Donation");
+        CompletableFuture<CardPaymentCharge> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Cannot make stripe charge"));
+        given(paymentBatcher.submit(payment)).willReturn(failed);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Cannot make stripe charge");
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "processor_exception", "currency", "USD").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void itShouldCountABatchThatChargedTheCardButWasNotSavedAsASaveFailure() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+        given(paymentBatcher.isEnabled()).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.USD, "card123xx", "Donation");
+        CompletableFuture<CardPaymentCharge> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new PaymentNotSavedException(
+                "Card debited but the payment could not be saved", new IllegalStateException("Database down")));
+        given(paymentBatcher.submit(payment)).willReturn(failed);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(PaymentNotSavedException.class);
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "save_failed", "currency", "USD").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "processor_exception", "currency", "USD").counter().count())
+                .isZero();
+    }
+
+    @Test
+    void itShouldCountAPaymentThatCouldNotBeSavedAsASaveFailure() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(paymentRepository.save(payment)).willThrow(new IllegalStateException("Database down"));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .hasMessage("Database down");
+        assertThat(meterRegistry.get("payment.failures")
+                .tags("reason", "save_failed", "currency", "GBP").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void itShouldQueueAnSmsWithThePayment() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(paymentRepository.save(payment)).willReturn(payment);
+
+        // When
+        underTest.chargeCard(customerId, new PaymentRequest(payment));
+
+        // Then
+        then(smsOutbox).should().paymentReceived(payment);
+    }
+
+    @Test
+    void itShouldCountThePaymentInTheLedger() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(paymentRepository.save(payment)).willReturn(payment);
+
+        // When
+        underTest.chargeCard(customerId, new PaymentRequest(payment));
+
+        // Then
+        then(paymentLedger).should().paymentsRecorded(List.of(payment));
+    }
+
+    @Test
+    void itShouldNotQueueAnSmsWhenCardIsNotCharged() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+
+        // When
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        then(smsOutbox).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldJournalTheAttemptAndThePayment() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(paymentRepository.save(payment)).willReturn(payment);
+
+        // When
+        underTest.chargeCard(customerId, new PaymentRequest(payment));
+
+        // Then
+        then(paymentJournal).should().chargeAttempted(customerId, payment);
+        then(paymentJournal).should().paymentsRecorded(List.of(payment));
+        then(paymentJournal).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void itShouldJournalADeclinedCharge() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+
+        // When
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        then(paymentJournal).should().chargeAttempted(customerId, payment);
+        then(paymentJournal).should().chargeDeclined(customerId, payment);
+        then(paymentJournal).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void itShouldJournalAFailedCharge() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+
+        // When
+        assertThatThrownBy(() -> underTest.chargeCard(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Then
+        then(paymentJournal).should().chargeAttempted(customerId, payment);
+        then(paymentJournal).should().chargeFailed(customerId, payment, "Cannot make stripe charge");
+        then(paymentJournal).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void itShouldJournalADeclinedAsynchronousCharge() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+
+        // When
+        CompletableFuture<Void> result = underTest.chargeCardAsync(customerId, new PaymentRequest(payment));
+
+        // Then
+        assertThat(result).isCompletedExceptionally();
+        then(paymentJournal).should().chargeAttempted(customerId, payment);
+        then(paymentJournal).should().chargeDeclined(customerId, payment);
+        then(paymentJournal).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void itShouldJournalAFailedAsynchronousCharge() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123xx", "Donation");
+        given(cardPaymentCharger.chargeCard("card123xx", payment.getAmount(), Currency.GBP, "Donation"))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+
+        // When
+        CompletableFuture<Void> result = underTest.chargeCardAsync(customerId, new PaymentRequest(payment));
+
+        // Then
+        assertThat(result).isCompletedExceptionally();
+        then(paymentJournal).should().chargeAttempted(customerId, payment);
+        then(paymentJournal).should().chargeFailed(customerId, payment, "Cannot make stripe charge");
+        then(paymentJournal).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void itShouldJournalTheChargesOfTheBatch() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.selectExistingIds(anyCollection())).willReturn(List.of(customerId));
+
+        Payment charged = new Payment(null, customerId, new BigDecimal("10.00"), Currency.USD, "card1", "Donation");
+        Payment declined = new Payment(null, customerId, new BigDecimal("20.00"), Currency.GBP, "card2", "Donation");
+        Payment failed = new Payment(null, customerId, new BigDecimal("30.00"), Currency.GBP, "card3", "Donation");
+        Payment euro = new Payment(null, customerId, new BigDecimal("40.00"), Currency.EUR, "card4", "Donation");
+
+        given(cardPaymentCharger.chargeCard("card1", charged.getAmount(), Currency.USD, "Donation"))
+                .willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCard("card2", declined.getAmount(), Currency.GBP, "Donation"))
+                .willReturn(new CardPaymentCharge(false));
+        given(cardPaymentCharger.chargeCard("card3", failed.getAmount(), Currency.GBP, "Donation"))
+                .willThrow(new IllegalStateException("Cannot make stripe charge"));
+        Payment saved = new Payment(1L, customerId, new BigDecimal("10.00"), Currency.USD, "card1", "Donation");
+        given(paymentRepository.saveAll(List.of(charged))).willReturn(List.of(saved));
+
+        // When
+        underTest.chargeCards(List.of(
+                new PaymentRequest(charged),
+                new PaymentRequest(declined),
+                new PaymentRequest(failed),
+                new PaymentRequest(euro)));
+
+        // Then the rejected payment is never attempted
+        then(paymentJournal).should().chargesAttempted(List.of(charged, declined, failed));
+        then(paymentJournal).should().chargeDeclined(customerId, declined);
+        then(paymentJournal).should().chargeFailed(customerId, failed, "Cannot make stripe charge");
+        then(paymentJournal).should().paymentsRecorded(List.of(saved));
+        then(paymentJournal).shouldHaveNoMoreInteractions();
+    }
+}
@@ -0,0 +1,207 @@
+package com.amigoscode.testing.payment.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedLogTest {
+
+    @TempDir
+    Path directory;
+
+    private MappedLog underTest;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (underTest != null) {
+            underTest.close();
+        }
+    }
+
+    @Test
+    void itShouldReplayWhatWasAppendedInOrder() throws IOException {
+        // Given
+        underTest = MappedLog.open(directory, 1024);
+
+        // When
+        append("first");
+        append("second");
+        append("third");
+
+        // Then
+        assertThat(replay()).containsExactly("first", "second", "third");
+        assertThat(underTest.getPosition()).isEqualTo(3 * MappedLog.HEADER_SIZE + 16);
+    }
+
+    @Test
+    void itShouldStartANewSegmentWhenARecordDoesNotFit() throws IOException {
+        // Given
+        underTest = MappedLog.open(directory, 32);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            append("record" + i);
+        }
+
+        // Then
+        assertThat(replay()).hasSize(10).startsWith("record0").endsWith("record9");
+        assertThat(segments()).containsExactly(
+                "00000000000000000000.log",
+                "00000000000000000030.log",
+                "00000000000000000060.log",
+                "00000000000000000090.log",
+                "00000000000000000120.log");
+    }
+
+    @Test
+    void itShouldCarryOnAfterTheLastRecordWhenReopened() throws IOException {
+        // Given
+        underTest = MappedLog.open(directory, 32);
+        append("record0");
+        append("record1");
+        append("record2");
+        long position = underTest.getPosition();
+        underTest.close();
+
+        // When
+        underTest = MappedLog.open(directory, 32);
+        append("record3");
+
+        // Then
+        assertThat(underTest.getPosition()).isEqualTo(position + MappedLog.HEADER_SIZE + 7);
+        assertThat(replay()).containsExactly("record0", "record1", "record2", "record3");
+    }
+
+    @Test
+    void itShouldDropAHalfWrittenRecordWhenReopened() throws IOException {
+        // Given
+        underTest = MappedLog.open(directory, 1024);
+        append("kept");
+        long torn = underTest.getPosition();
+        append("torn");
+        underTest.close();
+        try (FileChannel segment = FileChannel.open(directory.resolve("00000000000000000000.log"),
+                StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[]{'x'}), torn + MappedLog.HEADER_SIZE + 3);
+        }
+
+        // When
+        underTest = MappedLog.open(directory, 1024);
+        append("next");
+
+        // Then
+        assertThat(replay()).containsExactly("kept", "next");
+        assertThat(underTest.getPosition()).isEqualTo(torn + MappedLog.HEADER_SIZE + 4);
+    }
+
+    @Test
+    void itShouldFailReplayOnACorruptRecordBeforeTheLastSegment() throws IOException {
+        // Given
+        underTest = MappedLog.open(directory, 32);
+        append("record0");
+        append("record1");
+        append("record2");
+        underTest.close();
+        try (FileChannel segment = FileChannel.open(directory.resolve("00000000000000000000.log"),
+                StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[]{'x'}), MappedLog.HEADER_SIZE);
+        }
+
+        // When
+        underTest = MappedLog.open(directory, 32);
+
+        // Then
+        assertThatThrownBy(this::replay)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Corrupt record at position 0");
+    }
+
+    @Test
+    void itShouldNotAppendARecordLargerThanASegment() throws IOException {
+        // Given
+        underTest = MappedLog.open(directory, 32);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.append(new byte[25], 0, 25))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Record of 25 bytes does not fit in a segment of 32 bytes");
+    }
+
+    @Test
+    void itShouldForceOnceForRecordsAlreadyForced() throws IOException {
+        // Given
+        underTest = MappedLog.open(directory, 1024);
+        long first = underTest.append(new byte[]{1}, 0, 1);
+        long second = underTest.append(new byte[]{2}, 0, 1);
+
+        // When
+        underTest.force(second);
+        underTest.force(first);
+        underTest.force(second);
+
+        // Then
+        assertThat(underTest.getForces()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldShareForcesBetweenConcurrentAppends() throws Exception {
+        // Given
+        underTest = MappedLog.open(directory, 1 << 20);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<?>> writers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            writers.add(executor.submit(() -> {
+                for (int j = 0; j < 100; j++) {
+                    byte[] record = new byte[64];
+                    underTest.force(underTest.append(record, 0, record.length));
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        // Then
+        assertThat(underTest.replay((position, record) -> { })).isEqualTo(800);
+        assertThat(underTest.getForces()).isBetween(1L, 800L);
+    }
+
+    private void append(String record) {
+        byte[] bytes = record.getBytes(StandardCharsets.US_ASCII);
+        underTest.force(underTest.append(bytes, 0, bytes.length));
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> records = new ArrayList<>();
+        underTest.replay((position, record) -> records.add(StandardCharsets.US_ASCII.decode(record).toString()));
+        return records;
+    }
+
+    private List<String> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
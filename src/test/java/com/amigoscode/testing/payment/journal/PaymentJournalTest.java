@@ -0,0 +1,187 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.journal.JournalRecord.Type;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PaymentJournalTest {
+
+    private final Instant now = Instant.parse("2020-01-15T12:00:00Z");
+    private final UUID customerId = UUID.randomUUID();
+
+    @TempDir
+    Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PaymentJournal underTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new PaymentJournal(MappedLog.open(directory, 4096), Clock.fixed(now, ZoneOffset.UTC), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        underTest.close();
+    }
+
+    @Test
+    void itShouldJournalAChargeAndItsOutcome() {
+        // Given
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123", null);
+
+        // When
+        underTest.chargeAttempted(customerId, payment);
+        underTest.chargeFailed(customerId, payment, "Cannot make stripe charge");
+        underTest.chargeAttempted(customerId, payment);
+        underTest.chargeDeclined(customerId, payment);
+
+        // Then
+        List<JournalRecord> records = replay();
+        assertThat(records).extracting(JournalRecord::getType).containsExactly(
+                Type.CHARGE_ATTEMPTED, Type.CHARGE_FAILED, Type.CHARGE_ATTEMPTED, Type.CHARGE_DECLINED);
+
+        JournalRecord failed = records.get(1);
+        assertThat(failed.getTimestamp()).isEqualTo(now);
+        assertThat(failed.getCustomerId()).isEqualTo(customerId);
+        assertThat(failed.getPaymentId()).isEqualTo(JournalRecord.NO_PAYMENT_ID);
+        assertThat(failed.getAmount()).isEqualTo(new BigDecimal("100.00"));
+        assertThat(failed.getCurrency()).isEqualTo(Currency.GBP);
+        assertThat(failed.getSource()).isEqualTo("card123");
+        assertThat(failed.getDescription()).isNull();
+        assertThat(failed.getFailure()).isEqualTo("Cannot make stripe charge");
+    }
+
+    @Test
+    void itShouldJournalRecordedPaymentsWithTheirIds() {
+        // Given
+        Payment first = new Payment(1L, customerId, new BigDecimal("10.00"), Currency.GBP, "card123", "Donation");
+        Payment second = new Payment(2L, customerId, new BigDecimal("20.00"), Currency.USD, "card123", "Zakat");
+
+        // When
+        underTest.paymentsRecorded(List.of(first, second));
+
+        // Then
+        assertThat(replay()).extracting(JournalRecord::toPayment).containsExactly(first, second);
+    }
+
+    @Test
+    void itShouldOnlyJournalPaymentsOnceTheirTransactionCommits() {
+        // Given
+        Payment payment = new Payment(1L, customerId, new BigDecimal("10.00"), Currency.GBP, "card123", "Donation");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            underTest.paymentsRecorded(List.of(payment));
+            assertThat(replay()).isEmpty();
+
+            // When
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Then
+        assertThat(replay()).extracting(JournalRecord::toPayment).containsExactly(payment);
+    }
+
+    @Test
+    void itShouldJournalTheAttemptsOfABatch() {
+        // Given
+        Payment first = new Payment(null, customerId, new BigDecimal("10.00"), Currency.GBP, "card123", "Donation");
+        Payment second = new Payment(null, customerId, new BigDecimal("20.00"), Currency.USD, "card123", "Zakat");
+
+        // When
+        underTest.chargesAttempted(List.of(first, second));
+
+        // Then
+        List<JournalRecord> records = replay();
+        assertThat(records).extracting(JournalRecord::getType)
+                .containsExactly(Type.CHARGE_ATTEMPTED, Type.CHARGE_ATTEMPTED);
+        assertThat(records).extracting(JournalRecord::getPaymentId)
+                .containsOnly(JournalRecord.NO_PAYMENT_ID);
+        assertThat(records).extracting(JournalRecord::getCustomerId).containsOnly(customerId);
+    }
+
+    @Test
+    void itShouldCountAChargeItCouldNotJournalAndFailIt() throws IOException {
+        // Given a segment too small for any record
+        PaymentJournal tooSmall = new PaymentJournal(MappedLog.open(directory.resolve("small"), 32),
+                Clock.fixed(now, ZoneOffset.UTC), meterRegistry);
+        Payment payment = new Payment(null, null, new BigDecimal("100.00"), Currency.GBP, "card123", "Donation");
+
+        // When
+        // Then
+        try {
+            assertThatThrownBy(() -> tooSmall.chargeAttempted(customerId, payment))
+                    .isInstanceOf(IllegalStateException.class);
+            assertThat(meterRegistry.get("payment.journal.append.failures").counter().count()).isEqualTo(1);
+        } finally {
+            tooSmall.close();
+        }
+    }
+
+    @Test
+    void itShouldCountRecordedPaymentsItCouldNotJournalAfterTheCommit() throws IOException {
+        // Given a segment too small for any record
+        PaymentJournal tooSmall = new PaymentJournal(MappedLog.open(directory.resolve("small"), 32),
+                Clock.fixed(now, ZoneOffset.UTC), meterRegistry);
+        Payment payment = new Payment(1L, customerId, new BigDecimal("10.00"), Currency.GBP, "card123", "Donation");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tooSmall.paymentsRecorded(List.of(payment));
+
+            // When
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+            tooSmall.close();
+        }
+
+        // Then the commit went through, but the failure is counted
+        assertThat(meterRegistry.get("payment.journal.append.failures").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldDoNothingWhenDisabled() {
+        // Given
+        PaymentJournal disabled = PaymentJournal.disabled();
+        Payment payment = new Payment(1L, customerId, new BigDecimal("10.00"), Currency.GBP, "card123", "Donation");
+
+        // When
+        disabled.chargeAttempted(customerId, payment);
+        disabled.paymentsRecorded(List.of(payment));
+
+        // Then
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.replay(record -> { })).isZero();
+    }
+
+    private List<JournalRecord> replay() {
+        List<JournalRecord> records = new ArrayList<>();
+        underTest.replay(records::add);
+        return records;
+    }
+}
@@ -0,0 +1,96 @@
+package com.amigoscode.testing.payment.journal;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRepository;
+import com.amigoscode.testing.shard.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+class PaymentProjectionTest {
+
+    private final UUID customerId = UUID.randomUUID();
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private PaymentJournal paymentJournal;
+    private PaymentProjection underTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        paymentJournal = new PaymentJournal(MappedLog.open(directory, 4096), Clock.systemUTC(), new SimpleMeterRegistry());
+        underTest = new PaymentProjection(paymentJournal, paymentRepository, ShardRouter.single(), jdbcTemplate, true);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        paymentJournal.close();
+    }
+
+    @Test
+    void itShouldInsertTheRecordedPaymentsMissingFromTheTable() {
+        // Given
+        Payment saved = new Payment(1L, customerId, new BigDecimal("10.00"), Currency.GBP, "card123", "Donation");
+        Payment missing = new Payment(2L, customerId, new BigDecimal("20.00"), Currency.USD, "card123", "Zakat");
+        paymentJournal.chargeAttempted(customerId, saved);
+        paymentJournal.paymentsRecorded(List.of(saved, missing));
+        given(paymentRepository.countByCustomerIdAndPaymentId(customerId, 1L)).willReturn(1L);
+        given(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(2L))).willReturn(List.of(50L));
+
+        // When
+        int restored = underTest.rebuild();
+
+        // Then
+        assertThat(restored).isEqualTo(1);
+        then(paymentRepository).should().saveWithId(customerId, 2L, new BigDecimal("20.00"),
+                Currency.USD.ordinal(), "card123", "Zakat");
+        then(paymentRepository).should(never()).saveWithId(eq(customerId), eq(1L), any(), anyInt(), any(), any());
+        then(jdbcTemplate).should().execute("alter sequence payment_id_seq restart with 52");
+    }
+
+    @Test
+    void itShouldLeaveTheSequenceAloneWhenNothingWasMissing() {
+        // Given
+        Payment saved = new Payment(1L, customerId, new BigDecimal("10.00"), Currency.GBP, "card123", "Donation");
+        paymentJournal.paymentsRecorded(List.of(saved));
+        given(paymentRepository.countByCustomerIdAndPaymentId(customerId, 1L)).willReturn(1L);
+
+        // When
+        int restored = underTest.rebuild();
+
+        // Then
+        assertThat(restored).isZero();
+        then(paymentRepository).should(never()).saveWithId(any(), anyLong(), any(), anyInt(), any(), any());
+        then(jdbcTemplate).shouldHaveNoInteractions();
+    }
+}
@@ -0,0 +1,152 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.shard.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+class PaymentLedgerTest {
+
+    private final YearMonth january = YearMonth.of(2020, 1);
+    private final UUID customerId = UUID.randomUUID();
+
+    @Mock
+    private PaymentTotalRepository paymentTotalRepository;
+
+    private PaymentLedger underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new PaymentLedger(paymentTotalRepository, ShardRouter.single(),
+                TransactionOperations.withoutTransaction(),
+                Clock.fixed(Instant.parse("2020-01-15T12:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @Test
+    void itShouldAddBufferedPaymentsToTheStoredTotals() {
+        // Given
+        given(paymentTotalRepository.selectTotals(customerId, 202001)).willReturn(List.of(
+                new PaymentTotal(new PaymentTotalId(customerId, Currency.GBP, january), new BigDecimal("100.00"), 1)));
+
+        // When
+        underTest.paymentsRecorded(List.of(
+                payment(Currency.GBP, "10.00"),
+                payment(Currency.GBP, "10.00"),
+                payment(Currency.USD, "5.00")));
+        List<PaymentTotalSummary> totals = underTest.getTotals(customerId, january);
+
+        // Then
+        assertThat(totals).hasSize(2);
+        assertThat(totals.get(0).getCurrency()).isEqualTo(Currency.USD);
+        assertThat(totals.get(0).getTotalAmount()).isEqualByComparingTo("5.00");
+        assertThat(totals.get(0).getPaymentCount()).isEqualTo(1);
+        assertThat(totals.get(1).getCurrency()).isEqualTo(Currency.GBP);
+        assertThat(totals.get(1).getTotalAmount()).isEqualByComparingTo("120.00");
+        assertThat(totals.get(1).getPaymentCount()).isEqualTo(3);
+        then(paymentTotalRepository).should(never()).addToTotal(any(), any(), anyInt(), any(), anyLong());
+    }
+
+    @Test
+    void itShouldWriteOneUpdatePerTotalWhenFlushing() {
+        // Given
+        given(paymentTotalRepository.addToTotal(any(), any(), anyInt(), any(), anyLong())).willReturn(1);
+        underTest.paymentsRecorded(List.of(
+                payment(Currency.GBP, "10.00"),
+                payment(Currency.GBP, "20.00"),
+                payment(Currency.GBP, "30.00")));
+
+        // When
+        int written = underTest.flush();
+
+        // Then
+        assertThat(written).isEqualTo(1);
+        then(paymentTotalRepository).should()
+                .addToTotal(customerId, Currency.GBP, 202001, new BigDecimal("60.00"), 3);
+        then(paymentTotalRepository).should(never()).save(any());
+        assertThat(underTest.flush()).isZero();
+    }
+
+    @Test
+    void itShouldInsertATotalThatDoesNotExistYet() {
+        // Given
+        given(paymentTotalRepository.addToTotal(any(), any(), anyInt(), any(), anyLong())).willReturn(0);
+        underTest.paymentsRecorded(List.of(payment(Currency.USD, "10.00")));
+
+        // When
+        underTest.flush();
+
+        // Then
+        ArgumentCaptor<PaymentTotal> captor = ArgumentCaptor.forClass(PaymentTotal.class);
+        then(paymentTotalRepository).should().save(captor.capture());
+        assertThat(captor.getValue().getId()).isEqualTo(new PaymentTotalId(customerId, Currency.USD, january));
+        assertThat(captor.getValue().getTotalAmount()).isEqualByComparingTo("10.00");
+        assertThat(captor.getValue().getPaymentCount()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldKeepTheTotalsWhenAFlushFails() {
+        // Given
+        given(paymentTotalRepository.addToTotal(any(), any(), anyInt(), any(), anyLong()))
+                .willThrow(new IllegalStateException("Database unavailable"))
+                .willReturn(1);
+        underTest.paymentsRecorded(List.of(payment(Currency.GBP, "10.00")));
+
+        // When
+        int written = underTest.flush();
+
+        // Then still counted, and written by the next flush
+        assertThat(written).isZero();
+        assertThat(underTest.getTotals(customerId, january))
+                .extracting(PaymentTotalSummary::getPaymentCount)
+                .containsExactly(1L);
+        assertThat(underTest.flush()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldOnlyCountPaymentsOnceTheirTransactionCommits() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            underTest.paymentsRecorded(List.of(payment(Currency.GBP, "10.00")));
+            assertThat(underTest.getTotals(customerId, january)).isEmpty();
+
+            // When
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Then
+        assertThat(underTest.getTotals(customerId, january))
+                .extracting(PaymentTotalSummary::getTotalAmount)
+                .containsExactly(new BigDecimal("10.00"));
+    }
+
+    private Payment payment(Currency currency, String amount) {
+        return new Payment(null, customerId, new BigDecimal(amount), currency, "card123", "Donation");
+    }
+}
@@ -0,0 +1,78 @@
+package com.amigoscode.testing.payment.ledger;
+
+import com.amigoscode.testing.payment.Currency;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(
+        properties = {
+                "spring.jpa.properties.javax.persistence.validation.mode=none"
+        }
+)
+class PaymentTotalRepositoryTest {
+
+    private final YearMonth january = YearMonth.of(2020, 1);
+
+    @Autowired
+    private PaymentTotalRepository underTest;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Test
+    void itShouldAddToAnExistingTotal() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        PaymentTotalId id = new PaymentTotalId(customerId, Currency.GBP, january);
+        underTest.save(new PaymentTotal(id, new BigDecimal("100.00"), 1));
+        testEntityManager.flush();
+
+        // When
+        int updated = underTest.addToTotal(customerId, Currency.GBP, 202001, new BigDecimal("25.50"), 2);
+
+        // Then
+        testEntityManager.clear();
+        assertThat(updated).isEqualTo(1);
+        assertThat(underTest.findById(id)).isPresent().hasValueSatisfying(total -> {
+            assertThat(total.getTotalAmount()).isEqualByComparingTo("125.50");
+            assertThat(total.getPaymentCount()).isEqualTo(3);
+        });
+    }
+
+    @Test
+    void itShouldNotAddToATotalThatDoesNotExist() {
+        // When
+        int updated = underTest.addToTotal(UUID.randomUUID(), Currency.GBP, 202001, new BigDecimal("25.50"), 1);
+
+        // Then
+        assertThat(updated).isZero();
+    }
+
+    @Test
+    void itShouldSelectTheTotalsOfOneMonth() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        underTest.saveAll(List.of(
+                new PaymentTotal(new PaymentTotalId(customerId, Currency.GBP, january), new BigDecimal("10.00"), 1),
+                new PaymentTotal(new PaymentTotalId(customerId, Currency.USD, january), new BigDecimal("20.00"), 2),
+                new PaymentTotal(new PaymentTotalId(customerId, Currency.GBP, january.plusMonths(1)), new BigDecimal("30.00"), 3),
+                new PaymentTotal(new PaymentTotalId(UUID.randomUUID(), Currency.GBP, january), new BigDecimal("40.00"), 4)));
+
+        // When
+        List<PaymentTotal> totals = underTest.selectTotals(customerId, 202001);
+
+        // Then
+        assertThat(totals)
+                .extracting(PaymentTotal::getCurrency)
+                .containsExactlyInAnyOrder(Currency.GBP, Currency.USD);
+    }
+}
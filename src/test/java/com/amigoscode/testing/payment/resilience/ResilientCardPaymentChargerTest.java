@@ -0,0 +1,328 @@
+package com.amigoscode.testing.payment.resilience;
+
+import com.amigoscode.testing.payment.BatchCardPaymentCharger;
+import com.amigoscode.testing.payment.CardPaymentCharge;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.stripe.MockStripeService;
+import com.amigoscode.testing.payment.stripe.StripeApi;
+import com.amigoscode.testing.payment.stripe.StripeChargeRequest;
+import com.amigoscode.testing.payment.stripe.StripeService;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.stripe.net.RequestOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResilientCardPaymentChargerTest {
+
+    private final BigDecimal amount = new BigDecimal("10.00");
+
+    private LatencyInjectingStripeApi stripeApi;
+    private MutableClock clock;
+    private ExecutorService callExecutor;
+
+    @BeforeEach
+    void setUp() {
+        stripeApi = new LatencyInjectingStripeApi();
+        clock = new MutableClock();
+        callExecutor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripeApi.release();
+        callExecutor.shutdownNow();
+    }
+
+    @Test
+    void itShouldChargeCardThroughTheDelegate() {
+        // Given
+        ResilientCardPaymentCharger underTest = underTest(new Bulkhead(10, Duration.ZERO), Duration.ofSeconds(1));
+
+        // When
+        CardPaymentCharge charge = underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat");
+
+        // Then
+        assertThat(charge.isCardDebited()).isTrue();
+        assertThat(underTest.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(underTest.getConcurrencyLimit().getInFlight()).isZero();
+        assertThat(underTest.getBulkhead().getAvailable()).isEqualTo(10);
+    }
+
+    @Test
+    void itShouldGiveUpWhenTheProcessorMissesTheDeadline() {
+        // Given
+        ResilientCardPaymentCharger underTest = underTest(new Bulkhead(10, Duration.ZERO), Duration.ofMillis(50));
+        stripeApi.hang();
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat"))
+                .isInstanceOf(PaymentProcessorUnavailableException.class)
+                .hasMessageContaining("did not answer in time");
+        assertThat(underTest.getTimeouts()).isEqualTo(1);
+        assertThat(underTest.getConcurrencyLimit().getInFlight()).isZero();
+        assertThat(underTest.getBulkhead().getAvailable()).isEqualTo(10);
+    }
+
+    @Test
+    void itShouldOpenTheCircuitAndCloseItAfterSuccessfulProbes() {
+        // Given
+        ResilientCardPaymentCharger underTest = underTest(new Bulkhead(10, Duration.ZERO), Duration.ofSeconds(1));
+        stripeApi.fail();
+
+        // A full window of failures
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat"))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Cannot make stripe charge");
+        }
+
+        // When
+        // Then
+        assertThat(underTest.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        int callsBeforeRejection = stripeApi.getCalls();
+        assertThatThrownBy(() -> underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat"))
+                .isInstanceOf(PaymentProcessorUnavailableException.class)
+                .hasMessageContaining("circuit breaker is open");
+        assertThat(stripeApi.getCalls()).isEqualTo(callsBeforeRejection);
+        assertThat(underTest.getCircuitOpenRejections()).isEqualTo(1);
+
+        // The processor recovers and the open period passes
+        stripeApi.succeed();
+        clock.advance(Duration.ofSeconds(11));
+
+        underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat");
+        assertThat(underTest.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat");
+        assertThat(underTest.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void itShouldRejectWhenTheBulkheadIsFull() throws Exception {
+        // Given
+        ResilientCardPaymentCharger underTest = underTest(new Bulkhead(1, Duration.ofMillis(10)), Duration.ofSeconds(5));
+        stripeApi.hang();
+
+        // One call holds the only permit
+        CompletableFuture<CardPaymentCharge> first = CompletableFuture.supplyAsync(
+                () -> underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat"));
+        assertThat(stripeApi.awaitCall()).isTrue();
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat"))
+                .isInstanceOf(PaymentProcessorUnavailableException.class)
+                .hasMessageContaining("bulkhead is full");
+        assertThat(underTest.getBulkheadRejections()).isEqualTo(1);
+
+        stripeApi.release();
+        assertThat(first.get(5, TimeUnit.SECONDS).isCardDebited()).isTrue();
+        assertThat(underTest.getBulkhead().getAvailable()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldBackOffTheConcurrencyLimitOnSlowCalls() {
+        // Given
+        AimdConcurrencyLimit limit = new AimdConcurrencyLimit(10, 1, 20, 0.5, Duration.ofMillis(20));
+        ResilientCardPaymentCharger underTest = new ResilientCardPaymentCharger(
+                new StripeService(stripeApi),
+                circuitBreaker(),
+                new Bulkhead(10, Duration.ZERO),
+                limit,
+                Duration.ofSeconds(1),
+                callExecutor);
+        stripeApi.delay(Duration.ofMillis(50));
+
+        // When
+        underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat");
+        underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat");
+
+        // Then
+        assertThat(limit.getLimit()).isEqualTo(2);
+        assertThat(limit.getInFlight()).isZero();
+    }
+
+    @Test
+    void itShouldRaiseTheConcurrencyLimitWhileSaturated() {
+        // Given
+        AimdConcurrencyLimit limit = new AimdConcurrencyLimit(1, 1, 3, 0.5, Duration.ofSeconds(1));
+        ResilientCardPaymentCharger underTest = new ResilientCardPaymentCharger(
+                new StripeService(stripeApi),
+                circuitBreaker(),
+                new Bulkhead(10, Duration.ZERO),
+                limit,
+                Duration.ofSeconds(1),
+                callExecutor);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat");
+        }
+
+        // Then
+        assertThat(limit.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void itShouldChargeABatchAsOneCallThroughABatchDelegate() {
+        // Given
+        ResilientBatchCardPaymentCharger underTest = new ResilientBatchCardPaymentCharger(
+                new MockStripeService(),
+                circuitBreaker(),
+                new Bulkhead(10, Duration.ZERO),
+                new AimdConcurrencyLimit(10, 1, 20, 0.9, Duration.ofSeconds(1)),
+                Duration.ofSeconds(1),
+                callExecutor);
+        Payment payment = new Payment(null, UUID.randomUUID(), amount, Currency.USD, "0x0x0x", "Zakat");
+
+        // When
+        List<CardPaymentCharge> charges = underTest.chargeCards(List.of(payment, payment, payment));
+
+        // Then
+        assertThat(charges).extracting(CardPaymentCharge::isCardDebited).containsExactly(true, true, true);
+        assertThat(underTest.getConcurrencyLimit().getInFlight()).isZero();
+        assertThat(underTest.getBulkhead().getAvailable()).isEqualTo(10);
+    }
+
+    @Test
+    void itShouldKeepTheBatchApiOfTheDelegate() {
+        // Given
+        ResilienceConfiguration configuration = new ResilienceConfiguration();
+
+        // When
+        ResilientCardPaymentCharger batch = configuration.resilientCardPaymentCharger(
+                new MockStripeService(), circuitBreaker(), new Bulkhead(10, Duration.ZERO),
+                new AimdConcurrencyLimit(10, 1, 20, 0.9, Duration.ofSeconds(1)), Duration.ofSeconds(1), callExecutor);
+        ResilientCardPaymentCharger single = configuration.resilientCardPaymentCharger(
+                new StripeService(stripeApi), circuitBreaker(), new Bulkhead(10, Duration.ZERO),
+                new AimdConcurrencyLimit(10, 1, 20, 0.9, Duration.ofSeconds(1)), Duration.ofSeconds(1), callExecutor);
+
+        // Then
+        assertThat(batch).isInstanceOf(BatchCardPaymentCharger.class);
+        assertThat(single).isNotInstanceOf(BatchCardPaymentCharger.class);
+    }
+
+    private ResilientCardPaymentCharger underTest(Bulkhead bulkhead, Duration timeout) {
+        return new ResilientCardPaymentCharger(
+                new StripeService(stripeApi),
+                circuitBreaker(),
+                bulkhead,
+                new AimdConcurrencyLimit(10, 1, 20, 0.9, Duration.ofSeconds(1)),
+                timeout,
+                callExecutor);
+    }
+
+    private CircuitBreaker circuitBreaker() {
+        return new CircuitBreaker(4, 0.5, Duration.ofSeconds(10), 2, clock);
+    }
+
+    // Stands in for the real Stripe API with a configurable delay, hang or failure
+    private static class LatencyInjectingStripeApi extends StripeApi {
+
+        private final CountDownLatch called = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile long delayMillis;
+        private volatile boolean hang;
+        private volatile boolean fail;
+        private volatile int calls;
+
+        // create is overridden, nothing goes to a transport
+        LatencyInjectingStripeApi() {
+            super(null);
+        }
+
+        void delay(Duration delay) {
+            delayMillis = delay.toMillis();
+        }
+
+        void hang() {
+            hang = true;
+        }
+
+        void fail() {
+            fail = true;
+        }
+
+        void succeed() {
+            fail = false;
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        boolean awaitCall() throws InterruptedException {
+            return called.await(5, TimeUnit.SECONDS);
+        }
+
+        int getCalls() {
+            return calls;
+        }
+
+        @Override
+        public Charge create(StripeChargeRequest request, RequestOptions options) throws StripeException {
+            calls++;
+            called.countDown();
+            try {
+                if (hang) {
+                    released.await();
+                } else if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            }
+            if (fail) {
+                throw new IllegalStateException("Cannot make stripe charge");
+            }
+            Charge charge = new Charge();
+            charge.setPaid(true);
+            return charge;
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
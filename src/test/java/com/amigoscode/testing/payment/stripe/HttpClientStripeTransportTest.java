@@ -0,0 +1,274 @@
+package com.amigoscode.testing.payment.stripe;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpClientStripeTransportTest {
+
+    private static final String AUTHORIZATION = "Bearer sk_test";
+    private static final Map<String, String> HEADERS = Map.of("Authorization", AUTHORIZATION);
+
+    private StubStripeServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StubStripeServer();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void itShouldSendTheChargeAndReturnTheAnswer() throws IOException {
+        // Given
+        HttpClientStripeTransport underTest = transport(HttpClient.Version.HTTP_1_1, 1, 10);
+        byte[] body = "amount=1000&currency=gbp&source=tok_visa&leftover".getBytes(StandardCharsets.US_ASCII);
+
+        // When
+        StripeResponse response = underTest.post("/v1/charges",
+                Map.of("Authorization", AUTHORIZATION, "Idempotency-Key", "key-1"), body, 40, null, null);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo("{\"id\":\"ch_1\",\"paid\":true}");
+        assertThat(response.getRequestId()).isEqualTo("req_1");
+
+        StubStripeServer.Request request = server.getLastRequest();
+        assertThat(request.line).isEqualTo("POST /v1/charges HTTP/1.1");
+        assertThat(request.headers).containsEntry("authorization", AUTHORIZATION);
+        assertThat(request.headers).containsEntry("content-type", "application/x-www-form-urlencoded");
+        assertThat(request.headers).containsEntry("idempotency-key", "key-1");
+        assertThat(request.body).isEqualTo("amount=1000&currency=gbp&source=tok_visa");
+    }
+
+    @Test
+    void itShouldReuseOneConnectionForChargesOneAfterAnother() throws IOException {
+        // Given
+        HttpClientStripeTransport underTest = transport(HttpClient.Version.HTTP_1_1, 1, 10);
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            underTest.post("/v1/charges", HEADERS, new byte[]{'a'}, 1, null, null);
+        }
+
+        // Then
+        assertThat(server.getRequests()).isEqualTo(20);
+        assertThat(server.getConnections()).isEqualTo(1);
+        assertThat(underTest.getHttp11Requests()).isEqualTo(20);
+    }
+
+    @Test
+    void itShouldFallBackToHttp11WhenTheServerDoesNotSpeakHttp2() throws IOException {
+        // Given
+        HttpClientStripeTransport underTest = transport(HttpClient.Version.HTTP_2, 1, 10);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            underTest.post("/v1/charges", HEADERS, new byte[]{'a'}, 1, null, null);
+        }
+
+        // Then
+        assertThat(server.getConnections()).isEqualTo(1);
+        assertThat(underTest.getHttp11Requests()).isEqualTo(5);
+        assertThat(underTest.getHttp2Requests()).isZero();
+    }
+
+    @Test
+    void itShouldNotOpenMoreConnectionsThanConcurrentRequests() throws Exception {
+        // Given
+        HttpClientStripeTransport underTest = transport(HttpClient.Version.HTTP_1_1, 1, 4);
+        server.setDelay(Duration.ofMillis(20));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<StripeResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            responses.add(executor.submit(() ->
+                    underTest.post("/v1/charges", HEADERS, new byte[]{'a'}, 1, null, null)));
+        }
+        for (Future<StripeResponse> response : responses) {
+            assertThat(response.get().getStatus()).isEqualTo(200);
+        }
+        executor.shutdown();
+
+        // Then
+        assertThat(server.getRequests()).isEqualTo(40);
+        assertThat(server.getConnections()).isLessThanOrEqualTo(4);
+        assertThat(underTest.getInFlight()).isZero();
+    }
+
+    @Test
+    void itShouldKeepOneClientPerLaneForGood() throws IOException {
+        // Given
+        AtomicInteger clients = new AtomicInteger();
+        HttpClientStripeTransport underTest = new HttpClientStripeTransport(server.getUri(), 2, 10,
+                Duration.ofSeconds(5), () -> {
+                    clients.incrementAndGet();
+                    return HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                });
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            underTest.post("/v1/charges", HEADERS, new byte[]{'a'}, 1, null, null);
+        }
+
+        // Then
+        assertThat(clients).hasValue(2);
+        assertThat(server.getConnections()).isEqualTo(2);
+    }
+
+    private HttpClientStripeTransport transport(HttpClient.Version version, int poolSize, int maxConcurrentRequests) {
+        return new HttpClientStripeTransport(server.getUri(), poolSize, maxConcurrentRequests,
+                Duration.ofSeconds(5),
+                () -> HttpClient.newBuilder().version(version).connectTimeout(Duration.ofSeconds(5)).build());
+    }
+
+    // Speaks just enough HTTP/1.1 keep-alive to answer charges, and counts the connections
+    // it accepts so the test can see which requests reused one
+    private static class StubStripeServer implements AutoCloseable {
+
+        private final ServerSocket serverSocket;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicReference<Request> lastRequest = new AtomicReference<>();
+        private volatile long delayMillis;
+
+        StubStripeServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            executor.submit(this::accept);
+        }
+
+        URI getUri() {
+            return URI.create("http://localhost:" + serverSocket.getLocalPort());
+        }
+
+        int getConnections() {
+            return connections.get();
+        }
+
+        int getRequests() {
+            return requests.get();
+        }
+
+        Request getLastRequest() {
+            return lastRequest.get();
+        }
+
+        void setDelay(Duration delay) {
+            delayMillis = delay.toMillis();
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    sockets.add(socket);
+                    connections.incrementAndGet();
+                    executor.submit(() -> serve(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (socket) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                String line;
+                while ((line = readLine(in)) != null) {
+                    Map<String, String> headers = new LinkedHashMap<>();
+                    String header;
+                    while ((header = readLine(in)) != null && !header.isEmpty()) {
+                        int colon = header.indexOf(':');
+                        headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+                    }
+                    int length = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+                    String body = new String(in.readNBytes(length), StandardCharsets.US_ASCII);
+                    lastRequest.set(new Request(line, headers, body));
+                    requests.incrementAndGet();
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+
+                    byte[] response = "{\"id\":\"ch_1\",\"paid\":true}".getBytes(StandardCharsets.US_ASCII);
+                    out.write(("HTTP/1.1 200 OK\r\n" +
+                            "Content-Type: application/json\r\n" +
+                            "Request-Id: req_1\r\n" +
+                            "Content-Length: " + response.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(response);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Client went away or the server is closing
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    return line.toString();
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.length() == 0 ? null : line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            // The transport keeps its connections open, so close them from this end
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            executor.shutdownNow();
+        }
+
+        private static class Request {
+
+            private final String line;
+            private final Map<String, String> headers;
+            private final String body;
+
+            private Request(String line, Map<String, String> headers, String body) {
+                this.line = line;
+                this.headers = headers;
+                this.body = body;
+            }
+        }
+    }
+}
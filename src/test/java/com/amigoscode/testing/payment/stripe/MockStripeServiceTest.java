@@ -0,0 +1,49 @@
+package com.amigoscode.testing.payment.stripe;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MockStripeServiceTest {
+
+    // Boot's conversion service turns the simulator's PT.. settings into Durations
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withInitializer(context -> context.getBeanFactory()
+                    .setConversionService(ApplicationConversionService.getSharedInstance()))
+            .withUserConfiguration(MockStripeService.class, StripeSimulator.class);
+
+    @Test
+    void itShouldUseTheMockWhenTheSimulatorFlagIsLeftOut() {
+        contextRunner.withPropertyValues("stripe.enabled=false")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(MockStripeService.class);
+                    assertThat(context).doesNotHaveBean(StripeSimulator.class);
+                });
+    }
+
+    @Test
+    void itShouldUseTheMockWhenTheSimulatorIsDisabled() {
+        contextRunner.withPropertyValues("stripe.enabled=false", "stripe.simulator.enabled=false")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(MockStripeService.class);
+                    assertThat(context).doesNotHaveBean(StripeSimulator.class);
+                });
+    }
+
+    @Test
+    void itShouldUseTheSimulatorInsteadOfTheMockWhenEnabled() {
+        contextRunner.withPropertyValues("stripe.enabled=false", "stripe.simulator.enabled=true")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(StripeSimulator.class);
+                    assertThat(context).doesNotHaveBean(MockStripeService.class);
+                });
+    }
+
+    @Test
+    void itShouldNotUseTheMockWhenStripeIsEnabled() {
+        contextRunner.withPropertyValues("stripe.enabled=true")
+                .run(context -> assertThat(context).doesNotHaveBean(MockStripeService.class));
+    }
+}
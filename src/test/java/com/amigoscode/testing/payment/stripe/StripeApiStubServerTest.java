@@ -0,0 +1,178 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.Currency;
+import com.stripe.exception.ApiException;
+import com.stripe.model.Charge;
+import com.stripe.net.RequestOptions;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// StripeApi over a real HttpClientStripeTransport against a stub of Stripe's charges
+// endpoint, to see what actually goes over the wire and how the answers come back
+class StripeApiStubServerTest {
+
+    private final StripeChargeRequest request = new StripeChargeRequest(1000, Currency.GBP, "tok_visa", "Zakat & Sadaqah");
+
+    private final Queue<Answer> answers = new ConcurrentLinkedQueue<>();
+    private final List<Received> received = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> sleeps = new ArrayList<>();
+
+    private HttpServer server;
+    private StripeApi underTest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/charges", this::answer);
+        server.start();
+
+        HttpClientStripeTransport transport = new HttpClientStripeTransport(
+                URI.create("http://localhost:" + server.getAddress().getPort()), 1, 10,
+                Duration.ofSeconds(5),
+                () -> HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build());
+        underTest = new StripeApi(transport, sleeps::add, System::nanoTime);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void itShouldSendTheEncodedChargeWithTheHeadersOfTheOptions() throws Exception {
+        // Given
+        RequestOptions options = RequestOptions.builder()
+                .setApiKey("sk_test")
+                .setStripeAccount("acct_1")
+                .setStripeVersionOverride("2019-12-03")
+                .setIdempotencyKey("key-1")
+                .build();
+        answers.add(new Answer(200, "{\"id\":\"ch_1\",\"paid\":true}", null));
+
+        // When
+        Charge charge = underTest.create(request, options);
+
+        // Then
+        assertThat(charge.getId()).isEqualTo("ch_1");
+        assertThat(charge.getPaid()).isTrue();
+
+        Received charged = received.get(0);
+        assertThat(charged.method).isEqualTo("POST");
+        assertThat(charged.body).isEqualTo("amount=1000&currency=gbp&source=tok_visa&description=Zakat+%26+Sadaqah");
+        assertThat(charged.headers.getFirst("Content-Type")).isEqualTo("application/x-www-form-urlencoded");
+        assertThat(charged.headers.getFirst("Authorization")).isEqualTo("Bearer sk_test");
+        assertThat(charged.headers.getFirst("Stripe-Account")).isEqualTo("acct_1");
+        assertThat(charged.headers.getFirst("Stripe-Version")).isEqualTo("2019-12-03");
+        assertThat(charged.headers.getFirst("Idempotency-Key")).isEqualTo("key-1");
+        assertThat(charged.headers.getFirst("User-Agent")).isEqualTo(StripeApi.USER_AGENT);
+        assertThat(charged.headers.getFirst("X-Stripe-Client-User-Agent")).contains("\"lang\":\"java\"");
+    }
+
+    @Test
+    void itShouldMapAnErrorToAnApiExceptionWithTheRequestId() {
+        // Given
+        RequestOptions options = RequestOptions.builder().setApiKey("sk_test").build();
+        answers.add(new Answer(402, "{\"error\":{\"code\":\"card_declined\",\"type\":\"card_error\"}}", null));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.create(request, options))
+                .isInstanceOf(ApiException.class)
+                .hasMessageContaining("402")
+                .hasMessageContaining("card_declined")
+                .satisfies(e -> {
+                    assertThat(((ApiException) e).getStatusCode()).isEqualTo(402);
+                    assertThat(((ApiException) e).getRequestId()).isEqualTo("req_1");
+                });
+        assertThat(received).hasSize(1);
+    }
+
+    @Test
+    void itShouldRetryAnOverloadedStripeAndTellItHowLongTheLastRequestTook() throws Exception {
+        // Given
+        RequestOptions options = RequestOptions.builder()
+                .setApiKey("sk_test")
+                .setMaxNetworkRetries(1)
+                .build();
+        answers.add(new Answer(503, "{\"error\":{\"type\":\"api_error\"}}", "true"));
+        answers.add(new Answer(200, "{\"id\":\"ch_1\",\"paid\":true}", null));
+
+        // When
+        Charge charge = underTest.create(request, options);
+
+        // Then
+        assertThat(charge.getPaid()).isTrue();
+        assertThat(received).hasSize(2);
+        assertThat(sleeps).hasSize(1);
+
+        String idempotencyKey = received.get(0).headers.getFirst("Idempotency-Key");
+        assertThat(idempotencyKey).isNotNull();
+        assertThat(received.get(1).headers.getFirst("Idempotency-Key")).isEqualTo(idempotencyKey);
+        assertThat(received.get(1).headers.getFirst("X-Stripe-Client-Telemetry"))
+                .contains("\"request_id\":\"req_1\"");
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.US_ASCII);
+        received.add(new Received(exchange.getRequestMethod(), exchange.getRequestHeaders(), body));
+
+        Answer answer = answers.poll();
+        byte[] response = answer.body.getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Request-Id", "req_" + received.size());
+        if (answer.shouldRetry != null) {
+            exchange.getResponseHeaders().add("Stripe-Should-Retry", answer.shouldRetry);
+        }
+        exchange.sendResponseHeaders(answer.status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private static class Answer {
+
+        private final int status;
+        private final String body;
+        private final String shouldRetry;
+
+        private Answer(int status, String body, String shouldRetry) {
+            this.status = status;
+            this.body = body;
+            this.shouldRetry = shouldRetry;
+        }
+    }
+
+    private static class Received {
+
+        private final String method;
+        private final Headers headers;
+        private final String body;
+
+        private Received(String method, Headers headers, String body) {
+            this.method = method;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.Currency;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.stripe.net.RequestOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+class StripeApiTest {
+
+    private final RequestOptions options = RequestOptions.builder()
+            .setApiKey("sk_test")
+            .build();
+
+    private final StripeChargeRequest request = new StripeChargeRequest(1000, Currency.GBP, "tok_visa", "Zakat");
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    @Mock
+    private StripeTransport stripeTransport;
+
+    private StripeApi underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new StripeApi(stripeTransport, sleeps::add, System::nanoTime);
+    }
+
+    @Test
+    void itShouldPostTheEncodedChargeAndReadTheAnswer() throws Exception {
+        // Given
+        given(stripeTransport.post(anyString(), anyMap(), any(), anyInt(), any(), any()))
+                .willReturn(new StripeResponse(200, "{\"id\":\"ch_1\",\"paid\":true}", "req_1"));
+
+        // When
+        Charge charge = underTest.create(request, options);
+
+        // Then
+        assertThat(charge.getPaid()).isTrue();
+
+        ArgumentCaptor<Map<String, String>> headersArgumentCaptor = headersArgumentCaptor();
+        ArgumentCaptor<byte[]> bodyArgumentCaptor = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<Integer> lengthArgumentCaptor = ArgumentCaptor.forClass(Integer.class);
+        then(stripeTransport).should().post(eq("/v1/charges"), headersArgumentCaptor.capture(),
+                bodyArgumentCaptor.capture(), lengthArgumentCaptor.capture(), isNull(), isNull());
+        assertThat(new String(bodyArgumentCaptor.getValue(), 0, lengthArgumentCaptor.getValue(), StandardCharsets.US_ASCII))
+                .isEqualTo("amount=1000&currency=gbp&source=tok_visa&description=Zakat");
+        assertThat(headersArgumentCaptor.getValue())
+                .containsEntry("Authorization", "Bearer sk_test")
+                .containsEntry("Stripe-Version", StripeApi.API_VERSION)
+                .containsEntry("User-Agent", StripeApi.USER_AGENT)
+                .doesNotContainKeys("Stripe-Account", "Idempotency-Key");
+    }
+
+    @Test
+    void itShouldSendTheAccountVersionIdempotencyKeyAndTimeoutsOfTheOptions() throws Exception {
+        // Given
+        RequestOptions connectedAccount = RequestOptions.builder()
+                .setApiKey("sk_test")
+                .setStripeAccount("acct_1")
+                .setStripeVersionOverride("2019-12-03")
+                .setIdempotencyKey("key-1")
+                .setConnectTimeout(2_000)
+                .setReadTimeout(10_000)
+                .build();
+        given(stripeTransport.post(anyString(), anyMap(), any(), anyInt(), any(), any()))
+                .willReturn(new StripeResponse(200, "{\"id\":\"ch_1\",\"paid\":true}", "req_1"));
+
+        // When
+        underTest.create(request, connectedAccount);
+
+        // Then
+        ArgumentCaptor<Map<String, String>> headersArgumentCaptor = headersArgumentCaptor();
+        then(stripeTransport).should().post(eq("/v1/charges"), headersArgumentCaptor.capture(), any(), anyInt(),
+                eq(Duration.ofSeconds(2)), eq(Duration.ofSeconds(10)));
+        assertThat(headersArgumentCaptor.getValue())
+                .containsEntry("Stripe-Account", "acct_1")
+                .containsEntry("Stripe-Version", "2019-12-03")
+                .containsEntry("Idempotency-Key", "key-1");
+    }
+
+    @Test
+    void itShouldRetryWithTheSameIdempotencyKey() throws Exception {
+        // Given
+        RequestOptions retrying = RequestOptions.builder()
+                .setApiKey("sk_test")
+                .setMaxNetworkRetries(2)
+                .build();
+        given(stripeTransport.post(anyString(), anyMap(), any(), anyInt(), any(), any()))
+                .willThrow(new ConnectException("Connection refused"))
+                .willReturn(new StripeResponse(409, "{\"error\":{\"type\":\"idempotency_error\"}}", "req_1"))
+                .willReturn(new StripeResponse(200, "{\"id\":\"ch_1\",\"paid\":true}", "req_2"));
+
+        // When
+        Charge charge = underTest.create(request, retrying);
+
+        // Then
+        assertThat(charge.getPaid()).isTrue();
+        assertThat(sleeps).hasSize(2);
+
+        ArgumentCaptor<Map<String, String>> headersArgumentCaptor = headersArgumentCaptor();
+        then(stripeTransport).should(times(3)).post(anyString(), headersArgumentCaptor.capture(),
+                any(), anyInt(), any(), any());
+        assertThat(headersArgumentCaptor.getAllValues())
+                .extracting(headers -> headers.get("Idempotency-Key"))
+                .doesNotContainNull()
+                .containsOnly(headersArgumentCaptor.getValue().get("Idempotency-Key"));
+    }
+
+    @Test
+    void itShouldNotRetryWhenStripeSaysNotTo() throws Exception {
+        // Given
+        RequestOptions retrying = RequestOptions.builder()
+                .setApiKey("sk_test")
+                .setMaxNetworkRetries(2)
+                .build();
+        given(stripeTransport.post(anyString(), anyMap(), any(), anyInt(), any(), any()))
+                .willReturn(new StripeResponse(500, "{\"error\":{\"type\":\"api_error\"}}", "req_1", false));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.create(request, retrying))
+                .isInstanceOf(ApiException.class)
+                .hasMessageContaining("500");
+        then(stripeTransport).should().post(anyString(), anyMap(), any(), anyInt(), any(), any());
+        assertThat(sleeps).isEmpty();
+    }
+
+    @Test
+    void itShouldThrowWhenStripeAnswersWithAnError() throws Exception {
+        // Given
+        given(stripeTransport.post(anyString(), anyMap(), any(), anyInt(), any(), any()))
+                .willReturn(new StripeResponse(402, "{\"error\":{\"code\":\"card_declined\"}}", "req_2"));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.create(request, options))
+                .isInstanceOf(ApiException.class)
+                .hasMessageContaining("402")
+                .hasMessageContaining("card_declined");
+    }
+
+    @Test
+    void itShouldThrowWhenStripeCannotBeReached() throws Exception {
+        // Given
+        IOException refused = new IOException("Connection refused");
+        given(stripeTransport.post(anyString(), anyMap(), any(), anyInt(), any(), any())).willThrow(refused);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.create(request, options))
+                .isInstanceOf(ApiConnectionException.class)
+                .isInstanceOf(StripeException.class)
+                .hasRootCause(refused);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Map<String, String>> headersArgumentCaptor() {
+        return ArgumentCaptor.forClass(Map.class);
+    }
+}
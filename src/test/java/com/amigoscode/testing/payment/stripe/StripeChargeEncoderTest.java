@@ -0,0 +1,118 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.Currency;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StripeChargeEncoderTest {
+
+    private final StripeChargeEncoder underTest = new StripeChargeEncoder(16);
+
+    @Test
+    void itShouldEncodeTheChargeAsAForm() {
+        // Given
+        StripeChargeRequest request = StripeChargeRequest.of(
+                new BigDecimal("10.00"), Currency.GBP, "tok_visa", "Zakat");
+
+        // When
+        String body = underTest.encode(request).toString();
+
+        // Then
+        assertThat(body).isEqualTo("amount=1000&currency=gbp&source=tok_visa&description=Zakat");
+    }
+
+    @Test
+    void itShouldEscapeSourceAndDescriptionLikeUrlEncoder() {
+        // Given
+        String description = "Caf\u00e9 & cr\u00e8me = 100% \u00a3 \uD83D\uDE42 a+b/c?d~e*f";
+        StripeChargeRequest request = new StripeChargeRequest(1, Currency.EUR, "src 1&2", description);
+
+        // When
+        String body = underTest.encode(request).toString();
+
+        // Then
+        assertThat(body).isEqualTo("amount=1&currency=eur" +
+                "&source=" + URLEncoder.encode("src 1&2", StandardCharsets.UTF_8) +
+                "&description=" + URLEncoder.encode(description, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void itShouldEscapeSupplementaryCharactersWhoseLowBitsLookLikeASurrogate() {
+        // Given U+1D800 and U+1DFFF, whose low 16 bits are 0xD800 and 0xDFFF, next to a lone surrogate
+        String description = "\uD836\uDC00 \uD837\uDFFF \uD800";
+        StripeChargeRequest request = new StripeChargeRequest(1, Currency.EUR, "tok", description);
+
+        // When
+        String body = underTest.encode(request).toString();
+
+        // Then
+        assertThat(body).isEqualTo("amount=1&currency=eur&source=tok" +
+                "&description=" + URLEncoder.encode(description, StandardCharsets.UTF_8));
+        assertThat(body).endsWith("description=%F0%9D%A0%80+%F0%9D%BF%BF+%3F");
+    }
+
+    @Test
+    void itShouldLeaveOutAMissingDescription() {
+        // Given
+        StripeChargeRequest request = new StripeChargeRequest(250, Currency.USD, "tok_visa", null);
+
+        // When
+        String body = underTest.encode(request).toString();
+
+        // Then
+        assertThat(body).isEqualTo("amount=250&currency=usd&source=tok_visa");
+    }
+
+    @Test
+    void itShouldOverwriteTheBufferWithTheNextCharge() {
+        // Given
+        underTest.encode(new StripeChargeRequest(123456789, Currency.GBP, "tok_visa", "A long description"));
+        byte[] buffer = underTest.array();
+
+        // When
+        String body = underTest.encode(new StripeChargeRequest(0, Currency.USD, "tok", null)).toString();
+
+        // Then
+        assertThat(body).isEqualTo("amount=0&currency=usd&source=tok");
+        assertThat(underTest.array()).isSameAs(buffer);
+        assertThat(underTest.length()).isEqualTo(body.length());
+    }
+
+    @Test
+    void itShouldWriteNegativeAndLargeAmounts() {
+        // Given
+        // When
+        String negative = underTest.encode(new StripeChargeRequest(-42, Currency.GBP, "tok", null)).toString();
+        String largest = underTest.encode(new StripeChargeRequest(Long.MAX_VALUE, Currency.GBP, "tok", null)).toString();
+
+        // Then
+        assertThat(negative).startsWith("amount=-42&");
+        assertThat(largest).startsWith("amount=" + Long.MAX_VALUE + "&");
+    }
+
+    @Test
+    void itShouldConvertAmountsToMinorUnits() {
+        // Given
+        // When
+        // Then
+        assertThat(StripeChargeRequest.toMinorUnits(new BigDecimal("10.00"), Currency.USD)).isEqualTo(1000L);
+        assertThat(StripeChargeRequest.toMinorUnits(new BigDecimal("0.5"), Currency.EUR)).isEqualTo(50L);
+        assertThat(StripeChargeRequest.toMinorUnits(new BigDecimal("7"), Currency.GBP)).isEqualTo(700L);
+    }
+
+    @Test
+    void itShouldNotConvertFractionsOfAMinorUnit() {
+        // Given
+        // When
+        // Then
+        assertThatThrownBy(() -> StripeChargeRequest.toMinorUnits(new BigDecimal("0.001"), Currency.GBP))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("0.001");
+    }
+}
@@ -12,12 +12,10 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.math.BigDecimal;
-import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.doThrow;
@@ -46,27 +44,26 @@ class StripeServiceTest {
         // Successful charge
         Charge charge = new Charge();
         charge.setPaid(true);
-        given(stripeApi.create(anyMap(), any())).willReturn(charge);
+        charge.setId("ch_123");
+        given(stripeApi.create(any(), any())).willReturn(charge);
 
         // When
         CardPaymentCharge cardPaymentCharge = underTest.chargeCard(cardSource, amount, currency, description);
 
         // Then
-        ArgumentCaptor<Map<String, Object>> mapArgumentCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<StripeChargeRequest> requestArgumentCaptor = ArgumentCaptor.forClass(StripeChargeRequest.class);
         ArgumentCaptor<RequestOptions> optionsArgumentCaptor = ArgumentCaptor.forClass(RequestOptions.class);
 
-        // Captor requestMap and options
-        then(stripeApi).should().create(mapArgumentCaptor.capture(), optionsArgumentCaptor.capture());
+        // Captor request and options
+        then(stripeApi).should().create(requestArgumentCaptor.capture(), optionsArgumentCaptor.capture());
 
-        // Assert on requestMap
-        Map<String, Object> requestMap = mapArgumentCaptor.getValue();
+        // Assert on request, the amount is in cents
+        StripeChargeRequest request = requestArgumentCaptor.getValue();
 
-        assertThat(requestMap.keySet()).hasSize(4);
-
-        assertThat(requestMap.get("amount")).isEqualTo(amount);
-        assertThat(requestMap.get("currency")).isEqualTo(currency);
-        assertThat(requestMap.get("source")).isEqualTo(cardSource);
-        assertThat(requestMap.get("description")).isEqualTo(description);
+        assertThat(request.getAmount()).isEqualTo(1000L);
+        assertThat(request.getCurrency()).isEqualTo(currency);
+        assertThat(request.getSource()).isEqualTo(cardSource);
+        assertThat(request.getDescription()).isEqualTo(description);
 
         // Assert on options
         RequestOptions options = optionsArgumentCaptor.getValue();
@@ -76,6 +73,7 @@ class StripeServiceTest {
         // card is debited successfully
         assertThat(cardPaymentCharge).isNotNull();
         assertThat(cardPaymentCharge.isCardDebited()).isTrue();
+        assertThat(cardPaymentCharge.getChargeId()).isEqualTo("ch_123");
     }
 
     @Test
@@ -88,7 +86,7 @@ class StripeServiceTest {
 
         // Throw exception when stripe api is called
         StripeException stripeException = mock(StripeException.class);
-        doThrow(stripeException).when(stripeApi).create(anyMap(), any());
+        doThrow(stripeException).when(stripeApi).create(any(), any());
 
         // When
         // Then
@@ -98,4 +96,17 @@ class StripeServiceTest {
                 .hasMessageContaining("Cannot make stripe charge");
     }
 
-}
\ No newline at end of file
+    @Test
+    void itShouldNotChargeAFractionOfACent() {
+        // Given
+        BigDecimal amount = new BigDecimal("10.001");
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCard("0x0x0x", amount, Currency.USD, "Zakat"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("10.001");
+        then(stripeApi).shouldHaveNoInteractions();
+    }
+
+}
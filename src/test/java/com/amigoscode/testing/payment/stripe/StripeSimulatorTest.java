@@ -0,0 +1,239 @@
+package com.amigoscode.testing.payment.stripe;
+
+import com.amigoscode.testing.payment.CardPaymentCharge;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class StripeSimulatorTest {
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    @Test
+    void itShouldWaitForTheLatencyAndDebit() {
+        // Given
+        StripeSimulator underTest = new StripeSimulator(
+                LatencyModel.fixed(Duration.ofMillis(50)), 0, 0, 0, Duration.ofSeconds(30), 42, sleeps::add);
+
+        // When
+        CardPaymentCharge charge = charge(underTest);
+
+        // Then
+        assertThat(charge.isCardDebited()).isTrue();
+        assertThat(sleeps).containsExactly(Duration.ofMillis(50).toNanos());
+    }
+
+    @Test
+    void itShouldRepeatTheSameLatenciesAndOutcomesForTheSameSeed() {
+        // Given
+        StripeSimulator first = new StripeSimulator(
+                LatencyModel.lognormal(Duration.ofMillis(50), 0.5), 0.3, 0.1, 0, Duration.ofSeconds(30), 7, sleeps::add);
+        List<Long> otherSleeps = new ArrayList<>();
+        StripeSimulator second = new StripeSimulator(
+                LatencyModel.lognormal(Duration.ofMillis(50), 0.5), 0.3, 0.1, 0, Duration.ofSeconds(30), 7, otherSleeps::add);
+
+        // When
+        List<String> firstOutcomes = outcomes(first, 100);
+        List<String> secondOutcomes = outcomes(second, 100);
+
+        // Then
+        assertThat(firstOutcomes).isEqualTo(secondOutcomes);
+        assertThat(sleeps).isEqualTo(otherSleeps);
+        assertThat(firstOutcomes).contains("paid", "declined", "error");
+    }
+
+    @Test
+    void itShouldNotShareDrawsBetweenConsecutiveCalls() {
+        // Given
+        StripeSimulator underTest = new StripeSimulator(
+                LatencyModel.fixed(Duration.ZERO), 0, 0, 0, Duration.ofSeconds(30), 7, sleeps::add);
+
+        // When
+        int shared = 0;
+        for (long call = 1; call < 1_000; call++) {
+            SplittableRandom previous = underTest.randomFor(call - 1);
+            previous.nextLong();
+            if (previous.nextLong() == underTest.randomFor(call).nextLong()) {
+                shared++;
+            }
+        }
+
+        // Then
+        assertThat(shared).isZero();
+    }
+
+    @Test
+    void itShouldDeclineAtTheConfiguredRate() {
+        // Given
+        StripeSimulator underTest = new StripeSimulator(
+                LatencyModel.fixed(Duration.ZERO), 0.2, 0, 0, Duration.ofSeconds(30), 42, sleeps::add);
+
+        // When
+        long declined = outcomes(underTest, 10_000).stream().filter("declined"::equals).count();
+
+        // Then
+        assertThat(declined / 10_000.0).isCloseTo(0.2, within(0.02));
+        assertThat(underTest.getDeclines()).isEqualTo(declined);
+        assertThat(underTest.getCalls()).isEqualTo(10_000);
+    }
+
+    @Test
+    void itShouldHangUntilTheTimeoutAndThenFail() {
+        // Given
+        StripeSimulator underTest = new StripeSimulator(
+                LatencyModel.fixed(Duration.ofMillis(50)), 0, 0, 1, Duration.ofSeconds(30), 42, sleeps::add);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> charge(underTest))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("timed out");
+        assertThat(sleeps).containsExactly(Duration.ofSeconds(30).toNanos());
+        assertThat(underTest.getTimeouts()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldChargeABatchInOneRoundTripWithTheDeclinesOfSingleCharges() {
+        // Given
+        StripeSimulator underTest = new StripeSimulator(
+                LatencyModel.fixed(Duration.ofMillis(50)), 0.5, 0, 0, Duration.ofSeconds(30), 7, sleeps::add);
+        StripeSimulator oneByOne = new StripeSimulator(
+                LatencyModel.fixed(Duration.ofMillis(50)), 0.5, 0, 0, Duration.ofSeconds(30), 7, nanos -> { });
+        List<Payment> payments = Collections.nCopies(20,
+                new Payment(null, UUID.randomUUID(), new BigDecimal("10.00"), Currency.GBP, "card123", "Simulated"));
+
+        // When
+        List<CardPaymentCharge> charges = underTest.chargeCards(payments);
+
+        // Then
+        assertThat(sleeps).containsExactly(Duration.ofMillis(50).toNanos());
+        assertThat(charges).extracting(charge -> charge.isCardDebited() ? "paid" : "declined")
+                .isEqualTo(outcomes(oneByOne, 20));
+        assertThat(underTest.getCalls()).isEqualTo(20);
+        assertThat(underTest.getDeclines()).isEqualTo(oneByOne.getDeclines()).isPositive();
+    }
+
+    @Test
+    void itShouldFailTheWholeBatchWhenOneChargeErrors() {
+        // Given
+        StripeSimulator underTest = new StripeSimulator(
+                LatencyModel.fixed(Duration.ofMillis(50)), 0, 1, 0, Duration.ofSeconds(30), 7, sleeps::add);
+        Payment payment = new Payment(null, UUID.randomUUID(), new BigDecimal("10.00"), Currency.GBP, "card123", "Simulated");
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.chargeCards(List.of(payment, payment)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("simulated processor error");
+        assertThat(underTest.getErrors()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldFailWhenInterrupted() {
+        // Given
+        StripeSimulator underTest = new StripeSimulator(
+                LatencyModel.fixed(Duration.ofMillis(50)), 0, 0, 0, Duration.ofSeconds(30), 42,
+                nanos -> {
+                    throw new InterruptedException();
+                });
+
+        // When
+        // Then
+        try {
+            assertThatThrownBy(() -> charge(underTest))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Interrupted");
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void itShouldNotAcceptRatesAddingUpToMoreThanOne() {
+        // Given
+        // When
+        // Then
+        assertThatThrownBy(() -> new StripeSimulator(
+                LatencyModel.fixed(Duration.ZERO), 0.5, 0.3, 0.3, Duration.ofSeconds(30), 42, sleeps::add))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void itShouldDrawLognormalLatenciesAroundTheMedian() {
+        // Given
+        LatencyModel underTest = LatencyModel.lognormal(Duration.ofMillis(50), 0.5);
+        SplittableRandom random = new SplittableRandom(42);
+
+        // When
+        long[] latencies = new long[10_001];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = underTest.nextNanos(random);
+        }
+        Arrays.sort(latencies);
+
+        // Then
+        assertThat(latencies[5_000] / 1e6).isCloseTo(50, within(2.5));
+        // p99 of a lognormal is median * e^(2.326 * sigma)
+        assertThat(latencies[9_900] / 1e6).isCloseTo(50 * Math.exp(2.326 * 0.5), within(15.0));
+    }
+
+    @Test
+    void itShouldSpikeAtTheConfiguredProbability() {
+        // Given
+        LatencyModel underTest = LatencyModel.of(
+                "bimodal", Duration.ofMillis(50), 0, Duration.ofSeconds(1), 0.05);
+        SplittableRandom random = new SplittableRandom(42);
+
+        // When
+        int spikes = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (underTest.nextNanos(random) == Duration.ofSeconds(1).toNanos()) {
+                spikes++;
+            }
+        }
+
+        // Then
+        assertThat(spikes / 10_000.0).isCloseTo(0.05, within(0.01));
+    }
+
+    @Test
+    void itShouldNotAcceptAnUnknownLatencyModel() {
+        // Given
+        // When
+        // Then
+        assertThatThrownBy(() -> LatencyModel.of(
+                "gaussian", Duration.ofMillis(50), 0.5, Duration.ofSeconds(1), 0.01))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("gaussian");
+    }
+
+    private static CardPaymentCharge charge(StripeSimulator simulator) {
+        return simulator.chargeCard("card123", new BigDecimal("10.00"), Currency.GBP, "Simulated");
+    }
+
+    private static List<String> outcomes(StripeSimulator simulator, int calls) {
+        List<String> outcomes = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            try {
+                outcomes.add(charge(simulator).isCardDebited() ? "paid" : "declined");
+            } catch (IllegalStateException e) {
+                outcomes.add("error");
+            }
+        }
+        return outcomes;
+    }
+}
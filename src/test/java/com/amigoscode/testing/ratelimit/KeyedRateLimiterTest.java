@@ -0,0 +1,115 @@
+package com.amigoscode.testing.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void itShouldDropIdleBucketsToMakeRoom() {
+        // Given buckets that refill within a second
+        KeyedRateLimiter<Integer> underTest = new KeyedRateLimiter<>(new RateLimit(10, 10), 160, now::get);
+        for (int key = 0; key < 160; key++) {
+            underTest.tryAcquire(key);
+        }
+
+        // When they are full again and new keys arrive
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        for (int key = 160; key < 320; key++) {
+            underTest.tryAcquire(key);
+        }
+
+        // Then
+        assertThat(underTest.size()).isLessThanOrEqualTo(160);
+    }
+
+    @Test
+    void itShouldStayWithinMaxKeysWhenEveryBucketIsInUse() {
+        // Given
+        KeyedRateLimiter<Integer> underTest = new KeyedRateLimiter<>(new RateLimit(1, 10), 160, now::get);
+
+        // When
+        for (int key = 0; key < 10_000; key++) {
+            underTest.tryAcquire(key);
+        }
+
+        // Then
+        assertThat(underTest.size()).isLessThanOrEqualTo(160);
+    }
+
+    @Test
+    void itShouldKeepTheBucketOfAKnownKey() {
+        // Given
+        KeyedRateLimiter<String> underTest = new KeyedRateLimiter<>(new RateLimit(1, 1), 160, now::get);
+
+        // When
+        long first = underTest.tryAcquire("key");
+        long second = underTest.tryAcquire("key");
+
+        // Then
+        assertThat(first).isZero();
+        assertThat(second).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void itShouldTurnAwayNewKeysRatherThanDropBucketsInUse() {
+        // Given a single bucket per stripe, and keys 0 and 16 in the same stripe
+        KeyedRateLimiter<Integer> underTest = new KeyedRateLimiter<>(new RateLimit(1, 10), 16, now::get);
+        underTest.tryAcquire(0);
+
+        // When
+        long wait = underTest.tryAcquire(16);
+
+        // Then it can come in once the bucket of key 0 is full again
+        assertThat(wait).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(underTest.size()).isEqualTo(1);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(underTest.tryAcquire(16)).isZero();
+        assertThat(underTest.size()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldSweepAFullStripeOnlyOnceEnoughOfItWouldBeIdle() {
+        // Given sixteen buckets per stripe, filling stripe 0 one millisecond apart
+        KeyedRateLimiter<Integer> underTest = new KeyedRateLimiter<>(new RateLimit(1, 10), 256, now::get);
+        for (int i = 0; i < 16; i++) {
+            now.set(TimeUnit.MILLISECONDS.toNanos(i));
+            underTest.tryAcquire(i * 16);
+        }
+
+        // When the first bucket is idle a sweep drops it, and waits for two more
+        now.set(TimeUnit.MILLISECONDS.toNanos(1000));
+        long first = underTest.tryAcquire(16 * 16);
+        now.set(TimeUnit.MILLISECONDS.toNanos(1001));
+        long second = underTest.tryAcquire(17 * 16);
+
+        // Then
+        assertThat(first).isZero();
+        assertThat(second).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(1002));
+        assertThat(underTest.tryAcquire(17 * 16)).isZero();
+        assertThat(underTest.tryAcquire(18 * 16)).isZero();
+        assertThat(underTest.size()).isEqualTo(16);
+    }
+
+    @Test
+    void itShouldGiveBackAToken() {
+        // Given
+        KeyedRateLimiter<String> underTest = new KeyedRateLimiter<>(new RateLimit(1, 1), 160, now::get);
+        underTest.tryAcquire("key");
+
+        // When
+        underTest.release("key");
+
+        // Then
+        assertThat(underTest.tryAcquire("key")).isZero();
+    }
+}
@@ -0,0 +1,172 @@
+package com.amigoscode.testing.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(123_456_789L);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RateLimiter underTest;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = rateLimiter(true);
+    }
+
+    @Test
+    void itShouldLetABurstThroughAndThenAskToRetryLater() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        underTest.acquireForCustomer(customerId);
+        underTest.acquireForCustomer(customerId);
+
+        // When
+        // Then one token a second, so the next one is a second away
+        assertThatThrownBy(() -> underTest.acquireForCustomer(customerId))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessageContaining("Too many requests for customer " + customerId)
+                .satisfies(e -> assertThat(((RateLimitExceededException) e).getRetryAfter())
+                        .isEqualTo(Duration.ofSeconds(1)));
+        assertThat(meterRegistry.get("rate.limit.rejections").tag("scope", "customer").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void itShouldRefillOverTime() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        underTest.acquireForCustomer(customerId);
+        underTest.acquireForCustomer(customerId);
+
+        // When
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // Then
+        underTest.acquireForCustomer(customerId);
+        assertThatThrownBy(() -> underTest.acquireForCustomer(customerId))
+                .isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void itShouldLimitEveryCustomerOnItsOwn() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        underTest.acquireForCustomer(customerId);
+        underTest.acquireForCustomer(customerId);
+
+        // When
+        // Then
+        underTest.acquireForCustomer(UUID.randomUUID());
+    }
+
+    @Test
+    void itShouldApplyTheGlobalLimitToEveryone() {
+        // Given
+        underTest.acquireForCustomer(UUID.randomUUID());
+        underTest.acquireForPhoneNumber("+447000000000");
+        underTest.acquireForCustomer(UUID.randomUUID());
+        underTest.acquireForPhoneNumber("+447000000001");
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.acquireForCustomer(UUID.randomUUID()))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessage("Too many requests");
+        assertThat(meterRegistry.get("rate.limit.rejections").tag("scope", "global").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void itShouldTakeOneTokenPerPhoneNumberInABatch() {
+        // Given
+        underTest.acquireForPhoneNumbers(List.of("+447000000000", "+447000000000", "+447000000001"));
+
+        // When
+        // Then the burst of one for a phone number is used up
+        assertThatThrownBy(() -> underTest.acquireForPhoneNumber("+447000000000"))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessageContaining("Too many requests for phone number [+447000000000]");
+    }
+
+    @Test
+    void itShouldTakeOneGlobalTokenPerPaymentInABatch() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        underTest.acquireForCustomers(List.of(customerId, customerId, customerId, customerId));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.acquireForCustomer(UUID.randomUUID()))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessage("Too many requests");
+    }
+
+    @Test
+    void itShouldGiveBackTheCustomerTokensOfARejectedBatch() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        UUID limitedCustomerId = UUID.randomUUID();
+        underTest.acquireForCustomer(limitedCustomerId);
+        underTest.acquireForCustomer(limitedCustomerId);
+
+        // When
+        assertThatThrownBy(() -> underTest.acquireForCustomers(List.of(customerId, limitedCustomerId)))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessageContaining("Too many requests for customer " + limitedCustomerId);
+
+        // Then both of its tokens are still there
+        underTest.acquireForCustomer(customerId);
+        underTest.acquireForCustomer(customerId);
+    }
+
+    @Test
+    void itShouldGiveBackThePhoneNumberTokensWhenTheGlobalLimitRejects() {
+        // Given
+        underTest.acquireForCustomer(UUID.randomUUID());
+        underTest.acquireForCustomer(UUID.randomUUID());
+
+        // When
+        assertThatThrownBy(() -> underTest.acquireForPhoneNumbers(
+                List.of("+447000000000", "+447000000001", "+447000000002")))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessage("Too many requests");
+
+        // Then
+        underTest.acquireForPhoneNumber("+447000000000");
+    }
+
+    @Test
+    void itShouldNotLimitWhenDisabled() {
+        // Given
+        RateLimiter disabled = rateLimiter(false);
+        UUID customerId = UUID.randomUUID();
+
+        // When
+        // Then
+        for (int i = 0; i < 10; i++) {
+            disabled.acquireForCustomer(customerId);
+        }
+    }
+
+    private RateLimiter rateLimiter(boolean enabled) {
+        return new RateLimiter(enabled,
+                new RateLimit(1, 4),
+                new RateLimit(1, 2),
+                new RateLimit(1, 1),
+                100, meterRegistry, now::get);
+    }
+}
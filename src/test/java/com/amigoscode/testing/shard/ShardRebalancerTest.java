@@ -0,0 +1,146 @@
+package com.amigoscode.testing.shard;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Customers are spread over two local H2 shards, then a third shard is added
+class ShardRebalancerTest {
+
+    private static final int CUSTOMERS = 200;
+
+    private List<DataSource> shards;
+    private List<UUID> customerIds;
+
+    @BeforeEach
+    void setUp() {
+        shards = List.of(database("shard0"), database("shard1"), database("shard2"));
+        customerIds = new ArrayList<>();
+
+        ShardRing twoShards = ShardRing.ofSize(2);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            UUID customerId = UUID.randomUUID();
+            String phoneNumber = "+4470000" + String.format("%05d", i);
+            customerIds.add(customerId);
+
+            JdbcTemplate customerShard = new JdbcTemplate(shards.get(twoShards.shardFor(customerId)));
+            customerShard.update("insert into customer values (?, ?, ?)", customerId, "Ramona", phoneNumber);
+            customerShard.update("insert into payment values (?, ?, 10.00)", 2L * i, customerId);
+            customerShard.update("insert into payment values (?, ?, 20.00)", 2L * i + 1, customerId);
+            customerShard.update("insert into sms_outbox_message values (?, ?, 'Payment received')", (long) i, customerId);
+            customerShard.update("insert into payment_total values (?, 1, 202001, 30.00, 2)", customerId);
+            customerShard.update("insert into payment_total values (?, 0, 202001, 5.00, 1)", customerId);
+
+            new JdbcTemplate(shards.get(twoShards.shardFor(phoneNumber)))
+                    .update("insert into phone_number_claim values (?, ?)", phoneNumber, customerId);
+        }
+    }
+
+    @Test
+    void itShouldMoveCustomersWithTheirPaymentsOntoTheAddedShard() {
+        // Given
+        ShardRing threeShards = ShardRing.ofSize(3);
+        ShardRebalancer underTest = new ShardRebalancer(shards, threeShards);
+
+        // When
+        ShardRebalanceResult result = underTest.rebalance();
+
+        // Then
+        assertThat(result.getCustomers()).isPositive();
+        assertThat(result.getPayments()).isEqualTo(2 * result.getCustomers());
+        assertThat(result.getSmsOutboxMessages()).isEqualTo(result.getCustomers());
+        assertThat(result.getPhoneNumberClaims()).isPositive();
+        assertThat(count(shards.get(2), "customer")).isEqualTo(result.getCustomers());
+
+        for (UUID customerId : customerIds) {
+            JdbcTemplate shard = new JdbcTemplate(shards.get(threeShards.shardFor(customerId)));
+            assertThat(shard.queryForObject(
+                    "select count(*) from customer where id = ?", Integer.class, customerId)).isEqualTo(1);
+            assertThat(shard.queryForObject(
+                    "select count(*) from payment where customer_id = ?", Integer.class, customerId)).isEqualTo(2);
+            assertThat(shard.queryForObject(
+                    "select count(*) from sms_outbox_message where customer_id = ?", Integer.class, customerId)).isEqualTo(1);
+            assertThat(shard.queryForObject(
+                    "select count(*) from payment_total where customer_id = ?", Integer.class, customerId)).isEqualTo(2);
+        }
+        for (int shard = 0; shard < 3; shard++) {
+            for (String phoneNumber : new JdbcTemplate(shards.get(shard))
+                    .queryForList("select phone_number from phone_number_claim", String.class)) {
+                assertThat(threeShards.shardFor(phoneNumber)).isEqualTo(shard);
+            }
+        }
+        assertThat(total("customer")).isEqualTo(CUSTOMERS);
+        assertThat(total("payment")).isEqualTo(2 * CUSTOMERS);
+        assertThat(total("payment_total")).isEqualTo(2 * CUSTOMERS);
+        assertThat(total("phone_number_claim")).isEqualTo(CUSTOMERS);
+    }
+
+    @Test
+    void itShouldFinishARebalanceThatStoppedHalfWay() {
+        // Given a customer that was copied to its new shard but not yet deleted from the old one
+        ShardRing threeShards = ShardRing.ofSize(3);
+        UUID customerId = customerIds.stream()
+                .filter(id -> threeShards.shardFor(id) == 2)
+                .findFirst()
+                .orElseThrow();
+        JdbcTemplate oldShard = new JdbcTemplate(shards.get(ShardRing.ofSize(2).shardFor(customerId)));
+        new JdbcTemplate(shards.get(2)).update("insert into customer values (?, ?, ?)",
+                customerId, "Ramona", oldShard.queryForObject(
+                        "select phone_number from customer where id = ?", String.class, customerId));
+
+        // When
+        new ShardRebalancer(shards, threeShards).rebalance();
+        ShardRebalanceResult again = new ShardRebalancer(shards, threeShards).rebalance();
+
+        // Then
+        assertThat(total("customer")).isEqualTo(CUSTOMERS);
+        assertThat(total("payment")).isEqualTo(2 * CUSTOMERS);
+        assertThat(oldShard.queryForObject(
+                "select count(*) from customer where id = ?", Integer.class, customerId)).isZero();
+        assertThat(again.getCustomers()).isZero();
+        assertThat(again.getPhoneNumberClaims()).isZero();
+    }
+
+    @Test
+    void itShouldNotRebalanceWithARingOfAnotherSize() {
+        // When
+        // Then
+        assertThatThrownBy(() -> new ShardRebalancer(shards, ShardRing.ofSize(2)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Ring has 2 shards but 3 were given");
+    }
+
+    private long total(String table) {
+        return shards.stream().mapToLong(shard -> count(shard, table)).sum();
+    }
+
+    private static long count(DataSource shard, String table) {
+        return new JdbcTemplate(shard).queryForObject("select count(*) from " + table, Long.class);
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table customer (id uuid primary key, name varchar(255), " +
+                "phone_number varchar(255) unique)");
+        jdbcTemplate.execute("create table payment (payment_id bigint primary key, customer_id uuid, " +
+                "amount decimal(19, 2))");
+        jdbcTemplate.execute("create table sms_outbox_message (id bigint primary key, customer_id uuid, " +
+                "text varchar(255))");
+        jdbcTemplate.execute("create table payment_total (customer_id uuid, currency integer, year_month integer, " +
+                "total_amount decimal(19, 2), payment_count bigint, primary key (customer_id, currency, year_month))");
+        jdbcTemplate.execute("create table phone_number_claim (phone_number varchar(255) primary key, " +
+                "customer_id uuid)");
+        return dataSource;
+    }
+}
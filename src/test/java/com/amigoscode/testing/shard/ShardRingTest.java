@@ -0,0 +1,78 @@
+package com.amigoscode.testing.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardRingTest {
+
+    private static final int CUSTOMERS = 100_000;
+
+    @Test
+    void itShouldSpreadCustomersEvenlyOverTheShards() {
+        // Given
+        ShardRing underTest = ShardRing.ofSize(4);
+
+        // When
+        int[] customers = new int[4];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers[underTest.shardFor(UUID.randomUUID())]++;
+        }
+
+        // Then every shard gets its quarter give or take 20%
+        for (int shard = 0; shard < 4; shard++) {
+            assertThat(customers[shard]).isBetween(CUSTOMERS / 4 * 8 / 10, CUSTOMERS / 4 * 12 / 10);
+        }
+    }
+
+    @Test
+    void itShouldOnlyMoveCustomersOntoAnAddedShard() {
+        // Given
+        ShardRing fourShards = ShardRing.ofSize(4);
+        ShardRing fiveShards = ShardRing.ofSize(5);
+        List<UUID> customerIds = new ArrayList<>(CUSTOMERS);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customerIds.add(UUID.randomUUID());
+        }
+
+        // When
+        int moved = 0;
+        for (UUID customerId : customerIds) {
+            int before = fourShards.shardFor(customerId);
+            int after = fiveShards.shardFor(customerId);
+            if (before != after) {
+                assertThat(after).isEqualTo(4);
+                moved++;
+            }
+        }
+
+        // Then about a fifth of the customers move
+        assertThat(moved).isBetween(CUSTOMERS / 5 * 7 / 10, CUSTOMERS / 5 * 13 / 10);
+    }
+
+    @Test
+    void itShouldMapTheSameKeyToTheSameShard() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+
+        // When
+        // Then
+        assertThat(ShardRing.ofSize(8).shardFor(customerId)).isEqualTo(ShardRing.ofSize(8).shardFor(customerId));
+        assertThat(ShardRing.ofSize(8).shardFor("+447000000000"))
+                .isEqualTo(ShardRing.ofSize(8).shardFor("+447000000000"));
+    }
+
+    @Test
+    void itShouldNotCreateARingWithoutShards() {
+        // When
+        // Then
+        assertThatThrownBy(() -> ShardRing.ofSize(0))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("at least one shard");
+    }
+}
@@ -0,0 +1,187 @@
+package com.amigoscode.testing.shard;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRegistrationRequest;
+import com.amigoscode.testing.customer.CustomerRegistrationService;
+import com.amigoscode.testing.customer.CustomerRepository;
+import com.amigoscode.testing.payment.Currency;
+import com.amigoscode.testing.payment.Payment;
+import com.amigoscode.testing.payment.PaymentRecorder;
+import com.amigoscode.testing.payment.PaymentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "customer.sharding.enabled=true",
+        "customer.sharding.urls=jdbc:h2:mem:sharding-0,jdbc:h2:mem:sharding-1,jdbc:h2:mem:sharding-2",
+        "sms.outbox.dispatcher.enabled=false"
+})
+class ShardingIntegrationTest {
+
+    @Autowired
+    private CustomerRegistrationService customerRegistrationService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private PaymentRecorder paymentRecorder;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private ShardDataSources shardDataSources;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private PhoneNumberClaimRepository phoneNumberClaimRepository;
+
+    @Test
+    void itShouldKeepCustomersAndTheirPaymentsOnTheCustomersShard() {
+        // Given
+        long[] customersBefore = countPerShard("customer");
+        long[] paymentsBefore = countPerShard("payment");
+        long[] expected = new long[3];
+
+        List<UUID> customerIds = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            UUID customerId = UUID.randomUUID();
+            customerIds.add(customerId);
+            expected[shardRouter.shardFor(customerId)]++;
+            customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(
+                    new Customer(customerId, "Ramona", "+44700000" + String.format("%04d", i))));
+        }
+
+        // When
+        List<Payment> payments = new ArrayList<>();
+        for (UUID customerId : customerIds) {
+            payments.add(payment(customerId));
+        }
+        List<Payment> saved = paymentRecorder.recordAll(payments);
+        Payment single = paymentRecorder.record(payment(customerIds.get(0)));
+
+        // Then
+        long[] customersAfter = countPerShard("customer");
+        long[] paymentsAfter = countPerShard("payment");
+        for (int shard = 0; shard < 3; shard++) {
+            assertThat(customersAfter[shard] - customersBefore[shard]).isEqualTo(expected[shard]);
+            long expectedPayments = expected[shard] + (shardRouter.shardFor(customerIds.get(0)) == shard ? 1 : 0);
+            assertThat(paymentsAfter[shard] - paymentsBefore[shard]).isEqualTo(expectedPayments);
+        }
+
+        // ... payments come back in order and can be found by id from any shard
+        for (int i = 0; i < saved.size(); i++) {
+            assertThat(saved.get(i).getCustomerId()).isEqualTo(customerIds.get(i));
+            assertThat(paymentRepository.findById(saved.get(i).getPaymentId())).isPresent();
+        }
+        assertThat(paymentRepository.findById(single.getPaymentId())).isPresent();
+        assertThat(customerRepository.findById(customerIds.get(7))).isPresent();
+    }
+
+    @Test
+    void itShouldNotLetTwoShardsShareAPhoneNumber() {
+        // Given two customers that live on different shards
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        while (shardRouter.shardFor(second) == shardRouter.shardFor(first)) {
+            second = UUID.randomUUID();
+        }
+        customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(first, "Ramona", "+447111111111")));
+
+        // When
+        // Then
+        assertThat(customerRepository.selectCustomerByPhoneNumber("+447111111111").map(Customer::getId))
+                .contains(first);
+        assertThatThrownBy(() -> customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(UUID.randomUUID(), "Raluca", "+447111111111"))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("phone number [+447111111111] is already taken");
+        Customer sameNumber = new Customer(second, "Raluca", "+447111111111");
+        assertThatThrownBy(() -> customerRepository.save(sameNumber))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(customerRepository.findById(second)).isEmpty();
+    }
+
+    @Test
+    void itShouldNotTakeOverTheClaimOfARegistrationStillInFlight() {
+        // Given a claim whose customer is not saved yet
+        UUID inFlight = UUID.randomUUID();
+        claim("+447222222222", inFlight, Instant.now());
+
+        // When
+        // Then
+        Customer sameNumber = new Customer(UUID.randomUUID(), "Raluca", "+447222222222");
+        assertThatThrownBy(() -> customerRepository.save(sameNumber))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("is being registered by customer " + inFlight);
+        assertThat(findClaim("+447222222222").map(PhoneNumberClaim::getCustomerId)).contains(inFlight);
+    }
+
+    @Test
+    void itShouldTakeOverAnAbandonedClaim() {
+        // Given a claim left behind by a registration that did not go through
+        claim("+447333333333", UUID.randomUUID(), Instant.now().minus(Duration.ofMinutes(5)));
+        UUID customerId = UUID.randomUUID();
+
+        // When
+        customerRepository.save(new Customer(customerId, "Raluca", "+447333333333"));
+
+        // Then
+        assertThat(findClaim("+447333333333").map(PhoneNumberClaim::getCustomerId)).contains(customerId);
+        assertThat(customerRepository.findById(customerId)).isPresent();
+    }
+
+    @Test
+    void itShouldReleaseATakenOverClaimWhenTheCustomerIsNotSaved() {
+        // Given a claim left behind by a registration that did not go through
+        claim("+447444444444", UUID.randomUUID(), Instant.now().minus(Duration.ofMinutes(5)));
+
+        // When a customer that cannot be saved takes it over
+        Customer noName = new Customer(UUID.randomUUID(), null, "+447444444444");
+        assertThatThrownBy(() -> customerRepository.save(noName)).isInstanceOf(RuntimeException.class);
+
+        // Then
+        assertThat(findClaim("+447444444444")).isEmpty();
+    }
+
+    private void claim(String phoneNumber, UUID customerId, Instant claimedAt) {
+        ShardContext.on(shardRouter.shardForPhoneNumber(phoneNumber), () -> phoneNumberClaimRepository.save(
+                new PhoneNumberClaim(phoneNumber, customerId, claimedAt)));
+    }
+
+    private Optional<PhoneNumberClaim> findClaim(String phoneNumber) {
+        return ShardContext.on(shardRouter.shardForPhoneNumber(phoneNumber),
+                () -> phoneNumberClaimRepository.findById(phoneNumber));
+    }
+
+    private long[] countPerShard(String table) {
+        long[] counts = new long[3];
+        for (int shard = 0; shard < 3; shard++) {
+            counts[shard] = new JdbcTemplate(shardDataSources.getShards().get(shard))
+                    .queryForObject("select count(*) from " + table, Long.class);
+        }
+        return counts;
+    }
+
+    private static Payment payment(UUID customerId) {
+        return new Payment(null, customerId, new BigDecimal("10.00"), Currency.GBP, "card123xx", "Donation");
+    }
+}
@@ -0,0 +1,204 @@
+package com.amigoscode.testing.sms;
+
+import com.amigoscode.testing.customer.Customer;
+import com.amigoscode.testing.customer.CustomerRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+
+class SmsOutboxDispatcherTest {
+
+    private final Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+    @Mock
+    private SmsOutboxRepository smsOutboxRepository;
+    @Mock
+    private CustomerRepository customerRepository;
+    @Mock
+    private SmsSender smsSender;
+
+    private SmsOutboxDispatcher underTest;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        underTest = new SmsOutboxDispatcher(smsOutboxRepository, customerRepository, smsSender,
+                10, 3, Duration.ofSeconds(1), Duration.ofSeconds(3), Duration.ofMinutes(5),
+                Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void itShouldSendDueMessages() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        SmsOutboxMessage message = new SmsOutboxMessage(customerId, 1L, "Thank you!", now);
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of(message));
+        given(smsOutboxRepository.claim(any(), any(), any(), any())).willReturn(1);
+        given(customerRepository.findAllById(anyIterable()))
+                .willReturn(List.of(new Customer(customerId, "Ramona", "+447000000000")));
+
+        // When
+        int dispatched = underTest.dispatch();
+
+        // Then
+        assertThat(dispatched).isEqualTo(1);
+        then(smsSender).should().send(new SmsMessage("+447000000000", "Thank you!"));
+        then(smsOutboxRepository).should().saveAll(List.of(message));
+        assertThat(message.getStatus()).isEqualTo(SmsOutboxStatus.SENT);
+        assertThat(message.getSentAt()).isEqualTo(now);
+    }
+
+    @Test
+    void itShouldRetryWithBackoffWhenSendingFails() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        SmsOutboxMessage message = new SmsOutboxMessage(customerId, 1L, "Thank you!", now);
+        message.setAttempts(1);
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of(message));
+        given(smsOutboxRepository.claim(any(), any(), any(), any())).willReturn(1);
+        given(customerRepository.findAllById(anyIterable()))
+                .willReturn(List.of(new Customer(customerId, "Ramona", "+447000000000")));
+        doThrow(new IllegalStateException("Provider unavailable")).when(smsSender).send(any());
+
+        // When
+        underTest.dispatch();
+
+        // Then second attempt, so twice the initial backoff
+        assertThat(message.getStatus()).isEqualTo(SmsOutboxStatus.PENDING);
+        assertThat(message.getAttempts()).isEqualTo(2);
+        assertThat(message.getNextAttemptAt()).isEqualTo(now.plusSeconds(2));
+        assertThat(message.getLastError()).isEqualTo("Provider unavailable");
+        then(smsOutboxRepository).should().saveAll(List.of(message));
+    }
+
+    @Test
+    void itShouldGiveUpAfterTheLastAttempt() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        SmsOutboxMessage message = new SmsOutboxMessage(customerId, 1L, "Thank you!", now);
+        message.setAttempts(2);
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of(message));
+        given(smsOutboxRepository.claim(any(), any(), any(), any())).willReturn(1);
+        given(customerRepository.findAllById(anyIterable()))
+                .willReturn(List.of(new Customer(customerId, "Ramona", "+447000000000")));
+        doThrow(new IllegalStateException("Provider unavailable")).when(smsSender).send(any());
+
+        // When
+        underTest.dispatch();
+
+        // Then
+        assertThat(message.getStatus()).isEqualTo(SmsOutboxStatus.FAILED);
+        assertThat(message.getAttempts()).isEqualTo(3);
+    }
+
+    @Test
+    void itShouldNotSendWhenCustomerIsGone() {
+        // Given
+        SmsOutboxMessage message = new SmsOutboxMessage(UUID.randomUUID(), 1L, "Thank you!", now);
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of(message));
+        given(smsOutboxRepository.claim(any(), any(), any(), any())).willReturn(1);
+        given(customerRepository.findAllById(anyIterable())).willReturn(List.of());
+
+        // When
+        underTest.dispatch();
+
+        // Then
+        then(smsSender).should(never()).send(any());
+        assertThat(message.getStatus()).isEqualTo(SmsOutboxStatus.FAILED);
+    }
+
+    @Test
+    void itShouldClaimTheBatchForTheLeaseBeforeSending() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        SmsOutboxMessage message = new SmsOutboxMessage(customerId, 1L, "Thank you!", now);
+        message.setId(7L);
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of(message));
+        given(smsOutboxRepository.claim(any(), any(), any(), any())).willReturn(1);
+        given(customerRepository.findAllById(anyIterable()))
+                .willReturn(List.of(new Customer(customerId, "Ramona", "+447000000000")));
+
+        // When
+        underTest.dispatch();
+
+        // Then
+        InOrder inOrder = inOrder(smsOutboxRepository, smsSender);
+        inOrder.verify(smsOutboxRepository).claim(eq(List.of(7L)), any(), eq(now), eq(now.plus(Duration.ofMinutes(5))));
+        inOrder.verify(smsSender).send(any());
+        then(smsOutboxRepository).should(never()).selectClaimed(any(), any());
+    }
+
+    @Test
+    void itShouldOnlySendWhatItClaimedWhenAnotherDispatcherTookSome() {
+        // Given two due messages, one of them claimed by another dispatcher first
+        UUID customerId = UUID.randomUUID();
+        SmsOutboxMessage taken = new SmsOutboxMessage(customerId, 1L, "Taken", now);
+        taken.setId(1L);
+        SmsOutboxMessage mine = new SmsOutboxMessage(customerId, 2L, "Mine", now);
+        mine.setId(2L);
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of(taken, mine));
+        given(smsOutboxRepository.claim(any(), any(), any(), any())).willReturn(1);
+        given(smsOutboxRepository.selectClaimed(eq(List.of(1L, 2L)), any())).willReturn(List.of(mine));
+        given(customerRepository.findAllById(anyIterable()))
+                .willReturn(List.of(new Customer(customerId, "Ramona", "+447000000000")));
+
+        // When
+        int dispatched = underTest.dispatch();
+
+        // Then
+        assertThat(dispatched).isEqualTo(1);
+        then(smsSender).should().send(new SmsMessage("+447000000000", "Mine"));
+        then(smsSender).shouldHaveNoMoreInteractions();
+        then(smsOutboxRepository).should().saveAll(List.of(mine));
+    }
+
+    @Test
+    void itShouldSendNothingWhenAnotherDispatcherClaimedTheWholeBatch() {
+        // Given
+        SmsOutboxMessage message = new SmsOutboxMessage(UUID.randomUUID(), 1L, "Thank you!", now);
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of(message));
+        given(smsOutboxRepository.claim(any(), any(), any(), any())).willReturn(0);
+
+        // When
+        int dispatched = underTest.dispatch();
+
+        // Then
+        assertThat(dispatched).isZero();
+        then(customerRepository).shouldHaveNoInteractions();
+        then(smsSender).shouldHaveNoInteractions();
+        then(smsOutboxRepository).should(never()).saveAll(any());
+    }
+
+    @Test
+    void itShouldDoNothingWhenNothingIsDue() {
+        // Given
+        given(smsOutboxRepository.selectDue(any(), any())).willReturn(List.of());
+
+        // When
+        int dispatched = underTest.dispatch();
+
+        // Then
+        assertThat(dispatched).isZero();
+        then(customerRepository).shouldHaveNoInteractions();
+        then(smsSender).shouldHaveNoInteractions();
+    }
+}
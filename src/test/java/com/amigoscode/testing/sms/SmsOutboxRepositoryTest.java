@@ -0,0 +1,100 @@
+package com.amigoscode.testing.sms;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(
+        properties = {
+                "spring.jpa.properties.javax.persistence.validation.mode=none"
+        }
+)
+class SmsOutboxRepositoryTest {
+
+    @Autowired
+    private SmsOutboxRepository underTest;
+
+    @Test
+    void itShouldSelectOnlyPendingMessagesThatAreDue() {
+        // Given
+        Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        SmsOutboxMessage due = new SmsOutboxMessage(UUID.randomUUID(), 1L, "due", now.minusSeconds(1));
+        SmsOutboxMessage later = new SmsOutboxMessage(UUID.randomUUID(), 2L, "later", now);
+        later.setNextAttemptAt(now.plus(Duration.ofMinutes(1)));
+        SmsOutboxMessage sent = new SmsOutboxMessage(UUID.randomUUID(), 3L, "sent", now.minusSeconds(1));
+        sent.setStatus(SmsOutboxStatus.SENT);
+        SmsOutboxMessage alsoDue = new SmsOutboxMessage(UUID.randomUUID(), 4L, "also due", now);
+
+        underTest.saveAll(List.of(due, later, sent, alsoDue));
+
+        // When
+        List<SmsOutboxMessage> selected = underTest.selectDue(now, PageRequest.of(0, 10));
+
+        // Then
+        assertThat(selected)
+                .extracting(SmsOutboxMessage::getText)
+                .containsExactly("due", "also due");
+    }
+
+    @Test
+    void itShouldSelectAtMostOnePage() {
+        // Given
+        Instant now = Instant.parse("2020-01-01T00:00:00Z");
+        for (long i = 0; i < 5; i++) {
+            underTest.save(new SmsOutboxMessage(UUID.randomUUID(), i, "message " + i, now));
+        }
+
+        // When
+        List<SmsOutboxMessage> selected = underTest.selectDue(now, PageRequest.of(0, 2));
+
+        // Then
+        assertThat(selected).hasSize(2);
+    }
+
+    @Test
+    void itShouldLetOnlyOneDispatcherClaimAMessage() {
+        // Given
+        Instant now = Instant.parse("2020-01-01T00:00:00Z");
+        Instant leaseUntil = now.plus(Duration.ofMinutes(5));
+        SmsOutboxMessage first = underTest.save(new SmsOutboxMessage(UUID.randomUUID(), 1L, "first", now));
+        SmsOutboxMessage second = underTest.save(new SmsOutboxMessage(UUID.randomUUID(), 2L, "second", now));
+        UUID mine = UUID.randomUUID();
+        UUID theirs = UUID.randomUUID();
+
+        // When another dispatcher claims the first one, then this one tries both
+        int theirClaim = underTest.claim(List.of(first.getId()), theirs, now, leaseUntil);
+        int myClaim = underTest.claim(List.of(first.getId(), second.getId()), mine, now, leaseUntil);
+
+        // Then
+        assertThat(theirClaim).isEqualTo(1);
+        assertThat(myClaim).isEqualTo(1);
+        assertThat(underTest.selectClaimed(List.of(first.getId(), second.getId()), mine))
+                .extracting(SmsOutboxMessage::getText)
+                .containsExactly("second");
+        assertThat(underTest.selectDue(now, PageRequest.of(0, 10))).isEmpty();
+    }
+
+    @Test
+    void itShouldMakeAMessageDueAgainOnceItsLeaseIsOver() {
+        // Given
+        Instant now = Instant.parse("2020-01-01T00:00:00Z");
+        Instant leaseUntil = now.plus(Duration.ofMinutes(5));
+        SmsOutboxMessage message = underTest.save(new SmsOutboxMessage(UUID.randomUUID(), 1L, "message", now));
+        underTest.claim(List.of(message.getId()), UUID.randomUUID(), now, leaseUntil);
+
+        // When
+        List<SmsOutboxMessage> due = underTest.selectDue(leaseUntil, PageRequest.of(0, 10));
+
+        // Then
+        assertThat(due).extracting(SmsOutboxMessage::getText).containsExactly("message");
+    }
+}
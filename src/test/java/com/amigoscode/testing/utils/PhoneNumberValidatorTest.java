@@ -32,6 +32,58 @@ class PhoneNumberValidatorTest {
 
     }
 
+    @ParameterizedTest
+    @CsvSource({"+447000000000,+447000000000",
+            "+44 7000 000000,+447000000000",
+            "0044 7000-000000,+447000000000",
+            "07000 000000,+447000000000",
+            "(020) 7946 0000,",
+            "0207 946 0000,+442079460000",
+            "+1 (202) 555-0100,+12025550100",
+            "+1 (102) 555-0100,",
+            "+40 712 345 678,+40712345678",
+            "+44 7000 00000a,",
+            "+440000000000,",
+            "'',"})
+    void itShouldNormalizePhoneNumber(String phoneNumber, String expected) {
+        // When
+        String normalized = underTest.normalize(phoneNumber);
+
+        // Then
+        assertThat(normalized).isEqualTo(expected);
+    }
+
+    @Test
+    void itShouldRejectNull() {
+        // When
+        // Then
+        assertThat(underTest.test(null)).isFalse();
+        assertThat(underTest.normalize(null)).isNull();
+    }
+
+    @Test
+    void itShouldReturnTheSameStringWhenAlreadyNormalized() {
+        // Given
+        String phoneNumber = "+447000000000";
+
+        // When
+        String normalized = underTest.normalize(phoneNumber);
+
+        // Then
+        assertThat(normalized).isSameAs(phoneNumber);
+    }
+
+    @Test
+    void itShouldUseTheDefaultRegionForNationalNumbers() {
+        // Given
+        PhoneNumberValidator romania = new PhoneNumberValidator(NumberingPlan.RO);
+
+        // When
+        // Then
+        assertThat(romania.normalize("0712 345 678")).isEqualTo("+40712345678");
+        assertThat(romania.normalize("07000 000000")).isNull();
+    }
+
     /*@Test
     @DisplayName("Should fail when length is bigger than 13")
     void itShouldValidatePhoneNumberWhenIncorrectAndHasLengthBiggerThan13() {